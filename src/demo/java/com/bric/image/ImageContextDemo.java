@@ -104,8 +104,7 @@ public class ImageContextDemo extends AbstractImageContextDemo {
 					} else if(col==3) {
 						context = new JFXImageContext(dst);
 					} else if(col==4) {
-						//context = new ParallelImageContext(dst);
-						return "Unimplemented";
+						context = new ParallelImageContext(dst);
 					} else if(col==5 && 
 							RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR.equals(interpolationHint)) {
 						context = new SCImageContext(dst);
@@ -303,6 +303,7 @@ public class QuantizationDemo extends BricApplet {
 		quantizationType.addItem( ImageQuantization.MOST_DIFFUSION );
 		quantizationType.addItem( ImageQuantization.MEDIUM_DIFFUSION );
 		quantizationType.addItem( ImageQuantization.SIMPLEST_DIFFUSION );
+		quantizationType.addItem( ImageQuantization.ORDERED_DITHER );
 		quantizationType.addItem( ImageQuantization.NEAREST_NEIGHBOR );
 		
 		if(isApplet) {
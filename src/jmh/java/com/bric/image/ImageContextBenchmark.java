@@ -0,0 +1,188 @@
+/*
+ * @(#)ImageContextBenchmark.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image;
+
+import java.awt.RenderingHints;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** This measures how many frames per second each <code>ImageContext</code> can render.
+ * <p>Each frame creates a context for the destination image, paints several
+ * overlapping quads to it and disposes the context (which is how the transitions
+ * use it). Run it with:
+ * <br><code>gradle jmh</code>
+ * <br>or, to run a subset of the parameters:
+ * <br><code>gradle jmh -PjmhArgs="ImageContextBenchmark -p context=SCImageContext -p shape=perspective"</code>
+ * <p>The <code>jmh</code> task also attaches the GC profiler, so the results include
+ * allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageContextBenchmark {
+	
+	/** The simple name of the <code>ImageContext</code> to measure. */
+	@Param({"BasicImageContext", "SCImageContext", "ParallelImageContext"})
+	public String context;
+	
+	/** The destination image size, as "[width]x[height]". */
+	@Param({"640x480", "1920x1080", "3840x2160"})
+	public String size;
+	
+	@Param({"nearest", "bilinear", "bicubic"})
+	public String interpolation;
+	
+	/** The number of threads the context may use. Zero means the context paints
+	 * on the calling thread, and -1 means one thread per available processor.
+	 */
+	@Param({"0", "1", "4", "-1"})
+	public int threads;
+	
+	/** Either "affine" (parallelograms) or "perspective" (strongly foreshortened quads). */
+	@Param({"affine", "perspective"})
+	public String shape;
+	
+	/** The number of quads painted in each frame. */
+	@Param({"16"})
+	public int quads;
+	
+	BufferedImage dst;
+	List<ImageContext.ImageQuad> instructions;
+	Object interpolationHint;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		int i = size.indexOf('x');
+		int width = Integer.parseInt(size.substring(0, i));
+		int height = Integer.parseInt(size.substring(i+1));
+		dst = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		
+		if("nearest".equals(interpolation)) {
+			interpolationHint = RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR;
+		} else if("bilinear".equals(interpolation)) {
+			interpolationHint = RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+		} else if("bicubic".equals(interpolation)) {
+			interpolationHint = RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+		} else {
+			throw new IllegalArgumentException("unrecognized interpolation: "+interpolation);
+		}
+		
+		if(threads<0) {
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		
+		instructions = createQuads(width, height);
+	}
+	
+	/** Each quad covers about a quarter of the destination. */
+	private List<ImageContext.ImageQuad> createQuads(int width,int height) {
+		Random random = new Random(0);
+		boolean perspective = "perspective".equals(shape);
+		if(!(perspective || "affine".equals(shape)))
+			throw new IllegalArgumentException("unrecognized shape: "+shape);
+		
+		List<ImageContext.ImageQuad> list = new ArrayList<ImageContext.ImageQuad>(quads);
+		for(int a = 0; a<quads; a++) {
+			int type = a%2==0 ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+			BufferedImage img = new BufferedImage(width/2, height/2, type);
+			int[] pixels = new int[img.getWidth()];
+			for(int y = 0; y<img.getHeight(); y++) {
+				for(int x = 0; x<pixels.length; x++) {
+					pixels[x] = (random.nextInt(256) << 24) | (x << 16) | (y << 8) | (x ^ y);
+				}
+				img.getRaster().setDataElements(0, y, pixels.length, 1, pixels);
+			}
+			
+			double w = width/2.0;
+			double h = height/2.0;
+			double x = random.nextDouble()*(width - w);
+			double y = random.nextDouble()*(height - h);
+			double skew = random.nextDouble()*w/4;
+			if(perspective) {
+				//the right edge is a third the height of the left edge
+				list.add(new ImageContext.ImageQuad(img,
+						new Point2D.Double(x, y),
+						new Point2D.Double(x + w, y + h/3),
+						new Point2D.Double(x + w - skew, y + 2*h/3),
+						new Point2D.Double(x - skew, y + h) ));
+			} else {
+				list.add(new ImageContext.ImageQuad(img,
+						new Point2D.Double(x + skew, y),
+						new Point2D.Double(x + w + skew, y),
+						new Point2D.Double(x + w, y + h),
+						new Point2D.Double(x, y + h) ));
+			}
+		}
+		return list;
+	}
+	
+	private ImageContext createContext() {
+		if("BasicImageContext".equals(context)) {
+			return new BasicImageContext(dst, threads);
+		} else if("SCImageContext".equals(context)) {
+			return new SCImageContext(dst, threads);
+		} else if("ParallelImageContext".equals(context)) {
+			return new ParallelImageContext(dst, threads);
+		}
+		throw new IllegalArgumentException("unrecognized context: "+context);
+	}
+	
+	/** Paint the quads one at a time. */
+	@Benchmark
+	public BufferedImage drawImage() {
+		ImageContext c = createContext();
+		c.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolationHint);
+		for(ImageContext.ImageQuad q : instructions) {
+			c.drawImage(q.image, q.topLeft, q.topRight, q.bottomRight, q.bottomLeft);
+		}
+		c.dispose();
+		return dst;
+	}
+	
+	/** Paint all the quads in one batch. */
+	@Benchmark
+	public BufferedImage drawImages() {
+		ImageContext c = createContext();
+		c.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolationHint);
+		c.drawImages(instructions);
+		c.dispose();
+		return dst;
+	}
+}
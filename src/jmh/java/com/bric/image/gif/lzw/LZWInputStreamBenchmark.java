@@ -0,0 +1,125 @@
+/*
+ * @(#)LZWInputStreamBenchmark.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.gif.lzw;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** This measures how many GIF frames per second can be decompressed by the
+ * <code>LZWInputStream</code> compared to the <code>LegacyLZWInputStream</code>.
+ * <p>Each operation decodes one frame of LZW data one row at a time (which is
+ * how the <code>GifReader</code> consumes it). Run it with:
+ * <br><code>gradle jmh -PjmhArgs="LZWInputStreamBenchmark"</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LZWInputStreamBenchmark {
+	
+	/** The simple name of the decoder to measure. */
+	@Param({"LZWInputStream", "LegacyLZWInputStream"})
+	public String decoder;
+	
+	/** The frame size, as "[width]x[height]". */
+	@Param({"640x480", "1920x1080"})
+	public String size;
+	
+	/** Either "noise" (random indices, which compress poorly) or "gradient"
+	 * (smooth runs of indices, which produce long strings). */
+	@Param({"noise", "gradient"})
+	public String content;
+	
+	int width, height;
+	byte[] encodedData;
+	byte[] row;
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		int i = size.indexOf('x');
+		width = Integer.parseInt(size.substring(0, i));
+		height = Integer.parseInt(size.substring(i+1));
+		row = new byte[width];
+		
+		Random random = new Random(0);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		LZWOutputStream out = new LZWOutputStream(bytes, 8, false);
+		for(int y = 0; y<height; y++) {
+			for(int x = 0; x<width; x++) {
+				if("noise".equals(content)) {
+					row[x] = (byte)random.nextInt(256);
+				} else if("gradient".equals(content)) {
+					row[x] = (byte)((x/8 + y/8) % 256);
+				} else {
+					throw new IllegalArgumentException("unrecognized content: "+content);
+				}
+			}
+			out.write(row);
+		}
+		out.close();
+		encodedData = bytes.toByteArray();
+	}
+	
+	private InputStream createInputStream() {
+		InputStream in = new ByteArrayInputStream(encodedData);
+		if("LZWInputStream".equals(decoder)) {
+			return new LZWInputStream(in, 8);
+		} else if("LegacyLZWInputStream".equals(decoder)) {
+			return new LegacyLZWInputStream(in, 8);
+		}
+		throw new IllegalArgumentException("unrecognized decoder: "+decoder);
+	}
+	
+	/** Decode one frame. */
+	@Benchmark
+	public byte[] decodeFrame() throws IOException {
+		InputStream in = createInputStream();
+		for(int y = 0; y<height; y++) {
+			int read = 0;
+			while(read<width) {
+				int k = in.read(row, read, width - read);
+				if(k==-1)
+					throw new IOException("frame ended after "+y+" rows");
+				read += k;
+			}
+		}
+		in.close();
+		return row;
+	}
+}
@@ -50,6 +50,12 @@ public abstract class AbstractAnimation {
 			
 			BufferedImage returnValue = frames.get(ctr).getImage();
 			ctr++;
+			if(cloneImage) {
+				//frames may be shared (or cached), so never return them to be modified
+				returnValue = new BufferedImage(returnValue.getColorModel(), 
+						returnValue.copyData(null), 
+						returnValue.isAlphaPremultiplied(), null);
+			}
 			return returnValue;
 		}
 
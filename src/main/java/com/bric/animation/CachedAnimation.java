@@ -23,64 +23,67 @@ import java.awt.Dimension;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-import com.bric.image.bmp.BmpDecoder;
-import com.bric.image.bmp.BmpEncoder;
-import com.bric.io.IOUtils;
-
-/** This stores an animation in memory as a series of cached BMP images.
+/** This stores an animation in a temporary file as a series of raw ARGB frames.
  * <p>Saving these images to the disk may be slightly expensive, but this
  * model lets you store animations that are arbitrarily large. (That is:
  * they are limited by your hard disk space and not your RAM.)
+ * <p>All the frames share one memory-mapped file, so replaying a frame is
+ * a bulk copy from the OS's file cache. The most recently used frames are
+ * also kept in memory (see {@link #setCachedImageLimit(long)}).
+ * <p><b>Important:</b> when a reader's <code>getNextFrame(false)</code> is
+ * called, the image returned is the instance held in that in-memory
+ * cache. It is shared with every other reader of this animation and will
+ * be recycled for another frame once it is evicted. Treat it as read-only,
+ * and only use it until the next call to <code>getNextFrame()</code>.
+ * Pass <code>true</code> to get an image that is safe to keep or modify.
  * @see BufferedAnimation
  */
 public class CachedAnimation extends AbstractAnimation {
+	
+	/** The default number of bytes of decoded images to keep in memory. */
+	public static final long DEFAULT_CACHED_IMAGE_LIMIT = 1 << 25;
 
-	class FileFrame extends Frame {
-		File file;
+	class StoredFrame extends Frame {
+		final int index;
 		
-		FileFrame(File directory,BufferedImage bi,int duration) throws IOException {
+		StoredFrame(BufferedImage bi,int duration) throws IOException {
 			super(duration);
-			file = directory==null ?
-					File.createTempFile("frame", ".bmp") :
-					File.createTempFile("frame", ".bmp", directory);
-			file.deleteOnExit();
-			myFiles.add(file);
-			BmpEncoder.write(bi, file);
+			index = store.add(bi);
 		}
 		
 		public BufferedImage getImage() throws IOException {
-			synchronized(CachedAnimation.this) {
-				if(myFiles==null) throw new IllegalStateException("this animation has already been disposed");
-				bi = BmpDecoder.readImage(file, bi);
-				return bi;
-			}
-		}
-	}
-	
-	private static File createTempDirectory() {
-		File tempDir = new File(System.getProperty("tmp.dir"));
-		File file = IOUtils.getUniqueFile(tempDir, "cached-animation", false, true);
-		if(!file.mkdir()) {
-			//while this isn't the end of the world, it strongly suggests
-			//we could have major issues soon:
-			System.err.println("CachedAnimation: could not make a directory \""+file.getAbsolutePath()+"\"");
-			return null;
+			return getFrameImage(index);
 		}
-		return file;
 	}
 	
 	File directory;
-	BufferedImage bi;
-	Set<File> myFiles = new HashSet<File>();
+	FrameStore store;
+	boolean disposed = false;
+	long cachedImageLimit = DEFAULT_CACHED_IMAGE_LIMIT;
+	
+	/** An image evicted from <code>recentImages</code> that can be reused. */
+	BufferedImage recycledImage;
+	Map<Integer, BufferedImage> recentImages = new LinkedHashMap<Integer, BufferedImage>(16, .75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage> eldest) {
+			if(size()>getMaxCachedImages()) {
+				recycledImage = eldest.getValue();
+				return true;
+			}
+			return false;
+		}
+	};
 	
 	/**
 	 * @param d the dimensions of this animation.
 	 */
 	public CachedAnimation(Dimension d) {
-		this(createTempDirectory(), d);
+		this(null, d);
 	}
 	
 	public CachedAnimation(AnimationReader reader) throws IOException {
@@ -90,14 +93,12 @@ public class CachedAnimation extends AbstractAnimation {
 	
 	public void dispose() {
 		synchronized(this) {
-			if(directory!=null) {
-				IOUtils.delete(directory);
-			}
-			for(File f : myFiles) {
-				if(f.exists())
-					f.delete();
+			disposed = true;
+			if(store!=null) {
+				store.dispose();
 			}
-			myFiles = null;
+			recentImages.clear();
+			recycledImage = null;
 		}
 	}
 	
@@ -115,7 +116,7 @@ public class CachedAnimation extends AbstractAnimation {
 	
 	/**
 	 * 
-	 * @param directory an optional temp directory to store all of the frames
+	 * @param directory an optional temp directory to store the frame file
 	 * inside.
 	 * @param d the dimensions of this animation.
 	 */
@@ -124,6 +125,45 @@ public class CachedAnimation extends AbstractAnimation {
 		this.directory = directory;
 	}
 	
+	/** Set the number of bytes of decoded frames this animation keeps in memory.
+	 * At least one frame is always kept.
+	 * 
+	 * @param bytes the approximate number of bytes of frames to keep in memory.
+	 */
+	public synchronized void setCachedImageLimit(long bytes) {
+		cachedImageLimit = bytes;
+		recentImages.clear();
+	}
+	
+	/** @return the approximate number of bytes of decoded frames this animation keeps in memory. */
+	public synchronized long getCachedImageLimit() {
+		return cachedImageLimit;
+	}
+	
+	private int getMaxCachedImages() {
+		long frameSize = ((long)width)*height*4;
+		return (int)Math.max(1, Math.min(Integer.MAX_VALUE, cachedImageLimit/Math.max(1, frameSize)));
+	}
+	
+	/** Return the cached image of a frame, reading it from the store if necessary.
+	 * <p>This image is not a copy: it belongs to the in-memory cache, and it
+	 * will be overwritten with another frame after it is evicted. Callers
+	 * must not modify it.
+	 */
+	synchronized BufferedImage getFrameImage(int index) throws IOException {
+		if(disposed) throw new IllegalStateException("this animation has already been disposed");
+		Integer key = Integer.valueOf(index);
+		BufferedImage bi = recentImages.get(key);
+		if(bi==null) {
+			bi = recycledImage!=null ? recycledImage :
+				new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			recycledImage = null;
+			store.read(index, bi);
+			recentImages.put(key, bi);
+		}
+		return bi;
+	}
+	
 	@Override
 	protected void finalize() throws Throwable {
 		dispose();
@@ -134,8 +174,15 @@ public class CachedAnimation extends AbstractAnimation {
 	protected Frame createFrame(BufferedImage bi, int duration)
 			throws IOException {
 		synchronized(this) {
-			if(myFiles==null) throw new IllegalStateException("this animation has already been disposed");
-			return new FileFrame(directory, bi, duration);
+			if(disposed) throw new IllegalStateException("this animation has already been disposed");
+			if(store==null) {
+				File file = directory==null ?
+						File.createTempFile("cached-animation", ".frames") :
+						File.createTempFile("cached-animation", ".frames", directory);
+				file.deleteOnExit();
+				store = new FrameStore(file, width, height);
+			}
+			return new StoredFrame(bi, duration);
 		}
 	}
 }
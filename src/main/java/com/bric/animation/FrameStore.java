@@ -0,0 +1,191 @@
+/*
+ * @(#)FrameStore.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.animation;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** This stores frames of raw ARGB pixels in one memory-mapped file.
+ * <p>Every frame occupies a slot of exactly <code>width*height*4</code> bytes,
+ * so frame <i>n</i> always lives at a known offset. The file is mapped (and
+ * preallocated) in blocks: the first block holds one frame, and each new
+ * block is as large as all the previous blocks combined (up to about 64MB).
+ * So a short animation only maps what it needs, adding frames rarely
+ * touches the file system, and reading a frame is a bulk copy from the
+ * mapped block into a <code>TYPE_INT_ARGB</code> image.
+ */
+class FrameStore {
+
+	/** The approximate maximum size of each mapped block. */
+	private static final long MAX_BLOCK_SIZE = 1 << 26;
+
+	final int width, height;
+	final File file;
+	final int maxFramesPerBlock;
+	final long frameSize;
+
+	RandomAccessFile randomAccessFile;
+	FileChannel channel;
+	List<IntBuffer> blocks = new ArrayList<IntBuffer>();
+	/** The index of the first frame in each block. */
+	List<Integer> blockStarts = new ArrayList<Integer>();
+	/** The number of frames all the blocks can hold. */
+	int mappedFrames = 0;
+	int frameCount = 0;
+
+	/**
+	 *
+	 * @param file the file to store frames in.  This will be overwritten.
+	 * @param width the width of every frame.
+	 * @param height the height of every frame.
+	 * @throws IOException if an IO problem occurs.
+	 */
+	FrameStore(File file,int width,int height) throws IOException {
+		frameSize = ((long)width)*height*4;
+		if(frameSize==0 || frameSize>Integer.MAX_VALUE)
+			throw new IllegalArgumentException("unsupported frame size ("+width+"x"+height+")");
+		this.file = file;
+		this.width = width;
+		this.height = height;
+		maxFramesPerBlock = (int)Math.max(1, MAX_BLOCK_SIZE/frameSize);
+		randomAccessFile = new RandomAccessFile(file, "rw");
+		randomAccessFile.setLength(0);
+		channel = randomAccessFile.getChannel();
+	}
+
+	/** Return the pixels of a frame, positioned at the start of its slot.
+	 */
+	private IntBuffer getSlot(int index) throws IOException {
+		while(mappedFrames<=index) {
+			//mapping past the end of the file grows the file
+			int blockFrames = Math.min(maxFramesPerBlock, Math.max(1, mappedFrames));
+			MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_WRITE, frameSize*mappedFrames, frameSize*blockFrames);
+			blocks.add(block.order(ByteOrder.nativeOrder()).asIntBuffer());
+			blockStarts.add(Integer.valueOf(mappedFrames));
+			mappedFrames += blockFrames;
+		}
+		int blockIndex = Collections.binarySearch(blockStarts, Integer.valueOf(index));
+		if(blockIndex<0) {
+			//the block before the insertion point contains this frame
+			blockIndex = -blockIndex - 2;
+		}
+		IntBuffer slot = blocks.get(blockIndex).duplicate();
+		slot.position( (int)((index - blockStarts.get(blockIndex).intValue())*(frameSize/4)) );
+		return slot;
+	}
+
+	/** Append a frame to this store.
+	 *
+	 * @param bi an image that is the same size as this store.
+	 * @return the index of the new frame.
+	 * @throws IOException if an IO problem occurs.
+	 */
+	synchronized int add(BufferedImage bi) throws IOException {
+		if(channel==null) throw new IllegalStateException("this store has already been disposed");
+		if(bi.getWidth()!=width || bi.getHeight()!=height)
+			throw new IllegalArgumentException("size mismatch ("+bi.getWidth()+"x"+bi.getHeight()+" != "+width+"x"+height+")");
+
+		int index = frameCount;
+		IntBuffer slot = getSlot(index);
+		if(bi.getType()==BufferedImage.TYPE_INT_ARGB) {
+			WritableRaster raster = bi.getRaster();
+			int[] data = getData(raster);
+			int offset = getOffset(raster);
+			int stride = ((SinglePixelPackedSampleModel)raster.getSampleModel()).getScanlineStride();
+			for(int y = 0; y<height; y++) {
+				slot.put(data, offset + y*stride, width);
+			}
+		} else {
+			int[] row = new int[width];
+			for(int y = 0; y<height; y++) {
+				bi.getRGB(0, y, width, 1, row, 0, width);
+				slot.put(row);
+			}
+		}
+		frameCount++;
+		return index;
+	}
+
+	/** Copy a frame into an image.
+	 *
+	 * @param index the frame to read.
+	 * @param dst a <code>TYPE_INT_ARGB</code> image that is the same size as this store.
+	 * @throws IOException if an IO problem occurs.
+	 */
+	synchronized void read(int index,BufferedImage dst) throws IOException {
+		if(channel==null) throw new IllegalStateException("this store has already been disposed");
+		if(index<0 || index>=frameCount)
+			throw new IllegalArgumentException("index ("+index+") must be between 0 and "+(frameCount-1));
+		if(dst.getType()!=BufferedImage.TYPE_INT_ARGB)
+			throw new IllegalArgumentException("the destination must be TYPE_INT_ARGB");
+
+		IntBuffer slot = getSlot(index);
+		WritableRaster raster = dst.getRaster();
+		int[] data = getData(raster);
+		int offset = getOffset(raster);
+		int stride = ((SinglePixelPackedSampleModel)raster.getSampleModel()).getScanlineStride();
+		for(int y = 0; y<height; y++) {
+			slot.get(data, offset + y*stride, width);
+		}
+	}
+
+	synchronized int getFrameCount() {
+		return frameCount;
+	}
+
+	/** Close and delete the backing file. */
+	synchronized void dispose() {
+		if(channel==null) return;
+		try {
+			randomAccessFile.close();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+		channel = null;
+		blocks.clear();
+		blockStarts.clear();
+		mappedFrames = 0;
+		//on some platforms this may fail until the mapped buffers are garbage collected:
+		if(!file.delete())
+			file.deleteOnExit();
+	}
+
+	private static int[] getData(WritableRaster raster) {
+		return ((DataBufferInt)raster.getDataBuffer()).getData();
+	}
+
+	private static int getOffset(WritableRaster raster) {
+		SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel)raster.getSampleModel();
+		return raster.getDataBuffer().getOffset() +
+				sm.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+	}
+}
@@ -26,19 +26,22 @@ import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.media.jai.PerspectiveTransform;
 
@@ -50,21 +53,34 @@ import com.bric.math.MathG;
  * @see com.bric.image.BasicImageContextDemo
  */
 public class BasicImageContext extends ImageContext {
+	/** The width and height of the tiles the destination image is divided into. */
+	static final int TILE_SIZE = 100;
+	
 	final int width, height;
     final int[] data;
     final int stride;
 	final BufferedImage bi;
-	boolean disposed = false;
-	ExecutorService executor = null;
+	volatile boolean disposed = false;
+	ForkJoinPool executor = null;
+	
+	/** The number of tiles in each row of the destination image. */
+	final int tileColumns;
+	
+	/** The tiles of the destination image, in row-major order.
+	 * This is null when this context is not multithreaded.
+	 */
+	final Tile[] tiles;
 	
-	/** Create a Graphics3D context that paints to a destination image using 6 threads.
+	/** The first exception or error thrown while painting a tile, which is rethrown by <code>dispose()</code>. */
+	final AtomicReference<Throwable> tileFailure = new AtomicReference<Throwable>();
+	
+	/** Create a Graphics3D context that paints to a destination image using
+	 * one thread per available processor.
 	 * 
 	 * @param bi an RGB or ARGB image.
 	 */
 	public BasicImageContext(BufferedImage bi) {
-		this(bi, 6);
-		//TODO: in Java 1.8, use this:
-        //executor = Executors.newWorkStealingPool(threads);
+		this(bi, Runtime.getRuntime().availableProcessors());
 	}
 	
 	/** Create a Graphics3D context that paints to a destination image.
@@ -83,8 +99,17 @@ public class BasicImageContext extends ImageContext {
 		height = bi.getHeight();
         stride = bi.getRaster().getWidth();
 		data = getPixels(bi);
+		tileColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
 		if(numberOfThreads>0) {
-			executor = new ForkJoinPool(numberOfThreads);
+			//asyncMode: tiles are event-style tasks that are never joined
+			executor = new ForkJoinPool(numberOfThreads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+			int tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+			tiles = new Tile[tileColumns * tileRows];
+			for(int a = 0; a<tiles.length; a++) {
+				tiles[a] = new Tile();
+			}
+		} else {
+			tiles = null;
 		}
 	}
 	
@@ -388,170 +413,212 @@ public class BasicImageContext extends ImageContext {
 	 * @param bottomRight where the bottom-right corner of this image will be painted.
 	 * @param bottomLeft where the bottom-left corner of this image will be painted.
 	 */
-	public synchronized void drawImage(BufferedImage img,Point2D topLeft,Point2D topRight,Point2D bottomRight,Point2D bottomLeft) {
+	public void drawImage(BufferedImage img,Point2D topLeft,Point2D topRight,Point2D bottomRight,Point2D bottomLeft) {
+		drawImages(Collections.singletonList(new ImageQuad(img, topLeft, topRight, bottomRight, bottomLeft)));
+	}
+	
+	/** Draw several images to this Graphics3D.
+	 * <p>Every image is prepared once, and then each tile of the destination
+	 * is painted in a single pass that visits every image that overlaps it (in the
+	 * order they appear in the list).
+	 * <p>This may be called from several threads at once. When this context is
+	 * multithreaded the tiles are scheduled without any locks, so callers don't
+	 * wait for each other; otherwise each tile is painted while holding this
+	 * object's lock. Images drawn by different threads at the same time are
+	 * layered in no particular order.
+	 */
+	@Override
+	public void drawImages(List<ImageQuad> quads) {
 		if(disposed)
 			throw new IllegalStateException("This Graphics3D context has been disposed.");
-		Point2D srcTopLeft = new Point2D.Double(0,0);
-		Point2D srcTopRight = new Point2D.Double(img.getWidth(),0);
-		Point2D srcBottomLeft = new Point2D.Double(0,img.getHeight());
-		Point2D srcBottomRight = new Point2D.Double(img.getWidth(),img.getHeight());
-		
-		double minX = Math.min( Math.min(topLeft.getX(), topRight.getX()), 
-				Math.min(bottomLeft.getX(), bottomRight.getX()) );
-		double maxX = Math.max( Math.max(topLeft.getX(), topRight.getX()), 
-				Math.max(bottomLeft.getX(), bottomRight.getX()) );
-		double minY = Math.min( Math.min(topLeft.getY(), topRight.getY()), 
-				Math.min(bottomLeft.getY(), bottomRight.getY()) );
-		double maxY = Math.max( Math.max(topLeft.getY(), topRight.getY()), 
-				Math.max(bottomLeft.getY(), bottomRight.getY()) );
-		int minXi = MathG.floorInt(minX)-1;
-		int maxXi = MathG.ceilInt(maxX)+1;
-		int minYi = MathG.floorInt(minY)-1;
-		int maxYi = MathG.ceilInt(maxY)+1;
-		
-		//bound everything from [0,limit)
-		minXi = Math.max(0, Math.min(width-1, minXi));
-		maxXi = Math.max(0, Math.min(width-1, maxXi));
-		minYi = Math.max(0, Math.min(height-1, minYi));
-		maxYi = Math.max(0, Math.min(height-1, maxYi));
-		
-		PerspectiveTransform pt = PerspectiveTransform.getQuadToQuad(
-				topLeft.getX(), topLeft.getY(),
-				topRight.getX(), topRight.getY(),
-				bottomLeft.getX(), bottomLeft.getY(),
-				bottomRight.getX(), bottomRight.getY(),
-				srcTopLeft.getX(), srcTopLeft.getY(),
-				srcTopRight.getX(), srcTopRight.getY(),
-				srcBottomLeft.getX(), srcBottomLeft.getY(),
-				srcBottomRight.getX(), srcBottomRight.getY()
-		);
-		
-		int[] otherPixels = getPixels(img);
-        int oStride = img.getRaster().getWidth();
-        int oWidth = img.getWidth();
-        int oHeight = img.getHeight();
-        boolean oHasAlpha = img.getColorModel().hasAlpha();
-
-		HorizontalStripFunction stripFunction;
-		try {
-			stripFunction = new VariableWidthFunction(minXi, maxXi, topLeft, topRight, bottomRight, bottomLeft);
-		} catch(LineSegmentIntersectionException e) {
-			stripFunction = new FixedWidthFunction(minXi, maxXi);
-		}
 		
 		Object interpolationHint = getInterpolationRenderingHint();
+		PreparedQuad[] prepared = new PreparedQuad[quads.size()];
+		int minXi = width, minYi = height, maxXi = -1, maxYi = -1;
+		for(int a = 0; a<prepared.length; a++) {
+			prepared[a] = new PreparedQuad(quads.get(a), interpolationHint);
+			minXi = Math.min(minXi, prepared[a].minXi);
+			minYi = Math.min(minYi, prepared[a].minYi);
+			maxXi = Math.max(maxXi, prepared[a].maxXi);
+			maxYi = Math.max(maxYi, prepared[a].maxYi);
+		}
 		
-		if(executor!=null) {
-			int y = minYi;
-			while(y<=maxYi) {
-				int cy = y / 100;
-				int h = Math.min( (cy+1)*100, maxYi ) - y;
-				int x = minXi;
-				while(x<=maxXi) {
-					int cx = x / 100;
-					int w = Math.min( (cx+1)*100, maxXi ) - x;
-					TileInstructions i = new TileInstructions(cx << 8 + cy, x, y, w - 1, h - 1, interpolationHint, otherPixels, pt, oHasAlpha, oWidth, oHeight, oStride, stripFunction);
-					synchronized(pendingTileInstructions) {
-						pendingTileInstructions.add(i);
+		List<TileInstructions> batch = new ArrayList<TileInstructions>(prepared.length);
+		for(int cy = minYi / TILE_SIZE; cy<=maxYi / TILE_SIZE; cy++) {
+			int tileMinY = cy * TILE_SIZE;
+			int tileMaxY = tileMinY + TILE_SIZE - 1;
+			for(int cx = minXi / TILE_SIZE; cx<=maxXi / TILE_SIZE; cx++) {
+				int tileMinX = cx * TILE_SIZE;
+				int tileMaxX = tileMinX + TILE_SIZE - 1;
+				for(PreparedQuad q : prepared) {
+					if(q.minXi<=tileMaxX && q.maxXi>=tileMinX && q.minYi<=tileMaxY && q.maxYi>=tileMinY) {
+						batch.add(new TileInstructions(q, 
+								Math.max(tileMinX, q.minXi), Math.max(tileMinY, q.minYi),
+								Math.min(tileMaxX, q.maxXi), Math.min(tileMaxY, q.maxYi)));
+					}
+				}
+				if(batch.size()>0) {
+					TileInstructions[] array = batch.toArray(new TileInstructions[batch.size()]);
+					batch.clear();
+					if(executor!=null) {
+						tiles[cy * tileColumns + cx].submit(array);
+					} else {
+						synchronized(this) {
+							drawTile(array);
+						}
 					}
-					executor.submit(new DrawTileRunnable());
-					
-					x = (cx+1)*100;
 				}
-				y = (cy+1)*100;
 			}
-		} else {
-			drawTile(minXi, minYi, maxXi, maxXi, interpolationHint, otherPixels, pt, oHasAlpha, oWidth, oHeight, oStride, stripFunction);
 		}
 	}
 	
+	/** The information about an image that every tile it overlaps needs. */
+	class PreparedQuad {
+		final int minXi, minYi, maxXi, maxYi, oWidth, oHeight, oStride;
+		final Object renderingHint;
+		final int[] otherPixels;
+		final PerspectiveTransform transform;
+		final boolean oHasAlpha;
+		final HorizontalStripFunction stripFunction;
+		
+		PreparedQuad(ImageQuad quad,Object interpolationHint) {
+			BufferedImage img = quad.image;
+			Point2D topLeft = quad.topLeft;
+			Point2D topRight = quad.topRight;
+			Point2D bottomRight = quad.bottomRight;
+			Point2D bottomLeft = quad.bottomLeft;
+			Point2D srcTopLeft = new Point2D.Double(0,0);
+			Point2D srcTopRight = new Point2D.Double(img.getWidth(),0);
+			Point2D srcBottomLeft = new Point2D.Double(0,img.getHeight());
+			Point2D srcBottomRight = new Point2D.Double(img.getWidth(),img.getHeight());
+			
+			double minX = Math.min( Math.min(topLeft.getX(), topRight.getX()), 
+					Math.min(bottomLeft.getX(), bottomRight.getX()) );
+			double maxX = Math.max( Math.max(topLeft.getX(), topRight.getX()), 
+					Math.max(bottomLeft.getX(), bottomRight.getX()) );
+			double minY = Math.min( Math.min(topLeft.getY(), topRight.getY()), 
+					Math.min(bottomLeft.getY(), bottomRight.getY()) );
+			double maxY = Math.max( Math.max(topLeft.getY(), topRight.getY()), 
+					Math.max(bottomLeft.getY(), bottomRight.getY()) );
+			
+			//bound everything from [0,limit)
+			minXi = Math.max(0, Math.min(width-1, MathG.floorInt(minX)-1));
+			maxXi = Math.max(0, Math.min(width-1, MathG.ceilInt(maxX)+1));
+			minYi = Math.max(0, Math.min(height-1, MathG.floorInt(minY)-1));
+			maxYi = Math.max(0, Math.min(height-1, MathG.ceilInt(maxY)+1));
+			
+			transform = PerspectiveTransform.getQuadToQuad(
+					topLeft.getX(), topLeft.getY(),
+					topRight.getX(), topRight.getY(),
+					bottomLeft.getX(), bottomLeft.getY(),
+					bottomRight.getX(), bottomRight.getY(),
+					srcTopLeft.getX(), srcTopLeft.getY(),
+					srcTopRight.getX(), srcTopRight.getY(),
+					srcBottomLeft.getX(), srcBottomLeft.getY(),
+					srcBottomRight.getX(), srcBottomRight.getY()
+			);
+			
+			otherPixels = getPixels(img);
+	        oStride = img.getRaster().getWidth();
+	        oWidth = img.getWidth();
+	        oHeight = img.getHeight();
+	        oHasAlpha = img.getColorModel().hasAlpha();
+	
+			HorizontalStripFunction f;
+			try {
+				f = new VariableWidthFunction(minXi, maxXi, topLeft, topRight, bottomRight, bottomLeft);
+			} catch(LineSegmentIntersectionException e) {
+				f = new FixedWidthFunction(minXi, maxXi);
+			}
+			stripFunction = f;
+			renderingHint = interpolationHint;
+		}
+	}
+	
+	/** The part of a <code>PreparedQuad</code> that falls inside one tile. */
 	class TileInstructions {
-		int id, tileX, tileY, tileWidth, tileHeight, oWidth, oHeight, oStride;
-		Object renderingHint;
-		int[] otherPixels;
-		PerspectiveTransform transform;
-		boolean oHasAlpha;
-		HorizontalStripFunction stripFunction;
+		final int tileX, tileY, tileMaxX, tileMaxY;
+		final PreparedQuad quad;
+		final HorizontalStripFunction stripFunction;
 		
-		public TileInstructions(int id, int x, int y, int w, int h, Object rh,
-				int[] otherPixels, PerspectiveTransform pt,boolean oHasAlpha,int oWidth,
-				int oHeight,int oStride,HorizontalStripFunction stripFunction) {
-			this.id = id;
+		/** 
+		 * @param quad the image to paint.
+		 * @param x the left edge of the tile (inclusive).
+		 * @param y the top edge of the tile (inclusive).
+		 * @param maxX the right edge of the tile (inclusive).
+		 * @param maxY the bottom edge of the tile (inclusive).
+		 */
+		TileInstructions(PreparedQuad quad,int x,int y,int maxX,int maxY) {
+			this.quad = quad;
 			this.tileX = x;
 			this.tileY = y;
-			this.tileWidth = w;
-			this.tileHeight = h;
-			this.renderingHint = rh;
-			this.otherPixels = otherPixels;
-			this.transform = pt;
-			this.oHasAlpha = oHasAlpha;
-			this.oWidth = oWidth;
-			this.oHeight = oHeight;
-			this.oStride=  oStride;
-			this.stripFunction = stripFunction.derive(tileX, tileX+tileWidth);
+			this.tileMaxX = maxX;
+			this.tileMaxY = maxY;
+			this.stripFunction = quad.stripFunction.derive(x, maxX);
 		}
 		
 		@Override
 		public String toString() {
-			return "TileInstructions[ id="+id+", x="+tileX+", y="+tileY+", w="+tileWidth+", h="+tileHeight+", hint="+renderingHint+"]";
+			return "TileInstructions[ x="+tileX+", y="+tileY+", maxX="+tileMaxX+", maxY="+tileMaxY+", hint="+quad.renderingHint+"]";
 		}
-		
 	}
 	
-	List<TileInstructions> pendingTileInstructions = new LinkedList<TileInstructions>();
-	
-	
-	Set<Integer> reservedTiles = new HashSet<Integer>();
-	class DrawTileRunnable implements Runnable {
-		public void run() {
-			TileInstructions c = null;
-			while(c==null) {
-				synchronized(pendingTileInstructions) {
-					Iterator<TileInstructions> iter = pendingTileInstructions.iterator();
-					while(iter.hasNext() && c==null) {
-						TileInstructions instr = iter.next();
-						synchronized(reservedTiles) {
-							if(reservedTiles.add(instr.id)) {
-								c = instr;
-								iter.remove();
-							}
-						}
-					}
-				}
-				if(c==null) {
-					synchronized(reservedTiles) {
-						try {
-							reservedTiles.wait(1000);
-						} catch(Exception e) {}
-					}
-				}
+	/** A tile of the destination image and the instructions waiting to be painted in it.
+	 * <p>Instructions for the same tile have to be painted one at a time and in the
+	 * order they were submitted, but different tiles are completely independent.
+	 * So instead of locking a tile, the thread that raises <code>pending</code> from zero
+	 * becomes the tile's owner: it schedules this tile, and the tile keeps itself scheduled
+	 * until <code>pending</code> returns to zero. Each run paints one batch of instructions
+	 * and then reschedules, so idle workers can steal other tiles in the meantime.
+	 */
+	class Tile implements Runnable {
+		final Queue<TileInstructions[]> queue = new ConcurrentLinkedQueue<TileInstructions[]>();
+		final AtomicInteger pending = new AtomicInteger();
+		
+		void submit(TileInstructions[] batch) {
+			queue.add(batch);
+			if(pending.getAndIncrement()==0) {
+				executor.execute(this);
 			}
-			
+		}
+		
+		public void run() {
+			TileInstructions[] batch = queue.poll();
 			try {
-				drawTile(
-						c.tileX,
-						c.tileY,
-						c.tileX+c.tileWidth,
-						c.tileY+c.tileHeight,
-						c.renderingHint,
-						c.otherPixels,
-						c.transform,
-						c.oHasAlpha,
-						c.oWidth,
-						c.oHeight,
-						c.oStride,
-						c.stripFunction );
+				drawTile(batch);
+			} catch(RuntimeException e) {
+				//keep draining this tile, but report the failure from dispose()
+				tileFailure.compareAndSet(null, e);
+			} catch(Error e) {
+				tileFailure.compareAndSet(null, e);
 			} finally {
-				synchronized(pendingTileInstructions) {
-					synchronized(reservedTiles) {
-						reservedTiles.remove(c.id);
-						reservedTiles.notifyAll();
-					}
+				if(pending.decrementAndGet()>0) {
+					executor.execute(this);
 				}
 			}
 		}
 	}
 	
+	/** Paint a series of instructions in order. */
+	protected void drawTile(TileInstructions[] batch) {
+		for(TileInstructions c : batch) {
+			PreparedQuad q = c.quad;
+			drawTile(
+					c.tileX,
+					c.tileY,
+					c.tileMaxX,
+					c.tileMaxY,
+					q.renderingHint,
+					q.otherPixels,
+					q.transform,
+					q.oHasAlpha,
+					q.oWidth,
+					q.oHeight,
+					q.oStride,
+					c.stripFunction );
+		}
+	}
+	
 	protected void drawTile(int minXi,int minYi,int maxXi,int maxYi,Object interpolationHint,int[] otherPixels,PerspectiveTransform pt,boolean oHasAlpha,int oWidth,int oHeight,int oStride, HorizontalStripFunction stripFunction) {
 		
 		double transformedX, transformedY;
@@ -786,9 +853,14 @@ public class BasicImageContext extends ImageContext {
 	}
 	
 	/** Commit all changes back to the BufferedImage this context paints to.
+	 * 
+	 * @throws RuntimeException if painting any tile failed. (The BufferedImage
+	 * may be partially painted.)
 	 */
 	public synchronized void dispose() {
         if (executor != null) {
+            //tiles reschedule themselves, so let them drain before shutting down:
+            executor.awaitQuiescence(60, TimeUnit.MINUTES);
             executor.shutdown();
             try {
                 executor.awaitTermination(60, TimeUnit.MINUTES);
@@ -797,5 +869,12 @@ public class BasicImageContext extends ImageContext {
             }
         }
 		disposed = true;
+		
+		Throwable t = tileFailure.getAndSet(null);
+		if(t instanceof RuntimeException) {
+			throw (RuntimeException)t;
+		} else if(t instanceof Error) {
+			throw (Error)t;
+		}
 	}
 }
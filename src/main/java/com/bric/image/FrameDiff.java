@@ -0,0 +1,330 @@
+/*
+ * @(#)FrameDiff.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import com.bric.util.ParallelRange;
+
+/** This finds the regions where one image differs from another, such as the
+ * parts of an animation frame that changed since the previous frame.
+ * <p>The raw pixels of <code>TYPE_INT_ARGB</code> and <code>TYPE_INT_RGB</code>
+ * images are compared directly; other images are converted one row at a time.
+ * Each row is scanned inward from both edges, so when only the bounds of the
+ * differences are needed the middle of a changed row is never read. Large
+ * images are divided into bands of rows that are compared in the common
+ * <code>ForkJoinPool</code>.
+ */
+public class FrameDiff {
+	
+	/** The default minimum distance (in pixels) between separate dirty rectangles. */
+	public static final int DEFAULT_MERGE_DISTANCE = 8;
+	
+	/** Images are only divided into bands if each band has at least this many pixels. */
+	private static final int MIN_PIXELS_PER_BAND = 1 << 16;
+	
+	/** The rows of an image as ARGB pixels. */
+	private static class Pixels {
+		final BufferedImage image;
+		final int width;
+		/** The raster data, or null if rows have to be converted. */
+		final int[] data;
+		final int offset, stride;
+		/** The bits to add to every pixel in <code>data</code> (opaque images don't store alpha). */
+		final int alpha;
+		
+		Pixels(BufferedImage image) {
+			this.image = image;
+			width = image.getWidth();
+			int type = image.getType();
+			WritableRaster raster = image.getRaster();
+			SampleModel sm = raster.getSampleModel();
+			if( (type==BufferedImage.TYPE_INT_ARGB || type==BufferedImage.TYPE_INT_RGB) &&
+					raster.getDataBuffer() instanceof DataBufferInt &&
+					sm instanceof SinglePixelPackedSampleModel) {
+				SinglePixelPackedSampleModel sppsm = (SinglePixelPackedSampleModel)sm;
+				data = ((DataBufferInt)raster.getDataBuffer()).getData();
+				offset = raster.getDataBuffer().getOffset() + 
+						sppsm.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+				stride = sppsm.getScanlineStride();
+				alpha = type==BufferedImage.TYPE_INT_RGB ? 0xff000000 : 0;
+			} else {
+				data = null;
+				offset = 0;
+				stride = 0;
+				alpha = 0;
+			}
+		}
+		
+		/** Return an array that contains a row, starting at <code>getRowOffset(y)</code>. */
+		int[] getRow(int y,int[] scratch) {
+			if(data!=null)
+				return data;
+			image.getRGB(0, y, width, 1, scratch, 0, width);
+			return scratch;
+		}
+		
+		int getRowOffset(int y) {
+			if(data!=null)
+				return offset + y*stride;
+			return 0;
+		}
+	}
+	
+	/** Compares a band of rows and stores the dirty runs of each row. */
+	private class Scan implements ParallelRange.Body {
+		final Pixels background, incoming;
+		final int[][] runs;
+		final boolean boundsOnly;
+		
+		Scan(Pixels background,Pixels incoming,int[][] runs,boolean boundsOnly) {
+			this.background = background;
+			this.incoming = incoming;
+			this.runs = runs;
+			this.boundsOnly = boundsOnly;
+		}
+
+		public void run(int y1,int y2) {
+			int w = background.width;
+			int[] scratch1 = background.data==null ? new int[w] : null;
+			int[] scratch2 = incoming.data==null ? new int[w] : null;
+			for(int y = y1; y<y2; y++) {
+				runs[y] = scanRow(background.getRow(y, scratch1), background.getRowOffset(y), background.alpha,
+						incoming.getRow(y, scratch2), incoming.getRowOffset(y), incoming.alpha, w, boundsOnly);
+			}
+		}
+	}
+	
+	protected final int parallelism;
+	protected final int mergeDistance;
+	
+	/** Create a <code>FrameDiff</code> that uses one band per available processor
+	 * and the default merge distance.
+	 */
+	public FrameDiff() {
+		this(Runtime.getRuntime().availableProcessors(), DEFAULT_MERGE_DISTANCE);
+	}
+	
+	/** Create a <code>FrameDiff</code>.
+	 * 
+	 * @param parallelism the maximum number of bands to compare at once. If this
+	 * is 1 or less then images are compared on the calling thread.
+	 * @param mergeDistance differences that are separated by fewer than this many
+	 * unchanged pixels are combined into the same dirty rectangle.
+	 */
+	public FrameDiff(int parallelism,int mergeDistance) {
+		if(mergeDistance<1)
+			throw new IllegalArgumentException("mergeDistance ("+mergeDistance+") must be at least 1");
+		this.parallelism = parallelism;
+		this.mergeDistance = mergeDistance;
+	}
+	
+	/** Whether the incoming pixel differs from the background pixel.
+	 * <p>By default this is true if the RGB components are different, or if the incoming
+	 * pixel is more transparent than the background pixel (in which case it
+	 * can't be painted on top of the background).
+	 * <p>This is only called if the two pixels are not identical.
+	 * 
+	 * @param background an ARGB pixel of the background.
+	 * @param incoming an ARGB pixel of the incoming image.
+	 * @return true if this pixel has changed.
+	 */
+	protected boolean isDifferent(int background,int incoming) {
+		return ((background ^ incoming) & 0xffffff)!=0 || (incoming >>> 24) < (background >>> 24);
+	}
+	
+	/** Returns the smallest rectangle that encloses the differences between two images,
+	 * or null if they are the same.
+	 * 
+	 * @param background the image that is already showing.
+	 * @param incoming the image that will replace it.
+	 * @return the bounds of all the differences, or null.
+	 */
+	public Rectangle getBounds(BufferedImage background,BufferedImage incoming) {
+		int[][] runs = scan(background, incoming, true);
+		Rectangle r = null;
+		for(int y = 0; y<runs.length; y++) {
+			if(runs[y]!=null) {
+				Rectangle row = new Rectangle(runs[y][0], y, runs[y][1] - runs[y][0], 1);
+				if(r==null) {
+					r = row;
+				} else {
+					r.add(row);
+				}
+			}
+		}
+		return r;
+	}
+	
+	/** Returns disjoint rectangles that enclose all the differences between two images.
+	 * <p>Differences that are close together (see {@link #FrameDiff(int, int)}) are
+	 * grouped into the same rectangle, and overlapping rectangles are combined.
+	 * 
+	 * @param background the image that is already showing.
+	 * @param incoming the image that will replace it.
+	 * @return the dirty rectangles, sorted from top to bottom. This is empty if the images are the same.
+	 */
+	public List<Rectangle> getDirtyRectangles(BufferedImage background,BufferedImage incoming) {
+		int[][] runs = scan(background, incoming, false);
+		
+		List<Rectangle> open = new ArrayList<Rectangle>();
+		List<Rectangle> closed = new ArrayList<Rectangle>();
+		for(int y = 0; y<runs.length; y++) {
+			Iterator<Rectangle> iter = open.iterator();
+			while(iter.hasNext()) {
+				Rectangle r = iter.next();
+				if(y - (r.y + r.height) >= mergeDistance) {
+					iter.remove();
+					closed.add(r);
+				}
+			}
+			
+			int[] row = runs[y];
+			if(row==null) continue;
+			for(int a = 0; a<row.length && row[a]!=-1; a+=2) {
+				Rectangle run = new Rectangle(row[a], y, row[a+1] - row[a], 1);
+				iter = open.iterator();
+				while(iter.hasNext()) {
+					Rectangle r = iter.next();
+					if(r.x - mergeDistance < run.x + run.width &&
+							run.x < r.x + r.width + mergeDistance) {
+						run.add(r);
+						iter.remove();
+					}
+				}
+				open.add(run);
+			}
+		}
+		closed.addAll(open);
+		
+		// rectangles that started out separate may have grown to overlap
+		boolean merged = true;
+		while(merged) {
+			merged = false;
+			search : for(int a = 0; a<closed.size(); a++) {
+				for(int b = a+1; b<closed.size(); b++) {
+					if(closed.get(a).intersects(closed.get(b))) {
+						closed.get(a).add(closed.remove(b));
+						merged = true;
+						break search;
+					}
+				}
+			}
+		}
+		
+		Collections.sort(closed, new Comparator<Rectangle>() {
+			public int compare(Rectangle r1, Rectangle r2) {
+				if(r1.y!=r2.y)
+					return r1.y < r2.y ? -1 : 1;
+				return r1.x < r2.x ? -1 : r1.x==r2.x ? 0 : 1;
+			}
+		});
+		return closed;
+	}
+	
+	/** Compare every row of two images.
+	 * 
+	 * @return an array of runs for each row, or null for rows that are the same.
+	 * Each array of runs contains pairs of [start, end) x-values, and may be padded with -1.
+	 * If <code>boundsOnly</code> is true then each row has only one run.
+	 */
+	private int[][] scan(BufferedImage background,BufferedImage incoming,boolean boundsOnly) {
+		int w = background.getWidth();
+		int h = background.getHeight();
+		if(w!=incoming.getWidth() || h!=incoming.getHeight())
+			throw new IllegalArgumentException("images are different sizes: "+w+"x"+h+", "+incoming.getWidth()+"x"+incoming.getHeight());
+		
+		int[][] runs = new int[h][];
+		int tasks = (int)Math.min( Math.max(1, parallelism), ((long)w)*h / MIN_PIXELS_PER_BAND );
+		ParallelRange.parallelRange(0, h, tasks, new Scan(new Pixels(background), new Pixels(incoming), runs, boundsOnly));
+		return runs;
+	}
+	
+	/** Compare one row.
+	 * 
+	 * @return the dirty runs in this row, or null if nothing changed.
+	 */
+	private int[] scanRow(int[] row1,int offset1,int alpha1,int[] row2,int offset2,int alpha2,int w,boolean boundsOnly) {
+		int left = 0;
+		while(left<w) {
+			int p1 = row1[offset1 + left] | alpha1;
+			int p2 = row2[offset2 + left] | alpha2;
+			if(p1!=p2 && isDifferent(p1, p2))
+				break;
+			left++;
+		}
+		if(left==w)
+			return null;
+		
+		int right = w - 1;
+		while(right>left) {
+			int p1 = row1[offset1 + right] | alpha1;
+			int p2 = row2[offset2 + right] | alpha2;
+			if(p1!=p2 && isDifferent(p1, p2))
+				break;
+			right--;
+		}
+		if(boundsOnly || right - left < mergeDistance)
+			return new int[] { left, right + 1 };
+		
+		int[] runs = new int[4];
+		int size = 0;
+		int start = left;
+		int lastDirty = left;
+		for(int x = left + 1; x<=right; x++) {
+			int p1 = row1[offset1 + x] | alpha1;
+			int p2 = row2[offset2 + x] | alpha2;
+			if(p1!=p2 && isDifferent(p1, p2)) {
+				if(x - lastDirty - 1 >= mergeDistance) {
+					if(size + 2 > runs.length) {
+						int[] t = new int[runs.length*2];
+						System.arraycopy(runs, 0, t, 0, size);
+						runs = t;
+					}
+					runs[size++] = start;
+					runs[size++] = lastDirty + 1;
+					start = x;
+				}
+				lastDirty = x;
+			}
+		}
+		if(size + 2 > runs.length) {
+			int[] t = new int[runs.length + 2];
+			System.arraycopy(runs, 0, t, 0, size);
+			runs = t;
+		}
+		runs[size++] = start;
+		runs[size++] = lastDirty + 1;
+		for(int a = size; a<runs.length; a++) {
+			runs[a] = -1;
+		}
+		return runs;
+	}
+}
@@ -23,6 +23,7 @@ import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.util.HashMap;
+import java.util.List;
 
 /** This context paints a BufferedImage using 4 corner points.
  * <p>As of this writing: this is only expected to support RGB or ARGB images.
@@ -35,6 +36,31 @@ import java.util.HashMap;
  */
 public abstract class ImageContext {
 	
+	/** An image and the four corner points it should be painted to.
+	 * 
+	 * @see ImageContext#drawImages(List)
+	 */
+	public static class ImageQuad {
+		public final BufferedImage image;
+		public final Point2D topLeft, topRight, bottomRight, bottomLeft;
+		
+		/** Create a new <code>ImageQuad</code>.
+		 * 
+		 * @param image the image to draw.
+		 * @param topLeft where the top-left corner of this image will be painted.
+		 * @param topRight where the top-right corner of this image will be painted.
+		 * @param bottomRight where the bottom-right corner of this image will be painted.
+		 * @param bottomLeft where the bottom-left corner of this image will be painted.
+		 */
+		public ImageQuad(BufferedImage image,Point2D topLeft,Point2D topRight,Point2D bottomRight,Point2D bottomLeft) {
+			this.image = image;
+			this.topLeft = topLeft;
+			this.topRight = topRight;
+			this.bottomRight = bottomRight;
+			this.bottomLeft = bottomLeft;
+		}
+	}
+	
 	/** Create an <code>ImageContext</code> for a <code>BufferedImage</code>.
 	 * <p>This is shorthand for:
 	 * <br><code>ImageContextFactory.get().create(image)</code>
@@ -50,6 +76,17 @@ public abstract class ImageContext {
 	
 	public abstract void drawImage(BufferedImage img,Point2D topLeft,Point2D topRight,Point2D bottomRight,Point2D bottomLeft);
 	
+	/** Draw several images in the order they appear in the list.
+	 * <p>This is equivalent to calling <code>drawImage</code> for each
+	 * element, but subclasses may override it to divide the destination
+	 * into tiles only once and paint all the images in each tile at once.
+	 */
+	public void drawImages(List<ImageQuad> quads) {
+		for(ImageQuad q : quads) {
+			drawImage(q.image, q.topLeft, q.topRight, q.bottomRight, q.bottomLeft);
+		}
+	}
+	
 	public abstract void dispose();
 	
 	/** Define a rendering hint. */
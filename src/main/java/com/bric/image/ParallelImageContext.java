@@ -19,369 +19,155 @@
  */
 package com.bric.image;
 
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
-import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferInt;
-import java.util.HashSet;
-import java.util.Set;
-
-import javax.media.jai.PerspectiveTransform;
-
-import com.amd.aparapi.Kernel;
-import com.amd.aparapi.Range;
-import com.bric.math.MathG;
-
-/** This is an unfinished/untested <code>ImageContext</code> that
- * was supposed to use the Aparapi architecture to use GPU's to
- * process the image transform: but due to hardware limitations
- * I'm unable to further study this at this time.
- *
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** This <code>ImageContext</code> splits every call to <code>drawImages</code>
+ * into horizontal bands of rows and paints them in parallel on a
+ * <code>ForkJoinPool</code> (the common pool by default).
+ * <p>Unlike the {@link BasicImageContext} (which queues tiles and returns
+ * immediately) this paints synchronously: when <code>drawImage</code>
+ * returns the destination image is up-to-date. Each pixel is calculated
+ * exactly as the <code>BasicImageContext</code> calculates it.
+ * <p>To use this context by default:
+ * <br><code>ImageContextFactory.set(new ParallelImageContext.Factory());</code>
  */
-public class ParallelImageContext extends ImageContext {
-
-	final int width, height;
-	final int[] data;
-	final int stride;
-	final BufferedImage bi;
-	boolean disposed = false;
-
-	/** Create a Graphics3D context that paints to a destination image.
+public class ParallelImageContext extends BasicImageContext {
+	
+	/** An <code>ImageContextFactory</code> that creates <code>ParallelImageContexts</code>. */
+	public static class Factory extends ImageContextFactory {
+		@Override
+		public ImageContext create(BufferedImage bi) {
+			return new ParallelImageContext(bi);
+		}
+	}
+	
+	/** Bands of this many rows (or fewer) are painted without being split further. */
+	static final int BAND_HEIGHT = 16;
+	
+	/** The pool bands are painted on, or null if they are painted on the calling thread. */
+	final ForkJoinPool pool;
+	
+	/** Whether <code>pool</code> was created by this context, and should be shut down by <code>dispose()</code>. */
+	final boolean ownsPool;
+
+	/** Create a Graphics3D context that paints to a destination image
+	 * using the common <code>ForkJoinPool</code>.
 	 * 
 	 * @param bi an RGB or ARGB image.
 	 */
 	public ParallelImageContext(BufferedImage bi) {
-		int type = bi.getType();
-		if(!(type==BufferedImage.TYPE_INT_ARGB || type==BufferedImage.TYPE_INT_RGB)) {
-			throw new IllegalArgumentException("only TYPE_INT_RGB and TYPE_INT_ARGB are supported");
-		}
-		this.bi = bi;
-		width = bi.getWidth();
-		height = bi.getHeight();
-		stride = bi.getRaster().getWidth();
-		data = getPixels(bi);
+		this(bi, ForkJoinPool.commonPool());
 	}
 
-	/** Return all the pixels in the argument in ARGB format. */
-	protected int[] getPixels(BufferedImage bi) {
-		if ((bi.getType() != BufferedImage.TYPE_INT_ARGB && bi.getType() != BufferedImage.TYPE_INT_RGB)
-				|| !(bi.getRaster().getDataBuffer() instanceof DataBufferInt)) {
-			BufferedImage tmp = bi;
-			bi = new BufferedImage(tmp.getWidth(), tmp.getHeight(), BufferedImage.TYPE_INT_ARGB);
-			Graphics2D g = bi.createGraphics();
-			g.drawImage(tmp, 0, 0, null);
-			g.dispose();
-		}
-
-		DataBufferInt buf = (DataBufferInt) bi.getRaster().getDataBuffer();
-		int[] p = buf.getData();
-		return p;
+	/** Create a Graphics3D context that paints to a destination image.
+	 * 
+	 * @param bi an RGB or ARGB image.
+	 * @param pool the pool used to paint bands of rows.
+	 */
+	public ParallelImageContext(BufferedImage bi,ForkJoinPool pool) {
+		super(bi, 0);
+		if(pool==null) throw new NullPointerException();
+		this.pool = pool;
+		ownsPool = false;
 	}
 
-	/** Draw an image to this Graphics3D.
-	 * <p>This respects the interpolation rendering hints. When the
-	 * interpolation hint is missing, this will also consult the antialiasing
-	 * hint or the render hint. The bilinear hint is used by default.
-	 * <p>This uses a source over composite.
+	/** Create a Graphics3D context that paints to a destination image.
 	 * 
-	 * @param img the image to draw.
-	 * @param topLeft where the top-left corner of this image will be painted.
-	 * @param topRight where the top-right corner of this image will be painted.
-	 * @param bottomRight where the bottom-right corner of this image will be painted.
-	 * @param bottomLeft where the bottom-left corner of this image will be painted.
+	 * @param bi an RGB or ARGB image.
+	 * @param numberOfThreads if positive then this is the number of threads used to
+	 * paint bands of rows (in a pool that is shut down by {@link #dispose()}).
+	 * If zero then calls to <code>drawImage</code> are not multithreaded.
 	 */
-	public synchronized void drawImage(BufferedImage img,Point2D topLeft,Point2D topRight,Point2D bottomRight,Point2D bottomLeft) {
+	public ParallelImageContext(BufferedImage bi,int numberOfThreads) {
+		super(bi, 0);
+		if(numberOfThreads<0)
+			throw new IllegalArgumentException("numberOfThreads ("+numberOfThreads+") must not be negative");
+		pool = numberOfThreads>0 ? new ForkJoinPool(numberOfThreads) : null;
+		ownsPool = pool!=null;
+	}
+
+	/** Draw several images to this Graphics3D.
+	 * <p>Each band of rows paints every image that overlaps it, in the
+	 * order they appear in the list. This method blocks until all the
+	 * bands are painted.
+	 */
+	@Override
+	public synchronized void drawImages(List<ImageQuad> quads) {
 		if(disposed)
 			throw new IllegalStateException("This Graphics3D context has been disposed.");
-		Point2D srcTopLeft = new Point2D.Double(0,0);
-		Point2D srcTopRight = new Point2D.Double(img.getWidth(),0);
-		Point2D srcBottomLeft = new Point2D.Double(0,img.getHeight());
-		Point2D srcBottomRight = new Point2D.Double(img.getWidth(),img.getHeight());
-
-		double minX = Math.min( Math.min(topLeft.getX(), topRight.getX()), 
-				Math.min(bottomLeft.getX(), bottomRight.getX()) );
-		double maxX = Math.max( Math.max(topLeft.getX(), topRight.getX()), 
-				Math.max(bottomLeft.getX(), bottomRight.getX()) );
-		double minY = Math.min( Math.min(topLeft.getY(), topRight.getY()), 
-				Math.min(bottomLeft.getY(), bottomRight.getY()) );
-		double maxY = Math.max( Math.max(topLeft.getY(), topRight.getY()), 
-				Math.max(bottomLeft.getY(), bottomRight.getY()) );
-		final int minXi = Math.max(0, Math.min(width-1, MathG.floorInt(minX)-1));
-		final int maxXi = Math.max(0, Math.min(width-1, MathG.ceilInt(maxX)+1));
-		final int minYi = Math.max(0, Math.min(height-1, MathG.floorInt(minY)-1));
-		final int maxYi = Math.max(0, Math.min(height-1, MathG.ceilInt(maxY)+1));
-
-		PerspectiveTransform pt = PerspectiveTransform.getQuadToQuad(
-				topLeft.getX(), topLeft.getY(),
-				topRight.getX(), topRight.getY(),
-				bottomLeft.getX(), bottomLeft.getY(),
-				bottomRight.getX(), bottomRight.getY(),
-				srcTopLeft.getX(), srcTopLeft.getY(),
-				srcTopRight.getX(), srcTopRight.getY(),
-				srcBottomLeft.getX(), srcBottomLeft.getY(),
-				srcBottomRight.getX(), srcBottomRight.getY()
-				);
-
-		final int[] otherPixels = getPixels(img);
-		final int os = img.getRaster().getWidth();
-		final int ow = img.getWidth();
-		final int oh = img.getHeight();
-		final boolean oHasAlpha = img.getColorModel().hasAlpha();
-
-		final Object interpolationHint = getInterpolationRenderingHint();
-
-		final double m00, m01, m02, m10, m11, m12, m20, m21, m22;
-
-		double[][] matrix = new double[3][3];
-		pt.getMatrix(matrix);
-		m00 = matrix[0][0];
-		m01 = matrix[0][1];
-		m02 = matrix[0][2];
-		m10 = matrix[1][0];
-		m11 = matrix[1][1];
-		m12 = matrix[1][2];
-		m20 = matrix[2][0];
-		m21 = matrix[2][1];
-		m22 = matrix[2][2];
-
-
-		for(int y = minYi; y<=maxYi; y++) {
-			Kernel kernel = null;
-			final int yw = y * stride;
-			final double yd = y;
-			try {
-				//create the appropriate kernel:
-				if(RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR.equals(interpolationHint)) {
-					if (oHasAlpha) {
-						kernel = new Kernel(){
-							@Override 
-							public void run() {
-								int i = getGlobalId() + minXi + yw;
-								int x = i%stride;
-								double xd = x;
-
-								double w = m20 * xd + m21 * yd + m22;
-								double transformedX = (m00 * xd + m01 * yd + m02) / w;
-								double transformedY = (m10 * xd + m11 * yd + m12) / w;
-
-								int newX = (int)(transformedX+.5);
-								int newY = (int)(transformedY+.5);
-								if(newY>=0 && newY<oh && newX>=0 && newX<ow) {
-									int src = otherPixels[newY * os + newX];
-									int srcA = src >>> 24;
-									if(srcA==255) {
-										data[i] = src;
-									} else if(srcA>0) {
-										int r = (src >> 16) & 0xff;
-										int g = (src >> 8) & 0xff;
-										int b = src & 0xff;
-										int dst = data[i];
-										int dstA = (dst >> 24) & 0xff;
-										int dstAX = (dstA) * (255 - srcA);
-										int dstR = (dst >> 16) & 0xff;
-										int dstG = (dst >> 8) & 0xff;
-										int dstB = dst & 0xff;
-										int srcAX = srcA * 255;
-										int resA = srcAX + dstAX;
-
-										if(resA!=0) {
-											r = (r*srcAX + dstR * dstAX)/resA;
-											g = (g*srcAX + dstG * dstAX)/resA;
-											b = (b*srcAX + dstB * dstAX)/resA;
-											data[i] = (resA / 255 << 24) | 
-													((r>255) ? 0xff0000 : r << 16) |
-													((g>255) ? 0xff00 : g << 8) |
-													((b>255) ? 0xff : b);
-										}
-									}
-								}
-							}
-						};
-					} else {
-						kernel = new Kernel(){
-							@Override 
-							public void run() {
-								int i = getGlobalId() + minXi + yw;
-								int x = i%stride;
-								double xd = x;
-
-								double w = m20 * xd + m21 * yd + m22;
-								double transformedX = (m00 * xd + m01 * yd + m02) / w;
-								double transformedY = (m10 * xd + m11 * yd + m12) / w;
-
-								int newX = (int)(transformedX+.5);
-								int newY = (int)(transformedY+.5);
-								if(newY>=0 && newY<oh && newX>=0 && newX<ow) {
-									data[i] = otherPixels[newY*os+newX];
-								}
-							}
-						};
-					}
-				} else {
-					final int windowLength;
-					if(RenderingHints.VALUE_INTERPOLATION_BICUBIC.equals(interpolationHint)) {
-						windowLength = 4;
-					} else {
-						windowLength = 2;
-					}
-					final double windowLengthD = windowLength;
-					final double incr = 1.0 / (windowLengthD-1.0);
-					final int windowArea = windowLength*windowLength;
-
-					if (oHasAlpha) {
-						kernel = new Kernel(){
-							@Override 
-							public void run() {
-								int i = getGlobalId() + minXi + yw;
-								int x = i%stride;
-								double xd = x;
-
-								int samples = windowArea;
-								int srcA = 0;
-								int r = 0;
-								int g = 0;
-								int b = 0;
-								for(double dx = 0; dx<windowLengthD; dx++) {
-									for(double dy = 0; dy<windowLengthD; dy++) {
-										double x2 = xd+dx*incr;
-										double y2 = yd+dy*incr;
-
-										//transform (x,y) to (transformedX, transformedY):
-										double w = m20 * x2 + m21 * y2 + m22;
-										double transformedX = (m00 * x2 + m01 * y2 + m02) / w;
-										double transformedY = (m10 * x2 + m11 * y2 + m12) / w;
-
-										int newX = (int)(transformedX-.00001);
-										int newY = (int)(transformedY-.00001);
-										if(newY>=0 && newY<oh && newX>=0 && newX<ow) {
-											int opix = otherPixels[newY * os + newX];
-											srcA += (opix >> 24) & 0xff;
-											r += opix & 0xff0000;
-											g += opix & 0xff00;
-											b += opix & 0xff;
-										} else {
-											samples--;
-										}
-									}
-								}
-								if(samples>0) {
-									srcA = srcA/samples;
-									r = (r >>> 16)/samples;
-									g = (g >>> 8)/samples;
-									b = b/samples;
-									if(srcA==255) {
-										data[i] = 0xff000000 | (r << 16) | (g << 8) | b;
-									} else if(srcA>0) {
-										int dst = data[i];
-										int dstAX = (dst >>> 24) * (255 - srcA);
-										int dstR = (dst >> 16) & 0xff;
-										int dstG = (dst >> 8) & 0xff;
-										int dstB = dst & 0xff;
-										int srcAX = srcA * 255;
-										int resA = (srcAX + dstAX);
-
-										if(resA!=0) {
-											r = (r * srcAX + dstR * dstAX) / resA;
-											g = (g * srcAX + dstG * dstAX) / resA;
-											b = (b * srcAX + dstB * dstAX) / resA;
-											data[i] = (resA / 255 << 24) | 
-													((r>255) ? 0xff0000 : r << 16) |
-													((g>255) ? 0xff00 : g << 8) |
-													((b>255) ? 0xff : b);
-										}
-									}
-								}
-							}
-						};
-					} else {
-						kernel = new Kernel(){
-							@Override 
-							public void run() {
-								int i = getGlobalId() + minXi + yw;
-								int x = i%stride;
-								double xd = x;
-
-								int samples = windowArea;
-								int srcA = 0;
-								int r = 0;
-								int g = 0;
-								int b = 0;
-								for(double dx = 0; dx<windowLengthD; dx++) {
-									for(double dy = 0; dy<windowLengthD; dy++) {
-										double x2 = xd+dx*incr;
-										double y2 = yd+dy*incr;
-
-										double w = m20 * x2 + m21 * y2 + m22;
-										double transformedX = (m00 * x2 + m01 * y2 + m02) / w;
-										double transformedY = (m10 * x2 + m11 * y2 + m12) / w;
-
-										int newX = (int)(transformedX-.00001);
-										int newY = (int)(transformedY-.00001);
-										if(newY>=0 && newY<oh && newX>=0 && newX<ow) {
-											int opix = otherPixels[newY * os + newX];
-											srcA += 255;
-											r += opix & 0xff0000;
-											g += opix & 0xff00;
-											b += opix & 0xff;
-										} else {
-											samples--;
-										}
-									}
-								}
-								if(samples>0) {
-									srcA = srcA/samples;
-									r = (r >>> 16)/samples;
-									g = (g >>> 8)/samples;
-									b = b/samples;
-									if(srcA==255) {
-										data[i] = 0xff000000 | (r << 16) | (g << 8) | b;
-									} else if(srcA>0) {
-										int dst = data[i];
-										int dstAX = (dst >>> 24) * (255 - srcA);
-										int dstR = (dst >> 16) & 0xff;
-										int dstG = (dst >> 8) & 0xff;
-										int dstB = dst & 0xff;
-										int srcAX = srcA * 255;
-										int resA = (srcAX + dstAX);
-
-										if(resA!=0) {
-											r = (r * srcAX + dstR * dstAX) / resA;
-											g = (g * srcAX + dstG * dstAX) / resA;
-											b = (b * srcAX + dstB * dstAX) / resA;
-											data[i] = (resA / 255 << 24) | 
-													((r>255) ? 0xff0000 : r << 16) |
-													((g>255) ? 0xff00 : g << 8) |
-													((b>255) ? 0xff : b);
-										}
-									}
-								}
-							}
-						};
-					}
-				}
-
-				Range range = Range.create(maxXi-minXi);
-				printOnce(kernel.getExecutionMode().toString());
-				kernel.execute(range);
-
-			} finally {
-				if(kernel!=null) {
-					kernel.dispose();
-				}
+		
+		Object interpolationHint = getInterpolationRenderingHint();
+		PreparedQuad[] prepared = new PreparedQuad[quads.size()];
+		int minYi = height, maxYi = -1;
+		for(int a = 0; a<prepared.length; a++) {
+			prepared[a] = new PreparedQuad(quads.get(a), interpolationHint);
+			minYi = Math.min(minYi, prepared[a].minYi);
+			maxYi = Math.max(maxYi, prepared[a].maxYi);
+		}
+		if(minYi<=maxYi) {
+			if(pool==null) {
+				drawBand(prepared, minYi, maxYi);
+			} else {
+				pool.invoke(new DrawBand(prepared, minYi, maxYi));
 			}
 		}
 	}
-
-	static Set<String> printedStrings = new HashSet<String>();
-	protected static synchronized void printOnce(String s) {
-		if(printedStrings.add(s))
-			System.out.println(s);
-	}
-
-	/** Commit all changes back to the BufferedImage this context paints to.
+	
+	/** Paint every image that overlaps a range of rows.
+	 * 
+	 * @param quads the images to paint.
+	 * @param minY the first row to paint (inclusive).
+	 * @param maxY the last row to paint (inclusive).
 	 */
+	void drawBand(PreparedQuad[] quads,int minY,int maxY) {
+		for(PreparedQuad q : quads) {
+			int y1 = Math.max(minY, q.minYi);
+			int y2 = Math.min(maxY, q.maxYi);
+			if(y1<=y2) {
+				drawTile(q.minXi, y1, q.maxXi, y2, q.renderingHint, 
+						q.otherPixels, q.transform, q.oHasAlpha, 
+						q.oWidth, q.oHeight, q.oStride, q.stripFunction);
+			}
+		}
+	}
+	
+	@Override
 	public synchronized void dispose() {
-		disposed = true;
+		super.dispose();
+		if(ownsPool)
+			pool.shutdown();
+	}
+	
+	/** Paints a range of rows, or splits them in half if there are too many. */
+	class DrawBand extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		final PreparedQuad[] quads;
+		final int minY, maxY;
+		
+		/**
+		 * @param quads the images to paint.
+		 * @param minY the first row to paint (inclusive).
+		 * @param maxY the last row to paint (inclusive).
+		 */
+		DrawBand(PreparedQuad[] quads,int minY,int maxY) {
+			this.quads = quads;
+			this.minY = minY;
+			this.maxY = maxY;
+		}
+
+		@Override
+		protected void compute() {
+			if(maxY - minY + 1 > BAND_HEIGHT) {
+				int midY = (minY + maxY) / 2;
+				invokeAll(new DrawBand(quads, minY, midY), 
+						new DrawBand(quads, midY + 1, maxY));
+				return;
+			}
+			drawBand(quads, minY, maxY);
+		}
 	}
 }
@@ -23,12 +23,15 @@ import static java.lang.Math.max;
 import static java.lang.Math.min;
 
 import java.awt.Graphics2D;
+import java.awt.RenderingHints;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -54,9 +57,9 @@ import com.bric.math.MathG;
  * is shared between tiles. Therefore this implementation is best suited
  * for systems with a small number of processors.
  * <p>
- * This class only implements nearest neighbor interpolation. A higher
- * quality interpolation scheme can easily implemented by super sampling
- * pixels from the source image.
+ * This class implements nearest neighbor and bilinear interpolation
+ * (bicubic requests are rendered as bilinear). Bilinear spans are
+ * rendered by {@link #renderLineBilinear}.
  *
  * @see ImageContextDemo
  *
@@ -132,141 +135,198 @@ public class SCImageContext extends ImageContext {
      * @param bottomLeft where the bottom-left corner of this image will be painted.
      */
     @Override
-    public synchronized void drawImage(BufferedImage img, Point2D topLeft, Point2D topRight, Point2D bottomRight, Point2D bottomLeft) {
+    public void drawImage(BufferedImage img, Point2D topLeft, Point2D topRight, Point2D bottomRight, Point2D bottomLeft) {
+        drawImages(Collections.singletonList(new ImageQuad(img, topLeft, topRight, bottomRight, bottomLeft)));
+    }
+
+    /** Draw several images to this Graphics3D.
+     * <p>The corners of every image are transformed once, and then each tile
+     * is rendered by a single task that visits every image that overlaps it
+     * (in the order they appear in the list).
+     * 
+     * @throws RuntimeException if painting any tile failed. Unchecked exceptions
+     * and errors are rethrown as they are. (The destination may be partially painted.)
+     */
+    @Override
+    public synchronized void drawImages(List<ImageQuad> quads) {
         if (disposed) {
             throw new IllegalStateException("This image context has been disposed.");
         }
 
-        Point2D srcTopLeft = new Point2D.Double(0, 0);
-        Point2D srcTopRight = new Point2D.Double(img.getWidth(), 0);
-        Point2D srcBottomLeft = new Point2D.Double(0, img.getHeight());
-        Point2D srcBottomRight = new Point2D.Double(img.getWidth(), img.getHeight());
-
-        // Compute the transformation matrix
-        // ---------------------------
-        float minX = minOf(topLeft.getX(), topRight.getX(), bottomLeft.getX(), bottomRight.getX());
-        float maxX = maxOf(topLeft.getX(), topRight.getX(), bottomLeft.getX(), bottomRight.getX());
-        float minY = minOf(topLeft.getY(), topRight.getY(), bottomLeft.getY(), bottomRight.getY());
-        float maxY = maxOf(topLeft.getY(), topRight.getY(), bottomLeft.getY(), bottomRight.getY());
-        int minXi = max(0, MathG.floorInt(minX) - 1);
-        int maxXi = min(width, MathG.ceilInt(maxX) + 1);
-        int minYi = max(0, MathG.floorInt(minY) - 1);
-        int maxYi = min(height, MathG.ceilInt(maxY) + 1);
-        PerspectiveTransform pt = PerspectiveTransform.getQuadToQuad(
-                topLeft.getX(), topLeft.getY(),
-                topRight.getX(), topRight.getY(),
-                bottomLeft.getX(), bottomLeft.getY(),
-                bottomRight.getX(), bottomRight.getY(),
-                srcTopLeft.getX(), srcTopLeft.getY(),
-                srcTopRight.getX(), srcTopRight.getY(),
-                srcBottomLeft.getX(), srcBottomLeft.getY(),
-                srcBottomRight.getX(), srcBottomRight.getY()
-        );
-
         Object interpolationHint = getInterpolationRenderingHint();
-
-        // Gather some data about the source image
-        // ---------------------------
-        int[] srcPixels = getPixels(img);
-        int srcStride = img.getRaster().getWidth();
-        int srcWidth = img.getWidth();
-        int srcHeight = img.getHeight();
-        boolean srcHasAlpha = img.getColorModel().hasAlpha();
-
-        // Take advantage of spatial coherence:
-        // Part 1: Compute the perspective transformation for the four corners
-        //         of the source image. And sort them along the y-axis.
-        // ---------------------------
-        final Vertex[] v = new Vertex[4];
-        for (int i = 0; i < v.length; i++) {
-            v[i] = new Vertex();
+        PreparedQuad[] prepared = new PreparedQuad[quads.size()];
+        int minXi = width, minYi = height, maxXi = 0, maxYi = 0;
+        for (int i = 0; i < prepared.length; i++) {
+            prepared[i] = new PreparedQuad(quads.get(i), interpolationHint);
+            minXi = min(minXi, prepared[i].minXi);
+            minYi = min(minYi, prepared[i].minYi);
+            maxXi = max(maxXi, prepared[i].maxXi);
+            maxYi = max(maxYi, prepared[i].maxYi);
         }
-        float[] pDst = new float[3];
-        v[0].load(transform(pt, 0, 0, pDst), 0, 0);
-        v[1].load(transform(pt, srcWidth - 1, 0, pDst), width - 1, 0);
-        v[2].load(transform(pt, 0, srcHeight - 1, pDst), 0, height - 1);
-        v[3].load(transform(pt, srcWidth - 1, srcHeight - 1, pDst), width - 1, height - 1);
-        Arrays.sort(v);
 
         // Take advantage of multiple processors:
         // XXX Tiling spoils spatial coherence. Consider using larger tiles.
         // ---------------------------
-        if (executor != null) {
-            LinkedList<DrawTileRunnable> list = new LinkedList<>();
-            int y = minYi;
-            while (y <= maxYi) {
-                int cy = y / 100;
-                int h = min((cy + 1) * 100, maxYi) - y;
-                int x = minXi;
-                while (x <= maxXi) {
-                    int cx = x / 100;
-                    int w = min((cx + 1) * 100, maxXi) - x;
-                    list.add(new DrawTileRunnable(v, cx << 8 + cy, x, y, w, h, interpolationHint, srcPixels, srcStride, srcHasAlpha));
-                    x = (cx + 1) * 100;
+        List<DrawTileRunnable> list = new ArrayList<>();
+        List<PreparedQuad> tileQuads = new ArrayList<>(prepared.length);
+        for (int ty = minYi / 100 * 100; ty < maxYi; ty += 100) {
+            int tyMax = min(ty + 100, maxYi);
+            for (int tx = minXi / 100 * 100; tx < maxXi; tx += 100) {
+                int txMax = min(tx + 100, maxXi);
+                for (PreparedQuad q : prepared) {
+                    if (q.minXi < txMax && q.maxXi > tx && q.minYi < tyMax && q.maxYi > ty) {
+                        tileQuads.add(q);
+                    }
+                }
+                if (!tileQuads.isEmpty()) {
+                    DrawTileRunnable r = new DrawTileRunnable(tileQuads.toArray(new PreparedQuad[tileQuads.size()]),
+                            max(tx, minXi), max(ty, minYi), txMax, tyMax);
+                    tileQuads.clear();
+                    if (executor != null) {
+                        list.add(r);
+                    } else {
+                        r.paint();
+                    }
                 }
-                y = (cy + 1) * 100;
             }
+        }
+        if (executor != null) {
             try {
                 for (Future<Object> f : executor.invokeAll(list)) {
                     f.get();
                 }
-            } catch (InterruptedException | ExecutionException ex) {
-                // suppress
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                RuntimeException e2 = new RuntimeException();
+                e2.initCause(cause);
+                throw e2;
             }
-        } else {
-            drawTile(v, minXi, minYi, maxXi, maxXi, interpolationHint, srcPixels, srcStride, srcHasAlpha);
         }
     }
 
-    private class DrawTileRunnable implements Callable<Object> {
-        int id, tileX, tileY, tileWidth, tileHeight;
-        int srcStride;
-        int[] srcPixels;
-
-        boolean srcHasAlpha;
-        Vertex[] vertices;
-
-        Object interpolationHint;
-
-        public DrawTileRunnable(Vertex[] v, int id,
-                int tx, int ty, int tw, int th,
-                Object ih,
-                int[] srcPixels, int srcStride, boolean srcHasAlpha) {
+    /** The information about an image that every tile it overlaps needs. */
+    private class PreparedQuad {
+        final int minXi, maxXi, minYi, maxYi;
+        final int srcStride, srcWidth, srcHeight;
+        final int[] srcPixels;
+        final boolean srcHasAlpha;
+        final Vertex[] vertices;
+        /** Whether to use {@link #renderLineBilinear} instead of nearest neighbor interpolation. */
+        final boolean bilinear;
+
+        PreparedQuad(ImageQuad quad, Object interpolationHint) {
+            BufferedImage img = quad.image;
+            Point2D topLeft = quad.topLeft;
+            Point2D topRight = quad.topRight;
+            Point2D bottomRight = quad.bottomRight;
+            Point2D bottomLeft = quad.bottomLeft;
+            Point2D srcTopLeft = new Point2D.Double(0, 0);
+            Point2D srcTopRight = new Point2D.Double(img.getWidth(), 0);
+            Point2D srcBottomLeft = new Point2D.Double(0, img.getHeight());
+            Point2D srcBottomRight = new Point2D.Double(img.getWidth(), img.getHeight());
+
+            // Compute the transformation matrix
+            // ---------------------------
+            float minX = minOf(topLeft.getX(), topRight.getX(), bottomLeft.getX(), bottomRight.getX());
+            float maxX = maxOf(topLeft.getX(), topRight.getX(), bottomLeft.getX(), bottomRight.getX());
+            float minY = minOf(topLeft.getY(), topRight.getY(), bottomLeft.getY(), bottomRight.getY());
+            float maxY = maxOf(topLeft.getY(), topRight.getY(), bottomLeft.getY(), bottomRight.getY());
+            minXi = max(0, MathG.floorInt(minX) - 1);
+            maxXi = min(width, MathG.ceilInt(maxX) + 1);
+            minYi = max(0, MathG.floorInt(minY) - 1);
+            maxYi = min(height, MathG.ceilInt(maxY) + 1);
+            PerspectiveTransform pt = PerspectiveTransform.getQuadToQuad(
+                    topLeft.getX(), topLeft.getY(),
+                    topRight.getX(), topRight.getY(),
+                    bottomLeft.getX(), bottomLeft.getY(),
+                    bottomRight.getX(), bottomRight.getY(),
+                    srcTopLeft.getX(), srcTopLeft.getY(),
+                    srcTopRight.getX(), srcTopRight.getY(),
+                    srcBottomLeft.getX(), srcBottomLeft.getY(),
+                    srcBottomRight.getX(), srcBottomRight.getY()
+            );
 
-            this.vertices = v;
-            this.id = id;
+            bilinear = !RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR.equals(interpolationHint);
+
+            // Gather some data about the source image
+            // ---------------------------
+            srcPixels = getPixels(img);
+            srcStride = img.getRaster().getWidth();
+            srcWidth = img.getWidth();
+            srcHeight = img.getHeight();
+            srcHasAlpha = img.getColorModel().hasAlpha();
+
+            // Take advantage of spatial coherence:
+            // Part 1: Compute the perspective transformation for the four corners
+            //         of the source image. And sort them along the y-axis.
+            // ---------------------------
+            vertices = new Vertex[4];
+            for (int i = 0; i < vertices.length; i++) {
+                vertices[i] = new Vertex();
+            }
+            float[] pDst = new float[3];
+            vertices[0].load(transform(pt, 0, 0, pDst), 0, 0);
+            vertices[1].load(transform(pt, srcWidth - 1, 0, pDst), srcWidth - 1, 0);
+            vertices[2].load(transform(pt, 0, srcHeight - 1, pDst), 0, srcHeight - 1);
+            vertices[3].load(transform(pt, srcWidth - 1, srcHeight - 1, pDst), srcWidth - 1, srcHeight - 1);
+            Arrays.sort(vertices);
+        }
+    }
 
+    /** Renders every image that overlaps one tile, in order. */
+    private class DrawTileRunnable implements Callable<Object> {
+        int tileX, tileY, tileMaxX, tileMaxY;
+        PreparedQuad[] quads;
+
+        /**
+         * @param quads the images to render.
+         * @param tx the left edge of the tile (inclusive).
+         * @param ty the top edge of the tile (inclusive).
+         * @param txMax the right edge of the tile (exclusive).
+         * @param tyMax the bottom edge of the tile (exclusive).
+         */
+        public DrawTileRunnable(PreparedQuad[] quads, int tx, int ty, int txMax, int tyMax) {
+            this.quads = quads;
             this.tileX = tx;
             this.tileY = ty;
-            this.tileWidth = tw;
-            this.tileHeight = th;
-            this.interpolationHint = ih;
-
-            this.srcPixels = srcPixels;
-            this.srcStride = srcStride;
-            this.srcHasAlpha = srcHasAlpha;
+            this.tileMaxX = txMax;
+            this.tileMaxY = tyMax;
         }
 
         @Override
         public String toString() {
-            return "DrawTileRunnable[ id=" + id + ", x=" + tileX + ", y=" + tileY + ", w=" + tileWidth + ", h=" + tileHeight + ", hint=" + interpolationHint + "]";
+            return "DrawTileRunnable[ x=" + tileX + ", y=" + tileY + ", maxX=" + tileMaxX + ", maxY=" + tileMaxY + ", quads=" + quads.length + "]";
         }
 
         @Override
         public Object call() throws Exception {
-            drawTile(vertices,
-                    max(0, tileX),
-                    max(0, tileY),
-                    min(width, tileX + tileWidth),
-                    min(height, tileY + tileHeight),
-                    interpolationHint,
-                    srcPixels, srcStride, srcHasAlpha
-            );
+            paint();
             return null;
         }
+
+        void paint() {
+            SpanBuffer span = new SpanBuffer(tileMaxX - tileX);
+            for (PreparedQuad q : quads) {
+                drawTile(q,
+                        max(q.minXi, tileX),
+                        max(q.minYi, tileY),
+                        min(q.maxXi, tileMaxX),
+                        min(q.maxYi, tileMaxY),
+                        span
+                );
+            }
+        }
     }
 
-    private void drawTile(Vertex[] v, int minX, int minY, int maxX, int maxY, Object interpolationHint, int[] srcPixels, int srcStride, boolean srcHasAlpha) {
+    private void drawTile(PreparedQuad q, int minX, int minY, int maxX, int maxY, SpanBuffer span) {
+        Vertex[] v = q.vertices;
         // Take advantage of spatial coherence:
         // Part 2: We have the four corners of a perspective transformed rectangle.
         //         They are sorted along the y-axis.
@@ -276,23 +336,23 @@ public class SCImageContext extends ImageContext {
 
         if (v[2].x < v[3].x) {
             if (v[1].x < v[3].x) {
-                renderTrapezoid(v[0], v[3], v[0], v[1], max(v[0].getIntY(), minY), min(v[1].getIntY(), maxY), minX, maxX, srcPixels, srcStride, srcHasAlpha);
-                renderTrapezoid(v[0], v[3], v[1], v[2], max(v[1].getIntY(), minY), min(v[2].getIntY(), maxY), minX, maxX, srcPixels, srcStride, srcHasAlpha);
-                renderTrapezoid(v[2], v[3], v[1], v[2], max(v[3].getIntY(), minY), min(v[3].getIntY(), maxY), minX, maxX, srcPixels, srcStride, srcHasAlpha);
+                renderTrapezoid(v[0], v[3], v[0], v[1], max(v[0].getIntY(), minY), min(v[1].getIntY(), maxY), minX, maxX, q, span);
+                renderTrapezoid(v[0], v[3], v[1], v[2], max(v[1].getIntY(), minY), min(v[2].getIntY(), maxY), minX, maxX, q, span);
+                renderTrapezoid(v[2], v[3], v[1], v[2], max(v[3].getIntY(), minY), min(v[3].getIntY(), maxY), minX, maxX, q, span);
             } else {
-                renderTrapezoid(v[0], v[2], v[0], v[1], max(v[0].getIntY(), minY), min(v[1].getIntY(), maxY), minX, maxX, srcPixels, srcStride, srcHasAlpha);
-                renderTrapezoid(v[0], v[2], v[1], v[3], max(v[1].getIntY(), minY), min(v[2].getIntY(), maxY), minX, maxX, srcPixels, srcStride, srcHasAlpha);
-                renderTrapezoid(v[2], v[3], v[1], v[3], max(v[2].getIntY(), minY), min(v[3].getIntY(), maxY), minX, maxX, srcPixels, srcStride, srcHasAlpha);
+                renderTrapezoid(v[0], v[2], v[0], v[1], max(v[0].getIntY(), minY), min(v[1].getIntY(), maxY), minX, maxX, q, span);
+                renderTrapezoid(v[0], v[2], v[1], v[3], max(v[1].getIntY(), minY), min(v[2].getIntY(), maxY), minX, maxX, q, span);
+                renderTrapezoid(v[2], v[3], v[1], v[3], max(v[2].getIntY(), minY), min(v[3].getIntY(), maxY), minX, maxX, q, span);
             }
         } else {
             if (v[1].x < v[3].x) {
-                renderTrapezoid(v[0], v[1], v[0], v[2], max(v[0].getIntY(), minY), min(v[1].getIntY(), maxY), minX, maxX, srcPixels, srcStride, srcHasAlpha);
-                renderTrapezoid(v[1], v[3], v[0], v[2], max(v[1].getIntY(), minY), min(v[2].getIntY(), maxY), minX, maxX, srcPixels, srcStride, srcHasAlpha);
-                renderTrapezoid(v[1], v[3], v[2], v[3], max(v[2].getIntY(), minY), min(v[3].getIntY(), maxY), minX, maxX, srcPixels, srcStride, srcHasAlpha);
+                renderTrapezoid(v[0], v[1], v[0], v[2], max(v[0].getIntY(), minY), min(v[1].getIntY(), maxY), minX, maxX, q, span);
+                renderTrapezoid(v[1], v[3], v[0], v[2], max(v[1].getIntY(), minY), min(v[2].getIntY(), maxY), minX, maxX, q, span);
+                renderTrapezoid(v[1], v[3], v[2], v[3], max(v[2].getIntY(), minY), min(v[3].getIntY(), maxY), minX, maxX, q, span);
             } else {
-                renderTrapezoid(v[0], v[3], v[0], v[1], max(v[0].getIntY(), minY), min(v[1].getIntY(), maxY), minX, maxX, srcPixels, srcStride, srcHasAlpha);
-                renderTrapezoid(v[0], v[3], v[1], v[2], max(v[1].getIntY(), minY), min(v[2].getIntY(), maxY), minX, maxX, srcPixels, srcStride, srcHasAlpha);
-                renderTrapezoid(v[0], v[3], v[2], v[3], max(v[2].getIntY(), minY), min(v[3].getIntY(), maxY), minX, maxX, srcPixels, srcStride, srcHasAlpha);
+                renderTrapezoid(v[0], v[3], v[0], v[1], max(v[0].getIntY(), minY), min(v[1].getIntY(), maxY), minX, maxX, q, span);
+                renderTrapezoid(v[0], v[3], v[1], v[2], max(v[1].getIntY(), minY), min(v[2].getIntY(), maxY), minX, maxX, q, span);
+                renderTrapezoid(v[0], v[3], v[2], v[3], max(v[2].getIntY(), minY), min(v[3].getIntY(), maxY), minX, maxX, q, span);
             }
         }
     }
@@ -314,8 +374,10 @@ public class SCImageContext extends ImageContext {
      * @param p4 Bottom right vertex.
      * @param ymin Y min.
      * @param ymax Y max.
+     * @param q the image to render.
+     * @param span scratch space for {@link #renderLineBilinear}.
      */
-    private void renderTrapezoid(Vertex p1, Vertex p2, Vertex p3, Vertex p4, int ymin, int ymax, int xmin, int xmax, int[] otherPixels, int os, boolean oAlpha) {
+    private void renderTrapezoid(Vertex p1, Vertex p2, Vertex p3, Vertex p4, int ymin, int ymax, int xmin, int xmax, PreparedQuad q, SpanBuffer span) {
         // Nothing to do if trapezoid is empty
         // ---------------------------
         if (ymin > ymax) {
@@ -394,9 +456,14 @@ public class SCImageContext extends ImageContext {
             int xEnd = pB.getIntX();
 
             if (xStart > xEnd) { // XXX This is an invariant - consider moving it out of the loop!
-                renderLine(max(xmin, xEnd), min(xmax, xStart), pA, pB, pX, yw, otherPixels, os, oAlpha);
+                int tmp = xStart;
+                xStart = xEnd;
+                xEnd = tmp;
+            }
+            if (q.bilinear) {
+                renderLineBilinear(max(xmin, xStart), min(xmax, xEnd), pA, pB, yw, q, span);
             } else {
-                renderLine(max(xmin, xStart), min(xmax, xEnd), pA, pB, pX, yw, otherPixels, os, oAlpha);
+                renderLine(max(xmin, xStart), min(xmax, xEnd), pA, pB, pX, yw, q.srcPixels, q.srcStride, q.srcHasAlpha);
             }
         }
     }
@@ -446,6 +513,84 @@ public class SCImageContext extends ImageContext {
         }
     }
 
+    /** The source coordinates of each pixel in a span, reused for every line of a tile. */
+    private static final class SpanBuffer {
+        final float[] u, v;
+
+        SpanBuffer(int length) {
+            u = new float[length];
+            v = new float[length];
+        }
+    }
+
+    /** Renders a line from xStart to xEnd using bilinear interpolation.
+     * <p>
+     * This works in two passes over the span. The first pass only does
+     * the hyperbolic interpolation of the source coordinates into
+     * <code>span</code>: it is a straight-line float loop the JIT can unroll
+     * and vectorize. The second pass samples the four nearest source
+     * pixels with fixed-point weights and composites the result.
+     */
+    private void renderLineBilinear(int xStart, int xEnd, Vertex pA, Vertex pB, int yw, PreparedQuad q, SpanBuffer span) {
+        int length = xEnd - xStart;
+        if (length <= 0) {
+            return;
+        }
+        float[] us = span.u;
+        float[] vs = span.v;
+
+        // Pass 1: source coordinates
+        float invDx = 1f / (pB.x - pA.x);
+        float a0 = (xStart - pA.x) * invDx;
+        float pAw = pA.w, pAu = pA.u, pAv = pA.v;
+        float dw = pB.w - pAw, du = pB.u - pAu, dv = pB.v - pAv;
+        for (int i = 0; i < length; i++) {
+            float a = clamp(a0 + i * invDx);
+            float w = pAw + a * dw;
+            float invW = w == 0 ? 0 : 1f / w;
+            us[i] = (pAu + a * du) * invW;
+            vs[i] = (pAv + a * dv) * invW;
+        }
+
+        // Pass 2: sample and composite
+        int[] srcPixels = q.srcPixels;
+        int srcStride = q.srcStride;
+        int maxU = q.srcWidth - 1;
+        int maxV = q.srcHeight - 1;
+        int pos = yw + xStart;
+        for (int i = 0; i < length; i++, pos++) {
+            float u = us[i];
+            float v = vs[i];
+            int u0 = (int) u;
+            int v0 = (int) v;
+            // 8-bit fractions, so the four weights add up to 1<<16
+            int fu = (int) ((u - u0) * 256);
+            int fv = (int) ((v - v0) * 256);
+            u0 = u0 < 0 ? 0 : (u0 > maxU ? maxU : u0);
+            v0 = v0 < 0 ? 0 : (v0 > maxV ? maxV : v0);
+            int u1 = u0 < maxU ? u0 + 1 : maxU;
+            int row0 = v0 * srcStride;
+            int row1 = (v0 < maxV ? v0 + 1 : maxV) * srcStride;
+            int p00 = srcPixels[row0 + u0];
+            int p10 = srcPixels[row0 + u1];
+            int p01 = srcPixels[row1 + u0];
+            int p11 = srcPixels[row1 + u1];
+            int w00 = (256 - fu) * (256 - fv);
+            int w10 = fu * (256 - fv);
+            int w01 = (256 - fu) * fv;
+            int w11 = fu * fv;
+            int r = (((p00 >> 16) & 0xff) * w00 + ((p10 >> 16) & 0xff) * w10 + ((p01 >> 16) & 0xff) * w01 + ((p11 >> 16) & 0xff) * w11) >>> 16;
+            int g = (((p00 >> 8) & 0xff) * w00 + ((p10 >> 8) & 0xff) * w10 + ((p01 >> 8) & 0xff) * w01 + ((p11 >> 8) & 0xff) * w11) >>> 16;
+            int b = ((p00 & 0xff) * w00 + (p10 & 0xff) * w10 + (p01 & 0xff) * w01 + (p11 & 0xff) * w11) >>> 16;
+            if (q.srcHasAlpha) {
+                int srcA = ((p00 >>> 24) * w00 + (p10 >>> 24) * w10 + (p01 >>> 24) * w01 + (p11 >>> 24) * w11) >>> 16;
+                composite(pos, (srcA << 24) | (r << 16) | (g << 8) | b);
+            } else {
+                data[pos] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
     /** Renders a line from xStart to xEnd. */
     private void renderLineUnoptimized(int xStart, int xEnd, Vertex pA, Vertex pB, Vertex pX, int yw, int[] otherPixels, int srcStride, boolean srcHasAlpha) {
         // Take advantage of spatial coherence:
@@ -482,30 +627,7 @@ public class SCImageContext extends ImageContext {
         int tx = p.w == 0 ? 0 : (int) (p.u / p.w);
         int ty = p.w == 0 ? 0 : (int) (p.v / p.w);
         int src = srcPixels[ty * srcStride + tx];
-        //
-        // SRC_OVER composition rule
-        int srcA = src >>> 24;
-        if (srcA == 255) {
-            data[pos] = src;
-        } else {
-            int r = (src >> 16) & 0xff;
-            int g = (src >> 8) & 0xff;
-            int b = (src) & 0xff;
-            int dst = data[pos];
-            int dstAX = (dst >>> 24) * (255 - srcA);
-            int dstR = (dst >> 16) & 0xff;
-            int dstG = (dst >> 8) & 0xff;
-            int dstB = dst & 0xff;
-            int srcAX = srcA * 255;
-            int resA = (srcAX + dstAX);
-
-            if (resA != 0) {
-                r = min(255, (r * srcAX + dstR * dstAX) / resA);
-                g = min(255, (g * srcAX + dstG * dstAX) / resA);
-                b = min(255, (b * srcAX + dstB * dstAX) / resA);
-            }
-            data[pos] = (resA / 255 << 24) | (r << 16) | (g << 8) | b;
-        }
+        composite(pos, src);
     }
 
     /** Plots a pixel without alpha compositing. */
@@ -522,8 +644,11 @@ public class SCImageContext extends ImageContext {
         int tx = w == 0 ? 0 : (int) (u / w);
         int ty = w == 0 ? 0 : (int) (v / w);
         int src = otherPixels[ty * os + tx];
-        //
-        // SRC_OVER composition rule
+        composite(pos, src);
+    }
+
+    /** Composites an ARGB pixel onto the destination using the SRC_OVER rule. */
+    private void composite(int pos, int src) {
         int srcA = src >>> 24;
         if (srcA == 255) {
             data[pos] = src;
@@ -47,6 +47,7 @@ public class BmpDecoder {
 
 	/** Returns an image from the BMP file provided, or null if
 	 * the file does not appear to be a valid BMP image.
+	 * <p>The file is memory-mapped and read with a {@link BmpMappedReader}.
 	 * 
 	 * @param bmpFile a BMP file.
 	 * @param dst a destination to store the image in.  If this is
@@ -58,20 +59,15 @@ public class BmpDecoder {
 	 */
 	public static BufferedImage readImage(File bmpFile, BufferedImage dst)
 			throws IOException {
-		FileInputStream in = null;
 		if (bmpFile == null) {
 			throw new NullPointerException();
 		} else if (bmpFile.length() == 0) {
 			return null;
 		}
 		try {
-			in = new FileInputStream(bmpFile);
-			return readImage(in, dst);
-		} finally {
-			try {
-				in.close();
-			} catch (IOException e) {
-			}
+			return new BmpMappedReader(bmpFile).read(dst);
+		} catch(BmpHeaderException e) {
+			return null;
 		}
 	}
 
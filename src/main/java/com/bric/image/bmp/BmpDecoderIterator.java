@@ -23,13 +23,14 @@ import java.awt.image.BufferedImage;
 import java.awt.image.IndexColorModel;
 import java.io.EOFException;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
 import com.bric.image.pixel.BytePixelIterator;
 import com.bric.image.pixel.IndexedBytePixelIterator;
 import com.bric.image.pixel.PixelConverter;
+import com.bric.io.ByteBufferInputStream;
+import com.bric.io.IOUtils;
 import com.bric.io.MeasuredInputStream;
 
 /** A {@link com.bric.image.pixel.BytePixelIterator} that reads
@@ -50,21 +51,13 @@ import com.bric.io.MeasuredInputStream;
 public class BmpDecoderIterator implements BytePixelIterator {
 	
 	/** Returns a <code>BmpDecoderIterator</code> from a <code>File</code>.
+	 * <p>The file is memory-mapped, so no file handle is left open.
 	 * @throws BmpHeaderException if this file does not appear to be a valid
 	 * BMP image.
 	 * @throws IOException if an IO problem occurs.
 	 */
 	public static BmpDecoderIterator get(File file) throws IOException {
-		FileInputStream in = null;
-		try {
-			in = new FileInputStream(file);
-			return get(in);
-		} catch(IOException e) {
-			if(in!=null) {
-				in.close();
-			}
-			throw e;
-		}
+		return get(new ByteBufferInputStream(IOUtils.map(file)));
 	}
 	
 	/** Returns a <code>BmpDecoderIterator</code> from an <code>InputStream</code>.
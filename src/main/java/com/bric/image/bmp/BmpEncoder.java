@@ -34,6 +34,8 @@ import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Hashtable;
 
 import com.bric.UserCancelledException;
@@ -42,6 +44,7 @@ import com.bric.image.pixel.BufferedImageIterator;
 import com.bric.image.pixel.ByteBGRAConverter;
 import com.bric.image.pixel.ByteBGRConverter;
 import com.bric.image.pixel.BytePixelIterator;
+import com.bric.util.ParallelRange;
 import com.bric.util.PushPullQueue;
 
 /** This is a set of static calls to write a simple BMP 2.x image, 
@@ -78,7 +81,7 @@ public class BmpEncoder {
 
 	/** Write an image to a file.  If the image argument is a
 	 * <code>BufferedImage</code>: then this method calls
-	 * <code>write(BufferedImage, OutputStream)</code>.
+	 * <code>write(BufferedImage, File, int)</code> using every available processor.
 	 * <p>There is a known bug in Oracle's GIF decoder that can
 	 * result in images with less than 256 giving incorrect image
 	 * dimensions.  (I have 2 sample images that reproduce this
@@ -94,11 +97,34 @@ public class BmpEncoder {
 	 */
 	public static void write(Image image, File dest) throws IOException {
 		if(image instanceof BufferedImage) {
-			BufferedImage bi = (BufferedImage)image;
+			write( (BufferedImage)image, dest, Runtime.getRuntime().availableProcessors());
+			return;
+		}
+		writeImageUsingRandomAccess(image, dest, null);
+	}
+
+	/** Write an image to a file, converting horizontal stripes of the image
+	 * in parallel.
+	 * <p>Each stripe is written directly at its offset in the file, so
+	 * stripes can finish in any order. Small images (or a <code>parallelism</code>
+	 * of 1) are written sequentially.
+	 * 
+	 * @param image the image to write.
+	 * @param dest the file to write.
+	 * @param parallelism the maximum number of stripes to convert at once.
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public static void write(BufferedImage image, File dest, int parallelism) throws IOException {
+		int w = image.getWidth();
+		int h = image.getHeight();
+		int bitsPerPixel = isOpaque(image) ? 24 : 32;
+		int scanlineSize = getScanlineSize(w, bitsPerPixel/8);
+		int stripes = (int)Math.min( Math.min(parallelism, h), ((long)scanlineSize)*h / MIN_BYTES_PER_STRIPE );
+		if(stripes<=1) {
 			FileOutputStream out = null;
 			try {
 				out = new FileOutputStream(dest);
-				write( bi, out);
+				write( image, out);
 			} finally {
 				if(out!=null) {
 					try {
@@ -110,7 +136,71 @@ public class BmpEncoder {
 			}
 			return;
 		}
-		writeImageUsingRandomAccess(image, dest, null);
+		
+		RandomAccessDataModel dataModel = new RandomAccessDataModel(dest, ((long)scanlineSize)*h+HEADER_SIZE, w, h, bitsPerPixel);
+		try {
+			ParallelRange.parallelRange(0, h, stripes, new WriteStripe(image, dataModel, scanlineSize));
+		} catch(RuntimeException e) {
+			Throwable t = e;
+			while(t!=null) {
+				if(t instanceof IOException)
+					throw (IOException)t;
+				t = t.getCause();
+			}
+			throw e;
+		} finally {
+			dataModel.dispose();
+		}
+	}
+	
+	/** The smallest number of bytes we'll give a stripe in {@link #write(BufferedImage, File, int)}. */
+	private static final int MIN_BYTES_PER_STRIPE = 1 << 18;
+
+	/** The largest number of bytes a stripe converts before writing them to the file. */
+	private static final int MAX_BYTES_PER_WRITE = 1 << 20;
+	
+	/** Converts and writes a range of rows. */
+	private static class WriteStripe implements ParallelRange.Body {
+		final BufferedImage image;
+		final RandomAccessDataModel dataModel;
+		final int scanlineSize;
+		
+		WriteStripe(BufferedImage image,RandomAccessDataModel dataModel,int scanlineSize) {
+			this.image = image;
+			this.dataModel = dataModel;
+			this.scanlineSize = scanlineSize;
+		}
+
+		public void run(int minY,int maxY) {
+			try {
+				writeRows(minY, maxY);
+			} catch(IOException e) {
+				RuntimeException e2 = new RuntimeException();
+				e2.initCause(e);
+				throw e2;
+			}
+		}
+		
+		private void writeRows(int minY,int maxY) throws IOException {
+			int h = image.getHeight();
+			//BMPs are stored bottom-up, so iterate over this stripe from the bottom
+			BytePixelIterator i = createIterator(image.getSubimage(0, minY, image.getWidth(), maxY - minY));
+			byte[] row = new byte[Math.max(scanlineSize, i.getMinimumArrayLength())];
+			int rowsPerWrite = Math.max(1, MAX_BYTES_PER_WRITE / scanlineSize);
+			byte[] chunk = new byte[Math.min(maxY - minY, rowsPerWrite)*scanlineSize];
+			int y = maxY - 1;
+			while(y>=minY) {
+				long position = ((long)(h - 1 - y))*scanlineSize;
+				int length = 0;
+				while(y>=minY && length<chunk.length) {
+					i.next(row);
+					System.arraycopy(row, 0, chunk, length, scanlineSize);
+					length += scanlineSize;
+					y--;
+				}
+				dataModel.write(position, chunk, 0, length);
+			}
+		}
 	}
 
 	public static void write(BufferedImage image,OutputStream out) throws IOException {
@@ -118,15 +208,16 @@ public class BmpEncoder {
 	}
 
 	public static void write(BufferedImage image,OutputStream out,boolean closeStreamOnCompletion) throws IOException {
-		BytePixelIterator i;
-		BufferedImage bi = image;
+		write(out, createIterator(image), closeStreamOnCompletion);
+	}
+	
+	/** Return the bottom-up BGR or BGRA pixels of an image. */
+	private static BytePixelIterator createIterator(BufferedImage bi) {
 		BufferedImageIterator imageIter = BufferedImageIterator.get(bi, false);
 		if (isOpaque(bi)) {
-			i = new ByteBGRConverter(imageIter);
-		} else {
-			i = new ByteBGRAConverter(imageIter);
+			return new ByteBGRConverter(imageIter);
 		}
-		write(out, i, closeStreamOnCompletion);
+		return new ByteBGRAConverter(imageIter);
 	}
 
 	public static boolean isOpaque(BufferedImage bi) {
@@ -249,25 +340,31 @@ public class BmpEncoder {
 	 * in memory.  It wouldn't be hard to reimplement that model
 	 * based on the methods in this object if that ever becomes
 	 * appropriate.
+	 * <p>Writes use positional <code>FileChannel</code> writes, so
+	 * several threads may call {@link #write(long, byte[], int, int)} at once.
 	 */
 	private static class RandomAccessDataModel {
 		RandomAccessFile randomAccessFile;
+		FileChannel channel;
 		//File file;
 		
-		RandomAccessDataModel(File file,int totalBytes,int width,int height,int bitsPerPixel) throws IOException {
+		RandomAccessDataModel(File file,long totalBytes,int width,int height,int bitsPerPixel) throws IOException {
 			//this.file = file;
 			randomAccessFile = new RandomAccessFile(file, "rw");
 			randomAccessFile.setLength( totalBytes );
+			channel = randomAccessFile.getChannel();
 			
 			byte[] header = new byte[ HEADER_SIZE ];
 			writeHeader(header, 0, width, height, bitsPerPixel);
-			randomAccessFile.write(header, 0, header.length);
+			write(-HEADER_SIZE, header, 0, header.length);
 		}
 		
-		public void write(int position,byte[] data,int dataOffset,int dataLength) throws IOException {
-			randomAccessFile.seek(position+HEADER_SIZE);
-			randomAccessFile.write(data, dataOffset, dataLength);
-			
+		public void write(long position,byte[] data,int dataOffset,int dataLength) throws IOException {
+			ByteBuffer src = ByteBuffer.wrap(data, dataOffset, dataLength);
+			long filePosition = position+HEADER_SIZE;
+			while(src.hasRemaining()) {
+				filePosition += channel.write(src, filePosition);
+			}
 		}
 		
 		//public void read(int position,byte[] dest,int destOffset,int destLength) throws IOException {
@@ -351,7 +448,7 @@ public class BmpEncoder {
 
 			scanlineSize = getScanlineSize(width.intValue(), bytesPerPixel);
 			Dimension d = new Dimension(width.intValue(), height.intValue() );
-			int totalBytes = scanlineSize*d.height+HEADER_SIZE;
+			long totalBytes = ((long)scanlineSize)*d.height+HEADER_SIZE;
 			try {
 				dataModel = new RandomAccessDataModel(dest, totalBytes, d.width, d.height, bytesPerPixel*8 );
 				sizeQueue.push(d);
@@ -424,7 +521,7 @@ public class BmpEncoder {
 						}
 					}
 					dataModel.write(
-							(height.intValue()-1-(y+j))*scanlineSize+x*outPixelSize, 
+							((long)(height.intValue()-1-(y+j)))*scanlineSize+x*outPixelSize, 
 							scratchByteArray, 0, w*outPixelSize);
 				}
 			} catch(Exception e) {
@@ -455,7 +552,7 @@ public class BmpEncoder {
 							scratchByteArray[ 3*k+2 ] = (byte)( (rgb >> 16) & 0xff);
 						}
 						dataModel.write(
-								(height.intValue()-1-(y+j))*scanlineSize+x*bytesPerPixel,
+								((long)(height.intValue()-1-(y+j)))*scanlineSize+x*bytesPerPixel,
 								scratchByteArray, 0, w*bytesPerPixel );
 					}
 					return;
@@ -469,7 +566,7 @@ public class BmpEncoder {
 							scratchByteArray[ 4*k+3 ] = (byte)( (rgb >> 24) & 0xff);
 						}
 						dataModel.write(
-								(height.intValue()-1-(y+j))*scanlineSize+x*bytesPerPixel,
+								((long)(height.intValue()-1-(y+j)))*scanlineSize+x*bytesPerPixel,
 								scratchByteArray, 0, w*bytesPerPixel );
 					}
 					return;
@@ -0,0 +1,272 @@
+/*
+ * @(#)BmpMappedReader.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.bmp;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+import com.bric.image.pixel.BufferedImageIterator;
+import com.bric.io.ByteBufferInputStream;
+import com.bric.io.IOUtils;
+
+/** This reads a BMP directly from a <code>ByteBuffer</code>, which is
+ * usually a memory-mapped file.
+ * <p>Unlike the {@link BmpDecoderIterator} this does not stream scanlines
+ * through an <code>InputStream</code>: any row can be read in any order, and
+ * {@link #read(BufferedImage)} copies 24- and 32-bit pixel data straight into the
+ * <code>DataBuffer</code> of the destination image. When the destination
+ * is a <code>TYPE_3BYTE_BGR</code> image (for 24-bit BMPs) or a <code>TYPE_INT_ARGB</code>
+ * or <code>TYPE_INT_RGB</code> image (for 32-bit BMPs) each row is a single bulk copy.
+ * <p>This object is thread-safe: every read works with its own view of the buffer.
+ */
+public class BmpMappedReader {
+
+	final ByteBuffer buffer;
+	final int width, height, depth, planes, compression;
+	final boolean topDown;
+	final int scanline, pixelOffset;
+	final IndexColorModel colorModel;
+
+	/** Map a BMP file into memory.
+	 *
+	 * @param file the BMP file to read.
+	 * @throws BmpHeaderException if this file does not appear to be a valid
+	 * BMP image.
+	 * @throws IOException if an IO problem occurs, or if the file is too
+	 * short to contain all of its pixel data.
+	 */
+	public BmpMappedReader(File file) throws IOException {
+		this(IOUtils.map(file));
+	}
+
+	/** Read a BMP from a buffer.
+	 *
+	 * @param buffer a buffer containing a BMP, starting at the current position.
+	 * This buffer is never modified.
+	 * @throws BmpHeaderException if this buffer does not appear to contain a valid
+	 * BMP image.
+	 * @throws IOException if an IO problem occurs, or if the buffer is too
+	 * short to contain all of its pixel data.
+	 */
+	public BmpMappedReader(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer.slice();
+		BmpHeader header = new BmpHeader(new ByteBufferInputStream(this.buffer.duplicate()));
+		width = header.width;
+		height = header.height;
+		depth = header.bitsPerPixel;
+		planes = header.planes;
+		compression = header.compression;
+		topDown = header.topDown;
+		colorModel = header.colorModel;
+
+		if(!(depth==1 || depth==4 || depth==8 || depth==24 || depth==32))
+			throw new IOException("unsupported depth ("+depth+")");
+		if(header.bitmapOffset>this.buffer.limit())
+			throw new EOFException("bitmap offset ("+header.bitmapOffset+") exceeds length ("+this.buffer.limit()+")");
+
+		pixelOffset = (int)header.bitmapOffset;
+		scanline = BmpEncoder.getScanlineSize( (width*depth+7)/8, 1);
+		if( (long)pixelOffset + ((long)scanline)*height > this.buffer.limit())
+			throw new EOFException("pixel data ("+scanline+"x"+height+" at "+pixelOffset+") exceeds length ("+this.buffer.limit()+")");
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/** @return the number of bits per pixel: 1, 4, 8, 24 or 32. */
+	public int getBitsPerPixel() {
+		return depth;
+	}
+
+	/** @return true if the first row of pixel data in this BMP is the top row of the image. */
+	public boolean isTopDown() {
+		return topDown;
+	}
+
+	/** @return the number of bytes in each row of pixel data, including padding. */
+	public int getScanlineSize() {
+		return scanline;
+	}
+
+	/** @return the palette of this BMP, or <code>null</code> if this is a 24- or 32-bit BMP. */
+	public IndexColorModel getIndexColorModel() {
+		return colorModel;
+	}
+
+	/** Copy the raw pixel data of one row.
+	 * <p>This is exactly the data stored in the file: 24- and 32-bit rows are
+	 * BGR and BGRA, and indexed rows are still packed.
+	 *
+	 * @param y the row to read, where 0 is the top of the image regardless of
+	 * whether this BMP is stored from top-to-bottom or from bottom-to-top.
+	 * @param dest the array to store the row in.  This must be at least
+	 * <code>getScanlineSize()</code> bytes long.
+	 */
+	public void getRow(int y,byte[] dest) {
+		if(y<0 || y>=height)
+			throw new IllegalArgumentException("y ("+y+") must be between 0 and "+(height-1));
+		ByteBuffer src = buffer.duplicate();
+		src.position(getRowOffset(y));
+		src.get(dest, 0, scanline);
+	}
+
+	/** Return the buffer offset of a row. */
+	private int getRowOffset(int y) {
+		int fileRow = topDown ? y : height-1-y;
+		return pixelOffset + fileRow*scanline;
+	}
+
+	/** Read this BMP as a <code>BufferedImage</code>.
+	 *
+	 * @param dst an optional image to store the pixels in.  If this is
+	 * non-null it must be at least as large as this BMP.  Any image type is
+	 * supported for 24- and 32-bit BMPs, but <code>TYPE_3BYTE_BGR</code>,
+	 * <code>TYPE_INT_RGB</code> and <code>TYPE_INT_ARGB</code> are the fastest.
+	 * If this is null a <code>TYPE_3BYTE_BGR</code> or <code>TYPE_4BYTE_ABGR</code>
+	 * image is created, just as {@link BmpDecoder} does.
+	 * @return the image the pixels were stored in.
+	 * @throws IOException if this BMP uses an unsupported format.
+	 */
+	public BufferedImage read(BufferedImage dst) throws IOException {
+		if(colorModel!=null) {
+			BmpDecoderIterator iter = BmpDecoderIterator.get(new ByteBufferInputStream(buffer.duplicate()));
+			return BufferedImageIterator.create(iter, dst);
+		}
+
+		if(planes!=1)
+			throw new IOException ("unsupported planes ("+planes+")");
+		if(compression!=0)
+			throw new IOException ("unsupported compression ("+compression+")");
+
+		if(dst==null) {
+			dst = new BufferedImage(width, height, depth==24 ?
+					BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_4BYTE_ABGR);
+		} else if(dst.getWidth()<width || dst.getHeight()<height) {
+			throw new IllegalArgumentException("size mismatch ("+dst.getWidth()+"x"+dst.getHeight()+" is too small for "+width+"x"+height+")");
+		}
+
+		ByteBuffer src = buffer.duplicate();
+		WritableRaster raster = dst.getRaster();
+		int type = dst.getType();
+		if(depth==24 && type==BufferedImage.TYPE_3BYTE_BGR) {
+			//BMP rows are already stored as {blue, green, red, ...}
+			//(and ComponentSampleModel.getOffset() would add a band offset we don't want)
+			ComponentSampleModel sm = (ComponentSampleModel)raster.getSampleModel();
+			byte[] data = ((DataBufferByte)raster.getDataBuffer()).getData();
+			int stride = sm.getScanlineStride();
+			int offset = raster.getDataBuffer().getOffset() -
+					raster.getSampleModelTranslateY()*stride -
+					raster.getSampleModelTranslateX()*sm.getPixelStride();
+			for(int y = 0; y<height; y++) {
+				src.position(getRowOffset(y));
+				src.get(data, offset + y*stride, width*3);
+			}
+		} else if(depth==32 && (type==BufferedImage.TYPE_INT_ARGB || type==BufferedImage.TYPE_INT_RGB)) {
+			//little-endian {blue, green, red, alpha} is exactly 0xAARRGGBB
+			src.position(pixelOffset);
+			IntBuffer ints = src.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			int[] data = getData(raster);
+			int offset = getOffset(raster);
+			int stride = ((SinglePixelPackedSampleModel)raster.getSampleModel()).getScanlineStride();
+			for(int y = 0; y<height; y++) {
+				ints.position( (getRowOffset(y) - pixelOffset)/4 );
+				ints.get(data, offset + y*stride, width);
+			}
+		} else if(depth==24 && (type==BufferedImage.TYPE_INT_ARGB || type==BufferedImage.TYPE_INT_RGB)) {
+			int[] data = getData(raster);
+			int offset = getOffset(raster);
+			int stride = ((SinglePixelPackedSampleModel)raster.getSampleModel()).getScanlineStride();
+			byte[] row = new byte[scanline];
+			for(int y = 0; y<height; y++) {
+				src.position(getRowOffset(y));
+				src.get(row, 0, scanline);
+				int k = offset + y*stride;
+				for(int x = 0, i = 0; x<width; x++, i+=3) {
+					data[k+x] = 0xff000000 |
+							((row[i+2] & 0xff) << 16) |
+							((row[i+1] & 0xff) << 8) |
+							(row[i] & 0xff);
+				}
+			}
+		} else if(depth==32 && type==BufferedImage.TYPE_4BYTE_ABGR) {
+			ComponentSampleModel sm = (ComponentSampleModel)raster.getSampleModel();
+			byte[] data = ((DataBufferByte)raster.getDataBuffer()).getData();
+			int stride = sm.getScanlineStride();
+			int offset = raster.getDataBuffer().getOffset() -
+					raster.getSampleModelTranslateY()*stride -
+					raster.getSampleModelTranslateX()*sm.getPixelStride();
+			byte[] row = new byte[scanline];
+			for(int y = 0; y<height; y++) {
+				src.position(getRowOffset(y));
+				src.get(row, 0, scanline);
+				int k = offset + y*stride;
+				for(int i = 0; i<scanline; i+=4, k+=4) {
+					data[k] = row[i+3];
+					data[k+1] = row[i];
+					data[k+2] = row[i+1];
+					data[k+3] = row[i+2];
+				}
+			}
+		} else {
+			int[] argb = new int[width];
+			byte[] row = new byte[scanline];
+			int pixelSize = depth/8;
+			for(int y = 0; y<height; y++) {
+				src.position(getRowOffset(y));
+				src.get(row, 0, scanline);
+				for(int x = 0, i = 0; x<width; x++, i+=pixelSize) {
+					int alpha = pixelSize==4 ? (row[i+3] & 0xff) : 0xff;
+					argb[x] = (alpha << 24) |
+							((row[i+2] & 0xff) << 16) |
+							((row[i+1] & 0xff) << 8) |
+							(row[i] & 0xff);
+				}
+				dst.setRGB(0, y, width, 1, argb, 0, width);
+			}
+		}
+		return dst;
+	}
+
+	private static int[] getData(WritableRaster raster) {
+		return ((DataBufferInt)raster.getDataBuffer()).getData();
+	}
+
+	private static int getOffset(WritableRaster raster) {
+		SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel)raster.getSampleModel();
+		return raster.getDataBuffer().getOffset() +
+				sm.getOffset(-raster.getSampleModelTranslateX(), -raster.getSampleModelTranslateY());
+	}
+}
@@ -23,23 +23,42 @@ import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import com.bric.image.FrameDiff;
 import com.bric.image.gif.block.GifGraphicControlExtension;
 import com.bric.image.gif.block.GifGraphicControlExtension.DisposalMethod;
 import com.bric.image.gif.block.GifImageDataBlock;
 import com.bric.image.gif.block.GifImageDescriptor;
 import com.bric.image.gif.block.GifLocalColorTable;
-import com.bric.image.pixel.BufferedImageIterator;
-import com.bric.image.pixel.IntARGBConverter;
 
 /** This tests out 3 possible frame disposal methods and chooses the one that would
  * result in the smallest frame dimensions.
  * <p>To encode the nth frame, we need to see if the (n-1)th frame, the (n-2)th frame, or
  * (as a last resort) the background color should be our starting template. Once we've decided this:
  * we can reduce the dimensions of the nth frame.
+ * <p>Frames are compared with a {@link FrameDiff}, which can find several separate
+ * dirty rectangles. If the global color model has a transparent pixel then the
+ * unchanged pixels between those rectangles are written as transparent, which
+ * compresses much better than repeating them.
+ * <p>By default every frame is compared, dithered and compressed on the thread that
+ * calls {@link #writeImage(OutputStream, BufferedImage, int, IndexColorModel, boolean)}.
+ * In pipelined mode (see {@link #BasicGifEncoder(int)}) once a frame's disposal method
+ * and bounds are decided it is encoded on an executor, while the calling thread moves on
+ * to comparing the next frame. Encoded frames are still written to the
+ * <code>OutputStream</code> in order, on the calling thread. If too many frames are
+ * waiting to be written then <code>writeImage</code> blocks until the oldest one is done,
+ * so memory use stays bounded.
  */
 public class BasicGifEncoder extends GifEncoder {
 	
@@ -77,7 +96,12 @@ public class BasicGifEncoder extends GifEncoder {
 			this.writeLocalColorTable = writeLocalColorTable;
 		}
 
-		void write(OutputStream out) throws IOException {
+		/** Write this frame.
+		 * 
+		 * @param out the stream to write to.
+		 * @param parallelism the maximum number of threads used to dither this frame.
+		 */
+		void write(OutputStream out,int parallelism) throws IOException {
 			if (durationInCentiseconds >= 0 || 
 					globalColorModel.getTransparentPixel() != -1 || 
 					disposalMethod!=DisposalMethod.LEAVE ) {
@@ -109,27 +133,136 @@ public class BasicGifEncoder extends GifEncoder {
 				GifLocalColorTable ct = new GifLocalColorTable(globalColorModel);
 				ct.write(out);
 			}
-			GifImageDataBlock dataBlock = new GifImageDataBlock(optimizedImage, globalColorModel);
-			dataBlock.write(out);
+			GifImageDataBlock.write(out, optimizedImage, globalColorModel, parallelism);
+		}
+		
+		/** Encode all the blocks of this frame on a single thread. */
+		byte[] encode() throws IOException {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			write(bytes, 1);
+			return bytes.toByteArray();
 		}
 
-		void optimize(Rectangle contrast) {
-			optimizedImage = wholeImage.getSubimage(contrast.x, contrast.y, contrast.width, contrast.height);
-			x = contrast.x;
-			y = contrast.y;
+		/** Only write the parts of this frame that changed.
+		 * 
+		 * @param dirtyRectangles the regions that are different from the image
+		 * this frame will be painted on top of.
+		 */
+		void optimize(List<Rectangle> dirtyRectangles) {
+			Rectangle bounds = getBounds(dirtyRectangles);
+			x = bounds.x;
+			y = bounds.y;
+			if(dirtyRectangles.size()>1 && globalColorModel.getTransparentPixel()!=-1 &&
+					isMaskingWorthwhile(dirtyRectangles, bounds)) {
+				// everything outside the dirty rectangles is already showing
+				optimizedImage = new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_INT_ARGB);
+				for(Rectangle r : dirtyRectangles) {
+					int[] pixels = wholeImage.getRGB(r.x, r.y, r.width, r.height, null, 0, r.width);
+					optimizedImage.setRGB(r.x - x, r.y - y, r.width, r.height, pixels, 0, r.width);
+				}
+			} else {
+				optimizedImage = wholeImage.getSubimage(bounds.x, bounds.y, bounds.width, bounds.height);
+			}
+		}
+		
+		/** Return true if the unchanged pixels inside the bounds of the dirty rectangles
+		 * are detailed enough that it is cheaper to write them as transparent.
+		 * <p>LZW compression costs roughly one code per run of identical pixels. If the
+		 * unchanged pixels are written as-is they break into one run per change of color; if
+		 * they're written as transparent they break into one run per gap between dirty rectangles.
+		 */
+		private boolean isMaskingWorthwhile(List<Rectangle> dirtyRectangles,Rectangle bounds) {
+			int[] row = new int[bounds.width];
+			boolean[] dirty = new boolean[bounds.width];
+			int maskedRuns = 0;
+			int unmaskedRuns = 0;
+			for(int y = bounds.y; y<bounds.y + bounds.height; y++) {
+				wholeImage.getRGB(bounds.x, y, bounds.width, 1, row, 0, bounds.width);
+				Arrays.fill(dirty, false);
+				for(Rectangle r : dirtyRectangles) {
+					if(y>=r.y && y<r.y + r.height)
+						Arrays.fill(dirty, r.x - bounds.x, r.x + r.width - bounds.x, true);
+				}
+				for(int x = 0; x<bounds.width; x++) {
+					if(!dirty[x]) {
+						if(x==0 || dirty[x-1]) {
+							maskedRuns++;
+							unmaskedRuns++;
+						} else if(row[x]!=row[x-1]) {
+							unmaskedRuns++;
+						}
+					}
+				}
+			}
+			return unmaskedRuns > maskedRuns;
 		}
 	}
 	
 	LinkedList<Frame> frameBuffer = new LinkedList<Frame>();
 	
+	/** The executor frames are encoded on, or null if this encoder is not pipelined. */
+	final ExecutorService executor;
+	
+	/** The maximum number of encoded frames that may wait to be written. */
+	final int maxPendingFrames;
+	
+	/** Compares consecutive frames. */
+	final FrameDiff frameDiff = new FrameDiff();
+	
+	/** Encoded frames that have not been written yet, in order. */
+	LinkedList<Future<byte[]>> pendingFrames = new LinkedList<Future<byte[]>>();
+	
+	/** Create a <code>BasicGifEncoder</code> that encodes every frame on the calling thread. */
+	public BasicGifEncoder() {
+		executor = null;
+		maxPendingFrames = 0;
+	}
+	
+	/** Create a pipelined <code>BasicGifEncoder</code> that uses the common <code>ForkJoinPool</code>.
+	 * 
+	 * @param parallelism the number of frames to encode at once. Up to twice this
+	 * many encoded frames may wait to be written. If this is 1 or less then
+	 * this encoder is not pipelined.
+	 */
+	public BasicGifEncoder(int parallelism) {
+		this(parallelism>1 ? ForkJoinPool.commonPool() : null, 2*parallelism);
+	}
+	
+	/** Create a pipelined <code>BasicGifEncoder</code>.
+	 * 
+	 * @param executor the executor to encode frames on. If this is null then
+	 * every frame is encoded on the calling thread.
+	 * @param maxPendingFrames the maximum number of frames that can be encoding
+	 * (or waiting to be written) at once. When this limit is reached 
+	 * <code>writeImage</code> blocks until the oldest frame is written.
+	 */
+	public BasicGifEncoder(ExecutorService executor,int maxPendingFrames) {
+		if(executor!=null && maxPendingFrames<1)
+			throw new IllegalArgumentException("maxPendingFrames ("+maxPendingFrames+") must be at least 1");
+		this.executor = executor;
+		this.maxPendingFrames = maxPendingFrames;
+	}
+	
 	@Override
 	public synchronized void writeImage(OutputStream out,BufferedImage image,int durationInCentiseconds, IndexColorModel globalColorModel,
 			boolean writeLocalColorTable)
 			throws IOException {
+		/* If we'll need to compare this image against the frame before last, 
+		 * then in pipelined mode start that while we compare it against the last frame.
+		 */
+		Future<List<Rectangle>> olderContrast = null;
+		if(executor!=null && frameBuffer.size()>=2) {
+			olderContrast = executor.submit(new ContrastCalculator(frameDiff, frameBuffer.get(0).wholeImage, image));
+		}
+		
+		List<Rectangle> lastContrast = null;
 		if(frameBuffer.size()>0) {
 			Frame lastFrame = frameBuffer.get(frameBuffer.size()-1);
-			if(getContrastRectangle(lastFrame.wholeImage, image)==null) {
+			lastContrast = frameDiff.getDirtyRectangles(lastFrame.wholeImage, image);
+			if(lastContrast.isEmpty()) {
 				lastFrame.durationInCentiseconds += durationInCentiseconds;
+				if(olderContrast!=null)
+					olderContrast.cancel(false);
 				return;
 			}
 		}
@@ -139,10 +272,13 @@ public class BasicGifEncoder extends GifEncoder {
 		
 		try {
 			if(frameBuffer.size()>=3) {
-				Rectangle contrast1 = getContrastRectangle(frameBuffer.get(0).wholeImage, newFrame.wholeImage);
-				Rectangle contrast2 = getContrastRectangle(frameBuffer.get(1).wholeImage, newFrame.wholeImage);
-				int area1 = contrast1==null ? Integer.MAX_VALUE : contrast1.width*contrast1.height;
-				int area2 = contrast2==null ? Integer.MAX_VALUE : contrast2.width*contrast2.height;
+				List<Rectangle> contrast1 = olderContrast==null ? 
+						frameDiff.getDirtyRectangles(frameBuffer.get(0).wholeImage, newFrame.wholeImage) :
+						get(olderContrast);
+				//frameBuffer.get(1) is the last frame, so we already know this:
+				List<Rectangle> contrast2 = lastContrast;
+				long area1 = getCost(contrast1, globalColorModel);
+				long area2 = getCost(contrast2, globalColorModel);
 				if(area2<=area1) {
 					frameBuffer.get(1).disposalMethod = DisposalMethod.LEAVE;
 					frameBuffer.get(2).optimize(contrast2);
@@ -157,59 +293,100 @@ public class BasicGifEncoder extends GifEncoder {
 			}
 		} finally {
 			while(frameBuffer.size()>2) {
-				frameBuffer.pop().write(out);
+				write(out, frameBuffer.pop());
 			}
 		}
 	}
-
-	/** Returns the smallest possible rectangle that encloses the differences between
-	 * two images, or null if they are exactly the same.
+	
+	/** Write a frame whose disposal method and bounds are final.
+	 * <p>In pipelined mode this starts encoding the frame and writes any
+	 * frames that are already finished.
 	 */
-	private static Rectangle getContrastRectangle(BufferedImage background,BufferedImage incoming) {
-		if(background.getWidth()!=incoming.getWidth() || background.getHeight()!=incoming.getHeight())
-			throw new IllegalArgumentException("images are different sizes: "+background.getWidth()+"x"+background.getHeight()+", "+incoming.getWidth()+"x"+incoming.getHeight());
+	private void write(OutputStream out,final Frame frame) throws IOException {
+		if(executor==null) {
+			frame.write(out, 1);
+			return;
+		}
+		pendingFrames.add(executor.submit(new Callable<byte[]>() {
+			public byte[] call() throws IOException {
+				return frame.encode();
+			}
+		}));
+		while(pendingFrames.size()>0 && 
+				(pendingFrames.size()>maxPendingFrames || pendingFrames.getFirst().isDone())) {
+			out.write(get(pendingFrames.removeFirst()));
+		}
+	}
+	
+	/** Wait for a task to finish, and rethrow anything it threw. */
+	private static <T> T get(Future<T> future) throws IOException {
+		try {
+			return future.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			IOException e2 = new IOException("interrupted while encoding a frame");
+			e2.initCause(e);
+			throw e2;
+		} catch(ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+				throw (IOException)cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if(cause instanceof Error)
+				throw (Error)cause;
+			throw new RuntimeException(cause);
+		}
+	}
+	
+	/** Calculates the dirty rectangles between two images on another thread. */
+	private static class ContrastCalculator implements Callable<List<Rectangle>> {
+		final FrameDiff frameDiff;
+		final BufferedImage background, incoming;
 		
-		IntARGBConverter c1 = new IntARGBConverter( BufferedImageIterator.get(background) );
-		IntARGBConverter c2 = new IntARGBConverter( BufferedImageIterator.get(incoming) );
-		int[] row1 = new int[c1.getMinimumArrayLength()];
-		int[] row2 = new int[c2.getMinimumArrayLength()];
-		Rectangle r = null;
+		ContrastCalculator(FrameDiff frameDiff,BufferedImage background,BufferedImage incoming) {
+			this.frameDiff = frameDiff;
+			this.background = background;
+			this.incoming = incoming;
+		}
 		
-		int y = 0;
-		while(!c1.isDone()) {
-			c1.next(row1);
-			c2.next(row2);
-			int w = incoming.getWidth();
-			for(int x = 0; x<w; x++) {
-				int a1 = (row1[x] >> 24) & 0xff;
-				int r1 = (row1[x] >> 16) & 0xff;
-				int g1 = (row1[x] >> 8) & 0xff;
-				int b1 = (row1[x] >> 0) & 0xff;
-				int a2 = (row2[x] >> 24) & 0xff;
-				int r2 = (row2[x] >> 16) & 0xff;
-				int g2 = (row2[x] >> 8) & 0xff;
-				int b2 = (row2[x] >> 0) & 0xff;
-				if(a2<a1 || r1!=r2 || g1!=g2 || b1!=b2) {
-					if(r==null) {
-						r = new Rectangle(x, y, 1, 1);
-					} else {
-						if(x<r.x) {
-							//new left boundary
-							r.width += r.x - x;
-							r.x = x;
-						} else if(x>=r.x + r.width) {
-							//new right boundary
-							r.width = x - r.x + 1;
-						}
-
-						//new bottom boundary
-						r.height = y - r.y + 1;
-					}
-				}
-			}
-			y++;
+		public List<Rectangle> call() {
+			return frameDiff.getDirtyRectangles(background, incoming);
 		}
-		return r;
+	}
+	
+	/** Unchanged pixels that are written as transparent turn into long runs of the same
+	 * index, which cost roughly this fraction of a changed pixel to encode.
+	 */
+	private static final int TRANSPARENT_PIXEL_COST_DIVISOR = 16;
+	
+	/** Estimate how expensive it is to encode a frame, in pixels.
+	 * 
+	 * @param dirtyRectangles the parts of the frame that have to be written.
+	 * @param icm the color model the frame is written with.
+	 * @return the estimated cost, or Long.MAX_VALUE if there are no dirty rectangles.
+	 */
+	private static long getCost(List<Rectangle> dirtyRectangles,IndexColorModel icm) {
+		if(dirtyRectangles.isEmpty())
+			return Long.MAX_VALUE;
+		Rectangle bounds = getBounds(dirtyRectangles);
+		long area = ((long)bounds.width)*bounds.height;
+		if(dirtyRectangles.size()==1 || icm.getTransparentPixel()==-1)
+			return area;
+		long dirtyArea = 0;
+		for(Rectangle r : dirtyRectangles) {
+			dirtyArea += ((long)r.width)*r.height;
+		}
+		return dirtyArea + (area - dirtyArea)/TRANSPARENT_PIXEL_COST_DIVISOR;
+	}
+	
+	/** Return the union of several rectangles. */
+	private static Rectangle getBounds(List<Rectangle> rectangles) {
+		Rectangle bounds = new Rectangle(rectangles.get(0));
+		for(int a = 1; a<rectangles.size(); a++) {
+			bounds.add(rectangles.get(a));
+		}
+		return bounds;
 	}
 
 	/** This writes remaining frames.
@@ -217,7 +394,10 @@ public class BasicGifEncoder extends GifEncoder {
 	@Override
 	public synchronized void flush(OutputStream out) throws IOException {
 		while(frameBuffer.size()>0) {
-			frameBuffer.pop().write(out);
+			write(out, frameBuffer.pop());
+		}
+		while(pendingFrames.size()>0) {
+			out.write(get(pendingFrames.removeFirst()));
 		}
 	}
 }
@@ -40,4 +40,18 @@ public class GifEncoderFactory {
 	public GifEncoder createEncoder() {
 		return new BasicGifEncoder();
 	}
+	
+	/** Create a GifEncoder that may use several threads.
+	 * <p>By default this returns a pipelined {@link BasicGifEncoder}
+	 * if <code>parallelism</code> is greater than 1, or <code>createEncoder()</code>
+	 * otherwise. Subclasses that override <code>createEncoder()</code> should
+	 * usually override this method too.
+	 * 
+	 * @param parallelism the number of threads the encoder may use.
+	 */
+	public GifEncoder createEncoder(int parallelism) {
+		if(parallelism<=1)
+			return createEncoder();
+		return new BasicGifEncoder(parallelism);
+	}
 }
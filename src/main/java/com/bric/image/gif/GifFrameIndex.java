@@ -0,0 +1,355 @@
+/*
+ * @(#)GifFrameIndex.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.gif;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.bric.image.gif.block.GifBlock;
+import com.bric.image.gif.block.GifGlobalColorTable;
+import com.bric.image.gif.block.GifGraphicControlExtension;
+import com.bric.image.gif.block.GifGraphicControlExtension.DisposalMethod;
+import com.bric.image.gif.block.GifImageDescriptor;
+import com.bric.image.gif.block.GifLogicalScreenDescriptor;
+import com.bric.image.gif.block.GifLoopingApplicationExtension;
+import com.bric.image.gif.block.GifParser;
+import com.bric.io.ByteBufferInputStream;
+import com.bric.io.IOUtils;
+
+/**
+ * A table of contents for the frames of a GIF file.
+ * <P>
+ * This is built in one pass that skips over all the image data, and it records
+ * where each frame's blocks begin. A {@link GifReader} that has an index can
+ * jump to any frame: it resumes parsing at the nearest <i>restore point</i>
+ * before that frame and only decodes the frames that affect the result.
+ * <P>
+ * A restore point is a frame that can be rendered without knowing anything
+ * that was painted before it. That means either the canvas is empty when the
+ * frame is drawn (as it is for the first frame), or the frame is opaque and
+ * covers the whole canvas.
+ */
+public class GifFrameIndex {
+
+	/** Information about one frame of a GIF file. */
+	public static class Frame {
+		final int index;
+		final long offset;
+		final int x, y, width, height;
+		final boolean interlaced;
+		final DisposalMethod disposalMethod;
+		final int transparentColorIndex;
+		final int delayTime;
+		boolean restorePoint;
+
+		Frame(int index, long offset, GifImageDescriptor descriptor,
+				GifGraphicControlExtension gce) {
+			this.index = index;
+			this.offset = offset;
+			x = descriptor.getX();
+			y = descriptor.getY();
+			width = descriptor.getWidth();
+			height = descriptor.getHeight();
+			interlaced = descriptor.isInterlaced();
+			if (gce == null) {
+				disposalMethod = DisposalMethod.NONE;
+				transparentColorIndex = -1;
+				delayTime = 0;
+			} else {
+				disposalMethod = gce.getDisposalMethod();
+				transparentColorIndex = gce.getTransparentColorIndex();
+				delayTime = gce.getDelayTime();
+			}
+		}
+
+		/** @return the index of this frame, starting at zero. */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * @return the byte offset in the file where this frame's blocks begin.
+		 *         These may include extensions (like a graphic control
+		 *         extension) that precede its image descriptor.
+		 */
+		public long getOffset() {
+			return offset;
+		}
+
+		public int getX() {
+			return x;
+		}
+
+		public int getY() {
+			return y;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+
+		public boolean isInterlaced() {
+			return interlaced;
+		}
+
+		public DisposalMethod getDisposalMethod() {
+			return disposalMethod;
+		}
+
+		/**
+		 * @return the transparent color index, or -1 if this frame is
+		 *         opaque.
+		 */
+		public int getTransparentColorIndex() {
+			return transparentColorIndex;
+		}
+
+		/**
+		 * @return the time, in hundredths of a second, that this frame should
+		 *         be visible.
+		 */
+		public int getDelayTime() {
+			return delayTime;
+		}
+
+		/**
+		 * @return whether this frame can be rendered without decoding any
+		 *         previous frames.
+		 */
+		public boolean isRestorePoint() {
+			return restorePoint;
+		}
+
+		boolean covers(int screenWidth, int screenHeight) {
+			return x <= 0 && y <= 0 && x + width >= screenWidth
+					&& y + height >= screenHeight;
+		}
+
+		@Override
+		public String toString() {
+			return "Frame[ index=" + index + ", offset=" + offset + ", x=" + x
+					+ ", y=" + y + ", width=" + width + ", height=" + height
+					+ ", disposal=" + disposalMethod + ", restorePoint="
+					+ restorePoint + "]";
+		}
+	}
+
+	/** Counts the bytes read from a stream. */
+	private static class PositionInputStream extends FilterInputStream {
+		long position = 0;
+
+		PositionInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int k = in.read();
+			if (k != -1)
+				position++;
+			return k;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int k = in.read(b, off, len);
+			if (k > 0)
+				position += k;
+			return k;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long k = IOUtils.skipFully(in, n);
+			position += k;
+			return k;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+	final GifLogicalScreenDescriptor lsd;
+	final GifGlobalColorTable globalTable;
+	final List<Frame> frames = new ArrayList<Frame>();
+	int loopCount = -1;
+	int duration = 0;
+
+	/**
+	 * Index a GIF file.
+	 * 
+	 * @param file
+	 *            the file to index. This is memory-mapped, so the underlying
+	 *            data is read directly from the operating system's cache.
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public GifFrameIndex(File file) throws IOException {
+		this(new ByteBufferInputStream(IOUtils.map(file)));
+	}
+
+	/**
+	 * Index a GIF file.
+	 * 
+	 * @param in
+	 *            the stream to read. This is not closed, and it should start
+	 *            at the beginning of the file, because offsets are measured
+	 *            from the first byte this reads.
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public GifFrameIndex(InputStream in) throws IOException {
+		PositionInputStream data = new PositionInputStream(in);
+		GifParser p = new GifParser(data);
+		p.readNextBlock(); // read & ignore header.
+		lsd = (GifLogicalScreenDescriptor) p.readNextBlock();
+		if (lsd.hasGlobalColorTable()) {
+			globalTable = (GifGlobalColorTable) p.readNextBlock();
+		} else {
+			globalTable = null;
+		}
+
+		long frameOffset = data.position;
+		GifGraphicControlExtension gce = null;
+		GifImageDescriptor descriptor = null;
+		while (true) {
+			int type;
+			try {
+				type = p.getNextBlockType();
+			} catch (IOException e) {
+				// tolerate files that are missing a trailer
+				if (frames.size() == 0)
+					throw e;
+				break;
+			}
+			if (type == -1 || type == GifBlock.TRAILER) {
+				break;
+			} else if (type == GifBlock.GRAPHIC_CONTROL_EXTENSION) {
+				gce = (GifGraphicControlExtension) p.readNextBlock();
+			} else if (type == GifBlock.IMAGE_DESCRIPTOR) {
+				descriptor = (GifImageDescriptor) p.readNextBlock();
+			} else if (type == GifBlock.APPLICATION_EXTENSION) {
+				GifBlock b = p.readNextBlock();
+				if (b instanceof GifLoopingApplicationExtension) {
+					loopCount = ((GifLoopingApplicationExtension) b)
+							.getLoopCount();
+				}
+			} else if (type == GifBlock.IMAGE_DATA) {
+				p.skipNextBlock();
+				Frame frame = new Frame(frames.size(), frameOffset,
+						descriptor, gce);
+				frames.add(frame);
+				duration += frame.delayTime;
+				gce = null;
+				descriptor = null;
+				frameOffset = data.position;
+			} else {
+				p.skipNextBlock();
+			}
+		}
+
+		int w = lsd.getWidth();
+		int h = lsd.getHeight();
+		// whether the canvas is empty before the next frame is drawn:
+		boolean emptyCanvas = true;
+		for (Frame frame : frames) {
+			frame.restorePoint = emptyCanvas
+					|| (frame.covers(w, h)
+							&& frame.transparentColorIndex == -1 && frame.disposalMethod != DisposalMethod.PREVIOUS);
+			if (frame.disposalMethod == DisposalMethod.RESTORE_BACKGROUND) {
+				// see GifReader.GifFrame.dispose(): this only clears the
+				// frame if it has a transparent index; otherwise it paints
+				// the background color.
+				if (frame.transparentColorIndex == -1) {
+					emptyCanvas = false;
+				} else {
+					emptyCanvas = emptyCanvas || frame.covers(w, h);
+				}
+			} else if (frame.disposalMethod != DisposalMethod.PREVIOUS) {
+				emptyCanvas = false;
+			}
+		}
+	}
+
+	/** @return the number of frames in this file. */
+	public int getFrameCount() {
+		return frames.size();
+	}
+
+	/**
+	 * @param index
+	 *            the index of a frame, starting at zero.
+	 * @return information about that frame.
+	 */
+	public Frame getFrame(int index) {
+		return frames.get(index);
+	}
+
+	/** @return all the frames in this file. */
+	public List<Frame> getFrames() {
+		return Collections.unmodifiableList(frames);
+	}
+
+	/**
+	 * @param index
+	 *            the index of a frame, starting at zero.
+	 * @return the index of the last restore point at or before that frame.
+	 */
+	public int getRestorePoint(int index) {
+		if (index < 0 || index >= frames.size())
+			throw new IndexOutOfBoundsException("index = " + index
+					+ ", frame count = " + frames.size());
+		while (!frames.get(index).restorePoint) {
+			index--;
+		}
+		return index;
+	}
+
+	/** @return the total duration of all the frames, in milliseconds. */
+	public int getDuration() {
+		return duration * 10;
+	}
+
+	/**
+	 * @return the loop count of the looping application extension, or -1 if
+	 *         this file didn't have one.
+	 */
+	public int getLoopCount() {
+		return loopCount;
+	}
+
+	public GifLogicalScreenDescriptor getLogicalScreenDescriptor() {
+		return lsd;
+	}
+
+	/** @return the global color table, or <code>null</code>. */
+	public GifGlobalColorTable getGlobalColorTable() {
+		return globalTable;
+	}
+}
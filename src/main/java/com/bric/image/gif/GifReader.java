@@ -19,12 +19,15 @@
  */
 package com.bric.image.gif;
 
+import java.awt.AlphaComposite;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Vector;
@@ -44,6 +47,8 @@ import com.bric.image.gif.block.GifLogicalScreenDescriptor;
 import com.bric.image.gif.block.GifLoopingApplicationExtension;
 import com.bric.image.gif.block.GifParser;
 import com.bric.image.gif.block.GifPlainTextExtension;
+import com.bric.io.ByteBufferInputStream;
+import com.bric.io.IOUtils;
 
 /**
  * This is an efficient way to iterate through a GIF image. This efficiently
@@ -62,6 +67,11 @@ import com.bric.image.gif.block.GifPlainTextExtension;
  * <code>nextFrame()</code> the previous data is discarded. This should make
  * it possible to traverse through obscenely large GIF files (I've seen 2-second
  * GIF files that are over 1 MB).
+ * <P>
+ * If this reader is constructed with a <code>File</code> or a
+ * <code>ByteBuffer</code>, then it first builds a {@link GifFrameIndex} and it
+ * can jump to any frame with {@link #getFrame(int, boolean)}. Files are
+ * memory-mapped, so jumping around a file doesn't re-read it.
  */
 public class GifReader implements AnimationReader, GifConstants {
 	/**
@@ -369,10 +379,46 @@ public class GifReader implements AnimationReader, GifConstants {
 	int duration = -1;
 	int frameCount = -1;
 
+	/** The source data, if this reader is seekable. */
+	ByteBuffer data;
+	/** The index of the frames in <code>data</code>, if this reader is seekable. */
+	GifFrameIndex index;
+	/** The index of the frame currently rendered in <code>bi</code>, or -1. */
+	int frameIndex = -1;
+	/** The largest frame index this reader has parsed. */
+	int lastFrameParsed = -1;
+
+	/**
+	 * Creates a seekable <code>GifReader</code> for a memory-mapped file.
+	 * 
+	 * @param file the GIF file to read.
+	 * @throws IOException if an IO problem occurs.
+	 */
 	public GifReader(File file) throws IOException {
-		this(new FileInputStream(file), true);
-		frameCount = getFrameCount(file);
-		duration = getDuration(file);
+		this(IOUtils.map(file));
+	}
+
+	/**
+	 * Creates a seekable <code>GifReader</code>.
+	 * 
+	 * @param data
+	 *            the contents of a GIF file, from its position to its limit.
+	 *            The position of this buffer is not modified.
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public GifReader(ByteBuffer data) throws IOException {
+		this(data.slice(), new GifFrameIndex(new ByteBufferInputStream(
+				data.slice())));
+	}
+
+	private GifReader(ByteBuffer data, GifFrameIndex index) throws IOException {
+		this(new ByteBufferInputStream(data.duplicate()), false);
+		this.data = data;
+		this.index = index;
+		frameCount = index.getFrameCount();
+		duration = index.getDuration();
+		if (loopCount == -1)
+			loopCount = index.getLoopCount();
 	}
 
 	public int getFrameCount() {
@@ -424,7 +470,7 @@ public class GifReader implements AnimationReader, GifConstants {
 	public int getLoopCount() {
 		if (loopCount >= 0)
 			return loopCount;
-		if (finished)
+		if (finished || index != null)
 			return 1;
 		return -1;
 	}
@@ -452,13 +498,135 @@ public class GifReader implements AnimationReader, GifConstants {
 	 *         frames.
 	 */
 	public BufferedImage getNextFrame(boolean cloneImage) throws IOException {
+		if (!readFrame(true))
+			return null;
+		return getImage(cloneImage);
+	}
+
+	/**
+	 * @return whether this reader can return frames in any order. This is
+	 *         <code>true</code> if it was constructed with a
+	 *         <code>File</code> or a <code>ByteBuffer</code>.
+	 */
+	public boolean isSeekable() {
+		return index != null;
+	}
+
+	/**
+	 * @return the index of the frames in this GIF, or <code>null</code> if
+	 *         this reader is not seekable.
+	 */
+	public GifFrameIndex getFrameIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the index of the frame last returned by
+	 *         <code>getNextFrame()</code> or <code>getFrame()</code>, or -1
+	 *         if no frames have been read yet.
+	 */
+	public int getCurrentFrameIndex() {
+		return frameIndex;
+	}
+
+	/**
+	 * Returns a specific frame. After this method returns,
+	 * <code>getNextFrame()</code> continues from this frame.
+	 * <P>
+	 * If this reader is seekable then this only decodes frames starting at
+	 * the nearest restore point (see {@link GifFrameIndex}), or at the
+	 * current frame if that is closer. Frames in between that are disposed
+	 * of without being seen are skipped over entirely.
+	 * <P>
+	 * If this reader is not seekable then it can only move forward.
+	 * 
+	 * @param i
+	 *            the index of the frame, starting at zero.
+	 * @param cloneImage
+	 *            if this is <code>true</code>, this method will always
+	 *            return a new <code>BufferedImage</code>.
+	 * @return the frame image, or <code>null</code> if there is no such frame.
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public BufferedImage getFrame(int i, boolean cloneImage) throws IOException {
+		if (i < 0)
+			throw new IndexOutOfBoundsException("frame index = " + i);
+		if (index != null && i >= index.getFrameCount())
+			return null;
+		if (i == frameIndex)
+			return getImage(cloneImage);
+		if (index == null) {
+			if (i < frameIndex)
+				throw new IllegalStateException(
+						"This reader cannot go back to frame " + i
+								+ " from frame " + frameIndex
+								+ " because it is not seekable.");
+		} else {
+			int restorePoint = index.getRestorePoint(i);
+			if (i < frameIndex || frameIndex < restorePoint - 1) {
+				// start over at the restore point
+				GifFrameIndex.Frame start = index.getFrame(restorePoint);
+				ByteBuffer buffer = data.duplicate();
+				buffer.position((int) start.getOffset());
+				p = new GifParser(new ByteBufferInputStream(buffer), lsd,
+						global);
+				finished = false;
+				frame = null;
+				frameIndex = restorePoint - 1;
+				if (bi != null) {
+					Graphics2D g = bi.createGraphics();
+					g.setComposite(AlphaComposite.Clear);
+					g.fillRect(0, 0, bi.getWidth(), bi.getHeight());
+					g.dispose();
+				}
+			}
+		}
+		while (frameIndex < i - 1) {
+			boolean decode = true;
+			if (index != null) {
+				// if a frame will be disposed of before it is seen, we don't
+				// need to decode its pixels
+				DisposalMethod m = index.getFrame(frameIndex + 1)
+						.getDisposalMethod();
+				decode = m != DisposalMethod.PREVIOUS
+						&& m != DisposalMethod.RESTORE_BACKGROUND;
+			}
+			if (!readFrame(decode))
+				return null;
+		}
+		return getNextFrame(cloneImage);
+	}
+
+	/**
+	 * Reads the next frame and renders it.
+	 * 
+	 * @param decode
+	 *            if this is false then the image data of this frame is
+	 *            skipped. This is only appropriate if the frame is going to be
+	 *            disposed of before anyone sees it, and its disposal method
+	 *            doesn't depend on its pixels.
+	 * @return false if there are no more frames.
+	 */
+	private boolean readFrame(boolean decode) throws IOException {
 		if (frame != null)
 			frame.dispose(bi);
+		frame = null;
 		gce = null;
 		localTable = null;
 		imageDescriptor = null;
 		imageData = null;
-		while (finished == false && imageData == null) {
+		InputStream pixelData = null;
+		boolean parsedBefore = frameIndex + 1 <= lastFrameParsed;
+		while (finished == false && imageData == null && pixelData == null) {
+			if (imageDescriptor != null && p.getNextBlockType() == GifBlock.IMAGE_DATA) {
+				if (!decode) {
+					p.skipNextBlock();
+					break;
+				}
+				// decode the pixels as they're read instead of buffering the whole block
+				pixelData = p.readImageData();
+				break;
+			}
 			GifBlock b = p.readNextBlock();
 			if (b == null) {
 				finished = true;
@@ -471,7 +639,8 @@ public class GifReader implements AnimationReader, GifConstants {
 				localTable = (GifLocalColorTable) b;
 			} else if (b instanceof GifCommentExtension) {
 				GifCommentExtension c = (GifCommentExtension) b;
-				comments.add(c.getText());
+				if (!parsedBefore)
+					comments.add(c.getText());
 			} else if (b instanceof GifGraphicControlExtension) {
 				gce = (GifGraphicControlExtension) b;
 			} else if (b instanceof GifImageDataBlock) {
@@ -485,7 +654,7 @@ public class GifReader implements AnimationReader, GifConstants {
 			}
 		}
 		if (finished)
-			return null;
+			return false;
 
 		if (bi == null) {
 			bi = new BufferedImage(getWidth(), getHeight(),
@@ -499,8 +668,20 @@ public class GifReader implements AnimationReader, GifConstants {
 			throw new RuntimeException(
 					"There was no local or global color table available.");
 		frame = new GifFrame(lsd, gce, colorTable, imageDescriptor, imageData);
-		frame.render(bi);
+		if (pixelData != null) {
+			frame.render(bi, pixelData);
+		} else if (imageData != null) {
+			frame.render(bi);
+		}
+		frameIndex++;
+		lastFrameParsed = Math.max(lastFrameParsed, frameIndex);
+		return true;
+	}
 
+	/** Return the image of the current frame. */
+	private BufferedImage getImage(boolean cloneImage) {
+		if (bi == null)
+			return null;
 		if (cloneImage) {
 			BufferedImage bi2 = new BufferedImage(bi.getWidth(),
 					bi.getHeight(), BufferedImage.TYPE_INT_ARGB);
@@ -602,7 +783,68 @@ public class GifReader implements AnimationReader, GifConstants {
 		public String toString() {
 			return ("x1=" + x1 + " x2=" + x2 + " y1=" + y1 + " y2=" + y2
 					+ " interlaced=" + imageDescriptor.isInterlaced()
-					+ " data.length=" + imageData.getUncompressedBytes().length);
+					+ (imageData == null ? "" : " data.length=" + imageData.getUncompressedBytes().length));
+		}
+
+		/**
+		 * Render this frame from a stream of color indices.
+		 * <P>
+		 * This only holds one row of the frame in memory at a time (plus the
+		 * previous pixels, if the disposal method requires them).
+		 * 
+		 * @param image the image to render to.
+		 * @param indices the uncompressed image data, as returned by
+		 * {@link GifParser#readImageData()}.
+		 * @throws IOException if an IO problem occurs.
+		 */
+		public void render(BufferedImage image, InputStream indices) throws IOException {
+			if (x2 - x1 == 0 && y2 - y1 == 0)
+				return;
+			if (disposalMethod == DisposalMethod.PREVIOUS) {
+				previous = (int[]) image.getRaster().getDataElements(x1, y1,
+						x2 - x1, y2 - y1, null);
+			}
+
+			int width = imageDescriptor.getWidth();
+			int height = imageDescriptor.getHeight();
+			boolean interlaced = imageDescriptor.isInterlaced();
+			int transparentIndex = -1;
+			if (gce != null)
+				transparentIndex = gce.getTransparentColorIndex();
+			
+			byte[] row = new byte[width];
+			int[] array = new int[x2 - x1];
+			for (int index = 0; index < height; index++) {
+				int length = readFully(indices, row);
+				int y = imageDescriptor.getY() + (interlaced ? GifInterlace.getRow(index, height) : index);
+				if (y >= y1 && y < y2 && length > 0) {
+					image.getRaster().getDataElements(x1, y, x2 - x1, 1, array);
+					for (int x = x1; x < x2; x++) {
+						int sourceX = x - imageDescriptor.getX();
+						if (sourceX >= length)
+							break;
+						int i = (row[sourceX] & 0xFF);
+						if (i != transparentIndex) {
+							array[x - x1] = colorTable.getRGB(i);
+						}
+					}
+					image.getRaster().setDataElements(x1, y, x2 - x1, 1, array);
+				}
+				if (length < width)
+					return;
+			}
+		}
+		
+		/** Read as much of an array as possible, and return the number of bytes read. */
+		private int readFully(InputStream in, byte[] dest) throws IOException {
+			int length = 0;
+			while (length < dest.length) {
+				int t = in.read(dest, length, dest.length - length);
+				if (t == -1)
+					return length;
+				length += t;
+			}
+			return length;
 		}
 
 		public void render(BufferedImage image) {
@@ -645,7 +887,7 @@ public class GifReader implements AnimationReader, GifConstants {
 			if (x2 - x1 == 0 && y2 - y1 == 0)
 				return;
 			if (previous != null) {
-				image.getRaster().setDataElements(x1, y1, x2, y2, previous);
+				image.getRaster().setDataElements(x1, y1, x2 - x1, y2 - y1, previous);
 				return;
 			}
 
@@ -35,7 +35,9 @@ import com.bric.image.gif.block.GifLogicalScreenDescriptor;
 import com.bric.image.gif.block.GifLoopingApplicationExtension;
 import com.bric.image.gif.block.GifTrailerBlock;
 import com.bric.image.pixel.quantize.BiasedMedianCutColorQuantization;
+import com.bric.image.pixel.quantize.ColorQuantization;
 import com.bric.image.pixel.quantize.ColorSet;
+import com.bric.image.pixel.quantize.OctreeColorQuantization;
 import com.bric.util.Resettable;
 
 public class GifWriter {
@@ -47,14 +49,65 @@ public class GifWriter {
 		/** This indicates every frame should have a localized color palette. */
 		LOCALIZE_PALETTES };
 	
+	/** Collects the colors of one or more frames and reduces them to a 255-color palette. */
+	private static class PaletteBuilder {
+		final ColorQuantization quantization;
+		final int parallelism;
+		final ColorSet colors;
+		final OctreeColorQuantization.Octree octree;
+		
+		PaletteBuilder(ColorQuantization quantization,int parallelism) {
+			this.quantization = quantization;
+			this.parallelism = parallelism;
+			if(quantization instanceof OctreeColorQuantization) {
+				octree = ((OctreeColorQuantization)quantization).createOctree();
+				colors = null;
+			} else {
+				octree = null;
+				colors = new ColorSet();
+			}
+		}
+		
+		void addColors(BufferedImage bi) {
+			if(octree!=null) {
+				octree.addColors(bi);
+			} else {
+				colors.addColors(bi, parallelism);
+			}
+		}
+		
+		IndexColorModel createIndexColorModel() {
+			ColorSet reducedColors;
+			if(octree!=null) {
+				reducedColors = octree.createColorSet(255);
+			} else {
+				reducedColors = quantization.createReducedSet(colors, 255, false);
+			}
+			return reducedColors.createIndexColorModel(true, true);
+		}
+	}
+	
 	public static void write(File gifFile,AnimationReader animation,ColorReduction colorReduction) throws IOException {
+		write(gifFile, animation, colorReduction, new BiasedMedianCutColorQuantization());
+	}
+	
+	/** Write an animation as a GIF.
+	 * 
+	 * @param gifFile the file to write.
+	 * @param animation the animation to write.
+	 * @param colorReduction how to create color palettes.
+	 * @param quantization the algorithm used to reduce each palette to 255 colors.
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public static void write(File gifFile,AnimationReader animation,ColorReduction colorReduction,ColorQuantization quantization) throws IOException {
 		if(gifFile==null) throw new NullPointerException();
 		if(animation==null) throw new NullPointerException();
 		if(colorReduction==null) throw new NullPointerException();
+		if(quantization==null) throw new NullPointerException();
 		FileOutputStream fileOut = null;
 		try {
 			fileOut = new FileOutputStream(gifFile);
-			write(fileOut, animation, colorReduction, true);
+			write(fileOut, animation, colorReduction, quantization, true, Runtime.getRuntime().availableProcessors());
 		} finally {
 			if(fileOut!=null) {
 				try {
@@ -65,20 +118,53 @@ public class GifWriter {
 	}
 	
 	public static void write(OutputStream out,AnimationReader animation,ColorReduction colorReduction,boolean close) throws IOException {
+		write(out, animation, colorReduction, close, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/** Write an animation as a GIF.
+	 * 
+	 * @param out the stream to write to.
+	 * @param animation the animation to write.
+	 * @param colorReduction how to create color palettes.
+	 * @param close whether <code>out</code> should be closed when this method returns.
+	 * @param parallelism the number of threads used to count the colors in each frame.
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public static void write(OutputStream out,AnimationReader animation,ColorReduction colorReduction,boolean close,int parallelism) throws IOException {
+		write(out, animation, colorReduction, new BiasedMedianCutColorQuantization(), close, parallelism);
+	}
+	
+	/** Write an animation as a GIF.
+	 * <p>If <code>quantization</code> is an {@link OctreeColorQuantization}, then
+	 * frames are streamed directly into an octree and no complete
+	 * <code>ColorSet</code> is ever built. This keeps memory bounded for very
+	 * large frames (or for <code>FROM_ALL_FRAMES</code> with many frames).
+	 * 
+	 * @param out the stream to write to.
+	 * @param animation the animation to write.
+	 * @param colorReduction how to create color palettes.
+	 * @param quantization the algorithm used to reduce each palette to 255 colors.
+	 * @param close whether <code>out</code> should be closed when this method returns.
+	 * @param parallelism the number of threads used to count the colors in each frame
+	 * and to encode frames.
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public static void write(OutputStream out,AnimationReader animation,ColorReduction colorReduction,
+			ColorQuantization quantization,boolean close,int parallelism) throws IOException {
 		if(out==null) throw new NullPointerException();
 		if(animation==null) throw new NullPointerException();
 		if(colorReduction==null) throw new NullPointerException();
+		if(quantization==null) throw new NullPointerException();
 
-		BiasedMedianCutColorQuantization reducer = new BiasedMedianCutColorQuantization();
+		PaletteBuilder palette = new PaletteBuilder(quantization, parallelism);
 
 		CachedAnimation manufacturedAnimation = null;
 		try {
 			IndexColorModel globalColorModel;
 			BufferedImage bi;
-			ColorSet originalColors = new ColorSet();
 			if(ColorReduction.FROM_FIRST_FRAME.equals(colorReduction) || ColorReduction.LOCALIZE_PALETTES.equals(colorReduction)) {
-				bi = animation.getNextFrame(false);
-				originalColors.addColors(bi);
+				bi = animation.getNextFrame(true);
+				palette.addColors(bi);
 			} else if(ColorReduction.FROM_ALL_FRAMES.equals(colorReduction)) {
 				//make something the animation is resettable:
 				if(!(animation instanceof Resettable)) {
@@ -88,22 +174,20 @@ public class GifWriter {
 
 				bi = animation.getNextFrame(false);
 				while(bi!=null) {
-					originalColors.addColors(bi);
+					palette.addColors(bi);
 					bi = animation.getNextFrame(false);
 				}
 				((Resettable)animation).reset();
-				bi = animation.getNextFrame(false);
+				bi = animation.getNextFrame(true);
 			} else {
 				throw new IllegalArgumentException("unrecognized color reduction type: "+colorReduction);
 			}
-			ColorSet reducedColors = reducer.createReducedSet(originalColors, 255, false);
-			
-			globalColorModel = reducedColors.createIndexColorModel(true, true);
+			globalColorModel = palette.createIndexColorModel();
 			GifWriter writer = new GifWriter(out, 
 					new Dimension(bi.getWidth(), bi.getHeight()),
 					globalColorModel,
 					animation.getLoopCount(),
-					0, null);
+					0, GifEncoderFactory.get().createEncoder(parallelism));
 			
 			/* In gifs: frame durations are expressed in 1/100's of a second.
 			 * We'll have to round (and in some cases drop frames) to
@@ -120,10 +204,9 @@ public class GifWriter {
 				if(centiseconds>=2) {
 					IndexColorModel localPalette = null;
 					if(frameIndex>0 && ColorReduction.LOCALIZE_PALETTES.equals(colorReduction)) {
-						ColorSet localColors = new ColorSet();
+						PaletteBuilder localColors = new PaletteBuilder(quantization, parallelism);
 						localColors.addColors(bi);
-						ColorSet localReducedColors = reducer.createReducedSet(localColors, 255, false);
-						localPalette = localReducedColors.createIndexColorModel(true, true);
+						localPalette = localColors.createIndexColorModel();
 					}
 					writer.write(bi, centiseconds*10, localPalette);
 				} else {
@@ -300,8 +383,7 @@ public class GifWriter {
 		if (colorModel == null) {
 			makeLocalTable = true;
 			/** We have to create a new IndexColorModel */
-			ColorSet origColors = new ColorSet();
-			origColors.addColors(img);
+			ColorSet origColors = new ColorSet(img, Runtime.getRuntime().availableProcessors());
 			ColorSet reduced = new BiasedMedianCutColorQuantization().createReducedSet(origColors, 255, false);
 			colorModel = reduced.createIndexColorModel(true, true);
 		}
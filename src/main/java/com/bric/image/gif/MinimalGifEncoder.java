@@ -74,8 +74,7 @@ public class MinimalGifEncoder extends GifEncoder {
 			GifLocalColorTable ct = new GifLocalColorTable(globalColorModel);
 			ct.write(out);
 		}
-		GifImageDataBlock dataBlock = new GifImageDataBlock(image, globalColorModel);
-		dataBlock.write(out);
+		GifImageDataBlock.write(out, image, globalColorModel, Runtime.getRuntime().availableProcessors());
 	}
 
 	/** This does nothing for the SimpleGifEncoder */
@@ -25,6 +25,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 
 import com.bric.image.gif.lzw.LZWInputStream;
 import com.bric.image.gif.lzw.LZWOutputStream;
@@ -71,11 +72,22 @@ public class GifImageDataBlock extends GifBlock {
 	}
 	
 	public GifImageDataBlock(BufferedImage src, IndexColorModel colorModel) {
+		this(src, colorModel, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/** Create a block of image data by dithering an image to a color palette.
+	 * 
+	 * @param src the image to encode.
+	 * @param colorModel the palette to reduce the image to.
+	 * @param parallelism the maximum number of threads used to dither the image.
+	 * The output does not depend on this value.
+	 */
+	public GifImageDataBlock(BufferedImage src, IndexColorModel colorModel, int parallelism) {
 		int w = src.getWidth();
 		int h = src.getHeight();
 		
 		ColorLUT lut = new ColorLUT(colorModel);
-		IndexedBytePixelIterator iter = ImageQuantization.MOST_DIFFUSION.createImageData(src, lut);
+		IndexedBytePixelIterator iter = ImageQuantization.MOST_DIFFUSION.createImageData(src, lut, parallelism);
 		
 		byte[] block = new byte[w];
 
@@ -96,6 +108,52 @@ public class GifImageDataBlock extends GifBlock {
 		}
 	}
 
+	/**
+	 * Write an image data block without holding the compressed data in memory.
+	 * <P>
+	 * The LZW output is framed into 255-byte sub-blocks as it is produced and
+	 * written straight to <code>out</code>, so this only needs one row of pixels
+	 * and one sub-block at a time. The bytes written are identical to
+	 * <code>new GifImageDataBlock(imageData, colorModel).write(out)</code>.
+	 * 
+	 * @param out the stream to write to.
+	 * @param imageData the indexed pixels to encode.
+	 * @param colorModel the color model the pixels refer to.
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public static void write(OutputStream out, IndexedBytePixelIterator imageData, IndexColorModel colorModel) throws IOException {
+		int w = imageData.getWidth();
+		int h = imageData.getHeight();
+		int colorDepth = getColorDepth(colorModel);
+		
+		out.write(colorDepth);
+		GifSubBlockOutputStream subBlocks = new GifSubBlockOutputStream(out);
+		LZWOutputStream lzw = new LZWOutputStream(subBlocks, colorDepth, false);
+		byte[] row = new byte[w];
+		for (int y = 0; y < h; y++) {
+			imageData.next(row);
+			lzw.write(row);
+		}
+		lzw.finish();
+		subBlocks.finish();
+	}
+	
+	/**
+	 * Dither an image and write it as an image data block without holding
+	 * the compressed data in memory.
+	 * 
+	 * @param out the stream to write to.
+	 * @param src the image to encode.
+	 * @param colorModel the palette to reduce the image to.
+	 * @param parallelism the maximum number of threads used to dither the image.
+	 * If this is 1 then only one row of the image is dithered at a time.
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public static void write(OutputStream out, BufferedImage src, IndexColorModel colorModel, int parallelism) throws IOException {
+		ColorLUT lut = new ColorLUT(colorModel);
+		write(out, ImageQuantization.MOST_DIFFUSION.createImageData(src, lut, parallelism), colorModel);
+	}
+
 	/**
 	 * This returns the number of bits you'll need to represent all the colors
 	 * in a color model, or this throws an exception if there are over 256
@@ -147,7 +205,16 @@ public class GifImageDataBlock extends GifBlock {
 	}
 
 	public int getByteCount() {
-		return getBytes().length;
+		int blocks = (encodedData.length + 254) / 255;
+		return 1 + blocks + encodedData.length + 1;
+	}
+
+	@Override
+	public void write(OutputStream out) throws IOException {
+		out.write(minimumLZWCodeSize);
+		GifSubBlockOutputStream subBlocks = new GifSubBlockOutputStream(out);
+		subBlocks.write(encodedData);
+		subBlocks.finish();
 	}
 
 	public InputStream getUncompressedInputStream() {
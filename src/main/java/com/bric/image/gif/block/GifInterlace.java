@@ -141,6 +141,29 @@ public class GifInterlace {
 		map(map, data, width);
 	}
 
+	/**
+	 * Return the row a line of interlaced data belongs in.
+	 * 
+	 * @param index the order this row appears in the interlaced data.
+	 * @param height the height of the image.
+	 * @return the row (from 0 to height-1) of the image this line belongs in.
+	 */
+	public static int getRow(int index, int height) {
+		int pass1 = (height + 7) / 8;
+		if (index < pass1)
+			return index * 8;
+		index -= pass1;
+		int pass2 = (height + 3) / 8;
+		if (index < pass2)
+			return 4 + index * 8;
+		index -= pass2;
+		int pass3 = (height + 1) / 4;
+		if (index < pass3)
+			return 2 + index * 4;
+		index -= pass3;
+		return 1 + index * 2;
+	}
+
 	private static void map(int[] m, int[] array, int width) {
 		int[] t = new int[width];
 		int[] t2 = new int[width];
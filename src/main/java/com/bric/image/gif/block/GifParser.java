@@ -23,6 +23,9 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
+import com.bric.image.gif.lzw.LZWInputStream;
+import com.bric.io.IOUtils;
+
 /**
  * This efficiently parses out an <code>InputStream</code> into the
  * appropriate {@link com.bric.image.gif.block.GifBlock}'s.
@@ -47,6 +50,51 @@ public class GifParser {
 		this.in = in;
 	}
 
+	/**
+	 * Creates a <code>GifParser</code> that resumes parsing in the middle of a
+	 * GIF file.
+	 * 
+	 * @param in
+	 *            a stream positioned at a block that follows the global color
+	 *            table (or the logical screen descriptor, if there is no global
+	 *            color table). For example: the offset of a frame in a
+	 *            {@link com.bric.image.gif.GifFrameIndex}.
+	 *            <P>
+	 *            This is <i>not</i> closed, unless you explicitly call the
+	 *            <code>close()</code> method.
+	 * @param lsd
+	 *            the logical screen descriptor of the file.
+	 * @param globalTable
+	 *            the global color table of the file, or <code>null</code> if
+	 *            it doesn't have one.
+	 */
+	public GifParser(InputStream in, GifLogicalScreenDescriptor lsd,
+			GifGlobalColorTable globalTable) {
+		if (lsd.hasGlobalColorTable() && globalTable == null)
+			throw new NullPointerException(
+					"The global color table is required.");
+		this.in = in;
+		this.lsd = lsd;
+		this.globalTable = globalTable;
+		readHeader = true;
+	}
+
+	/**
+	 * @return the logical screen descriptor, or <code>null</code> if it
+	 *         hasn't been read yet.
+	 */
+	public GifLogicalScreenDescriptor getLogicalScreenDescriptor() {
+		return lsd;
+	}
+
+	/**
+	 * @return the global color table, or <code>null</code> if it hasn't been
+	 *         read yet (or if there isn't one).
+	 */
+	public GifGlobalColorTable getGlobalColorTable() {
+		return globalTable;
+	}
+
 	private GifHeaderBlock readHeader() throws IOException {
 		byte[] b = new byte[6];
 		read2(b, false);
@@ -179,6 +227,36 @@ public class GifParser {
 		}
 	}
 
+	/** The image data returned by <code>readImageData()</code>, if it may not be finished yet. */
+	private GifSubBlockInputStream openImageData;
+
+	/**
+	 * This reads the next block as a stream of uncompressed color indices,
+	 * instead of reading all of its compressed data into a
+	 * {@link com.bric.image.gif.block.GifImageDataBlock}.
+	 * <P>
+	 * The returned stream reads sub-blocks from the underlying
+	 * <code>InputStream</code> as they are needed. It is only valid until the
+	 * next call to this parser: if you request another block, then any
+	 * data you haven't read is skipped.
+	 * 
+	 * @return the uncompressed image data.
+	 * @throws IOException if an IO problem occurs.
+	 * @throws IllegalStateException if the next block is not <code>IMAGE_DATA</code>.
+	 */
+	public InputStream readImageData() throws IOException {
+		int i = getNextBlockType();
+		if (i != GifBlock.IMAGE_DATA)
+			throw new IllegalStateException("The next block is not image data (" + i + ")");
+		lastBlockType = i;
+		cachedNextType = -1;
+		int minimumLZWCodeSize = in.read();
+		if (minimumLZWCodeSize == -1)
+			throw new IOException("Unexpected end of input stream.");
+		openImageData = new GifSubBlockInputStream(in);
+		return new LZWInputStream(openImageData, minimumLZWCodeSize);
+	}
+
 	/**
 	 * This closes the underlying <code>InputStream</code>.
 	 * @throws IOException if an IO problem occurs.
@@ -212,6 +290,11 @@ public class GifParser {
 		 * There are a few basic rules here... depending on the last block, we
 		 * MAY already know what the next block should be:
 		 */
+		if (openImageData != null) {
+			// skip whatever the caller didn't read
+			openImageData.skipRemaining();
+			openImageData = null;
+		}
 		if (lastBlockType == GifBlock.LOCAL_COLOR_TABLE) {
 			cachedNextType = GifBlock.IMAGE_DATA;
 			return cachedNextType;
@@ -355,11 +438,14 @@ public class GifParser {
 	 * subblocks, this skips over them.
 	 */
 	private void skipSubBlocks() throws IOException {
-		int i = in.read() & 0xFF;
-		while (i != 0) {
-			in.skip(i);
-			i = in.read() & 0xFF;
+		int i = in.read();
+		while (i > 0) {
+			if (IOUtils.skipFully(in, i) != i)
+				throw new IOException("Unexpected end of input stream.");
+			i = in.read();
 		}
+		if (i == -1)
+			throw new IOException("Unexpected end of input stream.");
 	}
 
 	/**
@@ -0,0 +1,121 @@
+/*
+ * @(#)GifSubBlockInputStream.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.gif.block;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * This reads the data in a series of GIF sub-blocks, stopping at the
+ * <code>0x00</code> terminator.
+ * <P>
+ * Unlike reading all the sub-blocks into one array first, this only
+ * reads from the underlying stream as data is requested.
+ */
+public class GifSubBlockInputStream extends InputStream {
+	private final InputStream in;
+	/** The number of bytes left in the current sub-block. */
+	private int remaining = 0;
+	private boolean finished = false;
+	
+	/**
+	 * @param in the stream to read sub-blocks from. This should be positioned
+	 * at the size byte of the first sub-block. This is not closed when this
+	 * stream is closed.
+	 */
+	public GifSubBlockInputStream(InputStream in) {
+		this.in = in;
+	}
+	
+	/** Advance to a sub-block that has data in it.
+	 * @return false if we reached the terminator.
+	 */
+	private boolean nextBlock() throws IOException {
+		while(remaining==0 && !finished) {
+			int size = in.read();
+			if(size==-1)
+				throw new EOFException("Unexpected end of input stream.");
+			if(size==0) {
+				finished = true;
+			} else {
+				remaining = size;
+			}
+		}
+		return !finished;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if(!nextBlock())
+			return -1;
+		int k = in.read();
+		if(k==-1)
+			throw new EOFException("Unexpected end of input stream.");
+		remaining--;
+		return k;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if(len==0)
+			return 0;
+		if(!nextBlock())
+			return -1;
+		int t = in.read(b, off, Math.min(len, remaining));
+		if(t==-1)
+			throw new EOFException("Unexpected end of input stream.");
+		remaining -= t;
+		return t;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if(finished)
+			return 0;
+		return Math.min(remaining, in.available());
+	}
+	
+	/** @return true if the terminator has been read. */
+	public boolean isFinished() {
+		return finished;
+	}
+	
+	/** Skip all remaining sub-blocks, including the terminator. 
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public void skipRemaining() throws IOException {
+		while(nextBlock()) {
+			long skipped = in.skip(remaining);
+			if(skipped<=0) {
+				if(in.read()==-1)
+					throw new EOFException("Unexpected end of input stream.");
+				skipped = 1;
+			}
+			remaining -= (int)skipped;
+		}
+	}
+
+	/** This skips any remaining sub-blocks, but does not close the underlying stream. */
+	@Override
+	public void close() throws IOException {
+		skipRemaining();
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * @(#)GifSubBlockOutputStream.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.gif.block;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This writes data as a series of GIF sub-blocks, followed by a terminator
+ * of <code>0x00</code>.
+ * <P>
+ * Every sub-block holds up to 255 bytes, so this only ever buffers one
+ * sub-block at a time. This is the streaming equivalent of
+ * {@link GifBlock#writeSubBlocks(byte[])}: the bytes written to the
+ * underlying stream are identical.
+ */
+public class GifSubBlockOutputStream extends OutputStream {
+	private final OutputStream out;
+	/** The current sub-block. The first byte is reserved for its size. */
+	private final byte[] block = new byte[256];
+	private int size = 0;
+	private boolean finished = false;
+	
+	/**
+	 * @param out the stream to write sub-blocks to. This is not closed
+	 * when this stream is closed.
+	 */
+	public GifSubBlockOutputStream(OutputStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if(finished)
+			throw new IOException("This stream has already been finished.");
+		if(size==255)
+			writeBlock();
+		block[1 + size++] = (byte)b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if(finished)
+			throw new IOException("This stream has already been finished.");
+		while(len>0) {
+			if(size==255)
+				writeBlock();
+			int k = Math.min(len, 255 - size);
+			System.arraycopy(b, off, block, 1 + size, k);
+			size += k;
+			off += k;
+			len -= k;
+		}
+	}
+	
+	private void writeBlock() throws IOException {
+		block[0] = (byte)size;
+		out.write(block, 0, size + 1);
+		size = 0;
+	}
+	
+	/** Write any remaining data and the block terminator.
+	 * This does not close the underlying stream.
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public void finish() throws IOException {
+		if(finished)
+			return;
+		if(size>0)
+			writeBlock();
+		out.write(0);
+		finished = true;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/** This calls <code>finish()</code>, but does not close the underlying stream. */
+	@Override
+	public void close() throws IOException {
+		finish();
+	}
+}
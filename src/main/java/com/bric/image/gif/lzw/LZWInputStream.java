@@ -22,8 +22,6 @@ package com.bric.image.gif.lzw;
 import java.io.IOException;
 import java.io.InputStream;
 
-import com.bric.util.ResourcePool;
-
 /**
  * This is designed to read LZW-compressed GIF image data.
  * <P>
@@ -70,6 +68,14 @@ import com.bric.util.ResourcePool;
  * <LI>Codes can only reach 12 bits at most.</LI></ul>
  * <P>
  * <P>
+ * The table is stored as a prefix/suffix pair for every code (plus the length
+ * of its string), so no arrays are allocated while decoding. Codes are sliced
+ * out of a 64-bit buffer that is refilled with bulk reads from the underlying
+ * stream, and {@link #read(byte[], int, int)} writes whole strings directly
+ * into the caller's array. Because of those bulk reads this stream may read
+ * past the end of the LZW data in the underlying stream.
+ * <P>
+ * <P>
  * These LZW classes would not be possible without Jef Poskanzer's GIF classes.
  * I have made a couple of improvements, and really shuffled the structures
  * around to [hopefully] organize the code a little better, but his examples
@@ -79,29 +85,46 @@ import com.bric.util.ResourcePool;
  */
 public class LZWInputStream extends InputStream {
 
-	private BitReader reader;
+	/** The maximum number of codes in the table (codes are at most 12 bits). */
+	private static final int MAX_CODES = 4096;
+
+	private final InputStream in;
+
+	/** Compressed bytes read in bulk from <code>in</code>. */
+	private final byte[] inBuffer = new byte[1024];
+	private int inBufferPos = 0, inBufferLimit = 0;
+	/** Whether <code>in</code> has returned -1. */
+	private boolean inFinished = false;
+
+	/** Unread bits, least significant bits first. */
+	private long bitBuffer = 0;
+	/** The number of valid bits in <code>bitBuffer</code>. */
+	private int bitCount = 0;
 
-	private boolean outgoingDataCanBeRecycled = false;
+	/** The code each string extends, or -1 for a root code. */
+	private final short[] prefix = new short[MAX_CODES];
+	/** The last byte of each string. */
+	private final byte[] suffix = new byte[MAX_CODES];
+	/** The first byte of each string. */
+	private final byte[] first = new byte[MAX_CODES];
+	/** The length of each string. */
+	private final short[] length = new short[MAX_CODES];
 
-	/** The data ready to be read */
-	private byte[] outgoingData = null;
 	/**
-	 * The ptr to outgoingData indicating the first byte that has not yet been
-	 * sent.
+	 * A string that didn't fit in the caller's array: the bytes from
+	 * <code>pendingPos</code> to <code>pendingLimit</code> have not been read yet.
 	 */
-	private int outgoingDataPtr = -1;
-
-	/** The magic table that stores all our keys */
-	private byte[][] data = new byte[4096][];
+	private final byte[] pending = new byte[MAX_CODES];
+	private int pendingPos = 0, pendingLimit = 0;
 
 	/** The number of bits we read at a time */
 	private int n_bits;
 
 	/** The code that tells us to clear out the table */
-	private int clearCode;
+	private final int clearCode;
 
 	/** The code that tells us the file is finished */
-	private int eofCode;
+	private final int eofCode;
 
 	/** The index in the table we're pointing to */
 	private int availableCode;
@@ -109,14 +132,11 @@ public class LZWInputStream extends InputStream {
 	/** Whether we're finished reading or not */
 	private boolean finished = false;
 
-	/** The last code we read */
+	/** The last code we read, or -1 immediately after the table was cleared. */
 	private int lastCode = -1;
 
-	/** A variable described in the algorithm */
-	private int character = -1;
-
 	/** The initial size we were passed */
-	private int initialSize;
+	private final int initialSize;
 
 	/**
 	 * Constructs a <code>LZWInputStream</code>.
@@ -133,230 +153,193 @@ public class LZWInputStream extends InputStream {
 	 *            block.
 	 */
 	public LZWInputStream(InputStream in, int initSize) {
-		reader = new BitReader(in);
-		clearCode = (int) (Math.pow(2, initSize) + .5);
+		if (initSize < 1 || initSize > 11)
+			throw new IllegalArgumentException("initSize (" + initSize
+					+ ") must be between 1 and 11.");
+		this.in = in;
+		clearCode = 1 << initSize;
 		initialSize = initSize;
-		n_bits = initSize + 1;
 		eofCode = clearCode + 1;
-		availableCode = eofCode + 1;
+		for (int a = 0; a < clearCode; a++) {
+			prefix[a] = -1;
+			suffix[a] = (byte) a;
+			first[a] = (byte) a;
+			length[a] = 1;
+		}
+		clearTable();
 	}
 
-	private void iterate() throws IOException {
-		if (outgoingData != null && outgoingDataPtr < outgoingData.length) {
-			throw new RuntimeException(
-					"New data should not have be unpacked if there is still some outgoing data that has not yet been read.");
+	/**
+	 * Tops up <code>bitBuffer</code> so it holds at least 57 bits, or as many
+	 * as the underlying stream has left.
+	 */
+	private void fillBits() throws IOException {
+		while (bitCount <= 56) {
+			if (inBufferPos == inBufferLimit) {
+				if (inFinished)
+					return;
+				int k = in.read(inBuffer, 0, inBuffer.length);
+				if (k == -1) {
+					inFinished = true;
+					return;
+				}
+				inBufferPos = 0;
+				inBufferLimit = k;
+				continue;
+			}
+			bitBuffer |= ((long) (inBuffer[inBufferPos++] & 0xff)) << bitCount;
+			bitCount += 8;
 		}
-		int newCode = reader.read(n_bits); // Read NEW_CODE
-		if (outgoingData != null && outgoingDataCanBeRecycled)
-			ResourcePool.get().put(outgoingData);
-		outgoingData = null;
-		if (newCode == clearCode) {
-			clearTable();
+	}
 
-			newCode = reader.read(n_bits);
-			if (newCode != -1) {
-				lastCode = newCode; // read OLD_CODE
-				outgoingData = new byte[1]; // output
-																// OLD_CODE
-				outgoingData[0] = (byte) lastCode;
-				character = lastCode; // CHARACTER = OLD_CODE
-			} else {
+	/**
+	 * @return the next <code>n_bits</code>-bit code, or -1 if the underlying
+	 *         stream ran out of data.
+	 */
+	private int readCode() throws IOException {
+		if (bitCount < n_bits) {
+			fillBits();
+			if (bitCount < n_bits)
+				return -1;
+		}
+		int code = ((int) bitBuffer) & ((1 << n_bits) - 1);
+		bitBuffer >>>= n_bits;
+		bitCount -= n_bits;
+		return code;
+	}
+
+	/**
+	 * Reads codes until one identifies a string to output, updating the table
+	 * along the way.
+	 * 
+	 * @return the code of the next string to output, or -1 if there is no more
+	 *         data.
+	 */
+	private int nextString() throws IOException {
+		while (true) {
+			int newCode = readCode(); // Read NEW_CODE
+			if (newCode == -1 || newCode == eofCode) {
+				// Some GIFs simply stop... without an EOF code.
 				finished = true;
+				return -1;
+			} else if (newCode == clearCode) {
+				clearTable();
+				continue;
+			} else if (lastCode == -1) {
+				if (newCode > clearCode)
+					throw new IOException("Code " + newCode
+							+ " not in table.");
+				lastCode = newCode; // output OLD_CODE
+				return newCode;
 			}
-		} else if (newCode == eofCode || newCode == -1) {
-			finished = true;
-		} else {
-			byte[] string = data[newCode]; // get translation of NEW_CODE)
-			if (string == null) { // if NEW_CODE is not in table
-				if (lastCode == -1)
-					throw new RuntimeException(
-							"The previous code read was -1, which probably means that this LZW data didn't begin with a clear-code like it should have.");
-				string = data[lastCode]; // STRING = get translation of
-											// OLD_CODE
 
-				if (string == null) {
-					throw new NullPointerException("Code " + lastCode
-							+ " not in table.");
-				}
-				string = concatenate(string, (byte) character);// STRING =
-																// STRING +
-																// CHARACTER
-				outgoingDataCanBeRecycled = true;
+			int string;
+			if (newCode < availableCode) {
+				// add OLD_CODE+CHARACTER to table, where CHARACTER is the
+				// first character in the translation of NEW_CODE:
+				addString(lastCode, first[newCode]);
+				string = newCode;
 			} else {
-				outgoingDataCanBeRecycled = false;
+				// NEW_CODE is not in the table, so STRING is the translation
+				// of OLD_CODE + CHARACTER, which is the entry we add:
+				if (availableCode == MAX_CODES)
+					throw new IOException("Code " + newCode + " not in table.");
+				string = availableCode;
+				addString(lastCode, first[lastCode]);
 			}
-			outgoingData = string; // output STRING
+			lastCode = string;
+			return string;
+		}
+	}
 
-			character = string[0]; // CHARACTER = first character in STRING
-			// add OLD_CODE+CHARACTER to table:
-			data[availableCode] = concatenate(data[lastCode], (byte) character);
+	private void addString(int prefixCode, byte character) {
+		// once the table is full the encoder has to send a clear code
+		// before new strings are defined.
+		if (availableCode == MAX_CODES)
+			return;
+		prefix[availableCode] = (short) prefixCode;
+		suffix[availableCode] = character;
+		first[availableCode] = first[prefixCode];
+		length[availableCode] = (short) (length[prefixCode] + 1);
+		availableCode++;
+		if (availableCode == (1 << n_bits) && n_bits < 12)
+			n_bits++;
+	}
 
-			availableCode++;
-			lastCode = newCode;
+	/**
+	 * Writes the translation of a code into an array, working backwards from
+	 * its last byte.
+	 * 
+	 * @return the length of the string.
+	 */
+	private int writeString(int code, byte[] dest, int offset) {
+		int len = length[code];
+		int i = offset + len - 1;
+		while (i > offset) {
+			dest[i--] = suffix[code];
+			code = prefix[code];
 		}
-		n_bits = Math.min(12,
-				(int) (Math.log(availableCode) / Math.log(2) + 1.0D));
-
-		outgoingDataPtr = 0;
+		dest[offset] = suffix[code];
+		return len;
 	}
 
+	@Override
 	public int read() throws IOException {
-		if (finished)
-			return -1;
-		if (outgoingData != null) {
-			if (outgoingDataPtr < outgoingData.length) {
-				int v = outgoingData[outgoingDataPtr++] & 0xFF;
-				return v;
-			}
+		if (pendingPos == pendingLimit) {
+			if (finished)
+				return -1;
+			int code = nextString();
+			if (code == -1)
+				return -1;
+			pendingLimit = writeString(code, pending, 0);
+			pendingPos = 0;
 		}
-		iterate();
-		return read();
+		return pending[pendingPos++] & 0xFF;
 	}
 
+	@Override
 	public int read(byte[] b, int offset, int len) throws IOException {
-		if (finished)
-			return -1;
-		if (outgoingData == null || outgoingDataPtr == outgoingData.length) {
-			iterate();
-			return read(b, offset, len);
+		if (offset < 0 || len < 0 || len > b.length - offset)
+			throw new IndexOutOfBoundsException();
+		if (len == 0)
+			return 0;
+
+		int n = Math.min(len, pendingLimit - pendingPos);
+		if (n > 0) {
+			System.arraycopy(pending, pendingPos, b, offset, n);
+			pendingPos += n;
 		}
-		int available = outgoingData.length - outgoingDataPtr;
-		if (available < len)
-			len = available;
-		System.arraycopy(outgoingData, outgoingDataPtr, b, offset, len);
-		outgoingDataPtr += len;
-		return len;
+		while (n < len && !finished) {
+			int code = nextString();
+			if (code == -1)
+				break;
+			if (length[code] <= len - n) {
+				n += writeString(code, b, offset + n);
+			} else {
+				pendingLimit = writeString(code, pending, 0);
+				pendingPos = len - n;
+				System.arraycopy(pending, 0, b, offset + n, pendingPos);
+				n = len;
+			}
+		}
+		return n == 0 ? -1 : n;
 	}
 
+	@Override
 	public void close() throws IOException {
-		reader.close();
+		finished = true;
+		pendingPos = pendingLimit = 0;
+		in.close();
 	}
 
+	@Override
 	public int available() throws IOException {
-		if (outgoingData == null)
-			return 0;
-		return outgoingData.length - outgoingDataPtr;
+		return pendingLimit - pendingPos;
 	}
 
 	private void clearTable() {
-		int a = 0;
-		while (a < clearCode) {
-			data[a] = new byte[1];
-			data[a][0] = (byte) a;
-			a++;
-		}
-		while (a < data.length) {
-			data[a] = null;
-			a++;
-		}
 		availableCode = eofCode + 1;
 		n_bits = initialSize + 1;
-	}
-
-	/** Just a convenient call to concatenate b1+b2 */
-	private byte[] concatenate(byte[] b1, byte b2) {
-		byte[] t = ResourcePool.get().getByteArray(b1.length + 1);
-		System.arraycopy(b1, 0, t, 0, b1.length);
-		t[b1.length] = b2;
-		return t;
-	}
-}
-
-/**
- * This slices the right-most bits of new bytes off an InputStream.
- */
-class BitReader {
-	private InputStream in;
-
-	/** Used to extract the right-most bits out of bytes of data. */
-	private static final int[] masks = { 0x0000, 0x0001, 0x0003, 0x0007,
-			0x000F, 0x001F, 0x003F, 0x007F, 0x00FF, 0x01FF, 0x03FF, 0x07FF,
-			0x0FFF, 0x1FFF, 0x3FFF, 0x7FFF, 0xFFFF };
-
-	/**
-	 * The number of bits that have been read off of the current byte already
-	 */
-	private int bitCounter = 0;
-
-	/** The current byte we're splicing */
-	private int current = 0;
-
-	/** If this is true, calls to read() will always return -1 */
-	private boolean finishedReading = false;
-
-	/** We use this to jump-start the reading process */
-	private boolean startedReading = false;
-
-	/**
-	 * Constructs a <code>BitReader</code>.
-	 * 
-	 * @param in
-	 *            the <code>InputStream</code> to gather bytes from.
-	 */
-	public BitReader(InputStream in) {
-		this.in = in;
-	}
-
-	/**
-	 * This is only used if the LZWInputStream gets closed early for some
-	 * reason.
-	 * @throws IOException if an IO problem occurs.
-	 */
-	public void close() throws IOException {
-		finishedReading = true;
-		in.close();
-	}
-
-	/**
-	 * Reads <code>bitsToRead</code>-many bits from the underlying
-	 * <code>InputStream</code>.
-	 * 
-	 * @param bitsToRead
-	 *            the number of bits to read.
-	 *            <P>
-	 *            If the <code>InputStream</code> is empty, then
-	 *            <code>-1</code> is returned.
-	 *            <P>
-	 *            If this exceeds the number of bits left in the
-	 *            <code>InputStream</code>, then an <code>IOException</code>
-	 *            is thrown.
-	 * @return the value of <code>bitsToRead</code>-many bits from the
-	 *         <code>InputStream</code>, or <code>-1</code> if there is no
-	 *         more data to read.
-	 * @throws IOException
-	 *             if an <code>IOException</code> occurred while reading the
-	 *             underlying stream, or if
-	 */
-	public int read(int bitsToRead) throws IOException {
-		if (finishedReading)
-			return -1;
-		if (startedReading == false) {
-			current = in.read();
-			startedReading = true;
-		}
-		int code = 0;
-		int bitsRead = 0;
-		int toRead = 0;
-		while (bitsRead < bitsToRead) {
-			// how many bits can we get this pass?
-			// we want n_bits, but we might have to carry over into the next bit
-			toRead = Math.min(bitsToRead - bitsRead, 8 - bitCounter);
-			code = ((current >> bitCounter & masks[toRead]) << bitsRead) + code;
-			bitCounter += toRead;
-			if (bitCounter == 8) {
-				bitCounter = 0;
-				current = in.read();
-				if (current == -1) {
-					/**
-					 * This is a cheap trick. Some GIFs simply stop... without
-					 * an EOF code.
-					 */
-					finishedReading = true;
-					return -1;
-				}
-			}
-			bitsRead += toRead;
-		}
-		return code;
+		lastCode = -1;
 	}
 }
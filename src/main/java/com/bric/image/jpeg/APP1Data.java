@@ -38,6 +38,11 @@ class APP1Data {
 	public static final int TYPE_UNKNOWN = -1;
 	
 	BufferedImage thumbnail;
+	/** The position of the embedded thumbnail JPEG (relative to the start of
+	 * the stream), or -1 if no thumbnail was found.
+	 */
+	long thumbnailOffset = -1;
+	int thumbnailLength = 0;
 	Hashtable<String, Object> properties = new Hashtable<String, Object>();
 	final int type;
 	
@@ -92,6 +97,8 @@ class APP1Data {
 		 * So unfortunately it seems like the safe thing to do now
 		 * is to buffer data.
 		 */
+		//all EXIF offsets are relative to the TIFF header
+		long tiffPosition = in.getPosition();
 		BufferedInputStream bufferedIn = new BufferedInputStream(in);
 		bufferedIn.mark(in.remainingMarkerLength+1);
 		
@@ -127,7 +134,7 @@ class APP1Data {
 			}
 		}
 		
-		if(ifd1!=null && storeThumbnail) {
+		if(ifd1!=null) {
 			Number jpegPosition = (Number)ifd1.getProperty(513);
 			Number jpegLength = (Number)ifd1.getProperty(514);
 			
@@ -137,6 +144,10 @@ class APP1Data {
 			 * move on if we have null references without a thumbnail.
 			 */
 			if(jpegPosition!=null && jpegLength!=null) {
+				thumbnailOffset = tiffPosition + jpegPosition.longValue();
+				thumbnailLength = jpegLength.intValue();
+			}
+			if(jpegPosition!=null && jpegLength!=null && storeThumbnail) {
 				bufferedIn.reset();
 				JPEGMarkerInputStream.skipFully(bufferedIn, jpegPosition.longValue());
 				bufferedIn.mark(-1);
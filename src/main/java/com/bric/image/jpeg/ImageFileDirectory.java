@@ -134,8 +134,11 @@ class ImageFileDirectory {
 		 */
 		byte[] fieldValue;
 		Object value;
+		/** Whether this entry is stored in little-endian ("II") byte order. */
+		boolean reverse;
 		
 		DirectoryEntry(InputStream in,boolean reverse) throws IOException {
+			this.reverse = reverse;
 			byte[] array = new byte[4];
 			
 			if(JPEGMarkerInputStream.readFully(in, array, 2, reverse)!=2)
@@ -192,7 +195,7 @@ class ImageFileDirectory {
 				bytesPerComponent = 2;
 				break;
 			case 9 : //signed long
-				bytesPerComponent = 8;
+				bytesPerComponent = 4;
 				break;
 			case 10 : //signed rational
 				bytesPerComponent = 8;
@@ -288,9 +291,18 @@ class ImageFileDirectory {
 					throw new IOException();
 				JPEGMarkerInputStream.readFully(in, newData, byteLength, false);
 				data = newData;
+			} else if(reverse) {
+				//fieldValue was reversed as one 4-byte integer, so restore the order of its bytes
+				data = new byte[4];
+				for(int a = 0; a<4; a++) {
+					data[a] = fieldValue[3-a];
+				}
 			} else {
 				data = fieldValue;
 			}
+			if(reverse) {
+				toBigEndian(data, byteLength);
+			}
 
 			if(dataFormat==7 || dataFormat==0) { //UNDEFINED
 				value = data;
@@ -345,13 +357,13 @@ class ImageFileDirectory {
 						valueArray[a] = new Integer( readSignedLong(data, a*4) );
 						break;
 					case 5 : //rational
-						double numerator = readLong( data, a*4);
-						double denominator = readLong( data, a*4+4);
+						double numerator = readLong( data, a*8);
+						double denominator = readLong( data, a*8+4);
 						valueArray[a] = new Double( numerator / denominator );
 						break;
 					case 10 : //signed rational
-						double numerator2 = readSignedLong( data, a*4);
-						double denominator2 = readSignedLong( data, a*4+4);
+						double numerator2 = readSignedLong( data, a*8);
+						double denominator2 = readSignedLong( data, a*8+4);
 						valueArray[a] = new Double( numerator2 / denominator2 );
 						break;
 					default :
@@ -366,6 +378,35 @@ class ImageFileDirectory {
 			}
 		}
 
+		/** Reverse the bytes of every number in little-endian data, so the
+		 * <code>read</code> methods (which are big-endian) can decode it.
+		 */
+		private void toBigEndian(byte[] data,int byteLength) {
+			int numberSize;
+			switch(dataFormat) {
+				case 3 : //short
+				case 8 : //signed short
+					numberSize = 2;
+					break;
+				case 4 : //long
+				case 9 : //signed long
+				case 5 : //rational (two longs)
+				case 10 : //signed rational (two signed longs)
+					numberSize = 4;
+					break;
+				default :
+					//bytes and strings have no byte order
+					return;
+			}
+			for(int start = 0; start+numberSize<=byteLength; start += numberSize) {
+				for(int i = 0; i<numberSize/2; i++) {
+					byte k = data[start+i];
+					data[start+i] = data[start+numberSize-1-i];
+					data[start+numberSize-1-i] = k;
+				}
+			}
+		}
+
 		public String toString() {
 			StringBuffer sb = new StringBuffer();
 			sb.append("[ ");
@@ -0,0 +1,337 @@
+/*
+ * @(#)JPEGHeader.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.jpeg;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/** The basic properties of a JPEG that can be found without parsing all its metadata:
+ * the image size, the EXIF orientation, and the location of the EXIF thumbnail.
+ * <p>Unlike {@link JPEGMetaData} this does not use a {@link JPEGMarkerInputStream}.
+ * It reads the file with positional reads into one buffer (that is reused by
+ * each thread), walks the markers as integers, and stops at the start of scan.
+ * Segments it does not need are skipped without being read, and the thumbnail
+ * is never decoded. Usually this costs one read per file.
+ */
+public class JPEGHeader {
+
+	private static final int START_OF_IMAGE = 0xD8;
+	private static final int END_OF_IMAGE = 0xD9;
+	private static final int START_OF_SCAN = 0xDA;
+	private static final int APP1 = 0xE1;
+
+	private static final int TAG_ORIENTATION = 274;
+	private static final int TAG_THUMBNAIL_OFFSET = 513;
+	private static final int TAG_THUMBNAIL_LENGTH = 514;
+
+	/** Large enough to hold any marker segment (whose length is an unsigned short). */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocate(BUFFER_SIZE);
+		}
+	};
+
+	/** Read the header of a JPEG file.
+	 *
+	 * @param file the JPEG file to read.
+	 * @return the header of this JPEG.
+	 * @throws IOException if an IO problem occurs, or if this is not a JPEG.
+	 */
+	public static JPEGHeader read(File file) throws IOException {
+		try(FileInputStream in = new FileInputStream(file)) {
+			return new JPEGHeader(in.getChannel());
+		}
+	}
+
+	/** These are only used while the header is being read. */
+	FileChannel channel;
+	ByteBuffer buffer;
+	/** The file position of the first byte in the buffer. */
+	long bufferPosition = 0;
+
+	int width = -1, height = -1;
+	int bitsPerSample, componentCount;
+	boolean progressive;
+	int orientation = 1;
+	long thumbnailOffset = -1;
+	int thumbnailLength = 0;
+
+	/** Read the header of a JPEG.
+	 *
+	 * @param channel the channel to read.  The JPEG must begin at position zero.
+	 * The position of this channel is not changed.
+	 * @throws IOException if an IO problem occurs, or if this is not a JPEG.
+	 */
+	public JPEGHeader(FileChannel channel) throws IOException {
+		this.channel = channel;
+		buffer = buffers.get();
+		buffer.clear();
+		buffer.limit(0);
+		try {
+			scan();
+		} finally {
+			this.channel = null;
+			buffer = null;
+		}
+	}
+
+	private void scan() throws IOException {
+		if(!fill(0, 2) || u8(0)!=0xFF || u8(1)!=START_OF_IMAGE)
+			throw new IOException("this is not a JPEG");
+
+		long pos = 2;
+		while(fill(pos, 2)) {
+			if(u8(pos)!=0xFF)
+				throw new IOException("expected a marker at "+pos);
+			int marker = u8(pos+1);
+			if(marker==0xFF) {
+				//fill byte
+				pos++;
+				continue;
+			}
+			if(marker==START_OF_SCAN || marker==END_OF_IMAGE)
+				return;
+			if(marker==0x01 || (marker>=0xD0 && marker<=0xD7)) {
+				//markers without a length
+				pos += 2;
+				continue;
+			}
+			if(!fill(pos+2, 2))
+				return;
+			int length = u16(pos+2, ByteOrder.BIG_ENDIAN);
+			if(length<2)
+				throw new IOException("illegal segment length ("+length+") at "+pos);
+			long payload = pos + 4;
+			int payloadLength = length - 2;
+
+			if(isStartOfFrame(marker)) {
+				if(payloadLength>=6 && fill(payload, 6)) {
+					bitsPerSample = u8(payload);
+					height = u16(payload+1, ByteOrder.BIG_ENDIAN);
+					width = u16(payload+3, ByteOrder.BIG_ENDIAN);
+					componentCount = u8(payload+5);
+					progressive = marker==0xC2 || marker==0xC6 || marker==0xCA || marker==0xCE;
+				}
+			} else if(marker==APP1 && thumbnailOffset<0) {
+				if(payloadLength>14 && fill(payload, payloadLength)) {
+					readExif(payload, payloadLength);
+				}
+			}
+			pos = payload + payloadLength;
+		}
+	}
+
+	private static boolean isStartOfFrame(int marker) {
+		//0xC4, 0xC8 and 0xCC are the DHT, JPG and DAC markers
+		return marker>=0xC0 && marker<=0xCF &&
+				marker!=0xC4 && marker!=0xC8 && marker!=0xCC;
+	}
+
+	/** Read the orientation and thumbnail location from an APP1 segment.
+	 * Malformed EXIF data is ignored.
+	 */
+	private void readExif(long payload,int payloadLength) {
+		if(!(u8(payload)=='E' && u8(payload+1)=='x' && u8(payload+2)=='i' &&
+				u8(payload+3)=='f' && u8(payload+4)==0 && u8(payload+5)==0))
+			return;
+		//all EXIF offsets are relative to the TIFF header
+		long tiff = payload + 6;
+		long end = payload + payloadLength;
+		ByteOrder order;
+		if(u8(tiff)=='I' && u8(tiff+1)=='I') {
+			order = ByteOrder.LITTLE_ENDIAN;
+		} else if(u8(tiff)=='M' && u8(tiff+1)=='M') {
+			order = ByteOrder.BIG_ENDIAN;
+		} else {
+			return;
+		}
+		if(u16(tiff+2, order)!=42)
+			return;
+
+		long ifd0 = tiff + u32(tiff+4, order);
+		long ifd1 = readIFD(tiff, ifd0, end, order, true);
+		if(ifd1>tiff) {
+			readIFD(tiff, ifd1, end, order, false);
+		}
+	}
+
+	/** Read the tags we're interested in from an image file directory.
+	 *
+	 * @param primary true for the first directory, which describes the main image.
+	 * The second directory describes the thumbnail.
+	 * @return the position of the next directory, or -1.
+	 */
+	private long readIFD(long tiff,long ifd,long end,ByteOrder order,boolean primary) {
+		if(ifd<tiff || ifd+2>end)
+			return -1;
+		int count = u16(ifd, order);
+		if(ifd + 2 + count*12 + 4>end)
+			return -1;
+		long thumbnailPosition = -1, thumbnailSize = -1;
+		for(int a = 0; a<count; a++) {
+			long entry = ifd + 2 + a*12;
+			int tag = u16(entry, order);
+			int type = u16(entry+2, order);
+			if(tag==TAG_ORIENTATION && type==3 && primary) {
+				orientation = u16(entry+8, order);
+			} else if(tag==TAG_THUMBNAIL_OFFSET) {
+				thumbnailPosition = readInteger(entry, type, order);
+			} else if(tag==TAG_THUMBNAIL_LENGTH) {
+				thumbnailSize = readInteger(entry, type, order);
+			}
+		}
+		if(thumbnailPosition>=0 && thumbnailSize>0) {
+			thumbnailOffset = tiff + thumbnailPosition;
+			thumbnailLength = (int)thumbnailSize;
+		}
+		long next = u32(ifd + 2 + count*12, order);
+		return next==0 ? -1 : tiff + next;
+	}
+
+	/** Read a SHORT or LONG value from a directory entry. */
+	private long readInteger(long entry,int type,ByteOrder order) {
+		if(type==3)
+			return u16(entry+8, order);
+		if(type==4)
+			return u32(entry+8, order);
+		return -1;
+	}
+
+	/** Make sure some bytes of the file are in the buffer.
+	 *
+	 * @return false if the file ends before these bytes.
+	 */
+	private boolean fill(long pos,int length) throws IOException {
+		if(length>buffer.capacity())
+			throw new IllegalArgumentException("length ("+length+") exceeds "+buffer.capacity());
+		if(pos>=bufferPosition && pos+length<=bufferPosition+buffer.limit())
+			return true;
+		buffer.clear();
+		bufferPosition = pos;
+		while(buffer.position()<length) {
+			int read = channel.read(buffer, pos + buffer.position());
+			if(read==-1) {
+				buffer.flip();
+				return false;
+			}
+		}
+		buffer.flip();
+		return true;
+	}
+
+	private int u8(long pos) {
+		return buffer.get( (int)(pos - bufferPosition) ) & 0xff;
+	}
+
+	private int u16(long pos,ByteOrder order) {
+		int b0 = u8(pos);
+		int b1 = u8(pos+1);
+		return order==ByteOrder.BIG_ENDIAN ? (b0 << 8) | b1 : (b1 << 8) | b0;
+	}
+
+	private long u32(long pos,ByteOrder order) {
+		long s0 = u16(pos, order);
+		long s1 = u16(pos+2, order);
+		return order==ByteOrder.BIG_ENDIAN ? (s0 << 16) | s1 : (s1 << 16) | s0;
+	}
+
+	/** Returns the width of this image, or -1 if no frame header was found. */
+	public int getWidth() {
+		return width;
+	}
+
+	/** Returns the height of this image, or -1 if no frame header was found.
+	 * <p>This may be zero if the height is defined later in the file (which is very rare).
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/** Returns the number of bits per sample (usually 8). */
+	public int getBitsPerSample() {
+		return bitsPerSample;
+	}
+
+	/** Returns the number of color components (usually 1 or 3). */
+	public int getComponentCount() {
+		return componentCount;
+	}
+
+	/** Returns true if this is a progressive JPEG. */
+	public boolean isProgressive() {
+		return progressive;
+	}
+
+	/** Returns the EXIF orientation of this image, from 1 to 8.
+	 * This is 1 (which means no rotation or flipping is needed) if
+	 * this JPEG does not specify an orientation.
+	 */
+	public int getOrientation() {
+		return orientation;
+	}
+
+	/** Returns the position of the EXIF thumbnail JPEG in this file, or -1 if
+	 * this JPEG does not contain an EXIF thumbnail.
+	 */
+	public long getThumbnailOffset() {
+		return thumbnailOffset;
+	}
+
+	/** Returns the number of bytes in the EXIF thumbnail JPEG, or 0 if
+	 * this JPEG does not contain an EXIF thumbnail.
+	 */
+	public int getThumbnailLength() {
+		return thumbnailLength;
+	}
+
+	/** Read the bytes of the EXIF thumbnail JPEG.
+	 *
+	 * @param file the file this header was read from.
+	 * @return the thumbnail JPEG, or null if this JPEG does not contain an EXIF thumbnail.
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public byte[] readThumbnailData(File file) throws IOException {
+		if(thumbnailOffset<0 || thumbnailLength<=0)
+			return null;
+		ByteBuffer dest = ByteBuffer.allocate(thumbnailLength);
+		try(FileInputStream in = new FileInputStream(file)) {
+			FileChannel c = in.getChannel();
+			while(dest.hasRemaining()) {
+				if(c.read(dest, thumbnailOffset + dest.position())==-1)
+					throw new EOFException("the thumbnail ("+thumbnailLength+" bytes at "+thumbnailOffset+") exceeds the file length");
+			}
+		}
+		return dest.array();
+	}
+
+	@Override
+	public String toString() {
+		return "JPEGHeader[ "+width+"x"+height+", orientation = "+orientation+
+				", thumbnail = "+(thumbnailOffset<0 ? "none" : thumbnailLength+" bytes at "+thumbnailOffset)+" ]";
+	}
+}
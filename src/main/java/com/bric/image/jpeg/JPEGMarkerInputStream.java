@@ -62,6 +62,8 @@ class JPEGMarkerInputStream extends InputStream {
 	int remainingMarkerLength = 0;
 	byte[] scratch = new byte[2];
 	boolean reverse = false;
+	/** The number of bytes read (or skipped) from the underlying stream. */
+	long position = 0;
 	
 	public JPEGMarkerInputStream(InputStream in) {
 		this.in = in;
@@ -76,6 +78,14 @@ class JPEGMarkerInputStream extends InputStream {
 		return currentMarker;
 	}
 	
+	/** Returns the number of bytes this stream has consumed from the
+	 * underlying stream.  If the underlying stream started at the beginning of
+	 * a file, this is the file offset of the next byte.
+	 */
+	public long getPosition() {
+		return position;
+	}
+	
 	public String getNextMarker() throws IOException {
 		skip(remainingMarkerLength);
 		
@@ -102,6 +112,7 @@ class JPEGMarkerInputStream extends InputStream {
 		if(remainingMarkerLength==0) return -1;
 		int returnValue = in.read();
 		remainingMarkerLength--;
+		position++;
 		return returnValue;
 	}
 
@@ -120,6 +131,7 @@ class JPEGMarkerInputStream extends InputStream {
 		int returnValue = in.read(b, off, amountToRead);
 		if(returnValue>0) {
 			remainingMarkerLength -= returnValue;
+			position += returnValue;
 		}
 		return returnValue;
 	}
@@ -163,6 +175,7 @@ class JPEGMarkerInputStream extends InputStream {
 		amt = Math.min(amt, remainingMarkerLength);
 		int returnValue = readFully(in, dest, amt, reverse);
 		remainingMarkerLength -= returnValue;
+		position += returnValue;
 		return returnValue;
 	}
 
@@ -191,6 +204,7 @@ class JPEGMarkerInputStream extends InputStream {
 		amt = Math.min(amt, remainingMarkerLength);
 		long returnValue = skipFully( in, amt);
 		remainingMarkerLength -= returnValue;
+		position += returnValue;
 		return returnValue;
 	}
 	
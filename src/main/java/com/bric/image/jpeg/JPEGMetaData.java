@@ -30,6 +30,8 @@ import java.util.Map;
 
 /** This class parses JPEG metadata to retrieve properties or
  * thumbnails.
+ * <p>If you only need the size, orientation or thumbnail location of
+ * a JPEG file, {@link JPEGHeader} is much cheaper.
  * 
  * @see com.bric.image.jpeg.JPEGMetaDataDemo
  */
@@ -67,6 +69,8 @@ public class JPEGMetaData {
 	Hashtable<String, Object> properties = new Hashtable<String, Object>();
 	BufferedImage thumbnail;
 	String[] comments = new String[0];
+	long thumbnailOffset = -1;
+	int thumbnailLength = 0;
 	
 	/** Creates a JPEGMetaData object.
 	 * 
@@ -128,17 +132,13 @@ public class JPEGMetaData {
 					APP13Data data = new APP13Data(jpegIn, fetchThumbnail);
 					processAPP13(data);
 				} else if( JPEGMarkerInputStream.COMMENT_MARKER.equals(marker) ) {
-					byte[] b = new byte[64];
-					StringBuffer buffer = new StringBuffer();
-					int t = jpegIn.read(b);
-					while(t>0) {
-						for(int a = 0; a<t; a++) {
-							char c = (char)( b[a] & 0xff);
-							buffer.append(c);
-						}
-						t = jpegIn.read(b);
+					byte[] b = new byte[jpegIn.remainingMarkerLength];
+					int t = jpegIn.readFully(b, b.length);
+					char[] c = new char[t];
+					for(int a = 0; a<t; a++) {
+						c[a] = (char)( b[a] & 0xff);
 					}
-					processComment( buffer.toString() );
+					processComment( new String(c) );
 				}
 			} catch(Exception e) {
 				processException(e, marker);
@@ -205,6 +205,10 @@ public class JPEGMetaData {
 	 */
 	protected void processAPP1(APP1Data data) {
 		properties.putAll(data.getProperties());
+		if(thumbnailOffset<0 && data.thumbnailOffset>=0) {
+			thumbnailOffset = data.thumbnailOffset;
+			thumbnailLength = data.thumbnailLength;
+		}
 		considerAddingThumbnail(data.getThumbnail());
 	}
 
@@ -260,4 +264,20 @@ public class JPEGMetaData {
 	public BufferedImage getThumbnail() {
 		return thumbnail;
 	}
+	
+	/** Returns the position of the EXIF thumbnail JPEG in the original file
+	 * (or stream), or -1 if this JPEG does not contain an EXIF thumbnail.
+	 * <p>This is available even if the thumbnail was not fetched, so the
+	 * thumbnail can be read later without parsing this JPEG again.
+	 */
+	public long getThumbnailOffset() {
+		return thumbnailOffset;
+	}
+	
+	/** Returns the number of bytes in the EXIF thumbnail JPEG, or 0 if
+	 * this JPEG does not contain an EXIF thumbnail.
+	 */
+	public int getThumbnailLength() {
+		return thumbnailLength;
+	}
 }
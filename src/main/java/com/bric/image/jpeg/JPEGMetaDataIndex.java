@@ -0,0 +1,504 @@
+/*
+ * @(#)JPEGMetaDataIndex.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.jpeg;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.ImageIO;
+
+import com.bric.io.FileTreeIterator;
+import com.bric.util.ParallelRange;
+
+/** A persistent index of JPEG metadata.
+ * <p>Each JPEG is parsed once with {@link JPEGMetaData}, and its properties,
+ * comments and the location of its EXIF thumbnail are appended to an index file.
+ * Entries are keyed by the absolute path, last modified date and length of
+ * the JPEG, so a file is only parsed again when it changes. Looking up an
+ * entry never opens the JPEG, and reading its thumbnail only reads the
+ * thumbnail's bytes.
+ * <p>The index file is append-only: when a file is parsed again a new record is
+ * appended and the old record is ignored. Call {@link #compact()} to discard
+ * records that are no longer used.
+ * <p>This object is thread-safe.
+ */
+public class JPEGMetaDataIndex {
+
+	/** The metadata of one JPEG file. */
+	public static class Entry {
+		final File file;
+		final long lastModified, length;
+		final Map<String, Object> properties;
+		final String[] comments;
+		final long thumbnailOffset;
+		final int thumbnailLength;
+
+		Entry(File file,long lastModified,long length,Map<String, Object> properties,String[] comments,long thumbnailOffset,int thumbnailLength) {
+			this.file = file;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.properties = Collections.unmodifiableMap(properties);
+			this.comments = comments;
+			this.thumbnailOffset = thumbnailOffset;
+			this.thumbnailLength = thumbnailLength;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		/** Returns the properties found in this JPEG.  This map may be empty, and it cannot be modified. */
+		public Map<String, Object> getProperties() {
+			return properties;
+		}
+
+		/** Return the comments found in this JPEG, if any. */
+		public String[] getComments() {
+			String[] copy = new String[comments.length];
+			System.arraycopy(comments, 0, copy, 0, comments.length);
+			return copy;
+		}
+
+		/** Returns true if this JPEG contains an EXIF thumbnail. */
+		public boolean hasThumbnail() {
+			return thumbnailOffset>=0 && thumbnailLength>0;
+		}
+
+		/** Returns true if the file has not changed since this entry was indexed. */
+		public boolean isCurrent() {
+			return file.lastModified()==lastModified && file.length()==length;
+		}
+
+		/** Read the EXIF thumbnail of this JPEG.
+		 * <p>This only reads the bytes of the thumbnail, and not
+		 * the rest of the file.
+		 *
+		 * @return the thumbnail, or null if this JPEG has no EXIF thumbnail
+		 * or if it has changed since it was indexed.
+		 * @throws IOException if an IO problem occurs.
+		 */
+		public BufferedImage readThumbnail() throws IOException {
+			if(!hasThumbnail() || !isCurrent())
+				return null;
+			byte[] data = new byte[thumbnailLength];
+			try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+				raf.seek(thumbnailOffset);
+				raf.readFully(data);
+			}
+			return ImageIO.read(new ByteArrayInputStream(data));
+		}
+
+		@Override
+		public String toString() {
+			return "Entry[ "+file.getAbsolutePath()+", properties = "+properties.size()+", thumbnail = "+hasThumbnail()+" ]";
+		}
+	}
+
+	/** Parses a range of files. */
+	class IndexFiles implements ParallelRange.Body {
+		final List<File> files;
+
+		IndexFiles(List<File> files) {
+			this.files = files;
+		}
+
+		public void run(int min,int max) {
+			for(int a = min; a<max; a++) {
+				try {
+					JPEGMetaDataIndex.this.get(files.get(a));
+				} catch(IOException e) {
+					//this file isn't a JPEG we can read; don't let it stop the scan
+				}
+			}
+		}
+	}
+
+	/** The first 4 bytes of an index file: "JMDI". */
+	private static final int MAGIC = 0x4a4d4449;
+	private static final int VERSION = 1;
+
+	private static final int TYPE_STRING = 0;
+	private static final int TYPE_INTEGER = 1;
+	private static final int TYPE_DOUBLE = 2;
+	private static final int TYPE_BYTES = 3;
+	private static final int TYPE_INTEGER_ARRAY = 4;
+	private static final int TYPE_DOUBLE_ARRAY = 5;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	final File indexFile;
+	final Map<String, Entry> entries = new HashMap<String, Entry>();
+	DataOutputStream out;
+	int obsoleteRecords = 0;
+
+	/** Open (or create) an index.
+	 *
+	 * @param indexFile the file to store the index in.  If this file exists its
+	 * records are loaded. A record that was only partly written (for example
+	 * because the application quit while indexing) or that is corrupt is
+	 * discarded, along with every record after it.
+	 * @throws IOException if an IO problem occurs, or if the file is not an index file.
+	 */
+	public JPEGMetaDataIndex(File indexFile) throws IOException {
+		this.indexFile = indexFile;
+		long validLength = 0;
+		if(indexFile.exists() && indexFile.length()>0) {
+			validLength = load();
+		}
+		try(RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+			if(validLength==0) {
+				raf.setLength(0);
+				raf.writeInt(MAGIC);
+				raf.writeInt(VERSION);
+			} else if(raf.length()!=validLength) {
+				raf.setLength(validLength);
+			}
+		}
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+	}
+
+	/** Read every record in the index file.
+	 *
+	 * @return the length of the valid data in the index file.
+	 */
+	private long load() throws IOException {
+		try(RandomAccessFile raf = new RandomAccessFile(indexFile, "r")) {
+			if(raf.readInt()!=MAGIC)
+				throw new IOException("\""+indexFile.getAbsolutePath()+"\" is not a JPEG metadata index");
+			int version = raf.readInt();
+			if(version!=VERSION) {
+				//an index is only a cache, so start over
+				return 0;
+			}
+			long validLength = raf.getFilePointer();
+			long fileLength = raf.length();
+			while(validLength + 4<=fileLength) {
+				int recordLength = raf.readInt();
+				if(recordLength<0 || validLength + 4 + recordLength>fileLength)
+					break;
+				byte[] record = new byte[recordLength];
+				raf.readFully(record);
+				Entry entry;
+				try {
+					entry = readEntry(new DataInputStream(new ByteArrayInputStream(record)));
+				} catch(IOException e) {
+					//a truncated or corrupt record: keep everything before it
+					break;
+				}
+				if(entries.put(entry.file.getAbsolutePath(), entry)!=null)
+					obsoleteRecords++;
+				validLength += 4 + recordLength;
+			}
+			return validLength;
+		}
+	}
+
+	/** Return the entry for a JPEG, parsing and indexing the JPEG if necessary.
+	 *
+	 * @param file the JPEG to look up.
+	 * @return the metadata for this JPEG.
+	 * @throws IOException if an IO problem occurs, or if this file is not a JPEG.
+	 */
+	public Entry get(File file) throws IOException {
+		Entry entry = lookup(file);
+		if(entry!=null)
+			return entry;
+
+		long lastModified = file.lastModified();
+		long length = file.length();
+		JPEGMetaData data = new JPEGMetaData(file, false) {
+			@Override
+			protected void processException(Exception e, String marker) {
+				//a corrupt block of metadata is common enough that we skip it silently
+			}
+		};
+		entry = new Entry(file.getAbsoluteFile(), lastModified, length,
+				new LinkedHashMap<String, Object>(data.getProperties()), data.getComments(),
+				data.getThumbnailOffset(), data.getThumbnailLength());
+		add(entry);
+		return entry;
+	}
+
+	/** Return the indexed entry for a JPEG without parsing it.
+	 *
+	 * @param file the JPEG to look up.
+	 * @return the metadata for this JPEG, or null if this file has not been
+	 * indexed or if it has changed since it was indexed.
+	 */
+	public Entry lookup(File file) {
+		Entry entry;
+		synchronized(this) {
+			entry = entries.get(file.getAbsolutePath());
+		}
+		if(entry!=null && entry.isCurrent())
+			return entry;
+		return null;
+	}
+
+	/** Index every JPEG in a directory (and its subdirectories) that is
+	 * not already indexed, using all available processors.
+	 *
+	 * @param dir the directory to scan.
+	 * @return the number of JPEGs that were parsed.
+	 * @throws IOException if an IO problem occurs writing the index.
+	 */
+	public int scan(File dir) throws IOException {
+		return scan(dir, Runtime.getRuntime().availableProcessors());
+	}
+
+	/** Index every JPEG in a directory (and its subdirectories) that is
+	 * not already indexed.
+	 * <p>Files that cannot be parsed are skipped.
+	 *
+	 * @param dir the directory to scan.
+	 * @param parallelism the maximum number of files to parse at once.  Parsing
+	 * metadata mostly waits on the file system, so this may usefully exceed
+	 * the number of processors.
+	 * @return the number of JPEGs that were parsed.
+	 * @throws IOException if an IO problem occurs writing the index.
+	 */
+	public int scan(File dir,int parallelism) throws IOException {
+		List<File> files = new ArrayList<File>();
+		FileTreeIterator iter = new FileTreeIterator(dir, "jpg", "jpeg");
+		while(iter.hasNext()) {
+			File file = iter.next();
+			if(file.isFile() && lookup(file)==null)
+				files.add(file);
+		}
+		int tasks = Math.min(parallelism, files.size());
+		IndexFiles task = new IndexFiles(files);
+		if(tasks<=1) {
+			task.run(0, files.size());
+		} else {
+			//this work is IO-bound, so it gets its own pool instead of the common pool
+			ForkJoinPool pool = new ForkJoinPool(tasks);
+			try {
+				ParallelRange.parallelRange(pool, 0, files.size(), tasks, task);
+			} finally {
+				pool.shutdown();
+			}
+		}
+		flush();
+		return files.size();
+	}
+
+	/** Add an entry to the index and append it to the index file. */
+	private synchronized void add(Entry entry) throws IOException {
+		if(out==null) throw new IllegalStateException("this index has been closed");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		writeEntry(new DataOutputStream(bytes), entry);
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+		if(entries.put(entry.file.getAbsolutePath(), entry)!=null)
+			obsoleteRecords++;
+	}
+
+	/** Write any buffered records to the index file.
+	 *
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public synchronized void flush() throws IOException {
+		if(out!=null)
+			out.flush();
+	}
+
+	/** Rewrite the index file so it only contains one record for each file.
+	 *
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public synchronized void compact() throws IOException {
+		if(out==null) throw new IllegalStateException("this index has been closed");
+		if(obsoleteRecords==0)
+			return;
+		out.close();
+		out = null;
+		File tmp = new File(indexFile.getParentFile(), indexFile.getName()+".tmp");
+		try(DataOutputStream tmpOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+			tmpOut.writeInt(MAGIC);
+			tmpOut.writeInt(VERSION);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			for(Entry entry : entries.values()) {
+				bytes.reset();
+				writeEntry(new DataOutputStream(bytes), entry);
+				tmpOut.writeInt(bytes.size());
+				bytes.writeTo(tmpOut);
+			}
+		}
+		if(!indexFile.delete() || !tmp.renameTo(indexFile))
+			throw new IOException("failed to replace \""+indexFile.getAbsolutePath()+"\"");
+		obsoleteRecords = 0;
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+	}
+
+	/** Return the number of files in this index. */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/** Flush and close the index file.  This index can't be used after it is closed.
+	 *
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public synchronized void close() throws IOException {
+		if(out!=null) {
+			out.close();
+			out = null;
+		}
+	}
+
+	private static void writeEntry(DataOutputStream out,Entry entry) throws IOException {
+		writeString(out, entry.file.getAbsolutePath());
+		out.writeLong(entry.lastModified);
+		out.writeLong(entry.length);
+		out.writeLong(entry.thumbnailOffset);
+		out.writeInt(entry.thumbnailLength);
+		out.writeInt(entry.comments.length);
+		for(String comment : entry.comments) {
+			writeString(out, comment);
+		}
+		out.writeInt(entry.properties.size());
+		for(Map.Entry<String, Object> property : entry.properties.entrySet()) {
+			writeString(out, property.getKey());
+			writeValue(out, property.getValue());
+		}
+	}
+
+	private static Entry readEntry(DataInputStream in) throws IOException {
+		File file = new File(readString(in));
+		long lastModified = in.readLong();
+		long length = in.readLong();
+		long thumbnailOffset = in.readLong();
+		int thumbnailLength = in.readInt();
+		String[] comments = new String[readLength(in, 4)];
+		for(int a = 0; a<comments.length; a++) {
+			comments[a] = readString(in);
+		}
+		int propertyCount = in.readInt();
+		Map<String, Object> properties = new LinkedHashMap<String, Object>();
+		for(int a = 0; a<propertyCount; a++) {
+			String key = readString(in);
+			properties.put(key, readValue(in));
+		}
+		return new Entry(file, lastModified, length, properties, comments, thumbnailOffset, thumbnailLength);
+	}
+
+	/** Write a property value.  The values {@link ImageFileDirectory} produces
+	 * are stored exactly; anything else is stored as a String.
+	 */
+	private static void writeValue(DataOutputStream out,Object value) throws IOException {
+		if(value instanceof Integer) {
+			out.writeByte(TYPE_INTEGER);
+			out.writeInt( ((Integer)value).intValue() );
+		} else if(value instanceof Double) {
+			out.writeByte(TYPE_DOUBLE);
+			out.writeDouble( ((Double)value).doubleValue() );
+		} else if(value instanceof byte[]) {
+			byte[] b = (byte[])value;
+			out.writeByte(TYPE_BYTES);
+			out.writeInt(b.length);
+			out.write(b);
+		} else if(value instanceof Integer[]) {
+			Integer[] array = (Integer[])value;
+			out.writeByte(TYPE_INTEGER_ARRAY);
+			out.writeInt(array.length);
+			for(Integer i : array) {
+				out.writeInt(i.intValue());
+			}
+		} else if(value instanceof Double[]) {
+			Double[] array = (Double[])value;
+			out.writeByte(TYPE_DOUBLE_ARRAY);
+			out.writeInt(array.length);
+			for(Double d : array) {
+				out.writeDouble(d.doubleValue());
+			}
+		} else {
+			out.writeByte(TYPE_STRING);
+			writeString(out, String.valueOf(value));
+		}
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException {
+		int type = in.readByte();
+		switch(type) {
+			case TYPE_STRING :
+				return readString(in);
+			case TYPE_INTEGER :
+				return Integer.valueOf(in.readInt());
+			case TYPE_DOUBLE :
+				return Double.valueOf(in.readDouble());
+			case TYPE_BYTES :
+				byte[] b = new byte[readLength(in, 1)];
+				in.readFully(b);
+				return b;
+			case TYPE_INTEGER_ARRAY :
+				Integer[] integers = new Integer[readLength(in, 4)];
+				for(int a = 0; a<integers.length; a++) {
+					integers[a] = Integer.valueOf(in.readInt());
+				}
+				return integers;
+			case TYPE_DOUBLE_ARRAY :
+				Double[] doubles = new Double[readLength(in, 8)];
+				for(int a = 0; a<doubles.length; a++) {
+					doubles[a] = Double.valueOf(in.readDouble());
+				}
+				return doubles;
+			default :
+				throw new IOException("unexpected value type ("+type+")");
+		}
+	}
+
+	/** Write a String of any length (<code>writeUTF()</code> is limited to 64K). */
+	private static void writeString(DataOutputStream out,String s) throws IOException {
+		byte[] b = s.getBytes(UTF8);
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	/** Read the length of an array, making sure the record really contains that many elements. */
+	private static int readLength(DataInputStream in,int bytesPerElement) throws IOException {
+		int length = in.readInt();
+		if(length<0 || ((long)length)*bytesPerElement>in.available())
+			throw new EOFException("corrupt record");
+		return length;
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] b = new byte[readLength(in, 1)];
+		in.readFully(b);
+		return new String(b, UTF8);
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * @(#)ResamplingKernel.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.pixel;
+
+/** A filter used by the {@link ResamplingIterator} to weigh source pixels.
+ * <p>Kernels are evaluated in source pixel units: when an image is scaled down
+ * the kernel is stretched to cover every source pixel that contributes to
+ * a destination pixel.
+ *
+ * @see "Mitchell and Netravali, Reconstruction Filters in Computer Graphics (1988)"
+ */
+public abstract class ResamplingKernel {
+
+	/** A box filter, which averages every source pixel a destination pixel covers. */
+	public static final ResamplingKernel BOX = new ResamplingKernel("Box", .5) {
+		@Override
+		public double evaluate(double x) {
+			return (x>-.5 && x<=.5) ? 1 : 0;
+		}
+	};
+
+	/** The Catmull-Rom cubic spline (B = 0, C = 1/2), which is sharp and interpolates its samples. */
+	public static final ResamplingKernel CATMULL_ROM = new CubicKernel("Catmull-Rom", 0, .5);
+
+	/** The Mitchell-Netravali cubic filter (B = 1/3, C = 1/3), which balances ringing against blurring. */
+	public static final ResamplingKernel MITCHELL = new CubicKernel("Mitchell", 1.0/3.0, 1.0/3.0);
+
+	/** A windowed sinc filter with three lobes, which is the sharpest kernel here. */
+	public static final ResamplingKernel LANCZOS3 = new ResamplingKernel("Lanczos3", 3) {
+		@Override
+		public double evaluate(double x) {
+			if(x<=-3 || x>=3)
+				return 0;
+			return sinc(x)*sinc(x/3);
+		}
+	};
+
+	private static double sinc(double x) {
+		if(x==0)
+			return 1;
+		x = x*Math.PI;
+		return Math.sin(x)/x;
+	}
+
+	/** The two-parameter cubic filters described by Mitchell and Netravali. */
+	static class CubicKernel extends ResamplingKernel {
+		final double p0, p2, p3, q0, q1, q2, q3;
+
+		CubicKernel(String name,double b,double c) {
+			super(name, 2);
+			p0 = (6 - 2*b)/6;
+			p2 = (-18 + 12*b + 6*c)/6;
+			p3 = (12 - 9*b - 6*c)/6;
+			q0 = (8*b + 24*c)/6;
+			q1 = (-12*b - 48*c)/6;
+			q2 = (6*b + 30*c)/6;
+			q3 = (-b - 6*c)/6;
+		}
+
+		@Override
+		public double evaluate(double x) {
+			x = Math.abs(x);
+			if(x<1)
+				return p0 + x*x*(p2 + x*p3);
+			if(x<2)
+				return q0 + x*(q1 + x*(q2 + x*q3));
+			return 0;
+		}
+	}
+
+	final String name;
+	final double radius;
+
+	/**
+	 *
+	 * @param name the name of this kernel.
+	 * @param radius the distance from zero beyond which {@link #evaluate(double)} is always zero.
+	 */
+	protected ResamplingKernel(String name,double radius) {
+		this.name = name;
+		this.radius = radius;
+	}
+
+	/** @return the distance from zero beyond which {@link #evaluate(double)} is always zero. */
+	public double getRadius() {
+		return radius;
+	}
+
+	/** Return the weight of a sample.
+	 *
+	 * @param x the distance (in pixels) from the center of this kernel.
+	 * @return the weight of a sample at this distance.
+	 */
+	public abstract double evaluate(double x);
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -1236,6 +1236,23 @@ public abstract class ScalingIterator implements PixelIterator {
 			flush();
 	}
 
+	/** Start this iterator at a later destination row.
+	 * <p>This must be called before any rows are read. The next row this
+	 * iterator returns is exactly the row it would have returned after
+	 * <code>dstRow</code> calls to <code>next()</code>, so several iterators
+	 * over the same in-memory source can each produce a band of rows.
+	 * 
+	 * @param dstRow the number of destination rows to skip.
+	 */
+	void startAt(int dstRow) {
+		if(dstY!=0 || srcY!=0)
+			throw new IllegalStateException("this iterator has already been read");
+		if(dstRow<0 || dstRow>dstH)
+			throw new IllegalArgumentException("dstRow ("+dstRow+") must be between 0 and "+dstH);
+		//the next() methods skip source rows up to the first row they need
+		dstY = dstRow;
+	}
+
 
 	protected void skipRemainingRows() {
 		while(srcIterator.isDone()==false) {
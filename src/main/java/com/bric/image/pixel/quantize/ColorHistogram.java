@@ -0,0 +1,224 @@
+/*
+ * @(#)ColorHistogram.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.pixel.quantize;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/** A map of 24-bit RGB values to the number of times each occurs.
+ * <p>This is an open-addressing hash table with linear probing that stores
+ * keys and counts in two parallel <code>int</code> arrays, so adding a pixel
+ * never allocates objects. (RGB values are never negative, so -1 marks an
+ * empty slot.)
+ * <p>This class is not thread-safe.
+ */
+class ColorHistogram implements Serializable {
+	private static final long serialVersionUID = 1L;
+	
+	private static final int EMPTY = -1;
+	
+	private int[] keys;
+	private int[] counts;
+	private int size = 0;
+	private int mask;
+	/** When <code>size</code> reaches this value the table is doubled. */
+	private int threshold;
+	
+	ColorHistogram() {
+		this(256);
+	}
+	
+	/** @param expectedSize the number of colors this is expected to hold. */
+	ColorHistogram(int expectedSize) {
+		int capacity = 16;
+		while(capacity/2<expectedSize && capacity<(1 << 30)) {
+			capacity *= 2;
+		}
+		allocate(capacity);
+	}
+	
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		counts = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		mask = capacity - 1;
+		threshold = capacity/2;
+	}
+	
+	/** Scramble the bits of an RGB value, so similar colors don't cluster in the table. */
+	private static int hash(int rgb) {
+		int h = rgb * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+	/** @return the number of distinct colors. */
+	int size() {
+		return size;
+	}
+	
+	/** @return the number of occurrences of a color, or zero if it is absent. */
+	int get(int rgb) {
+		int i = hash(rgb) & mask;
+		while(true) {
+			int k = keys[i];
+			if(k==rgb) return counts[i];
+			if(k==EMPTY) return 0;
+			i = (i + 1) & mask;
+		}
+	}
+	
+	boolean contains(int rgb) {
+		return get(rgb)>0;
+	}
+	
+	/** Add occurrences of a color.
+	 * @return the new number of occurrences.
+	 */
+	int add(int rgb,int occurrences) {
+		int i = hash(rgb) & mask;
+		while(true) {
+			int k = keys[i];
+			if(k==rgb) {
+				return counts[i] += occurrences;
+			} else if(k==EMPTY) {
+				keys[i] = rgb;
+				counts[i] = occurrences;
+				if(++size>=threshold)
+					rehash(keys.length*2);
+				return occurrences;
+			}
+			i = (i + 1) & mask;
+		}
+	}
+	
+	/** Replace the number of occurrences of a color.
+	 * @return the previous number of occurrences (or zero).
+	 */
+	int put(int rgb,int occurrences) {
+		int old = remove(rgb);
+		add(rgb, occurrences);
+		return old;
+	}
+	
+	/** Remove a color.
+	 * @return the number of occurrences it had (or zero).
+	 */
+	int remove(int rgb) {
+		int i = hash(rgb) & mask;
+		while(true) {
+			int k = keys[i];
+			if(k==EMPTY) return 0;
+			if(k==rgb) break;
+			i = (i + 1) & mask;
+		}
+		int removed = counts[i];
+		size--;
+		
+		//shift back any entries that probed past the slot we just emptied:
+		int gap = i;
+		int j = i;
+		while(true) {
+			j = (j + 1) & mask;
+			int k = keys[j];
+			if(k==EMPTY) break;
+			int home = hash(k) & mask;
+			//can the entry at j legally move to the gap?
+			if( ((j - home) & mask) >= ((j - gap) & mask) ) {
+				keys[gap] = k;
+				counts[gap] = counts[j];
+				gap = j;
+			}
+		}
+		keys[gap] = EMPTY;
+		counts[gap] = 0;
+		return removed;
+	}
+	
+	/** Add every color in another histogram to this one. */
+	void addAll(ColorHistogram other) {
+		int[] otherKeys = other.keys;
+		int[] otherCounts = other.counts;
+		for(int a = 0; a<otherKeys.length; a++) {
+			if(otherKeys[a]!=EMPTY) {
+				add(otherKeys[a], otherCounts[a]);
+			}
+		}
+	}
+	
+	/** @return all the colors in this histogram in ascending order. */
+	int[] getColors() {
+		int[] returnValue = new int[size];
+		int ctr = 0;
+		for(int a = 0; a<keys.length; a++) {
+			if(keys[a]!=EMPTY) {
+				returnValue[ctr++] = keys[a];
+			}
+		}
+		Arrays.sort(returnValue);
+		return returnValue;
+	}
+	
+	private void rehash(int newCapacity) {
+		int[] oldKeys = keys;
+		int[] oldCounts = counts;
+		allocate(newCapacity);
+		for(int a = 0; a<oldKeys.length; a++) {
+			int k = oldKeys[a];
+			if(k!=EMPTY) {
+				int i = hash(k) & mask;
+				while(keys[i]!=EMPTY) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = k;
+				counts[i] = oldCounts[a];
+			}
+		}
+	}
+	
+	/** @return true if both histograms contain the same colors (and, optionally, the same counts). */
+	boolean equals(ColorHistogram other,boolean compareColorsOnly) {
+		if(other.size!=size) return false;
+		for(int a = 0; a<keys.length; a++) {
+			int k = keys[a];
+			if(k!=EMPTY) {
+				int c = other.get(k);
+				if(c==0) return false;
+				if((!compareColorsOnly) && c!=counts[a]) return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if(!(obj instanceof ColorHistogram)) return false;
+		return equals( (ColorHistogram)obj, false);
+	}
+	
+	@Override
+	public int hashCode() {
+		int h = 0;
+		for(int a = 0; a<keys.length; a++) {
+			if(keys[a]!=EMPTY)
+				h += keys[a] ^ counts[a];
+		}
+		return h;
+	}
+}
@@ -29,6 +29,13 @@ import java.util.TreeSet;
  * <p>Internally: this breaks up the 3D color cube into hundreds of smaller subcubes.
  * So instead of searching through all possible colors every time we require a match:
  * we hone in on the exact subcube and iterate outward a cycle or two.
+ * <p>For per-pixel lookups (see {@link #getIndexMatch(int, int, int)} and
+ * {@link #getNodeMatch(int, int, int)}) this also keeps an inverse color map:
+ * a grid of cells that each list only the palette entries that can be nearest
+ * to some color inside that cell. Cells are populated lazily the first time
+ * they are queried, so after a short warm-up quantizing a frame is a table
+ * lookup (and usually a comparison against one or two colors) and no
+ * objects are allocated.
  */
 public class ColorLUT {
 	public static class ColorNode implements Comparable<ColorNode> {
@@ -123,33 +130,83 @@ public class ColorLUT {
 			}
 		}
 		
-		public void add(int red,int green,int blue,int index) {
+		public ColorNode add(int red,int green,int blue,int index) {
 			ColorNode n = new ColorNode(red, green, blue, index);
 			ColorNode[] newArray = new ColorNode[nodes.length+1];
 			System.arraycopy(nodes, 0, newArray, 0, nodes.length);
 			newArray[newArray.length-1] = n;
 			
 			nodes = newArray;
+			return n;
 		}
 	}
 	
+	/** A cell in the inverse color map: the ordinals of every node that
+	 * is the nearest match for at least one color in this cell.
+	 */
+	private static final class InverseCell {
+		final int[] candidates;
+		
+		InverseCell(int[] candidates) {
+			this.candidates = candidates;
+		}
+	}
+	
+	/** The default number of bits per channel used to index the inverse color
+	 * map. 5 bits is a 32x32x32 grid where each cell spans 8 values per channel.
+	 */
+	public static final int DEFAULT_INVERSE_MAP_BITS = 5;
+	
 	int divisions = 8;
 	int span = 256/divisions;
 	Cluster[][][] subcubes = new Cluster[divisions][divisions][divisions];
 	IndexColorModel indexColorModel;
 	
+	/** Every color in this LUT, in the order it was added. */
+	ColorNode[] nodes = new ColorNode[] {};
+	int[] nodeRed, nodeGreen, nodeBlue;
+	
+	final int inverseMapBits;
+	final int cellShift;
+	final InverseCell[] inverseMap;
+	
 	/** Create a ColorLUT where every color has an index of -1. */
 	public ColorLUT(Integer[] rgb) {
+		this(rgb, DEFAULT_INVERSE_MAP_BITS);
+	}
+	
+	/** Create a ColorLUT where every color has an index of -1.
+	 * 
+	 * @param rgb the colors to include.
+	 * @param inverseMapBits the number of bits per channel of the inverse
+	 * color map (1-8), or 0 to disable the inverse color map and always search
+	 * the subcubes.
+	 */
+	public ColorLUT(Integer[] rgb,int inverseMapBits) {
 		for(int a = 0; a<rgb.length; a++) {
 			int r = (rgb[a] >> 16) & 0xff;
 			int g = (rgb[a] >> 8) & 0xff;
 			int b = (rgb[a]) & 0xff;
 			addRGB(r, g, b, -1);
 		}
+		this.inverseMapBits = validateBits(inverseMapBits);
+		cellShift = 8 - this.inverseMapBits;
+		inverseMap = createInverseMap();
 	}
 	
 	/** Create a ColorLUT from a <code>IndexColorModel</code>. */
 	public ColorLUT(IndexColorModel icm) {
+		this(icm, DEFAULT_INVERSE_MAP_BITS);
+	}
+	
+	/** Create a ColorLUT from a <code>IndexColorModel</code>.
+	 * 
+	 * @param icm the colors to include.
+	 * @param inverseMapBits the number of bits per channel of the inverse
+	 * color map (1-8), or 0 to disable the inverse color map and always search
+	 * the subcubes.
+	 */
+	public ColorLUT(IndexColorModel icm,int inverseMapBits) {
 		this.indexColorModel = icm;
 		
 		for(int a = 0; a<icm.getMapSize(); a++) {
@@ -160,6 +217,45 @@ public class ColorLUT {
 				addRGB(red, green, blue, a);
 			}
 		}
+		this.inverseMapBits = validateBits(inverseMapBits);
+		cellShift = 8 - this.inverseMapBits;
+		inverseMap = createInverseMap();
+	}
+	
+	private static int validateBits(int bits) {
+		if(bits<0 || bits>8)
+			throw new IllegalArgumentException("inverseMapBits ("+bits+") must be between 0 and 8");
+		return bits;
+	}
+	
+	private InverseCell[] createInverseMap() {
+		if(inverseMapBits==0 || nodes.length==0)
+			return null;
+		nodeRed = new int[nodes.length];
+		nodeGreen = new int[nodes.length];
+		nodeBlue = new int[nodes.length];
+		for(int a = 0; a<nodes.length; a++) {
+			nodeRed[a] = nodes[a].red;
+			nodeGreen[a] = nodes[a].green;
+			nodeBlue[a] = nodes[a].blue;
+		}
+		return new InverseCell[1 << (3*inverseMapBits)];
+	}
+	
+	/** Return the number of bits per channel of the inverse color map,
+	 * or 0 if this LUT does not use an inverse color map.
+	 */
+	public int getInverseMapBits() {
+		return inverseMap==null ? 0 : inverseMapBits;
+	}
+	
+	/** Return the colors in this LUT. The ordinals returned by
+	 * {@link #getNodeMatch(int, int, int)} refer to this array.
+	 */
+	public ColorNode[] getNodes() {
+		ColorNode[] copy = new ColorNode[nodes.length];
+		System.arraycopy(nodes, 0, copy, 0, nodes.length);
+		return copy;
 	}
 	
 	/** Returns the IndexColorModel used to create this <code>ColorLUT</code>,
@@ -176,7 +272,12 @@ public class ColorLUT {
 		if(subcubes[i1][i2][i3]==null) {
 			subcubes[i1][i2][i3] = new Cluster(i1*span, i2*span, i3*span, span-1);
 		}
-		subcubes[i1][i2][i3].add(red, green, blue, index);
+		ColorNode n = subcubes[i1][i2][i3].add(red, green, blue, index);
+		
+		ColorNode[] newArray = new ColorNode[nodes.length+1];
+		System.arraycopy(nodes, 0, newArray, 0, nodes.length);
+		newArray[newArray.length-1] = n;
+		nodes = newArray;
 	}
 	
 	/** A response to a query for approximate matches. */
@@ -201,11 +302,112 @@ public class ColorLUT {
 		}
 	}
 	
+	/** Return the <code>IndexColorModel</code> index of the closest color,
+	 * or -1 if this LUT was not created from an <code>IndexColorModel</code>.
+	 */
 	public int getIndexMatch(int red,int green,int blue) {
+		if(inverseMap!=null) {
+			return nodes[getNodeMatch(red, green, blue)].index;
+		}
 		Match match = getMatch(red, green, blue);
 		return match.node.index;
 	}
 	
+	/** Return the ordinal of the closest color in {@link #getNodes()}.
+	 * <p>When the inverse color map is enabled this is an exact
+	 * nearest-neighbor search that does not allocate (except the first
+	 * time a cell of the map is visited). Ties resolve to the
+	 * lowest ordinal.
+	 * 
+	 * @param red the red component (0-255).
+	 * @param green the green component (0-255).
+	 * @param blue the blue component (0-255).
+	 */
+	public int getNodeMatch(int red,int green,int blue) {
+		if(inverseMap==null) {
+			ColorNode node = getMatch(red, green, blue).node;
+			for(int a = 0; a<nodes.length; a++) {
+				if(nodes[a]==node)
+					return a;
+			}
+			throw new RuntimeException("unexpected condition: "+node+" is not a member of this LUT");
+		}
+		int cellIndex = ((red >> cellShift) << (2*inverseMapBits)) +
+				((green >> cellShift) << inverseMapBits) + (blue >> cellShift);
+		InverseCell cell = inverseMap[cellIndex];
+		if(cell==null) {
+			/* Two threads may both build this cell; the results are identical,
+			 * and the final field makes the published cell safe to read.
+			 */
+			cell = createInverseCell(red >> cellShift, green >> cellShift, blue >> cellShift);
+			inverseMap[cellIndex] = cell;
+		}
+		int[] candidates = cell.candidates;
+		if(candidates.length==1)
+			return candidates[0];
+		
+		int best = candidates[0];
+		int dr = red - nodeRed[best];
+		int dg = green - nodeGreen[best];
+		int db = blue - nodeBlue[best];
+		int bestError = dr*dr + dg*dg + db*db;
+		for(int a = 1; a<candidates.length && bestError>0; a++) {
+			int k = candidates[a];
+			dr = red - nodeRed[k];
+			dg = green - nodeGreen[k];
+			db = blue - nodeBlue[k];
+			int error = dr*dr + dg*dg + db*db;
+			if(error<bestError) {
+				bestError = error;
+				best = k;
+			}
+		}
+		return best;
+	}
+	
+	/** Identify every node that may be the closest match to a color
+	 * inside the cell at (ri, gi, bi).
+	 * <p>If a node's distance to the nearest point of the cell exceeds
+	 * another node's distance to the farthest point of the cell, then
+	 * the first node can never win anywhere in the cell.
+	 */
+	private InverseCell createInverseCell(int ri,int gi,int bi) {
+		int cellSize = 1 << cellShift;
+		int minR = ri << cellShift, maxR = minR + cellSize - 1;
+		int minG = gi << cellShift, maxG = minG + cellSize - 1;
+		int minB = bi << cellShift, maxB = minB + cellSize - 1;
+		
+		int[] nearDistance = new int[nodes.length];
+		int bound = Integer.MAX_VALUE;
+		for(int a = 0; a<nodes.length; a++) {
+			int r = nodeRed[a];
+			int g = nodeGreen[a];
+			int b = nodeBlue[a];
+			int nr = r<minR ? minR - r : (r>maxR ? r - maxR : 0);
+			int ng = g<minG ? minG - g : (g>maxG ? g - maxG : 0);
+			int nb = b<minB ? minB - b : (b>maxB ? b - maxB : 0);
+			nearDistance[a] = nr*nr + ng*ng + nb*nb;
+			
+			int fr = Math.max(r - minR, maxR - r);
+			int fg = Math.max(g - minG, maxG - g);
+			int fb = Math.max(b - minB, maxB - b);
+			bound = Math.min(bound, fr*fr + fg*fg + fb*fb);
+		}
+		
+		int count = 0;
+		for(int a = 0; a<nodes.length; a++) {
+			if(nearDistance[a]<=bound)
+				count++;
+		}
+		int[] candidates = new int[count];
+		count = 0;
+		for(int a = 0; a<nodes.length; a++) {
+			if(nearDistance[a]<=bound)
+				candidates[count++] = a;
+		}
+		return new InverseCell(candidates);
+	}
+	
 	private static Set<Match> scratchMatches = new TreeSet<Match>();
 	public Match[] getSomeMatches(int red,int green,int blue,int maxErrorSquared,boolean includeExact) {
 		int i1 = red/span;
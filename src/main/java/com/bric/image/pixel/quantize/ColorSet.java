@@ -21,19 +21,27 @@ package com.bric.image.pixel.quantize;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.awt.image.IndexColorModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.io.IOException;
 import java.io.Serializable;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.TreeMap;
 
 import com.bric.image.pixel.BufferedImageIterator;
 import com.bric.image.pixel.IntARGBConverter;
+import com.bric.util.ParallelRange;
 
 /** This class stores information about the frequency of colors.
  * This assumes all colors are opaque.
@@ -62,8 +70,8 @@ public class ColorSet implements Serializable {
 		}
 		
 		public int compare(Integer rgb1, Integer rgb2) {
-			int p1 = set.tree.get(rgb1);
-			int p2 = set.tree.get(rgb2);
+			int p1 = set.histogram.get(rgb1);
+			int p2 = set.histogram.get(rgb2);
 			if(ascending) {
 				if (p1 < p2) {
 					return -1;
@@ -132,12 +140,108 @@ public class ColorSet implements Serializable {
 	private static Comparator<Integer> redComparator = new RGBChannelComparator(16, 8, 0);
 		
 	/** Map RGB values to the number of occurrences. */
-	TreeMap<Integer, Integer> tree = new TreeMap<Integer, Integer>(redComparator);
+	ColorHistogram histogram = new ColorHistogram();
 	
 	/** A cached value of the number of pixels. This is equivalent to the sum of 
-	 * all the values in <code>tree</code>.
+	 * all the values in <code>histogram</code>.
 	 */
 	private long pixelCount = 0;
+	
+	/** A <code>Map</code> view of the histogram, sorted by ascending RGB value.
+	 * Changes to this map write through to this <code>ColorSet</code>.
+	 * <p>Like the rest of the <code>ColorSet</code>, every method here synchronizes
+	 * on the <code>ColorSet</code>. Keys must be 24-bit RGB values.
+	 */
+	private class FrequencyMap extends AbstractMap<Integer, Integer> {
+		
+		@Override
+		public int size() {
+			synchronized(ColorSet.this) {
+				return histogram.size();
+			}
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			if(!isRGB(key)) return false;
+			synchronized(ColorSet.this) {
+				return histogram.contains( (Integer)key );
+			}
+		}
+
+		@Override
+		public Integer get(Object key) {
+			if(!isRGB(key)) return null;
+			synchronized(ColorSet.this) {
+				int count = histogram.get( (Integer)key );
+				return count==0 ? null : count;
+			}
+		}
+
+		@Override
+		public Integer put(Integer key, Integer value) {
+			if(!isRGB(key))
+				throw new IllegalArgumentException("the key ("+key+") must be an RGB value from 0 to 0xffffff");
+			synchronized(ColorSet.this) {
+				int old = value>0 ? histogram.put(key, value) : histogram.remove(key);
+				pixelCount += value - old;
+				return old==0 ? null : old;
+			}
+		}
+
+		@Override
+		public Integer remove(Object key) {
+			if(!isRGB(key)) return null;
+			synchronized(ColorSet.this) {
+				int old = histogram.remove( (Integer)key );
+				pixelCount -= old;
+				return old==0 ? null : old;
+			}
+		}
+		
+		/** @return true if the argument is an Integer from 0 to 0xffffff. */
+		private boolean isRGB(Object key) {
+			if(!(key instanceof Integer)) return false;
+			int rgb = (Integer)key;
+			return rgb>=0 && rgb<=0xffffff;
+		}
+
+		@Override
+		public Set<Map.Entry<Integer, Integer>> entrySet() {
+			return new AbstractSet<Map.Entry<Integer, Integer>>() {
+
+				@Override
+				public Iterator<Map.Entry<Integer, Integer>> iterator() {
+					final int[] colors = getRGBs();
+					return new Iterator<Map.Entry<Integer, Integer>>() {
+						int index = 0;
+						
+						public boolean hasNext() {
+							return index<colors.length;
+						}
+
+						public Map.Entry<Integer, Integer> next() {
+							if(index>=colors.length) throw new NoSuchElementException();
+							int rgb = colors[index++];
+							return new AbstractMap.SimpleImmutableEntry<Integer, Integer>(rgb, getOccurrences(rgb));
+						}
+
+						public void remove() {
+							if(index==0) throw new IllegalStateException();
+							FrequencyMap.this.remove(colors[index-1]);
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return FrequencyMap.this.size();
+				}
+			};
+		}
+	}
+	
+	private transient FrequencyMap frequencyMap;
 
 	/** Create an empty ColorSet. */
 	public ColorSet() {}
@@ -150,6 +254,17 @@ public class ColorSet implements Serializable {
 		addColors(i);
 	}
 
+	/** Create a ColorSet that records every pixel in the argument provided.
+	 * @param i the image to add to this ColorSet. 
+	 * @param parallelism the number of bands the image may be split into
+	 * and counted concurrently.
+	 * @see #addColors(BufferedImage, int)
+	 */
+	public ColorSet(BufferedImage i,int parallelism) {
+		this();
+		addColors(i, parallelism);
+	}
+
 	/** Reconstitute a ColorSet from a String.
 	 * 
 	 * @param s a serialized ColorSet from <code>colorSet.toString()</code>.
@@ -188,8 +303,7 @@ public class ColorSet implements Serializable {
 			} else {
 				count = 1;
 			}
-			int rgb = r << 16 + (g << 8) + b;
-			tree.put(rgb, count);
+			addColor(r, g, b, count);
 			i = i3 + 1;
 		}
 	}
@@ -201,13 +315,28 @@ public class ColorSet implements Serializable {
 	 * This may help the efficiency of some algorithms, but of course it needs to be done with
 	 * caution.
 	 */
-	public Map<Integer, Integer> getRGBtoFrequencyMap(boolean cloneData) {
+	public synchronized Map<Integer, Integer> getRGBtoFrequencyMap(boolean cloneData) {
 		if(cloneData) {
 			TreeMap<Integer, Integer> newCopy = new TreeMap<Integer, Integer>(redComparator);
-			newCopy.putAll(tree);
+			for(int rgb : histogram.getColors()) {
+				newCopy.put(rgb, histogram.get(rgb));
+			}
 			return newCopy;
 		}
-		return tree;
+		if(frequencyMap==null)
+			frequencyMap = new FrequencyMap();
+		return frequencyMap;
+	}
+	
+	/** @return all the RGB values in this set, in ascending order. */
+	public synchronized int[] getRGBs() {
+		return histogram.getColors();
+	}
+	
+	/** @param rgb an RGB value (any alpha component is ignored).
+	 * @return the number of times this color is represented. */
+	public synchronized int getOccurrences(int rgb) {
+		return histogram.get(rgb & 0xffffff);
 	}
 
 	/** @param c the color to search for.
@@ -220,11 +349,9 @@ public class ColorSet implements Serializable {
 	 * @param green the green component of the color to search for.
 	 * @param blue the blue component of the color to search for.
 	 * @return the number of times this color is represented. */
-	public int getOccurrences(int red,int green,int blue) {
+	public synchronized int getOccurrences(int red,int green,int blue) {
 		int rgb = (red << 16) + (green << 8) + blue;
-		Integer count = tree.get(rgb);
-		if(count==null) return 0;
-		return count;
+		return histogram.get(rgb);
 	}
 
 	public boolean equals(Object obj) {
@@ -246,17 +373,12 @@ public class ColorSet implements Serializable {
 	 */
 	public synchronized boolean equals(ColorSet l, boolean compareColorsOnly) {
 		synchronized (l) {
-			if (l.tree.size() != tree.size())
-				return false;
-			if (compareColorsOnly) {
-				return tree.keySet().equals(l.tree.keySet());
-			}
-			return tree.equals(l.tree);
+			return histogram.equals(l.histogram, compareColorsOnly);
 		}
 	}
 
 	public String toString() {
-		StringWriter s = new StringWriter(tree.size() * 18);
+		StringWriter s = new StringWriter(histogram.size() * 18);
 		try {
 			write(s);
 		} catch (IOException e) {
@@ -268,13 +390,13 @@ public class ColorSet implements Serializable {
 
 	public synchronized void write(Writer out) throws IOException {
 		out.write(ColorSet.class.getName()+"[");
-		Iterator<Integer> keyIter = tree.keySet().iterator();
-		while(keyIter.hasNext()) {
-			int rgb = keyIter.next();
+		int[] colors = histogram.getColors();
+		for(int a = 0; a<colors.length; a++) {
+			int rgb = colors[a];
 			int r = (rgb >> 16) & 0xff;
 			int g = (rgb >> 8) & 0xff;
 			int b = (rgb >> 0) & 0xff;
-			int count = tree.get(rgb);
+			int count = histogram.get(rgb);
 
 			out.write('(');
 			out.write(r+"");
@@ -287,7 +409,7 @@ public class ColorSet implements Serializable {
 				out.write('x');
 				out.write(count+"");
 			}
-			if (keyIter.hasNext()) {
+			if (a<colors.length-1) {
 				out.write(',');
 			}
 		}
@@ -314,13 +436,7 @@ public class ColorSet implements Serializable {
 			throw new IllegalArgumentException("b must be between 0 and 255");
 		int rgb = (r << 16) + (g << 8) + b;
 
-		Integer count = tree.get(rgb);
-		if(count==null) {
-			tree.put(rgb, occurrence);
-		} else {
-			tree.put(rgb, count+occurrence);
-		}
-		
+		histogram.add(rgb, occurrence);
 		pixelCount += occurrence;
 	}
 
@@ -328,7 +444,7 @@ public class ColorSet implements Serializable {
 	 * @return the number of colors represented in this <code>ColorSet</code>.
 	 */
 	public synchronized int getColorCount() {
-		return tree.size();
+		return histogram.size();
 	}
 
 	/**
@@ -370,7 +486,11 @@ public class ColorSet implements Serializable {
 		if(colorCount>256)
 			throw new IllegalStateException("There are too many colors ("+colorCount+") to make an IndexColorModel (max is 256)");
 		
-		Integer[] allColors = tree.keySet().toArray(new Integer[tree.size()]);
+		int[] rgbs = histogram.getColors();
+		Integer[] allColors = new Integer[rgbs.length];
+		for(int a = 0; a<rgbs.length; a++) {
+			allColors[a] = rgbs[a];
+		}
 
 		int offset = includeTransparentPixel ? 1 : 0;
 		if (optimizeForGifs == false) {
@@ -494,9 +614,133 @@ public class ColorSet implements Serializable {
 	 * @param i the image to process.
 	 */
 	public void addColors(BufferedImage i) {
+		IntPixels p = IntPixels.get(i);
+		if(p!=null) {
+			addColors(p.data, p.offset, i.getWidth(), i.getHeight(), p.stride, p.hasAlpha);
+			return;
+		}
 		IntARGBConverter g = new IntARGBConverter(BufferedImageIterator.get(i));
 		addColors(g);
 	}
+	
+	/** Images with fewer pixels than this are not worth splitting into bands. */
+	private static final int MIN_PARALLEL_PIXELS = 1 << 16;
+
+	/** Add all the pixels in this image that are more than 50% opaque,
+	 * using several threads.
+	 * <p>The image is split into horizontal bands that are counted into
+	 * separate histograms on the common <code>ForkJoinPool</code>, and then
+	 * the histograms are merged. This only applies to <code>TYPE_INT_RGB</code>
+	 * and <code>TYPE_INT_ARGB</code> images that are reasonably large:
+	 * otherwise this is equivalent to calling <code>addColors(i)</code>.
+	 * 
+	 * @param i the image to process.
+	 * @param parallelism the maximum number of bands to split the image into.
+	 */
+	public void addColors(BufferedImage i,int parallelism) {
+		int height = i.getHeight();
+		int bands = Math.min(parallelism, height);
+		IntPixels p = IntPixels.get(i);
+		if(bands<=1 || p==null || ((long)i.getWidth())*height < MIN_PARALLEL_PIXELS) {
+			addColors(i);
+			return;
+		}
+		ColorSet counted = ParallelRange.parallelRange(0, height, bands, new CountBand(p, i.getWidth()));
+		addColors(counted);
+	}
+	
+	/** The raw pixels of a <code>TYPE_INT_RGB</code> or <code>TYPE_INT_ARGB</code> image. */
+	static class IntPixels {
+		
+		/** @return the pixels of an image, or null if the image doesn't store one int per pixel. */
+		static IntPixels get(BufferedImage i) {
+			int type = i.getType();
+			WritableRaster raster = i.getRaster();
+			if( (type==BufferedImage.TYPE_INT_ARGB || type==BufferedImage.TYPE_INT_RGB) &&
+					raster.getDataBuffer() instanceof DataBufferInt &&
+					raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+				int stride = ((SinglePixelPackedSampleModel)raster.getSampleModel()).getScanlineStride();
+				int offset = raster.getDataBuffer().getOffset() 
+						- raster.getSampleModelTranslateY()*stride - raster.getSampleModelTranslateX();
+				int[] data = ((DataBufferInt)raster.getDataBuffer()).getData();
+				return new IntPixels(data, offset, stride, type==BufferedImage.TYPE_INT_ARGB);
+			}
+			return null;
+		}
+		
+		final int[] data;
+		final int offset, stride;
+		final boolean hasAlpha;
+		
+		IntPixels(int[] data,int offset,int stride,boolean hasAlpha) {
+			this.data = data;
+			this.offset = offset;
+			this.stride = stride;
+			this.hasAlpha = hasAlpha;
+		}
+	}
+	
+	/** Counts a range of rows into a new <code>ColorSet</code>. */
+	private static class CountBand implements ParallelRange.Reduction<ColorSet> {
+		final IntPixels pixels;
+		final int width;
+		
+		/**
+		 * @param pixels the image to count.
+		 * @param width the width of the image.
+		 */
+		CountBand(IntPixels pixels,int width) {
+			this.pixels = pixels;
+			this.width = width;
+		}
+
+		public ColorSet run(int minY,int maxY) {
+			ColorSet set = new ColorSet();
+			set.addColors(pixels.data, pixels.offset + minY*pixels.stride, 
+					width, maxY - minY, pixels.stride, pixels.hasAlpha);
+			return set;
+		}
+
+		public ColorSet combine(ColorSet left,ColorSet right) {
+			left.addColors(right);
+			return left;
+		}
+	}
+	
+	/** Add a block of pixels that are more than 50% opaque.
+	 * This does not account for premultiplied alpha.
+	 * 
+	 * @param pixels the pixel data, as ARGB or RGB ints.
+	 * @param offset the index of the top-left pixel.
+	 * @param width the number of pixels in each row.
+	 * @param height the number of rows.
+	 * @param scanlineStride the distance between the start of each row.
+	 * @param hasAlpha if false then the high byte of each pixel is ignored
+	 * and every pixel is added.
+	 */
+	public synchronized void addColors(int[] pixels,int offset,int width,int height,int scanlineStride,boolean hasAlpha) {
+		ColorHistogram h = histogram;
+		long added = 0;
+		for(int y = 0; y<height; y++) {
+			int i = offset + y*scanlineStride;
+			int end = i + width;
+			if(hasAlpha) {
+				for(; i<end; i++) {
+					int argb = pixels[i];
+					if( (argb >>> 24) > 128 ) {
+						h.add(argb & 0xffffff, 1);
+						added++;
+					}
+				}
+			} else {
+				for(; i<end; i++) {
+					h.add(pixels[i] & 0xffffff, 1);
+				}
+				added += width;
+			}
+		}
+		pixelCount += added;
+	}
 
 	/** Add all the pixels in this iterator that are more than 50% opaque.
 	 * This does not account for premultiplied alpha.
@@ -506,19 +750,10 @@ public class ColorSet implements Serializable {
 		
 		int w = i.getWidth();
 		
-		int r, g, b, alpha;
 		int[] t = new int[i.getMinimumArrayLength()];
 		while (i.isDone() == false) {
 			i.next(t);
-			for (int a = 0; a < w; a++) {
-				alpha = ((t[a] >> 24) & 0xff);
-				if (alpha > 128) {
-					r = ((t[a] >> 16) & 0xff);
-					g = ((t[a] >> 8) & 0xff);
-					b = ((t[a]) & 0xff);
-					addColor(r, g, b, 1);
-				}
-			}
+			addColors(t, 0, w, 1, w, true);
 		}
 	}
 
@@ -542,12 +777,9 @@ public class ColorSet implements Serializable {
 	 * @param l the incoming ColorSet to add to this set.
 	*/
 	public synchronized void addColors(ColorSet l) {
-		for(Integer rgb : l.tree.keySet()) {
-			int count = l.tree.get(rgb);
-			int r = (rgb >> 16) & 0xff;
-			int g = (rgb >> 8) & 0xff;
-			int b = (rgb >> 0) & 0xff;
-			addColor(r, g, b, count);
+		synchronized(l) {
+			histogram.addAll(l.histogram);
+			pixelCount += l.pixelCount;
 		}
 	}
 
@@ -558,12 +790,12 @@ public class ColorSet implements Serializable {
 	 */
 	public synchronized Color[] getColors(boolean prependTransparentPixel) {
 		int extra = prependTransparentPixel ? 1 : 0;
-		Color[] array = new Color[tree.size() + extra];
+		Color[] array = new Color[histogram.size() + extra];
 		int ctr = 0;
 		if(prependTransparentPixel) {
 			array[ctr++] = new Color(0,0,0,0);
 		}
-		for(Integer rgb : tree.keySet()) {
+		for(int rgb : histogram.getColors()) {
 			int r = (rgb >> 16) & 0xff;
 			int g = (rgb >> 8) & 0xff;
 			int b = (rgb >> 0) & 0xff;
@@ -21,20 +21,31 @@ package com.bric.image.pixel.quantize;
 
 import java.awt.image.BufferedImage;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import com.bric.image.pixel.BufferedImageIterator;
 import com.bric.image.pixel.IndexedBytePixelIterator;
 import com.bric.image.pixel.IntARGBConverter;
-import com.bric.image.pixel.quantize.ColorLUT.Match;
+import com.bric.image.pixel.quantize.ColorLUT.ColorNode;
 
 
 /** This applies <a href="http://en.wikipedia.org/wiki/Error_diffusion">error diffusion</a>
  * to an image. Note the {@link ImageQuantization} class offers a few static fields with
  * pre-configured error diffusion settings.
+ * <p>Error diffusion is inherently sequential: every pixel depends on the error of
+ * the pixels above and to the left of it. But a pixel only depends on the row above
+ * it up to a few columns to its right. So {@link #createImageData(BufferedImage, ColorLUT, int)}
+ * processes several rows at once as a wavefront: each row trails the row above it
+ * by a few pixels. The output is identical to the serial implementation.
  */
 public class ErrorDiffusionImageQuantization extends ImageQuantization {
 	final int[][] kernel;
 	final int kernelSum ;
+	/** The column of the kernel that represents the current pixel. */
+	final int z;
 
 	
 	/** The pixel iterator that implements the error diffusion image quantization. */
@@ -44,7 +55,6 @@ public class ErrorDiffusionImageQuantization extends ImageQuantization {
 		int[] incomingRow;
 		int y = 0;
 		int[][] diffusionR, diffusionG, diffusionB;
-		int z = kernel[0].length/2;
 
 		ErrorDiffusionIndexedBytePixelIterator(BufferedImage source,
 				ColorLUT lut) {
@@ -65,17 +75,17 @@ public class ErrorDiffusionImageQuantization extends ImageQuantization {
 					int g = (incomingRow[x] >> 8) & 0xff;
 					int b = (incomingRow[x] >> 0) & 0xff;
 					
-					Match match;
+					ColorNode match;
 					
 					r = Math.min(Math.max(r + diffusionR[0][x]/kernelSum, 0), 255);
 					g = Math.min(Math.max(g + diffusionG[0][x]/kernelSum, 0), 255);
 					b = Math.min(Math.max(b + diffusionB[0][x]/kernelSum, 0), 255);
 						
-					match = lut.getMatch(r, g, b);
+					match = lut.nodes[lut.getNodeMatch(r, g, b)];
 					
-					int dr = r - match.node.red;
-					int dg = g - match.node.green;
-					int db = b - match.node.blue;
+					int dr = r - match.red;
+					int dg = g - match.green;
+					int db = b - match.blue;
 					for(int ky = 0; ky<kernel.length; ky++) {
 						for(int kx = 0; kx<kernel[ky].length; kx++) {
 							if(x+kx-z>=0 && x+kx-z<iter.getWidth()) {
@@ -86,7 +96,7 @@ public class ErrorDiffusionImageQuantization extends ImageQuantization {
 						}
 					}
 					
-					dest[x] = (byte)( match.node.index );
+					dest[x] = (byte)( match.index );
 				}
 				
 				iterateDiffusionData(diffusionR);
@@ -103,17 +113,17 @@ public class ErrorDiffusionImageQuantization extends ImageQuantization {
 						int g = (incomingRow[x] >> 8) & 0xff;
 						int b = (incomingRow[x] >> 0) & 0xff;
 						
-						Match match;
+						ColorNode match;
 						
 						r = Math.min(Math.max(r + diffusionR[0][x]/kernelSum, 0), 255);
 						g = Math.min(Math.max(g + diffusionG[0][x]/kernelSum, 0), 255);
 						b = Math.min(Math.max(b + diffusionB[0][x]/kernelSum, 0), 255);
 							
-						match = lut.getMatch(r, g, b);
+						match = lut.nodes[lut.getNodeMatch(r, g, b)];
 						
-						int dr = r - match.node.red;
-						int dg = g - match.node.green;
-						int db = b - match.node.blue;
+						int dr = r - match.red;
+						int dg = g - match.green;
+						int db = b - match.blue;
 						for(int ky = 0; ky<kernel.length; ky++) {
 							for(int kx = 0; kx<kernel[ky].length; kx++) {
 								if(x+kx-z>=0 && x+kx-z<iter.getWidth()) {
@@ -123,7 +133,7 @@ public class ErrorDiffusionImageQuantization extends ImageQuantization {
 								}
 							}
 						}
-						dest[x] = (byte)( match.node.index );
+						dest[x] = (byte)( match.index );
 					}
 				}
 				
@@ -172,6 +182,7 @@ public class ErrorDiffusionImageQuantization extends ImageQuantization {
 			}
 		}
 		kernelSum = sum;
+		z = kernel[0].length/2;
 	}
 
 	@Override
@@ -179,4 +190,178 @@ public class ErrorDiffusionImageQuantization extends ImageQuantization {
 			ColorLUT colorLUT) {
 		return new ErrorDiffusionIndexedBytePixelIterator(source, colorLUT);
 	}
+	
+	/** Images with fewer pixels than this are not worth splitting across threads. */
+	private static final int MIN_PARALLEL_PIXELS = 1 << 16;
+	
+	/** The number of pixels a row processes between checks of the row above it. */
+	private static final int CHUNK = 64;
+
+	@Override
+	public IndexedBytePixelIterator createImageData(BufferedImage source,
+			ColorLUT colorLUT, int parallelism) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int threads = Math.min(parallelism, height);
+		if(threads<=1 || ((long)width)*height < MIN_PARALLEL_PIXELS) {
+			return createImageData(source, colorLUT);
+		}
+		
+		Wavefront wavefront = new Wavefront(source, colorLUT, threads);
+		final RowWorker[] workers = new RowWorker[threads];
+		for(int a = 0; a<threads; a++) {
+			workers[a] = new RowWorker(wavefront);
+		}
+		ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				invokeAll(workers);
+			}
+		});
+		return new PrecomputedIndexedBytePixelIterator(source, colorLUT, wavefront.dest);
+	}
+	
+	/** The state shared by every thread in a parallel error diffusion.
+	 * <p>Instead of pushing error forward into accumulators (which several rows
+	 * would write to at once), each pixel stores its own error, and each pixel
+	 * pulls the error of its neighbors through the kernel. Because the error is
+	 * summed as integers the order doesn't matter, so this matches the serial
+	 * implementation exactly.
+	 */
+	private class Wavefront {
+		final int width, height;
+		final int[] pixels;
+		final int offset, stride;
+		final boolean hasAlpha, opaque;
+		final int transparentPixel;
+		final ColorLUT lut;
+		final byte[] dest;
+		
+		/** The error of recent rows, in a ring buffer indexed by y % errorR.length. */
+		final int[][] errorR, errorG, errorB;
+		/** The number of pixels completed in each row. */
+		final AtomicIntegerArray progress;
+		final AtomicInteger nextRow = new AtomicInteger();
+		
+		Wavefront(BufferedImage source,ColorLUT lut,int threads) {
+			width = source.getWidth();
+			height = source.getHeight();
+			ColorSet.IntPixels p = getARGBPixels(source);
+			pixels = p.data;
+			offset = p.offset;
+			stride = p.stride;
+			hasAlpha = p.hasAlpha;
+			this.lut = lut;
+			transparentPixel = lut.getIndexColorModel().getTransparentPixel();
+			opaque = transparentPixel<0;
+			dest = new byte[width*height];
+			progress = new AtomicIntegerArray(height);
+			
+			/* At most (threads) rows are in progress at once, and completed
+			 * rows are only read by the (kernel.length-1) rows below them.
+			 */
+			int rows = threads + kernel.length;
+			errorR = new int[rows][width];
+			errorG = new int[rows][width];
+			errorB = new int[rows][width];
+		}
+		
+		void processRow(int y) {
+			int kh = kernel.length;
+			int kw = kernel[0].length;
+			int ring = errorR.length;
+			int[] rowR = errorR[y % ring];
+			int[] rowG = errorG[y % ring];
+			int[] rowB = errorB[y % ring];
+			int i = offset + y*stride;
+			int destIndex = y*width;
+			
+			for(int x0 = 0; x0<width; x0 += CHUNK) {
+				int x1 = Math.min(width, x0 + CHUNK);
+				if(y>0) {
+					//every pixel reads the row above it up to z pixels to its right
+					int required = Math.min(width, x1 + z);
+					while(progress.get(y-1)<required) {
+						Thread.yield();
+					}
+				}
+				
+				for(int x = x0; x<x1; x++) {
+					int argb = pixels[i + x];
+					if(!opaque && hasAlpha && ((argb >> 24) & 0xff)<128) {
+						dest[destIndex + x] = (byte)( transparentPixel );
+						rowR[x] = 0;
+						rowG[x] = 0;
+						rowB[x] = 0;
+						continue;
+					}
+					
+					int sumR = 0, sumG = 0, sumB = 0;
+					for(int kx = z+1; kx<kw; kx++) {
+						int sx = x - kx + z;
+						if(sx>=0) {
+							int k = kernel[0][kx];
+							sumR += rowR[sx]*k;
+							sumG += rowG[sx]*k;
+							sumB += rowB[sx]*k;
+						}
+					}
+					for(int ky = 1; ky<kh && ky<=y; ky++) {
+						int[] aboveR = errorR[(y - ky) % ring];
+						int[] aboveG = errorG[(y - ky) % ring];
+						int[] aboveB = errorB[(y - ky) % ring];
+						for(int kx = 0; kx<kw; kx++) {
+							int sx = x - kx + z;
+							if(sx>=0 && sx<width) {
+								int k = kernel[ky][kx];
+								sumR += aboveR[sx]*k;
+								sumG += aboveG[sx]*k;
+								sumB += aboveB[sx]*k;
+							}
+						}
+					}
+					
+					int r = (argb >> 16) & 0xff;
+					int g = (argb >> 8) & 0xff;
+					int b = (argb >> 0) & 0xff;
+					r = Math.min(Math.max(r + sumR/kernelSum, 0), 255);
+					g = Math.min(Math.max(g + sumG/kernelSum, 0), 255);
+					b = Math.min(Math.max(b + sumB/kernelSum, 0), 255);
+					
+					ColorNode match = lut.nodes[lut.getNodeMatch(r, g, b)];
+					rowR[x] = r - match.red;
+					rowG[x] = g - match.green;
+					rowB[x] = b - match.blue;
+					dest[destIndex + x] = (byte)( match.index );
+				}
+				//this is a volatile write, so the errors above are visible to the next row
+				progress.set(y, x1);
+			}
+		}
+	}
+	
+	/** Repeatedly claims the next unprocessed row of a <code>Wavefront</code>.
+	 * <p>Rows are claimed in order, so every row a worker waits for has
+	 * already been claimed by a worker that is running.
+	 */
+	private static class RowWorker extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		final Wavefront wavefront;
+		
+		RowWorker(Wavefront wavefront) {
+			this.wavefront = wavefront;
+		}
+
+		@Override
+		protected void compute() {
+			int y = wavefront.nextRow.getAndIncrement();
+			while(y<wavefront.height) {
+				wavefront.processRow(y);
+				y = wavefront.nextRow.getAndIncrement();
+			}
+		}
+	}
 }
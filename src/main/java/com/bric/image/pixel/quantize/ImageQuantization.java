@@ -22,7 +22,9 @@ package com.bric.image.pixel.quantize;
 import java.awt.image.BufferedImage;
 import java.awt.image.IndexColorModel;
 
+import com.bric.image.pixel.BufferedImageIterator;
 import com.bric.image.pixel.IndexedBytePixelIterator;
+import com.bric.image.pixel.IntARGBConverter;
 
 
 /** This is an algorithm that converts an image with thousands or millions
@@ -77,6 +79,60 @@ public abstract class ImageQuantization {
 		
 	}
 	
+	/** An iterator over indexed pixels that have already been calculated
+	 * (usually by several threads at once).
+	 */
+	protected static class PrecomputedIndexedBytePixelIterator extends AbstractIndexedBytePixelIterator {
+		
+		protected final byte[] pixels;
+		protected int y = 0;
+		
+		/**
+		 * @param source the image that was quantized.
+		 * @param lut the color table that was used.
+		 * @param pixels the indexed pixels, stored row by row with no padding.
+		 */
+		protected PrecomputedIndexedBytePixelIterator(BufferedImage source, ColorLUT lut, byte[] pixels) {
+			super(source, lut);
+			this.pixels = pixels;
+		}
+
+		public void next(byte[] dest) {
+			int w = getWidth();
+			System.arraycopy(pixels, y*w, dest, 0, w);
+			y++;
+		}
+
+		public void skip() {
+			y++;
+		}
+
+		public boolean isDone() {
+			return y==getHeight();
+		}
+	}
+	
+	/** Return the ARGB pixels of an image. For <code>TYPE_INT_RGB</code> and
+	 * <code>TYPE_INT_ARGB</code> images this is the image's own raster; otherwise
+	 * this is a converted copy.
+	 */
+	static ColorSet.IntPixels getARGBPixels(BufferedImage source) {
+		ColorSet.IntPixels p = ColorSet.IntPixels.get(source);
+		if(p!=null)
+			return p;
+		IntARGBConverter iter = new IntARGBConverter(BufferedImageIterator.get(source));
+		int w = iter.getWidth();
+		int[] data = new int[w*iter.getHeight()];
+		int[] row = new int[iter.getMinimumArrayLength()];
+		int y = 0;
+		while(!iter.isDone()) {
+			iter.next(row);
+			System.arraycopy(row, 0, data, y*w, w);
+			y++;
+		}
+		return new ColorSet.IntPixels(data, 0, w, true);
+	}
+	
 	/** Create a copy of an image using a reduced color palette.
 	 * <P>This uses the {@link BiasedMedianCutColorQuantization} and
 	 * {@link #MEDIUM_DIFFUSION}.
@@ -148,6 +204,17 @@ public abstract class ImageQuantization {
 		}
 	};
 	
+	/** This uses an 8x8 Bayer matrix for ordered dithering. Every pixel is
+	 * independent, so this is the fastest dithering option when several threads
+	 * are available.
+	 */
+	public static ImageQuantization ORDERED_DITHER = new OrderedDitherImageQuantization(8, 32) {
+		@Override
+		public String toString() {
+			return "ORDERED_DITHER";
+		}
+	};
+	
 	/** Create a copy of the image argument using only the colors provided in the
 	 * color look-up table argument.
 	 * 
@@ -156,13 +223,25 @@ public abstract class ImageQuantization {
 	 * an IndexColorModel.
 	 */
 	public final BufferedImage createImage(BufferedImage source,ColorLUT colorLUT) {
+		return createImage(source, colorLUT, 1);
+	}
+	
+	/** Create a copy of the image argument using only the colors provided in the
+	 * color look-up table argument.
+	 * 
+	 * @param source the image to downsample.
+	 * @param colorLUT the new color table to use. This must be created from
+	 * an IndexColorModel.
+	 * @param parallelism the maximum number of threads to use.
+	 */
+	public final BufferedImage createImage(BufferedImage source,ColorLUT colorLUT,int parallelism) {
 		IndexColorModel icm = colorLUT.getIndexColorModel();
 		if(icm==null) throw new NullPointerException();
 		int width = source.getWidth();
 		int height = source.getHeight();
 		BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, icm);
 		byte[] row = new byte[width];
-		IndexedBytePixelIterator iter = createImageData(source, colorLUT);
+		IndexedBytePixelIterator iter = createImageData(source, colorLUT, parallelism);
 		int y = 0;
 		while(!iter.isDone()) {
 			iter.next(row);
@@ -182,4 +261,19 @@ public abstract class ImageQuantization {
 	 * an IndexColorModel.
 	 */
 	public abstract IndexedBytePixelIterator createImageData(BufferedImage source,ColorLUT colorLUT);
+	
+	/** Create a copy of the image argument using only the colors provided in the
+	 * color look-up table argument, possibly using several threads.
+	 * <p>The pixels this returns are identical to
+	 * {@link #createImageData(BufferedImage, ColorLUT)}. By default this simply
+	 * calls that method; subclasses that can split up the work override this.
+	 * 
+	 * @param source the image to downsample.
+	 * @param colorLUT the new color table to use. This must be created from
+	 * an IndexColorModel.
+	 * @param parallelism the maximum number of threads to use.
+	 */
+	public IndexedBytePixelIterator createImageData(BufferedImage source,ColorLUT colorLUT,int parallelism) {
+		return createImageData(source, colorLUT);
+	}
 }
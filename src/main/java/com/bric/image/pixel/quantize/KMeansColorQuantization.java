@@ -0,0 +1,171 @@
+/*
+ * @(#)KMeansColorQuantization.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.pixel.quantize;
+
+import com.bric.util.ParallelRange;
+
+/** This refines another <code>ColorQuantization</code> with
+ * <a href="http://en.wikipedia.org/wiki/K-means_clustering">k-means clustering</a>.
+ * <P>
+ * The initial palette comes from another algorithm (by default the 
+ * {@link MedianCutColorQuantization}). Then every color in the original set is
+ * assigned to its closest palette entry, and each palette entry is moved to the
+ * weighted average of the colors assigned to it. This repeats until the palette
+ * stops changing or a fixed number of iterations pass.
+ * <P>
+ * Each iteration is split across the common <code>ForkJoinPool</code>, and the
+ * result does not depend on the number of threads. This is slower than the seed
+ * algorithm alone, but usually reduces the average error noticeably.
+ */
+public class KMeansColorQuantization extends ColorQuantization {
+	
+	/** Colors sets smaller than this are not worth splitting across threads. */
+	private static final int MIN_PARALLEL_COLORS = 4096;
+	
+	final ColorQuantization seed;
+	final int maxIterations;
+	final int parallelism;
+	
+	/** Create a <code>KMeansColorQuantization</code> seeded by a
+	 * {@link MedianCutColorQuantization} that runs up to 8 iterations
+	 * on all available processors.
+	 */
+	public KMeansColorQuantization() {
+		this(new MedianCutColorQuantization(), 8, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/** Create a <code>KMeansColorQuantization</code>.
+	 * 
+	 * @param seed the algorithm used to create the initial palette.
+	 * @param maxIterations the maximum number of times to refine the palette.
+	 * @param parallelism the maximum number of tasks to split each iteration into.
+	 */
+	public KMeansColorQuantization(ColorQuantization seed,int maxIterations,int parallelism) {
+		if(seed==null) throw new NullPointerException();
+		if(maxIterations<0)
+			throw new IllegalArgumentException("maxIterations ("+maxIterations+") must not be negative");
+		this.seed = seed;
+		this.maxIterations = maxIterations;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	@Override
+	public ColorSet createReducedSet(ColorSet originalSet,
+			int maximumColorCount, boolean retainOriginalIntegrity) {
+		if (originalSet.getColorCount()<=maximumColorCount) {
+			return originalSet;
+		}
+		
+		//we still need the original set after seeding, so it has to stay intact
+		ColorSet seedSet = seed.createReducedSet(originalSet, maximumColorCount, true);
+		int[] centers = seedSet.getRGBs();
+		
+		int[] rgbs = originalSet.getRGBs();
+		int[] weights = new int[rgbs.length];
+		for(int a = 0; a<rgbs.length; a++) {
+			weights[a] = originalSet.getOccurrences(rgbs[a]);
+		}
+		
+		int tasks = rgbs.length<MIN_PARALLEL_COLORS ? 1 : parallelism;
+		long[] sums = assign(centers, rgbs, weights, tasks);
+		for(int iteration = 0; iteration<maxIterations; iteration++) {
+			boolean changed = false;
+			for(int a = 0; a<centers.length; a++) {
+				long count = sums[4*a+3];
+				if(count>0) {
+					int r = (int)( (sums[4*a] + count/2) / count );
+					int g = (int)( (sums[4*a+1] + count/2) / count );
+					int b = (int)( (sums[4*a+2] + count/2) / count );
+					int rgb = (r << 16) + (g << 8) + b;
+					if(rgb!=centers[a]) {
+						centers[a] = rgb;
+						changed = true;
+					}
+				}
+			}
+			if(!changed)
+				break;
+			sums = assign(centers, rgbs, weights, tasks);
+		}
+		
+		//the last assignment tells us how many pixels each color represents
+		ColorSet newGuy = new ColorSet();
+		for(int a = 0; a<centers.length; a++) {
+			long count = sums[4*a+3];
+			if(count>0) {
+				newGuy.addColor( (centers[a] >> 16) & 0xff, (centers[a] >> 8) & 0xff, 
+						centers[a] & 0xff, (int)Math.min(count, Integer.MAX_VALUE) );
+			}
+		}
+		return newGuy;
+	}
+	
+	/** Assign every color to its closest center.
+	 * 
+	 * @return the sum of the red, green, blue and pixel count for each center.
+	 */
+	private static long[] assign(int[] centers,int[] rgbs,int[] weights,int tasks) {
+		Integer[] rgb = new Integer[centers.length];
+		for(int a = 0; a<centers.length; a++) {
+			rgb[a] = centers[a];
+		}
+		ColorLUT lut = new ColorLUT(rgb);
+		return ParallelRange.parallelRange(0, rgbs.length, tasks, new Assign(lut, centers.length, rgbs, weights));
+	}
+	
+	/** Assigns a range of colors to their closest centers, and returns the
+	 * sum of the red, green, blue and pixel count for each center.
+	 */
+	private static class Assign implements ParallelRange.Reduction<long[]> {
+		final ColorLUT lut;
+		final int centerCount;
+		final int[] rgbs, weights;
+		
+		Assign(ColorLUT lut,int centerCount,int[] rgbs,int[] weights) {
+			this.lut = lut;
+			this.centerCount = centerCount;
+			this.rgbs = rgbs;
+			this.weights = weights;
+		}
+
+		public long[] run(int start,int end) {
+			long[] sums = new long[4*centerCount];
+			for(int a = start; a<end; a++) {
+				int r = (rgbs[a] >> 16) & 0xff;
+				int g = (rgbs[a] >> 8) & 0xff;
+				int b = rgbs[a] & 0xff;
+				int k = 4*lut.getNodeMatch(r, g, b);
+				long w = weights[a];
+				sums[k] += r*w;
+				sums[k+1] += g*w;
+				sums[k+2] += b*w;
+				sums[k+3] += w;
+			}
+			return sums;
+		}
+
+		public long[] combine(long[] left,long[] right) {
+			for(int a = 0; a<left.length; a++) {
+				left[a] += right[a];
+			}
+			return left;
+		}
+	}
+}
@@ -20,9 +20,6 @@
 package com.bric.image.pixel.quantize;
 
 import java.util.Arrays;
-import java.util.Map;
-
-import com.bric.image.pixel.quantize.ColorSet.RGBChannelComparator;
 
 /** This is a <a href="http://en.wikipedia.org/wiki/Median_cut">median cut color reduction algorithm</a>.
  * <P>
@@ -42,12 +39,8 @@ import com.bric.image.pixel.quantize.ColorSet.RGBChannelComparator;
  *
  */
 public class MedianCutColorQuantization extends ColorQuantization {
-	private static RGBChannelComparator redComparator = new RGBChannelComparator(16, 8, 0);
-	private static RGBChannelComparator greenComparator = new RGBChannelComparator(8, 0, 16);
-	private static RGBChannelComparator blueComparator = new RGBChannelComparator(0, 16, 8);
-
-	private static RGBChannelComparator[] comparators = 
-			new RGBChannelComparator[] { redComparator, greenComparator, blueComparator };
+	/** The channel offsets to sort by: red, green, and then blue first. */
+	private static final int[][] channelOffsets = new int[][] { {16, 8, 0}, {8, 0, 16}, {0, 16, 8} };
 
 	@Override
 	public ColorSet createReducedSet(ColorSet originalSet,
@@ -58,14 +51,17 @@ public class MedianCutColorQuantization extends ColorQuantization {
 			return originalSet;
 		}
 		ColorSet newGuy = new ColorSet();
-		Map<Integer, Integer> frequencyMap = originalSet.getRGBtoFrequencyMap(false);
-		Integer[] rgb = frequencyMap.keySet().toArray(new Integer[originalSet.tree.size()]);
-		split(rgb, frequencyMap, 0, rgb.length, maximumColorCount, 0, newGuy);			
+		int[] rgb = originalSet.getRGBs();
+		int[] frequency = new int[rgb.length];
+		for(int a = 0; a<rgb.length; a++) {
+			frequency[a] = originalSet.getOccurrences(rgb[a]);
+		}
+		split(rgb, frequency, 0, rgb.length, maximumColorCount, 0, newGuy);			
 		return newGuy;
 	}
 
 
-	private long split(Integer[] rgb, Map<Integer, Integer> rgbToFrequencyMap, int ctr, int len, int count,
+	private long split(int[] rgb, int[] frequency, int ctr, int len, int count,
 			int comparatorIndex,ColorSet dest) {
 		if (count == 1) {
 			long r = 0;
@@ -74,7 +70,7 @@ public class MedianCutColorQuantization extends ColorQuantization {
 			int pixelSum = 0;
 			int k = ctr + len;
 			for (int a = ctr; a < k; a++) {
-				int z = rgbToFrequencyMap.get(rgb[a]);
+				int z = frequency[a];
 				r += ((rgb[a] >> 16) & 0xff) * z;
 				g += ((rgb[a] >> 8) & 0xff) * z;
 				b += ((rgb[a] >> 0) & 0xff) * z;
@@ -86,14 +82,43 @@ public class MedianCutColorQuantization extends ColorQuantization {
 			dest.addColor( (int)r, (int)g, (int)b, pixelSum);
 			return pixelSum;
 		}
-		Arrays.sort(rgb, ctr, ctr + len, comparators[comparatorIndex]);
+		sort(rgb, frequency, ctr, len, channelOffsets[comparatorIndex]);
 		comparatorIndex = (comparatorIndex + 1) % 3;
 		int leftHalfCount = count / 2;
 		int rightHalfCount = count - leftHalfCount;
 		int leftLen = len / 2;
-		long sum = split(rgb, rgbToFrequencyMap, ctr, leftLen, leftHalfCount, comparatorIndex, dest);
-		sum += split(rgb, rgbToFrequencyMap, ctr + leftLen, len - leftLen, rightHalfCount,
+		long sum = split(rgb, frequency, ctr, leftLen, leftHalfCount, comparatorIndex, dest);
+		sum += split(rgb, frequency, ctr + leftLen, len - leftLen, rightHalfCount,
 				comparatorIndex, dest);
 		return sum;
 	}
-}	
+	
+	/** Sort a range of colors (and their frequencies) by three channels, in the
+	 * same order as a <code>ColorSet.RGBChannelComparator</code>.
+	 * <p>Each color's channels are rearranged into one 24-bit key that is stored
+	 * in the upper half of a <code>long</code>, and its index is stored in the
+	 * lower half, so this only sorts primitives.
+	 * 
+	 * @param offsets the channel offsets to sort by, in order of importance.
+	 */
+	private static void sort(int[] rgb, int[] frequency, int ctr, int len, int[] offsets) {
+		long[] keys = new long[len];
+		for(int a = 0; a<len; a++) {
+			int c = rgb[ctr + a];
+			long key = (((c >> offsets[0]) & 0xff) << 16) + 
+					(((c >> offsets[1]) & 0xff) << 8) + 
+					((c >> offsets[2]) & 0xff);
+			keys[a] = (key << 32) + a;
+		}
+		Arrays.sort(keys);
+		int[] sortedRGB = new int[len];
+		int[] sortedFrequency = new int[len];
+		for(int a = 0; a<len; a++) {
+			int i = (int)keys[a];
+			sortedRGB[a] = rgb[ctr + i];
+			sortedFrequency[a] = frequency[ctr + i];
+		}
+		System.arraycopy(sortedRGB, 0, rgb, ctr, len);
+		System.arraycopy(sortedFrequency, 0, frequency, ctr, len);
+	}
+}
@@ -0,0 +1,305 @@
+/*
+ * @(#)OctreeColorQuantization.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.pixel.quantize;
+
+import java.awt.image.BufferedImage;
+
+import com.bric.image.pixel.BufferedImageIterator;
+import com.bric.image.pixel.IntARGBConverter;
+
+/** This is an <a href="http://en.wikipedia.org/wiki/Octree#Color_quantization">octree color
+ * quantization algorithm</a>.
+ * <P>
+ * Each color is a path down a tree of depth 8: at every level the next bit of
+ * the red, green and blue components picks one of 8 children. Leaves accumulate
+ * the sum of the colors that reach them. When there are too many leaves, the
+ * deepest branch is merged into a single leaf that represents the average of
+ * its children.
+ * <P>
+ * Because the tree is reduced as colors arrive, an {@link Octree} never holds more
+ * than a fixed number of leaves. This means you can stream very large images (or
+ * many frames) through it without ever building a complete {@link ColorSet}.
+ * The results are usually a little coarser than the {@link MedianCutColorQuantization},
+ * but this is faster and uses much less memory.
+ */
+public class OctreeColorQuantization extends ColorQuantization {
+	
+	/** The default number of leaves an <code>Octree</code> may hold before it starts
+	 * merging branches.
+	 */
+	public static final int DEFAULT_MAX_LEAVES = 4096;
+	
+	/** An incremental octree. Colors can be added in any order, and
+	 * this structure never holds more than a fixed number of leaves.
+	 */
+	public static class Octree {
+		
+		private static class Node {
+			long red, green, blue, pixelCount;
+			Node[] children;
+			/** The next node at the same depth that can be merged. */
+			Node nextReducible;
+			
+			Node(boolean leaf) {
+				if(!leaf)
+					children = new Node[8];
+			}
+			
+			boolean isLeaf() {
+				return children==null;
+			}
+		}
+		
+		final int maxLeaves;
+		final Node root = new Node(false);
+		/** For each depth: a linked list of branches that can be merged. */
+		final Node[] reducible = new Node[8];
+		int leafCount = 0;
+		
+		/** Create an Octree with {@link OctreeColorQuantization#DEFAULT_MAX_LEAVES} leaves. */
+		public Octree() {
+			this(DEFAULT_MAX_LEAVES);
+		}
+		
+		/** Create an Octree.
+		 * 
+		 * @param maxLeaves the maximum number of leaves this tree will keep while
+		 * colors are added. This should be at least the number of colors you eventually
+		 * want to reduce to; larger values preserve more detail at the cost of memory.
+		 */
+		public Octree(int maxLeaves) {
+			if(maxLeaves<8)
+				throw new IllegalArgumentException("maxLeaves ("+maxLeaves+") must be at least 8");
+			this.maxLeaves = maxLeaves;
+			reducible[0] = root;
+		}
+		
+		/** Add a color.
+		 * 
+		 * @param rgb the color to add. The high byte is ignored.
+		 * @param occurrence the number of occurrences of this color (must be greater than zero).
+		 */
+		public void addColor(int rgb,int occurrence) {
+			if (occurrence <= 0)
+				throw new IllegalArgumentException(
+						"occurrence must be greater than 0");
+			add(rgb, occurrence);
+		}
+		
+		private void add(int rgb,int occurrence) {
+			int r = (rgb >> 16) & 0xff;
+			int g = (rgb >> 8) & 0xff;
+			int b = rgb & 0xff;
+			
+			Node node = root;
+			int level = 0;
+			while(!node.isLeaf()) {
+				int shift = 7 - level;
+				int i = (((r >> shift) & 1) << 2) + (((g >> shift) & 1) << 1) + ((b >> shift) & 1);
+				Node child = node.children[i];
+				level++;
+				if(child==null) {
+					if(level==8) {
+						child = new Node(true);
+						leafCount++;
+					} else {
+						child = new Node(false);
+						child.nextReducible = reducible[level];
+						reducible[level] = child;
+					}
+					node.children[i] = child;
+				}
+				node = child;
+			}
+			node.red += ((long)r)*occurrence;
+			node.green += ((long)g)*occurrence;
+			node.blue += ((long)b)*occurrence;
+			node.pixelCount += occurrence;
+			
+			while(leafCount>maxLeaves) {
+				reduce();
+			}
+		}
+		
+		/** Add a block of pixels that are more than 50% opaque.
+		 * This does not account for premultiplied alpha.
+		 * 
+		 * @param pixels the pixel data, as ARGB or RGB ints.
+		 * @param offset the index of the top-left pixel.
+		 * @param width the number of pixels in each row.
+		 * @param height the number of rows.
+		 * @param scanlineStride the distance between the start of each row.
+		 * @param hasAlpha if false then the high byte of each pixel is ignored
+		 * and every pixel is added.
+		 */
+		public void addColors(int[] pixels,int offset,int width,int height,int scanlineStride,boolean hasAlpha) {
+			for(int y = 0; y<height; y++) {
+				int i = offset + y*scanlineStride;
+				int end = i + width;
+				for(; i<end; i++) {
+					int argb = pixels[i];
+					if( !hasAlpha || (argb >>> 24) > 128 ) {
+						add(argb, 1);
+					}
+				}
+			}
+		}
+		
+		/** Add all the pixels in this image that are more than 50% opaque.
+		 * This does not account for premultiplied alpha.
+		 * 
+		 * @param image the image to process.
+		 */
+		public void addColors(BufferedImage image) {
+			ColorSet.IntPixels p = ColorSet.IntPixels.get(image);
+			if(p!=null) {
+				addColors(p.data, p.offset, image.getWidth(), image.getHeight(), p.stride, p.hasAlpha);
+				return;
+			}
+			IntARGBConverter iter = new IntARGBConverter(BufferedImageIterator.get(image));
+			int w = iter.getWidth();
+			int[] row = new int[iter.getMinimumArrayLength()];
+			while(!iter.isDone()) {
+				iter.next(row);
+				addColors(row, 0, w, 1, w, true);
+			}
+		}
+		
+		/** Add every color in a <code>ColorSet</code>. */
+		public void addColors(ColorSet set) {
+			int[] rgbs = set.getRGBs();
+			for(int a = 0; a<rgbs.length; a++) {
+				add(rgbs[a], set.getOccurrences(rgbs[a]));
+			}
+		}
+		
+		/** @return the number of leaves (distinct colors) currently in this tree. */
+		public int getLeafCount() {
+			return leafCount;
+		}
+		
+		/** Merge the children of the deepest branch into a single leaf. */
+		private void reduce() {
+			int level = 7;
+			while(reducible[level]==null) {
+				level--;
+			}
+			Node node = reducible[level];
+			reducible[level] = node.nextReducible;
+			node.nextReducible = null;
+			
+			int children = 0;
+			for(int a = 0; a<8; a++) {
+				Node child = node.children[a];
+				if(child!=null) {
+					node.red += child.red;
+					node.green += child.green;
+					node.blue += child.blue;
+					node.pixelCount += child.pixelCount;
+					children++;
+				}
+			}
+			node.children = null;
+			leafCount -= children - 1;
+		}
+		
+		/** Create a <code>ColorSet</code> of the average color of every leaf.
+		 * <p>This reduces this tree until it has at most <code>maximumColorCount</code>
+		 * leaves. You can keep adding colors afterwards, but the merged branches
+		 * will not be split again.
+		 * 
+		 * @param maximumColorCount the maximum number of colors to return.
+		 */
+		public ColorSet createColorSet(int maximumColorCount) {
+			if(maximumColorCount<8)
+				throw new IllegalArgumentException("maximumColorCount ("+maximumColorCount+") must be 8 or greater");
+			while(leafCount>maximumColorCount) {
+				reduce();
+			}
+			ColorSet set = new ColorSet();
+			collect(root, set);
+			return set;
+		}
+		
+		private void collect(Node node,ColorSet dest) {
+			if(node.isLeaf()) {
+				if(node.pixelCount>0) {
+					int r = (int)(node.red / node.pixelCount);
+					int g = (int)(node.green / node.pixelCount);
+					int b = (int)(node.blue / node.pixelCount);
+					dest.addColor(r, g, b, (int)Math.min(node.pixelCount, Integer.MAX_VALUE));
+				}
+				return;
+			}
+			for(int a = 0; a<8; a++) {
+				if(node.children[a]!=null)
+					collect(node.children[a], dest);
+			}
+		}
+	}
+	
+	final int maxLeaves;
+	
+	/** Create an <code>OctreeColorQuantization</code> that uses 
+	 * {@link #DEFAULT_MAX_LEAVES} leaves.
+	 */
+	public OctreeColorQuantization() {
+		this(DEFAULT_MAX_LEAVES);
+	}
+	
+	/** Create an <code>OctreeColorQuantization</code>.
+	 * 
+	 * @param maxLeaves the maximum number of leaves each {@link Octree} keeps
+	 * while colors are added.
+	 */
+	public OctreeColorQuantization(int maxLeaves) {
+		this.maxLeaves = maxLeaves;
+	}
+	
+	/** Create a new empty {@link Octree} that colors can be streamed into. */
+	public Octree createOctree() {
+		return new Octree(maxLeaves);
+	}
+
+	@Override
+	public ColorSet createReducedSet(ColorSet originalSet,
+			int maximumColorCount, boolean retainOriginalIntegrity) {
+		if(maximumColorCount<8)
+			throw new IllegalArgumentException("maximumColorCount ("+maximumColorCount+") must be 8 or greater");
+		if (originalSet.getColorCount()<=maximumColorCount) {
+			return originalSet;
+		}
+		Octree tree = new Octree(Math.max(maxLeaves, maximumColorCount));
+		tree.addColors(originalSet);
+		return tree.createColorSet(maximumColorCount);
+	}
+	
+	/** Create a reduced <code>ColorSet</code> directly from an image,
+	 * without counting every color in it first.
+	 * 
+	 * @param image the image to reduce.
+	 * @param maximumColorCount the number of colors to reduce to.
+	 */
+	public ColorSet createReducedSet(BufferedImage image,int maximumColorCount) {
+		Octree tree = new Octree(Math.max(maxLeaves, maximumColorCount));
+		tree.addColors(image);
+		return tree.createColorSet(maximumColorCount);
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * @(#)OrderedDitherImageQuantization.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.pixel.quantize;
+
+import java.awt.image.BufferedImage;
+
+import com.bric.image.pixel.BufferedImageIterator;
+import com.bric.image.pixel.IndexedBytePixelIterator;
+import com.bric.image.pixel.IntARGBConverter;
+import com.bric.util.ParallelRange;
+
+/** This applies <a href="http://en.wikipedia.org/wiki/Ordered_dithering">ordered dithering</a>
+ * with a Bayer threshold matrix.
+ * <p>Before each pixel is matched against the palette it is nudged by an offset that
+ * only depends on its position. Unlike error diffusion no pixel depends on any other
+ * pixel, so {@link #createImageData(BufferedImage, ColorLUT, int)} can split the image
+ * into bands and quantize them all at once. The pattern is more regular than error
+ * diffusion, but it also tends to compress better in GIFs and it doesn't "crawl"
+ * between frames of an animation.
+ */
+public class OrderedDitherImageQuantization extends ImageQuantization {
+	
+	/** Images with fewer pixels than this are not worth splitting across threads. */
+	private static final int MIN_PARALLEL_PIXELS = 1 << 16;
+	
+	/** The pixel iterator that implements ordered dithering. */
+	protected class OrderedDitherIndexedBytePixelIterator extends AbstractIndexedBytePixelIterator {
+
+		int[] incomingRow;
+		IntARGBConverter iter;
+		protected int y = 0;
+		
+		OrderedDitherIndexedBytePixelIterator(BufferedImage source, ColorLUT lut) {
+			super(source, lut);
+			incomingRow = new int[getWidth()];
+			iter = new IntARGBConverter(BufferedImageIterator.get(source));
+		}
+
+		public void skip() {
+			iter.skip();
+			y++;
+		}
+		
+		public void next(byte[] dest) {
+			iter.next(incomingRow);
+			ditherRow(incomingRow, 0, getWidth(), y, true, lut, dest, 0);
+			y++;
+		}
+
+		public boolean isDone() {
+			return y == getHeight();
+		}
+	}
+	
+	/** The offsets added to each channel, indexed by [y % size][x % size]. */
+	final int[][] offsets;
+	final int size;
+	
+	/** Create an <code>OrderedDitherImageQuantization</code>.
+	 * 
+	 * @param matrixSize the width and height of the Bayer matrix. This
+	 * must be a power of two (such as 2, 4, or 8).
+	 * @param spread the range of the offsets added to each channel. Usually
+	 * this should be about the distance between neighboring colors in
+	 * the palette: for a 256-color palette something like 32 works well.
+	 */
+	public OrderedDitherImageQuantization(int matrixSize,int spread) {
+		if(matrixSize<2 || (matrixSize & (matrixSize - 1))!=0)
+			throw new IllegalArgumentException("matrixSize ("+matrixSize+") must be a power of 2");
+		if(spread<0)
+			throw new IllegalArgumentException("spread ("+spread+") must not be negative");
+		size = matrixSize;
+		int[][] bayer = createBayerMatrix(matrixSize);
+		int cells = matrixSize*matrixSize;
+		offsets = new int[matrixSize][matrixSize];
+		for(int y = 0; y<matrixSize; y++) {
+			for(int x = 0; x<matrixSize; x++) {
+				//center each threshold in its cell, and then center the whole range around zero
+				offsets[y][x] = (2*bayer[y][x] + 1)*spread/(2*cells) - spread/2;
+			}
+		}
+	}
+	
+	/** Create a Bayer index matrix, where every value from 0 to (size*size-1)
+	 * appears exactly once.
+	 */
+	static int[][] createBayerMatrix(int size) {
+		int[][] m = new int[][] { {0} };
+		for(int n = 1; n<size; n *= 2) {
+			int[][] next = new int[2*n][2*n];
+			for(int y = 0; y<n; y++) {
+				for(int x = 0; x<n; x++) {
+					int v = 4*m[y][x];
+					next[y][x] = v;
+					next[y][x+n] = v + 2;
+					next[y+n][x] = v + 3;
+					next[y+n][x+n] = v + 1;
+				}
+			}
+			m = next;
+		}
+		return m;
+	}
+	
+	/** Quantize one row of pixels.
+	 * 
+	 * @param argb the incoming pixels.
+	 * @param offset the index of the first pixel of this row in <code>argb</code>.
+	 * @param width the number of pixels to quantize.
+	 * @param y the row these pixels belong to.
+	 * @param hasAlpha if false then every pixel is treated as opaque.
+	 * @param lut the palette to match against.
+	 * @param dest the array to store palette indices in.
+	 * @param destOffset the index in <code>dest</code> of the first pixel.
+	 */
+	void ditherRow(int[] argb,int offset,int width,int y,boolean hasAlpha,ColorLUT lut,byte[] dest,int destOffset) {
+		int t = lut.getIndexColorModel().getTransparentPixel();
+		int[] rowOffsets = offsets[y & (size - 1)];
+		int mask = size - 1;
+		for(int x = 0; x<width; x++) {
+			int pixel = argb[offset + x];
+			if(t>=0 && hasAlpha && ((pixel >> 24) & 0xff)<128) {
+				dest[destOffset + x] = (byte)( t );
+				continue;
+			}
+			int k = rowOffsets[x & mask];
+			int r = Math.min(Math.max(((pixel >> 16) & 0xff) + k, 0), 255);
+			int g = Math.min(Math.max(((pixel >> 8) & 0xff) + k, 0), 255);
+			int b = Math.min(Math.max((pixel & 0xff) + k, 0), 255);
+			dest[destOffset + x] = (byte)( lut.getIndexMatch(r, g, b) );
+		}
+	}
+
+	@Override
+	public IndexedBytePixelIterator createImageData(BufferedImage source,
+			ColorLUT colorLUT) {
+		return new OrderedDitherIndexedBytePixelIterator(source, colorLUT);
+	}
+
+	@Override
+	public IndexedBytePixelIterator createImageData(BufferedImage source,
+			ColorLUT colorLUT, int parallelism) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int bands = Math.min(parallelism, height);
+		if(bands<=1 || ((long)width)*height < MIN_PARALLEL_PIXELS) {
+			return createImageData(source, colorLUT);
+		}
+		
+		ColorSet.IntPixels pixels = getARGBPixels(source);
+		byte[] dest = new byte[width*height];
+		ParallelRange.parallelRange(0, height, bands, new DitherBand(pixels, width, colorLUT, dest));
+		return new PrecomputedIndexedBytePixelIterator(source, colorLUT, dest);
+	}
+	
+	/** Dithers a range of rows. */
+	private class DitherBand implements ParallelRange.Body {
+		final ColorSet.IntPixels pixels;
+		final int width;
+		final ColorLUT lut;
+		final byte[] dest;
+		
+		DitherBand(ColorSet.IntPixels pixels,int width,ColorLUT lut,byte[] dest) {
+			this.pixels = pixels;
+			this.width = width;
+			this.lut = lut;
+			this.dest = dest;
+		}
+
+		public void run(int minY,int maxY) {
+			for(int y = minY; y<maxY; y++) {
+				ditherRow(pixels.data, pixels.offset + y*pixels.stride, width, y,
+						pixels.hasAlpha, lut, dest, y*width);
+			}
+		}
+	}
+}
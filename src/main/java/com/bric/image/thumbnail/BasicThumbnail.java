@@ -34,6 +34,9 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.RoundRectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import com.bric.image.pixel.Scaling;
 import com.bric.math.MathG;
@@ -50,6 +53,12 @@ import com.bric.math.MathG;
  * if the maximum thumbnail size is 64x64, but each side of this
  * thumbnail has 5 pixels of padding, then the image will be scaled to
  * fit within a 54x54 area.)
+ * <p>When there is no rotation, all the layers except the scaled image
+ * (the "chrome") only depend on the size of the thumbnail. So the chrome is cached
+ * for each size, and each thumbnail only has to copy it and draw the scaled image.
+ * If all the layers are <code>Shadows</code>, <code>Borders</code> and <code>Images</code>,
+ * then the chrome is painted only once (as a nine-patch) and its edges are stretched to
+ * fit new sizes.
  */
 public class BasicThumbnail extends Thumbnail {
 	
@@ -417,6 +426,43 @@ public class BasicThumbnail extends Thumbnail {
 	/** The rotation (in radians) of this thumbnail. */
 	public final float theta;
 	
+	/** The maximum number of sizes to cache chrome for. */
+	private static final int MAX_CACHED_SIZES = 32;
+	
+	/** The layers of a thumbnail, except the scaled image, painted at one size. */
+	private static class Chrome {
+		/** The layers below the scaled image (including the Image layer's background). */
+		final BufferedImage underlay;
+		/** The layers above the scaled image, or null if there are none. */
+		final BufferedImage overlay;
+		
+		Chrome(BufferedImage underlay,BufferedImage overlay) {
+			this.underlay = underlay;
+			this.overlay = overlay;
+		}
+	}
+	
+	/** The index of the Image layer, or -1 if there isn't exactly one Image layer. */
+	private final int imageLayerIndex;
+	
+	/** The distance from each edge that a nine-patch has to preserve, or -1 if
+	 * these layers can't be stretched.
+	 */
+	private final int ninePatchMargin;
+	
+	/** The chrome painted at (2*ninePatchMargin+1)x(2*ninePatchMargin+1), or null if it hasn't been painted yet. */
+	private volatile Chrome ninePatch;
+	
+	/** The chrome for each thumbnail size, with the most recently used sizes last. */
+	private final Map<Dimension, Chrome> chromeBySize = new LinkedHashMap<Dimension, Chrome>(16, .75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Dimension, Chrome> eldest) {
+			return size()>MAX_CACHED_SIZES;
+		}
+	};
+	
 	/** Create a BasicThumbnail with no rotation.
 	 * <p>If there isn't an Image layer in the list of layers
 	 * provided: then a plain Image layer (with no curvature and
@@ -467,6 +513,37 @@ public class BasicThumbnail extends Thumbnail {
 			layers[layers.length -1] = new Image();
 		}
 		this.theta = theta;
+		
+		int imageIndex = -1;
+		int maxCurvature = 0;
+		int maxRings = 0;
+		boolean stretchable = true;
+		for(int a = 0; a<layers.length; a++) {
+			Class<?> c = layers[a].getClass();
+			if(c==Image.class) {
+				imageIndex = imageIndex==-1 ? a : -2;
+				maxCurvature = Math.max(maxCurvature, ((Image)layers[a]).curvature);
+			} else if(c==Border.class) {
+				Border b = (Border)layers[a];
+				maxCurvature = Math.max(maxCurvature, Math.max(b.innerCurvature, b.outerCurvature));
+			} else if(c==Shadow.class) {
+				Shadow sh = (Shadow)layers[a];
+				maxCurvature = Math.max(maxCurvature, Math.max(sh.innerCurvature, sh.outerCurvature));
+				maxRings = Math.max(maxRings, sh.ringOpacities.length);
+			} else {
+				//we don't know what this layer paints, so it can't be stretched
+				stretchable = false;
+			}
+		}
+		imageLayerIndex = Math.max(-1, imageIndex);
+		if(stretchable) {
+			int maxInset = Math.max( Math.max(totalInsets.left, totalInsets.right), 
+					Math.max(totalInsets.top, totalInsets.bottom) );
+			//rounded corners and shadow strokes reach this far from the edge (plus antialiasing)
+			ninePatchMargin = maxInset + maxCurvature + maxRings + 2;
+		} else {
+			ninePatchMargin = -1;
+		}
 	}
 
 	@Override
@@ -508,6 +585,19 @@ public class BasicThumbnail extends Thumbnail {
 			thumbnailImageSize.width = Math.max(1, thumbnailImageSize.width);
 			thumbnailImageSize.height = Math.max(1, thumbnailImageSize.height);
 			scaledSource = source.scale(thumbnailImageSize);
+			if(imageLayerIndex!=-1) {
+				clearCorners(scaledSource, ((Image)layers[imageLayerIndex]).curvature);
+				Chrome chrome = getChrome( thumbnailImageSize.width + totalInsets.left + totalInsets.right,
+						thumbnailImageSize.height + totalInsets.top + totalInsets.bottom );
+				destImage = new BufferedImage(chrome.underlay.getColorModel(), chrome.underlay.copyData(null), false, null);
+				Graphics2D g = destImage.createGraphics();
+				g.drawImage(scaledSource, totalInsets.left, totalInsets.top, null);
+				if(chrome.overlay!=null) {
+					g.drawImage(chrome.overlay, 0, 0, null);
+				}
+				g.dispose();
+				return destImage;
+			}
 			destImage = new BufferedImage( thumbnailImageSize.width + totalInsets.left + totalInsets.right,
 					thumbnailImageSize.height + totalInsets.top + totalInsets.bottom, BufferedImage.TYPE_INT_ARGB);
 		} else {
@@ -594,18 +684,7 @@ public class BasicThumbnail extends Thumbnail {
 
 			if(e instanceof Image) {
 				Image image = (Image)e;
-				if(image.curvature!=0) {
-					Area erasedArea = new Area(new Rectangle(0,0,scaledSource.getWidth(),scaledSource.getHeight()) );
-					erasedArea.subtract( new Area(
-							new RoundRectangle2D.Float(0, 0,
-									scaledSource.getWidth(), scaledSource.getHeight(), 
-									image.curvature, image.curvature) ) );
-					Graphics2D g3 = scaledSource.createGraphics();
-					g3.setComposite(AlphaComposite.Clear);
-					g3.setRenderingHints(Thumbnail.qualityHints);
-					g3.fill(erasedArea);
-					g3.dispose();
-				}
+				clearCorners(scaledSource, image.curvature);
 				if(theta==0) {
 					g2.drawImage(scaledSource, initialX + totalInsets.left, initialY + totalInsets.top, null);
 				} else {
@@ -622,6 +701,125 @@ public class BasicThumbnail extends Thumbnail {
 		return destImage;
 	}
 	
+	/** Erase the corners of the scaled image outside of the Image layer's curvature. */
+	private static void clearCorners(BufferedImage scaledSource,int curvature) {
+		if(curvature==0)
+			return;
+		Area erasedArea = new Area(new Rectangle(0,0,scaledSource.getWidth(),scaledSource.getHeight()) );
+		erasedArea.subtract( new Area(
+				new RoundRectangle2D.Float(0, 0,
+						scaledSource.getWidth(), scaledSource.getHeight(), 
+						curvature, curvature) ) );
+		Graphics2D g3 = scaledSource.createGraphics();
+		g3.setComposite(AlphaComposite.Clear);
+		g3.setRenderingHints(Thumbnail.qualityHints);
+		g3.fill(erasedArea);
+		g3.dispose();
+	}
+	
+	/** Return the chrome of an unrotated thumbnail.
+	 * 
+	 * @param width the width of the thumbnail, including all insets.
+	 * @param height the height of the thumbnail, including all insets.
+	 */
+	private Chrome getChrome(int width,int height) {
+		Dimension size = new Dimension(width, height);
+		Chrome chrome;
+		synchronized(chromeBySize) {
+			chrome = chromeBySize.get(size);
+		}
+		if(chrome!=null)
+			return chrome;
+		
+		int m = ninePatchMargin;
+		if(m>=0 && width>2*m && height>2*m) {
+			Chrome patch = ninePatch;
+			if(patch==null) {
+				patch = paintChrome(2*m+1, 2*m+1);
+				ninePatch = patch;
+			}
+			chrome = new Chrome( stretch(patch.underlay, m, width, height),
+					stretch(patch.overlay, m, width, height) );
+		} else {
+			chrome = paintChrome(width, height);
+		}
+		synchronized(chromeBySize) {
+			chromeBySize.put(size, chrome);
+		}
+		return chrome;
+	}
+	
+	/** Paint the chrome of an unrotated thumbnail. */
+	private Chrome paintChrome(int width,int height) {
+		BufferedImage underlay = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = underlay.createGraphics();
+		paintLayers(g, 0, imageLayerIndex+1, width, height);
+		g.dispose();
+		
+		BufferedImage overlay = null;
+		if(imageLayerIndex+1<layers.length) {
+			overlay = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			g = overlay.createGraphics();
+			paintLayers(g, imageLayerIndex+1, layers.length, width, height);
+			g.dispose();
+		}
+		return new Chrome(underlay, overlay);
+	}
+	
+	/** Paint the layers in [first, last), positioned as if all the layers were painted.
+	 * 
+	 * @param width the width of the thumbnail, including all insets.
+	 * @param height the height of the thumbnail, including all insets.
+	 */
+	private void paintLayers(Graphics2D g,int first,int last,int width,int height) {
+		int x = 0;
+		int y = 0;
+		for(int a = 0; a<last; a++) {
+			if(a>=first) {
+				Graphics2D g2 = (Graphics2D)g.create();
+				layers[a].paint(g2, x, y, width, height);
+				g2.dispose();
+			}
+			Insets i = layers[a].getInsets();
+			x += i.left;
+			y += i.top;
+			width -= i.left + i.right;
+			height -= i.top + i.bottom;
+		}
+	}
+	
+	/** Stretch a nine-patch to a new size.
+	 * The corners are copied, and the middle row and column are repeated.
+	 * 
+	 * @param patch a square image that is (2*margin+1) pixels wide, or null.
+	 * @param margin the size of each corner.
+	 * @return the stretched image, or null if <code>patch</code> is null.
+	 */
+	private static BufferedImage stretch(BufferedImage patch,int margin,int width,int height) {
+		if(patch==null)
+			return null;
+		int size = patch.getWidth();
+		BufferedImage dest = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[] patchRow = new int[size];
+		int[] row = new int[width];
+		for(int y = 0; y<height; y++) {
+			int patchY;
+			if(y<margin) {
+				patchY = y;
+			} else if(y>=height-margin) {
+				patchY = y - height + size;
+			} else {
+				patchY = margin;
+			}
+			patch.getRaster().getDataElements(0, patchY, size, 1, patchRow);
+			System.arraycopy(patchRow, 0, row, 0, margin);
+			Arrays.fill(row, margin, width - margin, patchRow[margin]);
+			System.arraycopy(patchRow, size - margin, row, width - margin, margin);
+			dest.getRaster().setDataElements(0, y, width, 1, row);
+		}
+		return dest;
+	}
+	
 	/** Padding an image with an extra couple of rows/columns of
 	 * empty pixels fixes nasty antialiasing artifacts when rendering
 	 * the borders.
@@ -25,10 +25,13 @@ import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
 
 import com.bric.image.ImageSize;
 import com.bric.image.pixel.Scaling;
 import com.bric.image.thumbnail.BasicThumbnail.Layer;
+import com.bric.util.ParallelRange;
 
 /** This is an abstract model to format thumbnails.
  * <p>Here "format thumbnails" refers to adding small tasteful decorations
@@ -241,6 +244,51 @@ public abstract class Thumbnail {
 		return create( new BufferedImageSource( source ), maxSize);
 	}
 	
+	/** Create thumbnails from several BufferedImages at once.
+	 * 
+	 * @param sources the images to create thumbnails for.
+	 * @param maxSize the maximum dimensions of each thumbnail.
+	 * @return the thumbnails, in the same order as <code>sources</code>.
+	 * @see #create(BufferedImage, Dimension)
+	 */
+	public List<BufferedImage> create(List<BufferedImage> sources,Dimension maxSize) {
+		return create(sources, maxSize, Runtime.getRuntime().availableProcessors());
+	}
+	
+	/** Create thumbnails from several BufferedImages at once.
+	 * 
+	 * @param sources the images to create thumbnails for.
+	 * @param maxSize the maximum dimensions of each thumbnail.
+	 * @param parallelism the maximum number of thumbnails to create at once.
+	 * @return the thumbnails, in the same order as <code>sources</code>.
+	 * @see #create(BufferedImage, Dimension)
+	 */
+	public List<BufferedImage> create(List<BufferedImage> sources,Dimension maxSize,int parallelism) {
+		if(parallelism<1) throw new IllegalArgumentException("parallelism ("+parallelism+") must be at least 1");
+		BufferedImage[] results = new BufferedImage[sources.size()];
+		ParallelRange.parallelRange(0, results.length, parallelism, new CreateBatch(sources, maxSize, results));
+		return Arrays.asList(results);
+	}
+	
+	/** Creates a range of thumbnails. */
+	private class CreateBatch implements ParallelRange.Body {
+		final List<BufferedImage> sources;
+		final Dimension maxSize;
+		final BufferedImage[] results;
+		
+		CreateBatch(List<BufferedImage> sources,Dimension maxSize,BufferedImage[] results) {
+			this.sources = sources;
+			this.maxSize = maxSize;
+			this.results = results;
+		}
+
+		public void run(int min,int max) {
+			for(int a = min; a<max; a++) {
+				results[a] = create(sources.get(a), maxSize);
+			}
+		}
+	}
+	
 	/** Create a thumbnail from an <code>ImageSource</code>.
 	 * 
 	 * @param source the image source.
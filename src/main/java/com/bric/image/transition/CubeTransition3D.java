@@ -25,6 +25,8 @@ import java.awt.GradientPaint;
 import java.awt.Graphics2D;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.bric.image.ImageContext;
 import com.bric.util.ResourcePool;
@@ -219,20 +221,22 @@ public class CubeTransition3D extends Transition3D {
 			ImageContext context = ImageContext.create(scratchImage);
 			context.setRenderingHints(g.getRenderingHints());
 
+			List<ImageContext.ImageQuad> quads = new ArrayList<ImageContext.ImageQuad>(2);
 			if(visibleB) {
-				context.drawImage(frameB,
+				quads.add(new ImageContext.ImageQuad(frameB,
 						topLeftB,
 						topRightB,
 						bottomRightB,
-						bottomLeftB);
+						bottomLeftB));
 			}
 			if(visibleA) {
-				context.drawImage(frameA,
+				quads.add(new ImageContext.ImageQuad(frameA,
 						topLeftA,
 						topRightA,
 						bottomRightA,
-						bottomLeftA);
+						bottomLeftA));
 			}
+			context.drawImages(quads);
 			
 			context.dispose();
 			
@@ -0,0 +1,109 @@
+/*
+ * @(#)ByteBufferInputStream.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/** An <code>InputStream</code> that reads the remaining bytes of a <code>ByteBuffer</code>.
+ * <p>This is mostly useful to parse a memory-mapped file (see {@link IOUtils#map(java.io.File)})
+ * with code that expects a stream: skipping is free, and you can jump to any
+ * position with {@link #seek(long)}.
+ * <p>Reading advances the position of the buffer this stream was constructed with.
+ */
+public class ByteBufferInputStream extends InputStream {
+	
+	protected final ByteBuffer buffer;
+	private int mark = -1;
+	
+	/** Create a stream that reads from the current position to the limit of a buffer.
+	 * 
+	 * @param buffer the buffer to read from.
+	 */
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		if(buffer==null) throw new NullPointerException();
+		this.buffer = buffer;
+	}
+
+	@Override
+	public int read() {
+		if(!buffer.hasRemaining())
+			return -1;
+		return buffer.get() & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) {
+		if(len==0)
+			return 0;
+		if(!buffer.hasRemaining())
+			return -1;
+		len = Math.min(len, buffer.remaining());
+		buffer.get(b, off, len);
+		return len;
+	}
+
+	@Override
+	public long skip(long n) {
+		if(n<=0)
+			return 0;
+		int k = (int)Math.min(n, buffer.remaining());
+		buffer.position(buffer.position() + k);
+		return k;
+	}
+
+	@Override
+	public int available() {
+		return buffer.remaining();
+	}
+	
+	/** @return the position of the underlying buffer. */
+	public long getPosition() {
+		return buffer.position();
+	}
+	
+	/** Move the position of the underlying buffer.
+	 * 
+	 * @param position the new position, which may not exceed the limit of the buffer.
+	 */
+	public void seek(long position) {
+		if(position<0 || position>buffer.limit())
+			throw new IllegalArgumentException("position ("+position+") must be between 0 and "+buffer.limit());
+		buffer.position( (int)position );
+	}
+
+	@Override
+	public boolean markSupported() {
+		return true;
+	}
+
+	@Override
+	public synchronized void mark(int readlimit) {
+		mark = buffer.position();
+	}
+
+	@Override
+	public synchronized void reset() throws IOException {
+		if(mark==-1)
+			throw new IOException("mark() was not called");
+		buffer.position(mark);
+	}
+}
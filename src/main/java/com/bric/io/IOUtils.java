@@ -30,7 +30,10 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
 import java.net.URL;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -137,6 +140,20 @@ public class IOUtils {
 		return t+sum;
 	}
 
+	/** Map a file into memory for reading.
+	 * <p>The file is closed before this method returns, but the mapping
+	 * remains valid until the buffer is garbage collected.
+	 * @param file the file to map.
+	 * @return a read-only buffer of the entire file.
+	 * @throws IOException if an IO problem occurs.
+	 */
+	public static MappedByteBuffer map(File file) throws IOException {
+		try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			FileChannel channel = raf.getChannel();
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
 	/** Delete this file and all its children, if any.
 	 * <p>Special OS-specific commands
 	 * may be applied to optimize deletion.
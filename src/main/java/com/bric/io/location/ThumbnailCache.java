@@ -0,0 +1,461 @@
+/*
+ * @(#)ThumbnailCache.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.io.location;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.imageio.ImageIO;
+
+import com.bric.UserCancelledException;
+import com.bric.desktop.cache.CacheManager;
+import com.bric.image.jpeg.JPEGHeader;
+import com.bric.image.thumbnail.BasicThumbnail;
+import com.bric.swing.BasicCancellable;
+import com.bric.swing.Cancellable;
+
+/** This caches the thumbnails of <code>IOLocations</code>.
+ * <p>Thumbnails are keyed by the location's path, its modification date and
+ * the requested size, so a thumbnail is created again when its location changes.
+ * They are kept in memory in a least-recently-used cache that is limited by the number of
+ * bytes of pixel data, and (optionally) written as PNGs to a directory so they
+ * survive between sessions. That directory is also limited by a number of bytes: when
+ * it grows past its limit the least recently used PNGs are deleted (including the
+ * stale thumbnails of locations that have changed since).
+ * <p>If several threads ask for the same thumbnail at once it is only created once.
+ * When a JPEG file contains an EXIF thumbnail that is at least as large as the requested
+ * size, that thumbnail is used instead of reading the whole image.
+ * <p>This object is thread-safe.
+ */
+public class ThumbnailCache {
+
+	/** The default number of bytes of pixel data kept in memory. */
+	public static final long DEFAULT_MEMORY_LIMIT = 1 << 26;
+
+	/** The default number of bytes of PNG files kept on the disk. */
+	public static final long DEFAULT_DISK_LIMIT = 1 << 28;
+
+	private static ThumbnailCache GLOBAL;
+
+	/** Return a shared <code>ThumbnailCache</code>.  If the {@link CacheManager}
+	 * has been initialized this cache stores thumbnails in its versioned directory;
+	 * otherwise thumbnails are only kept in memory.
+	 */
+	public static synchronized ThumbnailCache get() {
+		if(GLOBAL==null) {
+			File dir = null;
+			if(CacheManager.isInitialized()) {
+				dir = new File(CacheManager.get().getDirectory(true), "thumbnails");
+			}
+			GLOBAL = new ThumbnailCache(dir, DEFAULT_MEMORY_LIMIT);
+		}
+		return GLOBAL;
+	}
+
+	/** Stored in memory when a location has no thumbnail. */
+	private static final BufferedImage NO_THUMBNAIL = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	static class Key {
+		final String path;
+		final long modificationDate;
+		final int width, height;
+
+		Key(String path,long modificationDate,Dimension size) {
+			this.path = path;
+			this.modificationDate = modificationDate;
+			this.width = size.width;
+			this.height = size.height;
+		}
+
+		@Override
+		public int hashCode() {
+			return path.hashCode() + (int)modificationDate + width*31 + height;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Key))
+				return false;
+			Key other = (Key)obj;
+			return path.equals(other.path) && modificationDate==other.modificationDate &&
+					width==other.width && height==other.height;
+		}
+
+		@Override
+		public String toString() {
+			return path+" "+modificationDate+" "+width+"x"+height;
+		}
+	}
+
+	final File directory;
+	final long memoryLimit;
+	long memoryUsage = 0;
+	final long diskLimit;
+
+	/** The number of bytes of PNG files in <code>directory</code>, or -1 if it hasn't been measured yet. 
+	 * This is guarded by <code>diskLock</code>.
+	 */
+	long diskUsage = -1;
+	final Object diskLock = new Object();
+
+	/** The thumbnails in memory, in the order they were last used. */
+	final LinkedHashMap<Key, BufferedImage> images = new LinkedHashMap<Key, BufferedImage>(16, .75f, true);
+	final ConcurrentHashMap<Key, FutureTask<BufferedImage>> pending = new ConcurrentHashMap<Key, FutureTask<BufferedImage>>();
+
+	/** Create a new <code>ThumbnailCache</code>.
+	 *
+	 * @param directory an optional directory to store thumbnails in.  If this is
+	 * null then thumbnails are only stored in memory.
+	 * @param memoryLimit the number of bytes of pixel data to keep in memory.
+	 */
+	public ThumbnailCache(File directory,long memoryLimit) {
+		this(directory, memoryLimit, DEFAULT_DISK_LIMIT);
+	}
+
+	/** Create a new <code>ThumbnailCache</code>.
+	 *
+	 * @param directory an optional directory to store thumbnails in.  If this is
+	 * null then thumbnails are only stored in memory.
+	 * @param memoryLimit the number of bytes of pixel data to keep in memory.
+	 * @param diskLimit the number of bytes of PNG files to keep in <code>directory</code>.
+	 */
+	public ThumbnailCache(File directory,long memoryLimit,long diskLimit) {
+		this.directory = directory;
+		this.memoryLimit = memoryLimit;
+		this.diskLimit = diskLimit;
+	}
+
+	/** Return the thumbnail of a location, creating it if necessary.
+	 *
+	 * @param loc the location to return the thumbnail of.
+	 * @param maxSize the maximum size of the thumbnail.
+	 * @param cancellable an optional object to cancel this request. If this is
+	 * cancelled while another thread is creating the same thumbnail, this
+	 * returns null immediately and the other thread continues.
+	 * @return the thumbnail, or null if this location has no thumbnail or if
+	 * this request was cancelled.  This image should not be modified.
+	 * @throws RuntimeException if creating the thumbnail failed.  Unchecked
+	 * exceptions from {@link #createThumbnail(IOLocation, Dimension, Cancellable)}
+	 * are rethrown as they are; anything else is wrapped in a <code>RuntimeException</code>.
+	 */
+	public BufferedImage getThumbnail(final IOLocation loc,final Dimension maxSize,final Cancellable cancellable) {
+		final Key key = createKey(loc, maxSize);
+		while(true) {
+			BufferedImage bi = getCachedImage(key);
+			if(bi!=null)
+				return bi==NO_THUMBNAIL ? null : bi;
+			if(cancellable!=null && cancellable.isCancelled())
+				return null;
+
+			FutureTask<BufferedImage> task = new FutureTask<BufferedImage>(new Callable<BufferedImage>() {
+				public BufferedImage call() throws Exception {
+					return load(loc, key, maxSize, cancellable);
+				}
+			});
+			FutureTask<BufferedImage> existingTask = pending.putIfAbsent(key, task);
+			if(existingTask==null) {
+				try {
+					task.run();
+				} finally {
+					pending.remove(key, task);
+				}
+				existingTask = task;
+			}
+
+			try {
+				while(true) {
+					try {
+						bi = existingTask.get(100, TimeUnit.MILLISECONDS);
+						return bi==NO_THUMBNAIL ? null : bi;
+					} catch(TimeoutException e) {
+						if(cancellable!=null && cancellable.isCancelled())
+							return null;
+					}
+				}
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} catch(ExecutionException e) {
+				if(e.getCause() instanceof UserCancelledException) {
+					//the thread creating this thumbnail was cancelled, so try again (unless we were too)
+					continue;
+				}
+				Throwable cause = e.getCause();
+				if(cause instanceof RuntimeException)
+					throw (RuntimeException)cause;
+				if(cause instanceof Error)
+					throw (Error)cause;
+				RuntimeException e2 = new RuntimeException();
+				e2.initCause(cause);
+				throw e2;
+			}
+		}
+	}
+
+	/** Return a thumbnail if it is already in memory.  This never reads or creates a thumbnail.
+	 *
+	 * @param loc the location to return the thumbnail of.
+	 * @param maxSize the maximum size of the thumbnail.
+	 * @return the thumbnail, or null if it is not in memory.
+	 */
+	public BufferedImage getCachedThumbnail(IOLocation loc,Dimension maxSize) {
+		BufferedImage bi = getCachedImage(createKey(loc, maxSize));
+		return bi==NO_THUMBNAIL ? null : bi;
+	}
+
+	private synchronized BufferedImage getCachedImage(Key key) {
+		return images.get(key);
+	}
+
+	private Key createKey(IOLocation loc,Dimension maxSize) {
+		long modificationDate;
+		try {
+			modificationDate = loc.getModificationDate();
+		} catch(IOException e) {
+			modificationDate = 0;
+		}
+		return new Key(loc.getPath(), modificationDate, maxSize);
+	}
+
+	/** Read a thumbnail from the disk, or create it. */
+	private BufferedImage load(IOLocation loc,Key key,Dimension maxSize,Cancellable cancellable) throws UserCancelledException {
+		File file = getFile(key);
+		if(file!=null && file.exists()) {
+			try {
+				BufferedImage bi = ImageIO.read(file);
+				if(bi!=null) {
+					//the modification date of each file is when it was last used
+					file.setLastModified(System.currentTimeMillis());
+					store(key, bi);
+					return bi;
+				}
+			} catch(IOException e) {
+				//the file is damaged; recreate it
+			}
+		}
+
+		BufferedImage bi = createEmbeddedThumbnail(loc, maxSize);
+		if(bi==null) {
+			bi = createThumbnail(loc, maxSize, cancellable);
+		}
+		if(bi==null) {
+			if(cancellable!=null && cancellable.isCancelled())
+				throw new UserCancelledException();
+			store(key, NO_THUMBNAIL);
+			return NO_THUMBNAIL;
+		}
+
+		if(file!=null) {
+			try {
+				if(directory.exists() || directory.mkdirs()) {
+					ImageIO.write(bi, "png", file);
+					addToDisk(file);
+				}
+			} catch(IOException e) {
+				e.printStackTrace();
+				file.delete();
+			}
+		}
+		store(key, bi);
+		return bi;
+	}
+
+	/** Create a thumbnail from the EXIF thumbnail of a JPEG file, if it is large enough.
+	 *
+	 * @return the thumbnail, or null if the embedded thumbnail is missing or too small.
+	 */
+	private BufferedImage createEmbeddedThumbnail(IOLocation loc,Dimension maxSize) {
+		if(!(loc instanceof FileLocation))
+			return null;
+		String ext = loc.getExtension();
+		if(ext==null || !(ext.equalsIgnoreCase("jpg") || ext.equalsIgnoreCase("jpeg")))
+			return null;
+		File file = ((FileLocation)loc).getFile();
+		try {
+			JPEGHeader header = JPEGHeader.read(file);
+			byte[] data = header.readThumbnailData(file);
+			if(data==null)
+				return null;
+			BufferedImage embedded = ImageIO.read(new ByteArrayInputStream(data));
+			//if neither dimension is large enough, this thumbnail would have to be enlarged
+			if(embedded==null || (embedded.getWidth()<maxSize.width && embedded.getHeight()<maxSize.height))
+				return null;
+			return BasicThumbnail.Aqua.create(embedded, maxSize);
+		} catch(IOException e) {
+			return null;
+		}
+	}
+
+	/** Create a thumbnail.  The default implementation calls {@link IOLocation#getThumbnail(Dimension, Cancellable)}.
+	 *
+	 * @param loc the location to create a thumbnail for.
+	 * @param maxSize the maximum size of the thumbnail.
+	 * @param cancellable an optional object to cancel this request.
+	 * @return the thumbnail, or null.
+	 */
+	protected BufferedImage createThumbnail(IOLocation loc,Dimension maxSize,Cancellable cancellable) {
+		if(cancellable==null)
+			cancellable = new BasicCancellable();
+		return loc.getThumbnail(maxSize, cancellable);
+	}
+
+	/** Add an image to memory, removing the least recently used images if necessary. */
+	private synchronized void store(Key key,BufferedImage bi) {
+		BufferedImage old = images.put(key, bi);
+		if(old!=null)
+			memoryUsage -= getByteCount(old);
+		memoryUsage += getByteCount(bi);
+
+		Iterator<Map.Entry<Key, BufferedImage>> iter = images.entrySet().iterator();
+		while(memoryUsage>memoryLimit && iter.hasNext()) {
+			Map.Entry<Key, BufferedImage> eldest = iter.next();
+			if(eldest.getKey().equals(key))
+				break;
+			memoryUsage -= getByteCount(eldest.getValue());
+			iter.remove();
+		}
+	}
+
+	private static long getByteCount(BufferedImage bi) {
+		//count missing thumbnails too, so the cache can't fill with them
+		if(bi==NO_THUMBNAIL)
+			return 64;
+		return ((long)bi.getWidth())*bi.getHeight()*4;
+	}
+
+	/** Record a PNG that was just written, and delete the least recently used
+	 * PNGs if the directory is over its limit.
+	 * <p>To avoid scanning the directory after every write, this deletes
+	 * files until the directory is 75% of its limit.
+	 */
+	private void addToDisk(File file) {
+		synchronized(diskLock) {
+			if(diskUsage<0) {
+				diskUsage = 0;
+				for(File f : listFiles()) {
+					diskUsage += f.length();
+				}
+			} else {
+				diskUsage += file.length();
+			}
+			if(diskUsage<=diskLimit)
+				return;
+
+			File[] files = listFiles();
+			final long[] lastModified = new long[files.length];
+			Integer[] order = new Integer[files.length];
+			diskUsage = 0;
+			for(int a = 0; a<files.length; a++) {
+				lastModified[a] = files[a].lastModified();
+				order[a] = a;
+				diskUsage += files[a].length();
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer i1,Integer i2) {
+					return Long.compare(lastModified[i1], lastModified[i2]);
+				}
+			});
+			long target = diskLimit/4*3;
+			for(int a = 0; a<order.length && diskUsage>target; a++) {
+				File f = files[order[a]];
+				//never delete the file that was just written
+				if(f.equals(file))
+					continue;
+				long length = f.length();
+				if(f.delete())
+					diskUsage -= length;
+			}
+		}
+	}
+
+	/** Return the PNG files in <code>directory</code>. */
+	private File[] listFiles() {
+		File[] files = directory.listFiles();
+		if(files==null)
+			return new File[0];
+		int ctr = 0;
+		for(File f : files) {
+			if(f.getName().endsWith(".png"))
+				files[ctr++] = f;
+		}
+		return Arrays.copyOf(files, ctr);
+	}
+
+	/** Return the file a thumbnail is stored in, or null if this cache doesn't use the disk. */
+	private File getFile(Key key) {
+		if(directory==null)
+			return null;
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] hash = digest.digest(key.toString().getBytes(UTF8));
+			StringBuilder sb = new StringBuilder();
+			for(byte b : hash) {
+				sb.append(Character.forDigit( (b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit( b & 0xf, 16));
+			}
+			sb.append(".png");
+			return new File(directory, sb.toString());
+		} catch(NoSuchAlgorithmException e) {
+			RuntimeException e2 = new RuntimeException();
+			e2.initCause(e);
+			throw e2;
+		}
+	}
+
+	/** Return the number of bytes of pixel data in memory. */
+	public synchronized long getMemoryUsage() {
+		return memoryUsage;
+	}
+
+	/** Remove every thumbnail from memory and from the disk. */
+	public void clear() {
+		synchronized(this) {
+			images.clear();
+			memoryUsage = 0;
+		}
+		if(directory!=null) {
+			synchronized(diskLock) {
+				for(File file : listFiles()) {
+					file.delete();
+				}
+				diskUsage = 0;
+			}
+		}
+	}
+}
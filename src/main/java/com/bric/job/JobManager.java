@@ -29,6 +29,7 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
@@ -155,12 +156,25 @@ public class JobManager {
 	private final TreeMap<Integer, List<Job>> queue = new TreeMap<Integer, List<Job>>(reverseIntComparator);
 	private final Set<Job> active = new HashSet<Job>();
 	private final int threadCount;
+	private final ThreadFactory threadFactory;
 
 	transient List<Listener> listeners;
 	transient ExecutorService service;
 	
 	public JobManager(int threadCount) {
+		this(threadCount, null);
+	}
+	
+	/** Create a JobManager.
+	 * 
+	 * @param threadCount the maximum number of jobs to run at once.
+	 * @param threadFactory the factory used to create threads, or null to use the default factory.
+	 * (For example: a factory that creates daemon threads is appropriate for background work
+	 * that should not keep the application alive.)
+	 */
+	public JobManager(int threadCount,ThreadFactory threadFactory) {
 		this.threadCount = threadCount;
+		this.threadFactory = threadFactory;
 	}
 	
 	/** Return the next Job that should be executed. */
@@ -265,14 +279,47 @@ public class JobManager {
 					queue.put(key, list);
 				}
 				list.add(job);
-				if(service==null)
-					service = Executors.newFixedThreadPool(threadCount);
+				if(service==null) {
+					service = threadFactory==null ? 
+							Executors.newFixedThreadPool(threadCount) :
+							Executors.newFixedThreadPool(threadCount, threadFactory);
+				}
 				service.execute(processQueueRunnable);
 			}
 		}
 		fireListeners(QUEUE, jobs);
 	}
 	
+	/** Change the priority of a job.
+	 * <p>If the job is still pending it is moved to the end of the jobs
+	 * that share its new priority.
+	 * 
+	 * <p>If the job is not pending its priority is not changed.
+	 * 
+	 * @return true if the job was pending, false if it was not found
+	 * in the pending queue. (It might already be executing, or have otherwise finished.)
+	 */
+	public boolean setPriority(Job job,int priority) {
+		synchronized(queue) {
+			Integer oldKey = Integer.valueOf(job.getPriority());
+			List<Job> list = queue.get(oldKey);
+			if(list==null || !list.remove(job))
+				return false;
+			if(list.size()==0) {
+				queue.remove(oldKey);
+			}
+			job.setPriority(priority);
+			Integer key = Integer.valueOf(priority);
+			list = queue.get(key);
+			if (list == null) {
+				list = new LinkedList<Job>();
+				queue.put(key, list);
+			}
+			list.add(job);
+			return true;
+		}
+	}
+	
 	/** Return all jobs that are currently executing. */
 	public Job[] getActiveJobs() {
 		synchronized(active) {
@@ -21,6 +21,7 @@ package com.bric.plaf;
 
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
@@ -28,7 +29,9 @@ import java.awt.event.KeyListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Vector;
 
 import javax.swing.JComponent;
@@ -307,10 +310,35 @@ public abstract class ListLocationBrowserUI extends LocationBrowserUI {
 		//table.addKeyListener(typingListener);
 		
 		scrollPane = new JScrollPane(table);
+		scrollPane.getViewport().addChangeListener(new ChangeListener() {
+			public void stateChanged(ChangeEvent e) {
+				updateVisibleLocations();
+			}
+		});
 		
 		table.getSelectionModel().addListSelectionListener(guiListener);
 	}
 	
+	/** Tell the GraphicCache which rows are visible, so their graphics
+	 * are loaded first and thumbnails of rows that scrolled away are cancelled.
+	 */
+	protected void updateVisibleLocations() {
+		List<IOLocation> visible = new ArrayList<IOLocation>();
+		Rectangle r = table.getVisibleRect();
+		if(r.height>0) {
+			int first = table.rowAtPoint(new Point(0, r.y));
+			int last = table.rowAtPoint(new Point(0, r.y + r.height - 1));
+			if(last==-1)
+				last = table.getRowCount()-1;
+			if(first!=-1) {
+				for(int row = first; row<=last; row++) {
+					visible.add( (IOLocation)table.getValueAt(row, 0) );
+				}
+			}
+		}
+		browser.getGraphicCache().setVisibleLocations(visible);
+	}
+	
 	protected abstract TableCellRenderer getTableCellRenderer();
 	
 	@Override
@@ -31,8 +31,10 @@ import java.awt.event.KeyListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Vector;
 
 import javax.swing.JComponent;
@@ -139,6 +141,7 @@ public abstract class TileLocationBrowserUI extends LocationBrowserUI {
 		listUIModel.addListDataListener(new ListDataListener() {
 			public void contentsChanged(ListDataEvent e) {
 				updateRowCount();
+				updateVisibleLocations();
 			}
 
 			public void intervalAdded(ListDataEvent e) {
@@ -162,9 +165,31 @@ public abstract class TileLocationBrowserUI extends LocationBrowserUI {
 			}
 		});
 		
+		scrollPane.getViewport().addChangeListener(new ChangeListener() {
+			public void stateChanged(ChangeEvent e) {
+				updateVisibleLocations();
+			}
+		});
+		
 		list.getSelectionModel().addListSelectionListener(guiListener);
 	}
 	
+	/** Tell the GraphicCache which cells are visible, so their thumbnails
+	 * are loaded first and thumbnails of cells that scrolled away are cancelled.
+	 */
+	protected void updateVisibleLocations() {
+		List<IOLocation> visible = new ArrayList<IOLocation>();
+		int first = list.getFirstVisibleIndex();
+		int last = list.getLastVisibleIndex();
+		if(first!=-1) {
+			ListModel<?> model = list.getModel();
+			for(int index = first; index<=last && index<model.getSize(); index++) {
+				visible.add( (IOLocation)model.getElementAt(index) );
+			}
+		}
+		browser.getGraphicCache().setVisibleLocations(visible);
+	}
+	
 	protected void openSelectedItem() {
 		IOLocation loc = (IOLocation)list.getSelectedValue();
 		LocationPane locPane = getLocationPane();
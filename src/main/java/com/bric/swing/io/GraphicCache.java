@@ -26,6 +26,7 @@ import java.awt.event.ActionListener;
 import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Vector;
@@ -38,6 +39,7 @@ import com.bric.swing.Cancellable;
 
 /** This caches icons and thumbnails of <code>IOLocations</code>.
  * Calling <code>clear()</code> empties all cached graphics.
+ * <p>Thumbnails are created by a {@link ThumbnailLoader}.
  */
 public class GraphicCache {
 	public static final String ICON_PROPERTY = "icon";
@@ -50,7 +52,6 @@ public class GraphicCache {
 	final Hashtable<IOLocation, BufferedImage> thumbnails = new Hashtable<IOLocation, BufferedImage>();
 	
 	final Vector<IOLocation> requestIconList = new Vector<IOLocation>();
-	final Vector<IOLocation> requestThumbnailList = new Vector<IOLocation>();
 	final Vector<PropertyChangeListener> propertyListeners = new Vector<PropertyChangeListener>();
 	Dimension thumbnailSize = new Dimension(64,64);
 	
@@ -116,33 +117,21 @@ public class GraphicCache {
 		}
 	};
 
-	final Thread[] thumbnailThreads = new Thread[3];
+	final ThumbnailLoader thumbnailLoader;
 	
-	final Runnable thumbnailRunnable = new Runnable() {
-		public void run() {
-			while(true) {
-				IOLocation loc = null;
-				synchronized(requestThumbnailList) {
-					if(requestThumbnailList.size()==0)
-						return;
-					
-					loc = requestThumbnailList.remove(requestThumbnailList.size()-1);
-				}
-				Cancellable myCancellable = cancellable;
-				BufferedImage image = null;
-				try {
-					image = loc.getThumbnail(thumbnailSize, myCancellable);
-				} catch(Throwable t) {
-					handleUncaughtException(t);
-				}
-				if(image!=null) {
-					thumbnails.put(loc, image);
-					firePropertyChangeListener(THUMBNAIL_PROPERTY, loc, null, image);
-				} else if(myCancellable.isCancelled()==false) {
-					noThumbnails.add(loc.toString());
-				}
+	final ThumbnailLoader.Listener thumbnailListener = new ThumbnailLoader.Listener() {
+		public void thumbnailLoaded(ThumbnailLoader loader,IOLocation loc,BufferedImage image) {
+			if(image!=null) {
+				thumbnails.put(loc, image);
+				firePropertyChangeListener(THUMBNAIL_PROPERTY, loc, null, image);
+			} else {
+				noThumbnails.add(loc.toString());
 			}
 		}
+
+		public void thumbnailFailed(ThumbnailLoader loader,IOLocation loc,Throwable t) {
+			handleUncaughtException(t);
+		}
 	};
 	
 	public GraphicCache() {
@@ -150,9 +139,37 @@ public class GraphicCache {
 	}
 	
 	public GraphicCache(Dimension thumbnailSize) {
+		this(thumbnailSize, new ThumbnailLoader());
+	}
+	
+	/** Create a GraphicCache.
+	 * 
+	 * @param thumbnailSize the maximum size of thumbnails, or null to use the default size.
+	 * @param thumbnailLoader the loader used to create thumbnails in the background.
+	 */
+	public GraphicCache(Dimension thumbnailSize,ThumbnailLoader thumbnailLoader) {
 		if(thumbnailSize != null) {
 			this.thumbnailSize = new Dimension(thumbnailSize);
 		}
+		this.thumbnailLoader = thumbnailLoader;
+		thumbnailLoader.addListener(thumbnailListener);
+	}
+	
+	/** Return the loader used to create thumbnails in the background.
+	 * This can be consulted for queue and latency metrics.
+	 */
+	public ThumbnailLoader getThumbnailLoader() {
+		return thumbnailLoader;
+	}
+	
+	/** Define which locations are visible in the component that displays thumbnails.
+	 * Pending thumbnails of these locations are loaded first, and all other
+	 * pending thumbnails are cancelled.
+	 * 
+	 * @param locations the locations that are visible, or null if this is unknown.
+	 */
+	public void setVisibleLocations(Collection<IOLocation> locations) {
+		thumbnailLoader.setVisibleLocations(locations);
 	}
 	
 	protected void firePropertyChangeListener(String propertyName,Object src,Object oldValue,Object newValue) {
@@ -220,29 +237,15 @@ public class GraphicCache {
 	 * as the source.
 	 */
 	public BufferedImage requestThumbnail(IOLocation loc) {
-		synchronized(requestThumbnailList) {
-			BufferedImage thumbnail = thumbnails.get(loc);
-			if(thumbnail!=null)
-				return thumbnail;
-			
-			if(noThumbnails.contains(loc.toString()))
-				return null;
-			
-			int i = requestThumbnailList.indexOf(loc);
-			if(i!=-1)
-				requestThumbnailList.remove(i);
-			requestThumbnailList.add(loc);
-
-			//guarantee the thread(s) are active:
-			int requestedThreads = Math.min(requestThumbnailList.size(), thumbnailThreads.length);
-			for(int a = 0; a<requestedThreads; a++) {
-				if(thumbnailThreads[a]==null || thumbnailThreads[a].isAlive()==false) {
-					thumbnailThreads[a] = new Thread(thumbnailRunnable,"Thumbnail Fetcher "+a);
-					thumbnailThreads[a].start();
-				}
-			}
+		BufferedImage thumbnail = thumbnails.get(loc);
+		if(thumbnail!=null)
+			return thumbnail;
+		
+		if(noThumbnails.contains(loc.toString()))
 			return null;
-		}
+		
+		thumbnailLoader.request(loc, thumbnailSize);
+		return null;
 	}
 	
 	/** Add a listener to handle exceptions.
@@ -278,15 +281,13 @@ public class GraphicCache {
 	}
 	
 	public void clear() {
-		synchronized(requestThumbnailList) {
-			synchronized(requestIconList) {
-				thumbnails.clear();
-				icons.clear();
-				requestThumbnailList.clear();
-				requestIconList.clear();
-				cancellable.cancel();
-				cancellable = new BasicCancellable();
-			}
+		synchronized(requestIconList) {
+			thumbnailLoader.cancelAll();
+			thumbnails.clear();
+			icons.clear();
+			requestIconList.clear();
+			cancellable.cancel();
+			cancellable = new BasicCancellable();
 		}
 	}
 }
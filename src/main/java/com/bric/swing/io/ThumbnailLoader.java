@@ -0,0 +1,454 @@
+/*
+ * @(#)ThumbnailLoader.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.swing.io;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.bric.UserCancelledException;
+import com.bric.io.location.FileLocation;
+import com.bric.io.location.IOLocation;
+import com.bric.io.location.ThumbnailCache;
+import com.bric.job.Job;
+import com.bric.job.JobManager;
+
+/** This loads thumbnails of <code>IOLocations</code> in the background.
+ * <p>Each request is a {@link Job}. There is one {@link JobManager} for each
+ * storage device, so every device has its own limit on how many thumbnails
+ * are read at once: a slow network volume can't starve a local disk, and
+ * a spinning disk isn't asked to seek between dozens of files.
+ * <p>Locations that are visible (see {@link #setVisibleLocations(Collection)})
+ * are loaded first. When a location is no longer visible its request is removed from
+ * the queue, or cancelled if a thumbnail is already being created. So scrolling
+ * through a large folder only costs work for the cells the user actually stops to look at.
+ * <p>Thumbnails come from a {@link ThumbnailCache}, so requesting a location again
+ * after it scrolls back into view is usually cheap.
+ */
+public class ThumbnailLoader {
+
+	/** This is notified when a request finishes. */
+	public static interface Listener {
+		/** This is called when a thumbnail has been loaded.
+		 * <p>This is invoked on a loader thread, so it should not perform
+		 * EDT work and it should be very light.
+		 *
+		 * @param image the thumbnail, or null if this location does not have a thumbnail.
+		 */
+		public void thumbnailLoaded(ThumbnailLoader loader,IOLocation loc,BufferedImage image);
+
+		/** This is called when an exception occurred loading a thumbnail.
+		 * <p>This is invoked on a loader thread, so it should not perform
+		 * EDT work and it should be very light.
+		 */
+		public void thumbnailFailed(ThumbnailLoader loader,IOLocation loc,Throwable t);
+	}
+
+	/** The default number of thumbnails that are created at once on each storage device. */
+	public static final int DEFAULT_THREADS_PER_DEVICE = 2;
+
+	/** The priority of a request for a visible location. */
+	public static final int PRIORITY_VISIBLE = Job.PRIORITY_HIGH;
+
+	/** The priority of a request for a location that isn't known to be visible. */
+	public static final int PRIORITY_REQUESTED = Job.PRIORITY_MEDIUM;
+
+	/** The thread that looks up which device a folder is on, so {@link #request(IOLocation, Dimension)} never waits for the file system. */
+	private static final ThreadPoolExecutor deviceLookupExecutor = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Thumbnail Loader Device Lookup");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	static {
+		deviceLookupExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	class Request extends Job {
+		final IOLocation loc;
+		final Dimension size;
+		final JobManager manager;
+		final long requestTime = System.currentTimeMillis();
+
+		Request(IOLocation loc,Dimension size,JobManager manager,int priority) {
+			super(priority);
+			this.loc = loc;
+			this.size = new Dimension(size);
+			this.manager = manager;
+			setName("Thumbnail "+loc.getName());
+		}
+
+		@Override
+		protected void runJob() {
+			long startTime = System.currentTimeMillis();
+			BufferedImage image = null;
+			Throwable error = null;
+			try {
+				//ThumbnailCache polls this job to see if it is cancelled:
+				image = cache.getThumbnail(loc, size, this);
+			} catch(UserCancelledException e) {
+				//this was cancelled; there's nothing to report
+			} catch(Throwable t) {
+				error = t;
+			}
+			finish(this, startTime, image, error);
+		}
+	}
+
+	final ThumbnailCache cache;
+	final int threadsPerDevice;
+	final Map<Object, JobManager> managers = new HashMap<Object, JobManager>();
+	final Map<IOLocation, Request> requests = new HashMap<IOLocation, Request>();
+	final Map<String, Object> devicesByDirectory = new ConcurrentHashMap<String, Object>();
+	final ConcurrentHashMap<String, Boolean> deviceLookups = new ConcurrentHashMap<String, Boolean>();
+	final Vector<Listener> listeners = new Vector<Listener>();
+
+	/** The locations that are visible, or null if this is unknown. */
+	Set<IOLocation> visibleLocations = null;
+
+	final AtomicLong completedCount = new AtomicLong();
+	final AtomicLong failedCount = new AtomicLong();
+	final AtomicLong cancelledCount = new AtomicLong();
+	final AtomicLong totalWaitTime = new AtomicLong();
+	final AtomicLong totalLatency = new AtomicLong();
+	final AtomicLong maximumLatency = new AtomicLong();
+
+	/** Create a ThumbnailLoader that uses the shared <code>ThumbnailCache</code>. */
+	public ThumbnailLoader() {
+		this(ThumbnailCache.get(), DEFAULT_THREADS_PER_DEVICE);
+	}
+
+	/** Create a ThumbnailLoader.
+	 *
+	 * @param cache the cache thumbnails are retrieved from.
+	 * @param threadsPerDevice the maximum number of thumbnails to create at once on each storage device.
+	 */
+	public ThumbnailLoader(ThumbnailCache cache,int threadsPerDevice) {
+		if(cache==null) throw new NullPointerException();
+		if(threadsPerDevice<1) throw new IllegalArgumentException("threadsPerDevice ("+threadsPerDevice+") must be at least 1");
+		this.cache = cache;
+		this.threadsPerDevice = threadsPerDevice;
+	}
+
+	public void addListener(Listener l) {
+		if(listeners.contains(l))
+			return;
+		listeners.add(l);
+	}
+
+	public void removeListener(Listener l) {
+		listeners.remove(l);
+	}
+
+	/** Request a thumbnail. Listeners are notified when it is loaded.
+	 * <p>If this location is already pending this does not queue it again,
+	 * but this may raise its priority.
+	 *
+	 * @param loc the location to create a thumbnail of.
+	 * @param maxSize the maximum size of the thumbnail.
+	 * @return true if a new request was queued.
+	 */
+	public boolean request(IOLocation loc,Dimension maxSize) {
+		Object device = getDevice(loc);
+		synchronized(this) {
+			int priority = visibleLocations!=null && visibleLocations.contains(loc) ?
+					PRIORITY_VISIBLE : PRIORITY_REQUESTED;
+			Request existing = requests.get(loc);
+			if(existing!=null) {
+				if(existing.size.equals(maxSize)) {
+					if(existing.getPriority()<priority)
+						existing.manager.setPriority(existing, priority);
+					return false;
+				}
+				cancel(existing);
+			}
+			Request request = new Request(loc, maxSize, getJobManager(device), priority);
+			requests.put(loc, request);
+			request.manager.addJob(request);
+			return true;
+		}
+	}
+
+	/** Define which locations are visible.
+	 * <p>Pending requests for these locations are moved ahead of all other requests.
+	 * Requests for any other location are cancelled.
+	 *
+	 * @param locations the locations that are visible, or null if this is unknown.
+	 * (If this is null then no requests are cancelled.)
+	 */
+	public synchronized void setVisibleLocations(Collection<IOLocation> locations) {
+		visibleLocations = locations==null ? null : new HashSet<IOLocation>(locations);
+		if(visibleLocations==null)
+			return;
+		for(Request request : new ArrayList<Request>(requests.values())) {
+			if(visibleLocations.contains(request.loc)) {
+				if(request.getPriority()<PRIORITY_VISIBLE)
+					request.manager.setPriority(request, PRIORITY_VISIBLE);
+			} else {
+				cancel(request);
+			}
+		}
+	}
+
+	/** Cancel all requests. */
+	public synchronized void cancelAll() {
+		for(Request request : new ArrayList<Request>(requests.values())) {
+			cancel(request);
+		}
+	}
+
+	/** Remove a request from the queue, or cancel it if it is already active. */
+	private void cancel(Request request) {
+		requests.remove(request.loc);
+		if(!request.manager.removeJob(request)) {
+			request.cancel();
+		}
+		cancelledCount.incrementAndGet();
+	}
+
+	void finish(Request request,long startTime,BufferedImage image,Throwable error) {
+		synchronized(this) {
+			if(requests.get(request.loc)==request)
+				requests.remove(request.loc);
+		}
+		//a cancelled request still delivers an image if it managed to create one
+		if(request.isCancelled() && image==null)
+			return;
+
+		long time = System.currentTimeMillis();
+		totalWaitTime.addAndGet(startTime - request.requestTime);
+		long latency = time - request.requestTime;
+		totalLatency.addAndGet(latency);
+		while(true) {
+			long max = maximumLatency.get();
+			if(latency<=max || maximumLatency.compareAndSet(max, latency))
+				break;
+		}
+		if(error==null) {
+			completedCount.incrementAndGet();
+		} else {
+			failedCount.incrementAndGet();
+		}
+
+		for(int a = 0; a<listeners.size(); a++) {
+			Listener l = listeners.get(a);
+			try {
+				if(error==null) {
+					l.thumbnailLoaded(this, request.loc, image);
+				} else {
+					l.thumbnailFailed(this, request.loc, error);
+				}
+			} catch(RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private JobManager getJobManager(final Object device) {
+		synchronized(managers) {
+			JobManager manager = managers.get(device);
+			if(manager==null) {
+				ThreadFactory threadFactory = new ThreadFactory() {
+					AtomicInteger ctr = new AtomicInteger();
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "Thumbnail Loader ("+device+") "+ctr.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				};
+				manager = new JobManager(threadsPerDevice, threadFactory);
+				managers.put(device, manager);
+			}
+			return manager;
+		}
+	}
+
+	/** Return an object identifying the storage device a location is on.
+	 * Thumbnails on the same device share one limit on how many are created at once.
+	 * <p>For files this is the file store (volume) that contains them; for other locations
+	 * this is the protocol and host of their URL.
+	 * <p>This is called by {@link #request(IOLocation, Dimension)}, usually on the
+	 * event dispatch thread, so it must not block. The file store of a folder is
+	 * looked up on a background thread (see {@link #lookupDevice(File)}), and until
+	 * that finishes the root of the folder is used instead.
+	 */
+	protected Object getDevice(IOLocation loc) {
+		if(loc instanceof FileLocation) {
+			File dir = ((FileLocation)loc).getFile().getAbsoluteFile().getParentFile();
+			if(dir==null)
+				return "file";
+			//every file in a folder is on the same device, so only look up each folder once
+			String key = dir.getPath();
+			Object device = devicesByDirectory.get(key);
+			if(device==null) {
+				device = getRoot(dir);
+				if(deviceLookups.putIfAbsent(key, Boolean.TRUE)==null)
+					deviceLookupExecutor.execute(new LookupDevice(dir, (File)device));
+			}
+			return device;
+		}
+		URL url = loc.getURL();
+		if(url==null)
+			return loc.getClass().getName();
+		return url.getProtocol()+"://"+url.getHost();
+	}
+
+	/** Return an object identifying the storage device a folder is on.
+	 * <p>This is called on a background thread, and it may block.
+	 * The default implementation returns the folder's <code>FileStore</code>.
+	 *
+	 * @param dir the folder to look up.
+	 * @return an object identifying the device this folder is on.
+	 * @throws IOException if the device can't be identified.
+	 */
+	protected Object lookupDevice(File dir) throws IOException {
+		return Files.getFileStore(dir.toPath());
+	}
+
+	/** Looks up the device of a folder, and records it for future requests. */
+	class LookupDevice implements Runnable {
+		final File dir, root;
+
+		LookupDevice(File dir,File root) {
+			this.dir = dir;
+			this.root = root;
+		}
+
+		public void run() {
+			Object device;
+			try {
+				device = lookupDevice(dir);
+			} catch(IOException e) {
+				device = root;
+			} catch(RuntimeException e) {
+				device = root;
+			}
+			synchronized(managers) {
+				//the requests made while this was looked up used the root as their device. If
+				//this is the first device found on that root, keep using the same JobManager
+				//so we don't run twice as many threads on this device.
+				if(!managers.containsKey(device)) {
+					JobManager rootManager = getJobManager(root);
+					if(Collections.frequency(managers.values(), rootManager)==1)
+						managers.put(device, rootManager);
+				}
+			}
+			devicesByDirectory.put(dir.getPath(), device);
+		}
+	}
+
+	/** Return each JobManager once (a manager may be registered for several devices). */
+	private Set<JobManager> getJobManagers() {
+		synchronized(managers) {
+			return new HashSet<JobManager>(managers.values());
+		}
+	}
+
+	private static File getRoot(File file) {
+		while(file.getParentFile()!=null) {
+			file = file.getParentFile();
+		}
+		return file;
+	}
+
+	/** Return the number of requests waiting to start. */
+	public int getQueueDepth() {
+		int sum = 0;
+		for(JobManager manager : getJobManagers()) {
+			sum += manager.getJobCount(false);
+		}
+		return sum;
+	}
+
+	/** Return the number of thumbnails that are being created right now. */
+	public int getActiveCount() {
+		int sum = 0;
+		for(JobManager manager : getJobManagers()) {
+			sum += manager.getActiveJobs().length;
+		}
+		return sum;
+	}
+
+	/** Return the number of storage devices this loader has used. */
+	public int getDeviceCount() {
+		return getJobManagers().size();
+	}
+
+	/** Return the number of requests that finished successfully.
+	 * (This includes requests for locations that do not have a thumbnail.)
+	 */
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
+
+	/** Return the number of requests that failed because of an exception. */
+	public long getFailedCount() {
+		return failedCount.get();
+	}
+
+	/** Return the number of requests that were cancelled, usually because their location was no longer visible. */
+	public long getCancelledCount() {
+		return cancelledCount.get();
+	}
+
+	/** Return the average time (in milliseconds) requests waited in the queue before they started. */
+	public double getAverageWaitTime() {
+		long count = completedCount.get() + failedCount.get();
+		return count==0 ? 0 : ((double)totalWaitTime.get())/count;
+	}
+
+	/** Return the average time (in milliseconds) between a request and the delivery of its thumbnail. */
+	public double getAverageLatency() {
+		long count = completedCount.get() + failedCount.get();
+		return count==0 ? 0 : ((double)totalLatency.get())/count;
+	}
+
+	/** Return the longest time (in milliseconds) between a request and the delivery of its thumbnail. */
+	public long getMaximumLatency() {
+		return maximumLatency.get();
+	}
+
+	@Override
+	public String toString() {
+		return "ThumbnailLoader[ queued = "+getQueueDepth()+", active = "+getActiveCount()+
+				", completed = "+getCompletedCount()+", failed = "+getFailedCount()+
+				", cancelled = "+getCancelledCount()+", average latency = "+((long)getAverageLatency())+" ms ]";
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * @(#)ParallelRange.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/** This splits a range of integers (such as the rows of an image) into
+ * contiguous subranges that are processed in a <code>ForkJoinPool</code>.
+ * <p>The range is split in half recursively, so <i>n</i> tasks produce
+ * <i>n</i> subranges whose sizes differ by at most one element. If only
+ * one task is requested the work is done on the calling thread.
+ */
+public class ParallelRange {
+
+	/** The work done for one subrange. */
+	public static interface Body {
+		/** Process a subrange.
+		 * 
+		 * @param min the first element of this subrange (inclusive).
+		 * @param max the last element of this subrange (exclusive).
+		 */
+		public void run(int min,int max);
+	}
+
+	/** The work done for one subrange that produces a result. */
+	public static interface Reduction<T> {
+		/** Process a subrange.
+		 * 
+		 * @param min the first element of this subrange (inclusive).
+		 * @param max the last element of this subrange (exclusive).
+		 * @return the result of this subrange.
+		 */
+		public T run(int min,int max);
+
+		/** Combine the results of two adjacent subranges.
+		 * 
+		 * @param left the result of the lower subrange.
+		 * @param right the result of the upper subrange.
+		 * @return the result of both subranges.  This may be one of the arguments.
+		 */
+		public T combine(T left,T right);
+	}
+
+	/** Process a range on the common <code>ForkJoinPool</code>.
+	 * 
+	 * @param min the first element of the range (inclusive).
+	 * @param max the last element of the range (exclusive).
+	 * @param tasks the number of subranges to split this range into.
+	 * @param body the work to do for each subrange.
+	 */
+	public static void parallelRange(int min,int max,int tasks,Body body) {
+		parallelRange(ForkJoinPool.commonPool(), min, max, tasks, body);
+	}
+
+	/** Process a range.
+	 * 
+	 * @param pool the pool to process the subranges in.
+	 * @param min the first element of the range (inclusive).
+	 * @param max the last element of the range (exclusive).
+	 * @param tasks the number of subranges to split this range into.
+	 * @param body the work to do for each subrange.
+	 */
+	public static void parallelRange(ForkJoinPool pool,int min,int max,int tasks,Body body) {
+		tasks = getTaskCount(min, max, tasks);
+		if(tasks<=1) {
+			body.run(min, max);
+		} else {
+			pool.invoke(new RangeAction(min, max, tasks, body));
+		}
+	}
+
+	/** Process a range on the common <code>ForkJoinPool</code> and combine the results.
+	 * 
+	 * @param min the first element of the range (inclusive).
+	 * @param max the last element of the range (exclusive).
+	 * @param tasks the number of subranges to split this range into.
+	 * @param reduction the work to do for each subrange.
+	 * @return the combined result of every subrange.
+	 */
+	public static <T> T parallelRange(int min,int max,int tasks,Reduction<T> reduction) {
+		tasks = getTaskCount(min, max, tasks);
+		if(tasks<=1) {
+			return reduction.run(min, max);
+		}
+		return ForkJoinPool.commonPool().invoke(new RangeTask<T>(min, max, tasks, reduction));
+	}
+
+	/** Return the number of tasks to use, so no subrange is empty. */
+	private static int getTaskCount(int min,int max,int tasks) {
+		return (int)Math.min(tasks, ((long)max) - min);
+	}
+
+	/** Return where to split a range, giving <code>leftTasks</code> of <code>tasks</code> to the lower half. */
+	private static int getMiddle(int min,int max,int leftTasks,int tasks) {
+		return min + (int)( (((long)max) - min)*leftTasks/tasks );
+	}
+
+	private static class RangeAction extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final int min, max, tasks;
+		final Body body;
+
+		RangeAction(int min,int max,int tasks,Body body) {
+			this.min = min;
+			this.max = max;
+			this.tasks = tasks;
+			this.body = body;
+		}
+
+		@Override
+		protected void compute() {
+			if(tasks<=1) {
+				body.run(min, max);
+				return;
+			}
+			int leftTasks = tasks/2;
+			int mid = getMiddle(min, max, leftTasks, tasks);
+			invokeAll(new RangeAction(min, mid, leftTasks, body),
+					new RangeAction(mid, max, tasks - leftTasks, body));
+		}
+	}
+
+	private static class RangeTask<T> extends RecursiveTask<T> {
+		private static final long serialVersionUID = 1L;
+
+		final int min, max, tasks;
+		final Reduction<T> reduction;
+
+		RangeTask(int min,int max,int tasks,Reduction<T> reduction) {
+			this.min = min;
+			this.max = max;
+			this.tasks = tasks;
+			this.reduction = reduction;
+		}
+
+		@Override
+		protected T compute() {
+			if(tasks<=1) {
+				return reduction.run(min, max);
+			}
+			int leftTasks = tasks/2;
+			int mid = getMiddle(min, max, leftTasks, tasks);
+			RangeTask<T> right = new RangeTask<T>(mid, max, tasks - leftTasks, reduction);
+			right.fork();
+			T left = new RangeTask<T>(min, mid, leftTasks, reduction).compute();
+			return reduction.combine(left, right.join());
+		}
+	}
+}
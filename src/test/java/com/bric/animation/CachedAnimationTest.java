@@ -0,0 +1,114 @@
+/*
+ * @(#)CachedAnimationTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.animation;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import com.bric.image.ImageTestUtils;
+import com.bric.io.IOUtils;
+
+public class CachedAnimationTest extends TestCase {
+	
+	/** Replay frames (in and out of order) through a small in-memory cache,
+	 * and make sure all the frames share one file.
+	 */
+	public void testFrames() throws Exception {
+		File dir = new File(System.getProperty("java.io.tmpdir"), "cached-animation-test-"+System.nanoTime());
+		assertTrue(dir.mkdir());
+		try {
+			int w = 37, h = 29;
+			CachedAnimation animation = new CachedAnimation(dir, new Dimension(w, h));
+			animation.setCachedImageLimit(w*h*4*3);
+			BufferedImage[] frames = new BufferedImage[20];
+			for(int a = 0; a<frames.length; a++) {
+				frames[a] = ImageTestUtils.createRandomImage(w, h, a%2==0 ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB, a);
+				animation.addFrame(frames[a], 10*a);
+			}
+			assertEquals(1, dir.listFiles().length);
+			
+			for(int pass = 0; pass<2; pass++) {
+				ResettableAnimationReader reader = animation.createReader();
+				for(int a = 0; a<frames.length; a++) {
+					BufferedImage bi = reader.getNextFrame(false);
+					ImageTestUtils.assertPixelsEqual(frames[a], bi);
+					assertEquals( ((double)(10*a))/1000.0, reader.getFrameDuration(), .0001);
+				}
+				assertNull(reader.getNextFrame(false));
+			}
+			
+			int[] order = new int[] { 5, 4, 5, 19, 0, 5, 0, 12 };
+			for(int a : order) {
+				ImageTestUtils.assertPixelsEqual(frames[a], animation.getFrameImage(a));
+			}
+			
+			//cloned frames must be safe to modify:
+			ResettableAnimationReader reader = animation.createReader();
+			BufferedImage clone = reader.getNextFrame(true);
+			clone.setRGB(0, 0, frames[0].getRGB(0, 0) ^ 0xffffff);
+			ImageTestUtils.assertPixelsEqual(frames[0], animation.getFrameImage(0));
+			
+			//uncloned frames are the cached instances, and are recycled once evicted:
+			reader = animation.createReader();
+			BufferedImage shared = reader.getNextFrame(false);
+			assertSame(shared, animation.getFrameImage(0));
+			assertNotSame(shared, reader.getNextFrame(true));
+			for(int a = 0; a<frames.length; a++) {
+				animation.getFrameImage(a);
+			}
+			ImageTestUtils.assertPixelsEqual(frames[0], animation.getFrameImage(0));
+			
+			animation.dispose();
+			assertEquals(0, dir.listFiles().length);
+		} finally {
+			IOUtils.delete(dir);
+		}
+	}
+	
+	/** The backing file should only grow as frames are added. */
+	public void testFileGrowth() throws Exception {
+		File file = File.createTempFile("frame-store-test", ".frames");
+		int w = 31, h = 17;
+		long frameSize = w*h*4;
+		FrameStore store = new FrameStore(file, w, h);
+		try {
+			BufferedImage[] frames = new BufferedImage[11];
+			for(int a = 0; a<frames.length; a++) {
+				frames[a] = ImageTestUtils.createRandomImage(w, h, BufferedImage.TYPE_INT_ARGB, a);
+				store.add(frames[a]);
+				if(a==0)
+					assertEquals(frameSize, file.length());
+			}
+			//blocks of 1, 1, 2, 4 and 8 frames:
+			assertEquals(16*frameSize, file.length());
+			
+			BufferedImage bi = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+			for(int a = frames.length-1; a>=0; a--) {
+				store.read(a, bi);
+				ImageTestUtils.assertPixelsEqual(frames[a], bi);
+			}
+		} finally {
+			store.dispose();
+		}
+	}
+}
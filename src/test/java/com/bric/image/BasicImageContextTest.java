@@ -0,0 +1,98 @@
+/*
+ * @(#)BasicImageContextTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image;
+
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class BasicImageContextTest extends TestCase {
+
+	/** An exception painting a tile on a worker thread must be thrown by <code>dispose()</code>. */
+	public void testTileFailure() {
+		BufferedImage dest = new BufferedImage(300, 300, BufferedImage.TYPE_INT_ARGB);
+		BasicImageContext context = new BasicImageContext(dest, 2) {
+			@Override
+			protected void drawTile(TileInstructions[] batch) {
+				throw new IllegalStateException("tile failure");
+			}
+		};
+		BufferedImage src = new BufferedImage(50, 50, BufferedImage.TYPE_INT_ARGB);
+		context.drawImage(src, new Point2D.Double(0, 0), new Point2D.Double(250, 0),
+				new Point2D.Double(250, 250), new Point2D.Double(0, 250));
+		try {
+			context.dispose();
+			fail("dispose() should throw the tile's exception");
+		} catch(IllegalStateException e) {
+			assertEquals("tile failure", e.getMessage());
+		}
+	}
+
+	/** Several threads may call <code>drawImage</code> at once. Images in separate
+	 * columns must come out exactly as they do when one thread draws them.
+	 */
+	public void testConcurrentDraws() throws Exception {
+		final BufferedImage[] sources = new BufferedImage[6];
+		for(int a = 0; a<sources.length; a++) {
+			sources[a] = ImageTestUtils.createRandomImage(40, 90, BufferedImage.TYPE_INT_ARGB, a);
+		}
+		BufferedImage expected = new BufferedImage(300, 300, BufferedImage.TYPE_INT_ARGB);
+		BasicImageContext serial = new BasicImageContext(expected, 0);
+		for(int a = 0; a<sources.length; a++) {
+			for(int b = 0; b<20; b++) {
+				draw(serial, sources[a], a);
+			}
+		}
+		serial.dispose();
+		
+		BufferedImage actual = new BufferedImage(300, 300, BufferedImage.TYPE_INT_ARGB);
+		final BasicImageContext context = new BasicImageContext(actual, 3);
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int a = 0; a<sources.length; a++) {
+			final int index = a;
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for(int b = 0; b<20; b++) {
+						draw(context, sources[index], index);
+					}
+				}
+			});
+		}
+		for(Thread thread : threads) {
+			thread.start();
+		}
+		for(Thread thread : threads) {
+			thread.join();
+		}
+		context.dispose();
+		ImageTestUtils.assertPixelsEqual(expected, actual);
+	}
+	
+	/** Draw an image in the nth 50-pixel column, sheared so it crosses several tiles. */
+	private static void draw(BasicImageContext context,BufferedImage img,int column) {
+		int x = 50*column + 3;
+		context.drawImage(img, new Point2D.Double(x, 10), new Point2D.Double(x + 40, 30),
+				new Point2D.Double(x + 40, 290), new Point2D.Double(x, 270));
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * @(#)FrameDiffTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class FrameDiffTest extends TestCase {
+	
+	private static BufferedImage createImage(int type,int width,int height,Random random) {
+		BufferedImage bi = new BufferedImage(width, height, type);
+		Graphics2D g = bi.createGraphics();
+		for(int a = 0; a<20; a++) {
+			g.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256), 128 + random.nextInt(128)));
+			g.fillRect(random.nextInt(width), random.nextInt(height), random.nextInt(width/2), random.nextInt(height/2));
+		}
+		g.dispose();
+		return bi;
+	}
+	
+	private static BufferedImage copy(BufferedImage bi) {
+		BufferedImage copy = new BufferedImage(bi.getWidth(), bi.getHeight(), bi.getType());
+		Graphics2D g = copy.createGraphics();
+		g.drawImage(bi, 0, 0, null);
+		g.dispose();
+		return copy;
+	}
+	
+	/** Change a few small areas of an image. */
+	private static void paintChanges(BufferedImage bi,Random random,int changes) {
+		Graphics2D g = bi.createGraphics();
+		for(int a = 0; a<changes; a++) {
+			g.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+			g.fillRect(random.nextInt(bi.getWidth()), random.nextInt(bi.getHeight()), 1 + random.nextInt(30), 1 + random.nextInt(30));
+		}
+		g.dispose();
+	}
+	
+	private static boolean isDifferent(int background,int incoming) {
+		return ((background ^ incoming) & 0xffffff)!=0 || (incoming >>> 24) < (background >>> 24);
+	}
+	
+	public void testIdenticalImages() {
+		BufferedImage bi = createImage(BufferedImage.TYPE_INT_ARGB, 100, 80, new Random(0));
+		FrameDiff diff = new FrameDiff();
+		assertNull( diff.getBounds(bi, copy(bi)) );
+		assertTrue( diff.getDirtyRectangles(bi, copy(bi)).isEmpty() );
+	}
+	
+	public void testSeparateRectangles() {
+		BufferedImage bi1 = createImage(BufferedImage.TYPE_INT_RGB, 200, 200, new Random(0));
+		BufferedImage bi2 = copy(bi1);
+		Graphics2D g = bi2.createGraphics();
+		g.setColor(Color.black);
+		g.setXORMode(Color.white);
+		g.fillRect(10, 10, 20, 20);
+		g.fillRect(150, 160, 30, 10);
+		g.dispose();
+		
+		FrameDiff diff = new FrameDiff(1, 8);
+		assertEquals( new Rectangle(10, 10, 170, 160), diff.getBounds(bi1, bi2) );
+		List<Rectangle> dirty = diff.getDirtyRectangles(bi1, bi2);
+		assertEquals( 2, dirty.size() );
+		assertEquals( new Rectangle(10, 10, 20, 20), dirty.get(0) );
+		assertEquals( new Rectangle(150, 160, 30, 10), dirty.get(1) );
+	}
+	
+	/** Compare against a pixel-by-pixel search for several image types, sizes and parallelism. */
+	public void testRandomChanges() {
+		Random random = new Random(0);
+		int[] types = new int[] { BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_3BYTE_BGR };
+		for(int type : types) {
+			for(int size : new int[] {50, 700}) {
+				for(int parallelism : new int[] {1, 4}) {
+					BufferedImage bi1 = createImage(type, size, size, random);
+					BufferedImage bi2 = copy(bi1);
+					paintChanges(bi2, random, 5);
+					check(new FrameDiff(parallelism, 8), bi1, bi2);
+					// sub-images have offsets into their raster
+					check(new FrameDiff(parallelism, 4), bi1.getSubimage(3, 7, size - 10, size - 20), bi2.getSubimage(3, 7, size - 10, size - 20));
+				}
+			}
+		}
+	}
+	
+	private void check(FrameDiff diff,BufferedImage bi1,BufferedImage bi2) {
+		Rectangle expected = null;
+		for(int y = 0; y<bi1.getHeight(); y++) {
+			for(int x = 0; x<bi1.getWidth(); x++) {
+				if(isDifferent(bi1.getRGB(x, y), bi2.getRGB(x, y))) {
+					if(expected==null) {
+						expected = new Rectangle(x, y, 1, 1);
+					} else {
+						expected.add(new Rectangle(x, y, 1, 1));
+					}
+				}
+			}
+		}
+		assertEquals( expected, diff.getBounds(bi1, bi2) );
+		
+		List<Rectangle> dirty = diff.getDirtyRectangles(bi1, bi2);
+		for(int a = 0; a<dirty.size(); a++) {
+			for(int b = a+1; b<dirty.size(); b++) {
+				assertFalse( dirty.get(a).intersects(dirty.get(b)) );
+			}
+		}
+		for(int y = 0; y<bi1.getHeight(); y++) {
+			for(int x = 0; x<bi1.getWidth(); x++) {
+				if(isDifferent(bi1.getRGB(x, y), bi2.getRGB(x, y))) {
+					boolean covered = false;
+					for(Rectangle r : dirty) {
+						covered = covered || r.contains(x, y);
+					}
+					assertTrue( "("+x+", "+y+")", covered );
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * @(#)ImageTestUtils.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import junit.framework.Assert;
+
+/** Static methods to create and compare images in unit tests. */
+public class ImageTestUtils {
+
+	/** Create an image where every pixel is random.
+	 * 
+	 * @param width the width of the image.
+	 * @param height the height of the image.
+	 * @param type the type of image, such as <code>BufferedImage.TYPE_INT_ARGB</code>.
+	 * @param seed the seed of the random pixels.
+	 * @return a new image.
+	 */
+	public static BufferedImage createRandomImage(int width,int height,int type,long seed) {
+		BufferedImage bi = new BufferedImage(width, height, type);
+		Random random = new Random(seed);
+		for(int y = 0; y<height; y++) {
+			for(int x = 0; x<width; x++) {
+				bi.setRGB(x, y, random.nextInt());
+			}
+		}
+		return bi;
+	}
+
+	/** Create a smooth gradient with some noise, so it has many colors.
+	 * <p>Red increases from left to right and green increases from top to
+	 * bottom. If the image type supports alpha then about one pixel in ten
+	 * is transparent.
+	 * 
+	 * @param width the width of the image.
+	 * @param height the height of the image.
+	 * @param type the type of image, such as <code>BufferedImage.TYPE_INT_RGB</code>.
+	 * @param noise the range of the random values added to the blue channel.
+	 * @return a new image.
+	 */
+	public static BufferedImage createNoisyGradient(int width,int height,int type,int noise) {
+		BufferedImage bi = new BufferedImage(width, height, type);
+		boolean alpha = bi.getColorModel().hasAlpha();
+		Random random = new Random(0);
+		for(int y = 0; y<height; y++) {
+			for(int x = 0; x<width; x++) {
+				int r = 255*x/width;
+				int g = 255*y/height;
+				int b = Math.min(255, (r + g)/2 + random.nextInt(noise));
+				int a = alpha && random.nextInt(10)==0 ? 0 : 255;
+				bi.setRGB(x, y, (a << 24) + (r << 16) + (g << 8) + b);
+			}
+		}
+		return bi;
+	}
+
+	/** Return all the pixels of an image as ARGB ints. */
+	public static int[] getPixels(BufferedImage bi) {
+		return bi.getRGB(0, 0, bi.getWidth(), bi.getHeight(), null, 0, bi.getWidth());
+	}
+
+	/** Assert that two images are the same size and have exactly the same ARGB pixels. */
+	public static void assertPixelsEqual(BufferedImage expected,BufferedImage actual) {
+		assertPixelsEqual(null, expected, actual);
+	}
+
+	/** Assert that two images are the same size and have exactly the same ARGB pixels.
+	 * 
+	 * @param message an optional description of these images for failure messages.
+	 */
+	public static void assertPixelsEqual(String message,BufferedImage expected,BufferedImage actual) {
+		assertSimilar(message, expected, actual, 0);
+	}
+
+	/** Assert that two images are the same size, and every channel of every pixel
+	 * differs by at most <code>tolerance</code>.
+	 */
+	public static void assertSimilar(BufferedImage expected,BufferedImage actual,int tolerance) {
+		assertSimilar(null, expected, actual, tolerance);
+	}
+
+	/** Assert that two images are the same size, and every channel of every pixel
+	 * differs by at most <code>tolerance</code>.
+	 * 
+	 * @param message an optional description of these images for failure messages.
+	 */
+	public static void assertSimilar(String message,BufferedImage expected,BufferedImage actual,int tolerance) {
+		String prefix = message==null ? "" : message+" ";
+		Assert.assertEquals(prefix+"width", expected.getWidth(), actual.getWidth());
+		Assert.assertEquals(prefix+"height", expected.getHeight(), actual.getHeight());
+		for(int y = 0; y<expected.getHeight(); y++) {
+			for(int x = 0; x<expected.getWidth(); x++) {
+				int p1 = expected.getRGB(x, y);
+				int p2 = actual.getRGB(x, y);
+				for(int shift = 0; shift<32; shift += 8) {
+					int c1 = (p1 >>> shift) & 0xff;
+					int c2 = (p2 >>> shift) & 0xff;
+					if(Math.abs(c1-c2)>tolerance)
+						Assert.fail(prefix+"("+x+", "+y+") expected "+Integer.toHexString(p1)+" but was "+Integer.toHexString(p2));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * @(#)ParallelImageContextTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image;
+
+import java.awt.RenderingHints;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/** This confirms the <code>ParallelImageContext</code> paints exactly
+ * the same pixels as a single-threaded <code>BasicImageContext</code>.
+ */
+public class ParallelImageContextTest extends TestCase {
+	
+	public void testNearestNeighbor() {
+		testHint(RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+	}
+	
+	public void testBilinear() {
+		testHint(RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+	}
+	
+	public void testBicubic() {
+		testHint(RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+	}
+	
+	public void testFactory() {
+		ImageContextFactory oldFactory = ImageContextFactory.get();
+		try {
+			ImageContextFactory.set(new ParallelImageContext.Factory());
+			ImageContext context = ImageContext.create(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB));
+			assertTrue( context instanceof ParallelImageContext );
+			context.dispose();
+		} finally {
+			ImageContextFactory.set(oldFactory);
+		}
+	}
+	
+	private void testHint(Object interpolationHint) {
+		List<ImageContext.ImageQuad> quads = createQuads(new Random(0));
+		
+		BufferedImage expected = new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB);
+		ImageContext basic = new BasicImageContext(expected, 0);
+		basic.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolationHint);
+		for(ImageContext.ImageQuad q : quads) {
+			basic.drawImage(q.image, q.topLeft, q.topRight, q.bottomRight, q.bottomLeft);
+		}
+		basic.dispose();
+		
+		//the common pool, the calling thread, and a pool of our own:
+		for(int threads : new int[] { -1, 0, 3 }) {
+			BufferedImage actual = new BufferedImage(400, 300, BufferedImage.TYPE_INT_ARGB);
+			ImageContext parallel = threads<0 ? new ParallelImageContext(actual) : new ParallelImageContext(actual, threads);
+			parallel.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolationHint);
+			parallel.drawImages(quads);
+			parallel.dispose();
+			
+			ImageTestUtils.assertPixelsEqual("threads = "+threads, expected, actual);
+		}
+	}
+	
+	/** Create overlapping quads, some with translucent pixels and some with strong perspective. */
+	private static List<ImageContext.ImageQuad> createQuads(Random random) {
+		List<ImageContext.ImageQuad> quads = new ArrayList<ImageContext.ImageQuad>();
+		for(int a = 0; a<12; a++) {
+			int type = a%2==0 ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+			BufferedImage img = new BufferedImage(40 + random.nextInt(60), 40 + random.nextInt(60), type);
+			for(int y = 0; y<img.getHeight(); y++) {
+				for(int x = 0; x<img.getWidth(); x++) {
+					img.setRGB(x, y, random.nextInt());
+				}
+			}
+			double x = random.nextInt(300) - 20;
+			double y = random.nextInt(200) - 20;
+			quads.add(new ImageContext.ImageQuad(img, 
+					new Point2D.Double(x + random.nextInt(30), y),
+					new Point2D.Double(x + 120, y + random.nextInt(30)),
+					new Point2D.Double(x + 100 + random.nextInt(40), y + 110),
+					new Point2D.Double(x, y + 80 + random.nextInt(40)) ));
+		}
+		return quads;
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * @(#)SCImageContextTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image;
+
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/** This compares the bilinear span renderer of the <code>SCImageContext</code>
+ * against its per-pixel nearest neighbor renderer.
+ */
+public class SCImageContextTest extends TestCase {
+
+	static final int BACKGROUND = 0xff3060c0;
+
+	public void testOpaque() {
+		testSource(BufferedImage.TYPE_INT_RGB, 0xff);
+	}
+
+	public void testTranslucent() {
+		testSource(BufferedImage.TYPE_INT_ARGB, 0x80);
+	}
+
+	private void testSource(int type,int alpha) {
+		AffineTransform identity = new AffineTransform();
+		AffineTransform rotated = AffineTransform.getRotateInstance(Math.PI/7, 100, 100);
+
+		//a flat color must come out of both renderers exactly the same
+		BufferedImage flat = createImage(type, alpha, false);
+		assertTrue(render(flat, rotated, RenderingHints.VALUE_INTERPOLATION_BILINEAR).getRGB(150, 150)!=BACKGROUND);
+		ImageTestUtils.assertSimilar(render(flat, identity, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR),
+				render(flat, identity, RenderingHints.VALUE_INTERPOLATION_BILINEAR), 0);
+		ImageTestUtils.assertSimilar(render(flat, rotated, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR),
+				render(flat, rotated, RenderingHints.VALUE_INTERPOLATION_BILINEAR), 0);
+
+		//a gradient that changes by 2 per pixel can only differ by about that much
+		BufferedImage gradient = createImage(type, alpha, true);
+		ImageTestUtils.assertSimilar(render(gradient, identity, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR),
+				render(gradient, identity, RenderingHints.VALUE_INTERPOLATION_BILINEAR), 3);
+		ImageTestUtils.assertSimilar(render(gradient, rotated, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR),
+				render(gradient, rotated, RenderingHints.VALUE_INTERPOLATION_BILINEAR), 3);
+	}
+
+	/** Create a 100x100 image that is either a flat color or a smooth gradient. */
+	private static BufferedImage createImage(int type,int alpha,boolean gradient) {
+		BufferedImage img = new BufferedImage(100, 100, type);
+		for(int y = 0; y<img.getHeight(); y++) {
+			for(int x = 0; x<img.getWidth(); x++) {
+				int r = gradient ? 2*x : 200;
+				int g = gradient ? 2*y : 100;
+				int b = gradient ? x + y : 50;
+				img.setRGB(x, y, (alpha << 24) | (r << 16) | (g << 8) | b);
+			}
+		}
+		return img;
+	}
+
+	/** Render an image at twice its size onto a solid background. */
+	private static BufferedImage render(BufferedImage img,AffineTransform transform,Object interpolationHint) {
+		BufferedImage dest = new BufferedImage(300, 300, BufferedImage.TYPE_INT_ARGB);
+		int[] background = new int[dest.getWidth()*dest.getHeight()];
+		Arrays.fill(background, BACKGROUND);
+		dest.setRGB(0, 0, dest.getWidth(), dest.getHeight(), background, 0, dest.getWidth());
+
+		SCImageContext context = new SCImageContext(dest, 0);
+		context.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolationHint);
+		context.drawImage(img, 
+				transform.transform(new Point2D.Double(50, 50), null),
+				transform.transform(new Point2D.Double(250, 50), null),
+				transform.transform(new Point2D.Double(250, 250), null),
+				transform.transform(new Point2D.Double(50, 250), null));
+		context.dispose();
+		return dest;
+	}
+
+	/** An exception painting a tile on a worker thread must be thrown by <code>drawImage</code>. */
+	public void testTileFailure() {
+		final BufferedImage src = new BufferedImage(50, 50, BufferedImage.TYPE_INT_ARGB);
+		BufferedImage dest = new BufferedImage(300, 300, BufferedImage.TYPE_INT_ARGB);
+		SCImageContext context = new SCImageContext(dest, 2) {
+			@Override
+			protected int[] getPixels(BufferedImage bi) {
+				//the tiles will read past the end of this array
+				return bi==src ? new int[0] : super.getPixels(bi);
+			}
+		};
+		try {
+			context.drawImage(src, new Point2D.Double(0, 0), new Point2D.Double(250, 0),
+					new Point2D.Double(250, 250), new Point2D.Double(0, 250));
+			fail("drawImage() should throw the tile's exception");
+		} catch(ArrayIndexOutOfBoundsException e) {
+			//pass
+		} finally {
+			context.dispose();
+		}
+	}
+}
@@ -19,8 +19,15 @@
  */
 package com.bric.image.bmp;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+
 import junit.framework.TestCase;
 
+import com.bric.image.ImageTestUtils;
+
 /** This is a developer's tool to confirm that BMPs are being read
  * correctly, and to run some comparison tests.
  *
@@ -50,4 +57,118 @@ public class BmpTests extends TestCase {
 		assertTrue( BmpEncoder.writeHeader(array, 0, 23, 10, 32) == 23*4 );
 		assertTrue( BmpEncoder.writeHeader(array, 0, 24, 10, 32) == 24*4 );
 	}
+
+	/** Make sure the mapped reader matches the original image for every
+	 * destination type, including the types it copies in bulk.
+	 */
+	public void testMappedReader() throws Exception {
+		int[] destTypes = new int[] {
+				BufferedImage.TYPE_INT_ARGB,
+				BufferedImage.TYPE_INT_RGB,
+				BufferedImage.TYPE_3BYTE_BGR,
+				BufferedImage.TYPE_4BYTE_ABGR,
+				BufferedImage.TYPE_INT_ARGB_PRE
+		};
+		for(int srcType : new int[] { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB }) {
+			for(int w = 17; w<=20; w++) {
+				BufferedImage src = ImageTestUtils.createRandomImage(w, 11, srcType, w);
+				File file = File.createTempFile("mapped", ".bmp");
+				try {
+					BmpEncoder.write(src, file);
+					BufferedImage streamed = BmpDecoder.readImage(new java.io.FileInputStream(file));
+					BmpMappedReader reader = new BmpMappedReader(file);
+					assertEquals(srcType==BufferedImage.TYPE_INT_RGB ? 24 : 32, reader.getBitsPerPixel());
+					
+					BufferedImage mapped = reader.read(null);
+					assertEquals(streamed.getType(), mapped.getType());
+					ImageTestUtils.assertPixelsEqual(src, mapped);
+					
+					for(int destType : destTypes) {
+						BufferedImage dst = new BufferedImage(w, 11, destType);
+						//opaque destinations lose alpha, and premultiplying is lossy:
+						if(srcType==BufferedImage.TYPE_INT_ARGB && 
+								(!dst.getColorModel().hasAlpha() || dst.isAlphaPremultiplied()))
+							continue;
+						assertSame(dst, reader.read(dst));
+						ImageTestUtils.assertPixelsEqual(src, dst);
+					}
+				} finally {
+					file.delete();
+				}
+			}
+		}
+	}
+	
+	/** Test random access rows in a top-down BMP that uses a 40-byte
+	 * bitmap header, which our encoder never writes.
+	 */
+	public void testTopDownRows() throws Exception {
+		int w = 5, h = 4;
+		int scanline = BmpEncoder.getScanlineSize(w, 3);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ByteBuffer header = ByteBuffer.allocate(54).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+		header.put((byte)'B').put((byte)'M');
+		header.putInt(54 + scanline*h).putInt(0).putInt(54);
+		header.putInt(40).putInt(w).putInt(-h);
+		header.putShort((short)1).putShort((short)24);
+		header.putInt(0).putInt(scanline*h).putInt(2835).putInt(2835).putInt(0).putInt(0);
+		out.write(header.array());
+		for(int y = 0; y<h; y++) {
+			byte[] row = new byte[scanline];
+			for(int x = 0; x<w; x++) {
+				row[3*x] = (byte)(10*y);
+				row[3*x+1] = (byte)x;
+				row[3*x+2] = (byte)200;
+			}
+			out.write(row);
+		}
+		
+		BmpMappedReader reader = new BmpMappedReader(ByteBuffer.wrap(out.toByteArray()));
+		assertTrue(reader.isTopDown());
+		assertEquals(w, reader.getWidth());
+		assertEquals(h, reader.getHeight());
+		byte[] row = new byte[reader.getScanlineSize()];
+		for(int y = h-1; y>=0; y--) {
+			reader.getRow(y, row);
+			assertEquals(10*y, row[0] & 0xff);
+		}
+		
+		BufferedImage bi = reader.read(new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB));
+		for(int y = 0; y<h; y++) {
+			for(int x = 0; x<w; x++) {
+				assertEquals(0xff000000 | (200 << 16) | (x << 8) | (10*y), bi.getRGB(x, y));
+			}
+		}
+		
+		BufferedImage streamed = BmpDecoder.readImage(new java.io.ByteArrayInputStream(out.toByteArray()));
+		ImageTestUtils.assertPixelsEqual(streamed, bi);
+	}
+
+	/** Make sure writing stripes in parallel produces the same file as
+	 * writing the image sequentially.
+	 */
+	public void testParallelWrite() throws Exception {
+		for(int type : new int[] { BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR }) {
+			for(int w : new int[] { 1024, 1001 }) {
+				BufferedImage src = ImageTestUtils.createRandomImage(w, 700, type, w+type);
+				File sequential = File.createTempFile("sequential", ".bmp");
+				File parallel = File.createTempFile("parallel", ".bmp");
+				try {
+					BmpEncoder.write(src, sequential, 1);
+					BmpEncoder.write(src, parallel, 5);
+					assertEquals(sequential.length(), parallel.length());
+					if(w%4==0) {
+						//without padding the files should be identical
+						assertTrue(java.util.Arrays.equals(
+								java.nio.file.Files.readAllBytes(sequential.toPath()),
+								java.nio.file.Files.readAllBytes(parallel.toPath())));
+					}
+					ImageTestUtils.assertPixelsEqual(src, BmpDecoder.readImage(parallel));
+				} finally {
+					sequential.delete();
+					parallel.delete();
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,95 @@
+/*
+ * @(#)BasicGifEncoderTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.gif;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import junit.framework.TestCase;
+
+import com.bric.image.pixel.quantize.ColorSet;
+import com.bric.image.pixel.quantize.MedianCutColorQuantization;
+
+public class BasicGifEncoderTest extends TestCase {
+	
+	/** Create frames with a moving square, where every fourth frame repeats the previous frame. */
+	private static BufferedImage[] createFrames(int count) {
+		BufferedImage[] frames = new BufferedImage[count];
+		for(int a = 0; a<count; a++) {
+			if(a%4==3) {
+				frames[a] = frames[a-1];
+				continue;
+			}
+			BufferedImage bi = new BufferedImage(160, 120, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = bi.createGraphics();
+			g.setColor(Color.white);
+			g.fillRect(0, 0, 160, 120);
+			g.setColor(new Color(40*(a%6), 100, 255 - 20*(a%10)));
+			g.fillRect(5*a % 140, 3*a % 100, 20, 20);
+			g.setColor(Color.black);
+			g.drawString(Integer.toString(a/2), 10, 110);
+			g.dispose();
+			frames[a] = bi;
+		}
+		return frames;
+	}
+	
+	private static byte[] write(BufferedImage[] frames,IndexColorModel icm,GifEncoder encoder) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GifWriter writer = new GifWriter(out, new Dimension(160, 120), icm, 0, 0, encoder);
+		for(BufferedImage frame : frames) {
+			writer.write(frame, 100, null);
+		}
+		writer.close(false);
+		return out.toByteArray();
+	}
+	
+	/** A pipelined encoder must write exactly the same file as a serial encoder. */
+	public void testPipelinedEncoding() throws IOException {
+		BufferedImage[] frames = createFrames(30);
+		ColorSet colors = new ColorSet();
+		for(BufferedImage frame : frames) {
+			colors.addColors(frame);
+		}
+		colors = new MedianCutColorQuantization().createReducedSet(colors, 255, false);
+		IndexColorModel icm = colors.createIndexColorModel(true, true);
+		
+		byte[] serial = write(frames, icm, new BasicGifEncoder());
+		
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for(int maxPendingFrames : new int[] {1, 2, 8}) {
+				byte[] pipelined = write(frames, icm, new BasicGifEncoder(executor, maxPendingFrames));
+				assertTrue( "maxPendingFrames = "+maxPendingFrames, Arrays.equals(serial, pipelined) );
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue( Arrays.equals(serial, write(frames, icm, new BasicGifEncoder(3))) );
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * @(#)GifReaderTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.gif;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.bric.image.ImageTestUtils;
+import com.bric.image.pixel.quantize.ColorSet;
+import com.bric.image.pixel.quantize.MedianCutColorQuantization;
+
+public class GifReaderTest extends TestCase {
+	
+	/** Create frames with a moving square, where every tenth frame changes the background
+	 * and some frames only differ from the frame before last. */
+	private static BufferedImage[] createFrames(int count) {
+		Color[] backgrounds = new Color[] { Color.white, Color.yellow, Color.cyan };
+		BufferedImage[] frames = new BufferedImage[count];
+		for(int a = 0; a<count; a++) {
+			BufferedImage bi = new BufferedImage(160, 120, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = bi.createGraphics();
+			g.setColor(backgrounds[(a/10)%backgrounds.length]);
+			g.fillRect(0, 0, 160, 120);
+			if(a%3!=2) {
+				g.setColor(new Color(40*(a%6), 100, 255 - 20*(a%10)));
+				g.fillRect(5*a % 140, 3*a % 100, 20, 20);
+			}
+			g.setColor(Color.black);
+			g.drawString(Integer.toString(a/2), 10, 110);
+			g.dispose();
+			frames[a] = bi;
+		}
+		return frames;
+	}
+	
+	private static byte[] write(BufferedImage[] frames,boolean transparent,GifEncoder encoder) throws IOException {
+		ColorSet colors = new ColorSet();
+		for(BufferedImage frame : frames) {
+			colors.addColors(frame);
+		}
+		colors = new MedianCutColorQuantization().createReducedSet(colors, 255, false);
+		IndexColorModel icm = colors.createIndexColorModel(transparent, true);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GifWriter writer = new GifWriter(out, new Dimension(160, 120), icm, 0, 0, encoder);
+		for(int a = 0; a<frames.length; a++) {
+			writer.write(frames[a], 10 + a, null);
+		}
+		writer.close(false);
+		return out.toByteArray();
+	}
+	
+	private static List<int[]> readSequentially(byte[] gif) throws IOException {
+		List<int[]> list = new ArrayList<int[]>();
+		GifReader reader = new GifReader(new ByteArrayInputStream(gif), true);
+		BufferedImage bi = reader.getNextFrame(false);
+		while(bi!=null) {
+			list.add(ImageTestUtils.getPixels(bi));
+			bi = reader.getNextFrame(false);
+		}
+		return list;
+	}
+	
+	/** The index should agree with the static methods that skim a GIF. */
+	public void testFrameIndex() throws IOException {
+		BufferedImage[] frames = createFrames(35);
+		for(boolean transparent : new boolean[] {false, true}) {
+			for(GifEncoder encoder : new GifEncoder[] {new BasicGifEncoder(), new MinimalGifEncoder()}) {
+				byte[] gif = write(frames, transparent, encoder);
+				GifFrameIndex index = new GifFrameIndex(new ByteArrayInputStream(gif));
+				assertEquals( GifReader.getFrameCount(new ByteArrayInputStream(gif)), index.getFrameCount() );
+				assertEquals( GifReader.getDuration(new ByteArrayInputStream(gif)), index.getDuration() );
+				assertTrue( index.getFrame(0).isRestorePoint() );
+				assertEquals( 0, index.getRestorePoint(0) );
+				for(int a = 1; a<index.getFrameCount(); a++) {
+					assertTrue( index.getFrame(a).getOffset() > index.getFrame(a-1).getOffset() );
+				}
+				if(encoder instanceof MinimalGifEncoder) {
+					// every frame is either opaque and full-size, or cleared when it is disposed
+					for(GifFrameIndex.Frame frame : index.getFrames()) {
+						assertTrue( frame.toString(), frame.isRestorePoint() );
+					}
+				} else if(!transparent) {
+					// the background changes force full-size frames
+					assertEquals( 20, index.getRestorePoint(25) );
+				}
+			}
+		}
+	}
+	
+	/** Frames returned in any order should match frames that are read sequentially. */
+	public void testSeeking() throws IOException {
+		BufferedImage[] frames = createFrames(35);
+		Random random = new Random(0);
+		for(boolean transparent : new boolean[] {false, true}) {
+			for(GifEncoder encoder : new GifEncoder[] {new BasicGifEncoder(), new MinimalGifEncoder()}) {
+				byte[] gif = write(frames, transparent, encoder);
+				List<int[]> expected = readSequentially(gif);
+				
+				List<Integer> order = new ArrayList<Integer>();
+				for(int a = 0; a<expected.size(); a++) {
+					order.add(a);
+					order.add(a);
+				}
+				Collections.shuffle(order, random);
+				
+				GifReader reader = new GifReader(ByteBuffer.wrap(gif));
+				assertTrue(reader.isSeekable());
+				assertEquals(expected.size(), reader.getFrameCount());
+				for(int i : order) {
+					BufferedImage bi = reader.getFrame(i, random.nextBoolean());
+					assertEquals( i, reader.getCurrentFrameIndex() );
+					assertTrue( "frame "+i, Arrays.equals(expected.get(i), ImageTestUtils.getPixels(bi)) );
+				}
+				assertNull( reader.getFrame(expected.size(), false) );
+				
+				// getNextFrame() continues from the last frame we seeked to
+				reader.getFrame(3, false);
+				for(int i = 4; i<expected.size(); i++) {
+					assertTrue( "frame "+i, Arrays.equals(expected.get(i), ImageTestUtils.getPixels(reader.getNextFrame(false))) );
+				}
+				assertNull( reader.getNextFrame(false) );
+			}
+		}
+	}
+	
+	/** Files are memory-mapped. */
+	public void testFile() throws IOException {
+		byte[] gif = write(createFrames(12), false, new BasicGifEncoder());
+		List<int[]> expected = readSequentially(gif);
+		File file = File.createTempFile("GifReaderTest", ".gif");
+		try {
+			OutputStream out = new FileOutputStream(file);
+			try {
+				out.write(gif);
+			} finally {
+				out.close();
+			}
+			GifReader reader = new GifReader(file);
+			for(int i = expected.size()-1; i>=0; i--) {
+				assertTrue( "frame "+i, Arrays.equals(expected.get(i), ImageTestUtils.getPixels(reader.getFrame(i, false))) );
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}
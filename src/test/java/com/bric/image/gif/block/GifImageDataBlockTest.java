@@ -0,0 +1,170 @@
+/*
+ * @(#)GifImageDataBlockTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.gif.block;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+import com.bric.image.ImageTestUtils;
+import com.bric.image.gif.GifReader;
+import com.bric.image.gif.GifWriter;
+import com.bric.image.pixel.quantize.ColorSet;
+import com.bric.image.pixel.quantize.MedianCutColorQuantization;
+
+public class GifImageDataBlockTest extends TestCase {
+	
+	public void testSubBlocks() throws IOException {
+		Random random = new Random(0);
+		for(int length : new int[] {0, 1, 254, 255, 256, 510, 1000, 5000}) {
+			byte[] data = new byte[length];
+			random.nextBytes(data);
+			
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			GifSubBlockOutputStream subBlocks = new GifSubBlockOutputStream(out);
+			//write in uneven pieces to exercise both write methods
+			int i = 0;
+			while(i<length) {
+				if(random.nextBoolean()) {
+					subBlocks.write(data[i++]);
+				} else {
+					int k = Math.min(length - i, random.nextInt(400));
+					subBlocks.write(data, i, k);
+					i += k;
+				}
+			}
+			subBlocks.close();
+			byte[] expected = GifBlock.writeSubBlocks(data);
+			assertTrue( "length = "+length, Arrays.equals(expected, out.toByteArray()) );
+			
+			//append a trailing byte so we can see the input stream stops at the terminator
+			byte[] encoded = Arrays.copyOf(expected, expected.length + 1);
+			encoded[encoded.length - 1] = 0x3B;
+			ByteArrayInputStream in = new ByteArrayInputStream(encoded);
+			GifSubBlockInputStream subIn = new GifSubBlockInputStream(in);
+			ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+			byte[] buffer = new byte[100];
+			int t = subIn.read(buffer);
+			while(t!=-1) {
+				decoded.write(buffer, 0, t);
+				t = subIn.read(buffer);
+			}
+			assertTrue( Arrays.equals(data, decoded.toByteArray()) );
+			assertEquals( 0x3B, in.read() );
+		}
+	}
+	
+	public void testInterlaceRows() {
+		for(int height = 1; height<40; height++) {
+			byte[] data = new byte[height];
+			for(int a = 0; a<height; a++) {
+				data[a] = (byte)a;
+			}
+			GifInterlace.decode(data, 1, height);
+			for(int a = 0; a<height; a++) {
+				assertEquals( a, GifInterlace.getRow(data[a], height) );
+			}
+		}
+	}
+	
+	private static BufferedImage createImage(int width,int height,int seed) {
+		BufferedImage bi = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = bi.createGraphics();
+		Random random = new Random(seed);
+		for(int a = 0; a<40; a++) {
+			g.setColor(new Color(random.nextInt(0xffffff)));
+			g.fillOval(random.nextInt(width), random.nextInt(height), 5 + random.nextInt(width/2), 5 + random.nextInt(height/2));
+		}
+		g.dispose();
+		return bi;
+	}
+	
+	private static IndexColorModel createColorModel(BufferedImage bi) {
+		ColorSet set = new MedianCutColorQuantization().createReducedSet(new ColorSet(bi), 255, false);
+		return set.createIndexColorModel(true, true);
+	}
+	
+	/** The streaming writer must produce the same bytes as the buffered block. */
+	public void testStreamingWrite() throws IOException {
+		BufferedImage bi = createImage(300, 200, 0);
+		IndexColorModel icm = createColorModel(bi);
+		
+		ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+		new GifImageDataBlock(bi, icm).write(buffered);
+		ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+		GifImageDataBlock.write(streamed, bi, icm, 1);
+		assertTrue( Arrays.equals(buffered.toByteArray(), streamed.toByteArray()) );
+		
+		GifImageDataBlock block = new GifImageDataBlock(bi, icm);
+		assertEquals( block.getBytes().length, block.getByteCount() );
+	}
+	
+	/** GifReader decodes image data as a stream; compare it against ImageIO. */
+	public void testStreamingRead() throws IOException {
+		BufferedImage bi = createImage(320, 240, 1);
+		IndexColorModel icm = createColorModel(bi);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GifWriter writer = new GifWriter(out, new Dimension(320, 240), icm, 0, 0, null);
+		writer.write(bi, 100, null);
+		writer.write(createImage(320, 240, 2), 100, null);
+		writer.close(false);
+		byte[] gif = out.toByteArray();
+		
+		//the streaming data should match the buffered data block
+		GifParser parser = new GifParser(new ByteArrayInputStream(gif));
+		GifImageDataBlock block = null;
+		while(block==null) {
+			GifBlock b = parser.readNextBlock();
+			if(b instanceof GifImageDataBlock)
+				block = (GifImageDataBlock)b;
+		}
+		parser = new GifParser(new ByteArrayInputStream(gif));
+		while(parser.getNextBlockType()!=GifBlock.IMAGE_DATA) {
+			parser.readNextBlock();
+		}
+		InputStream in = parser.readImageData();
+		ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+		int k = in.read();
+		while(k!=-1) {
+			decoded.write(k);
+			k = in.read();
+		}
+		assertTrue( Arrays.equals(block.getUncompressedBytes(), decoded.toByteArray()) );
+		
+		GifReader reader = new GifReader(new ByteArrayInputStream(gif), true);
+		BufferedImage frame = reader.getNextFrame(true);
+		BufferedImage expected = ImageIO.read(new ByteArrayInputStream(gif));
+		ImageTestUtils.assertPixelsEqual(expected, frame);
+		assertNotNull( reader.getNextFrame(false) );
+		assertNull( reader.getNextFrame(false) );
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * @(#)LZWInputStreamTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.gif.lzw;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class LZWInputStreamTest extends TestCase {
+	
+	/** Encode data with the <code>LZWOutputStream</code> and make sure it decodes
+	 * to the same bytes, using uneven reads to exercise strings that are split
+	 * across calls.
+	 */
+	public void testRoundTrip() throws IOException {
+		Random random = new Random(0);
+		for(int colorDepth = 2; colorDepth<=8; colorDepth++) {
+			for(int length : new int[] {1, 2, 100, 5000, 200000}) {
+				for(boolean runs : new boolean[] {false, true}) {
+					byte[] data = createData(random, colorDepth, length, runs);
+					byte[] encoded = encode(data, colorDepth);
+					
+					assertTrue(Arrays.equals(data, decode(encoded, colorDepth, random, false)));
+					assertTrue(Arrays.equals(data, decode(encoded, colorDepth, random, true)));
+				}
+			}
+		}
+	}
+	
+	/** Some GIFs stop without an EOF code. */
+	public void testMissingEOF() throws IOException {
+		Random random = new Random(0);
+		byte[] data = createData(random, 8, 5000, true);
+		byte[] encoded = encode(data, 8);
+		byte[] truncated = new byte[encoded.length/2];
+		System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+		
+		byte[] decoded = decode(truncated, 8, random, false);
+		assertTrue(decoded.length>0);
+		assertTrue(decoded.length<data.length);
+		for(int a = 0; a<decoded.length; a++) {
+			assertEquals(data[a], decoded[a]);
+		}
+	}
+	
+	private byte[] createData(Random random,int colorDepth,int length,boolean runs) {
+		byte[] data = new byte[length];
+		int colors = 1 << colorDepth;
+		int i = 0;
+		while(i<length) {
+			int k = runs ? Math.min(length - i, 1 + random.nextInt(50)) : 1;
+			byte v = (byte)random.nextInt(colors);
+			for(int a = 0; a<k; a++) {
+				data[i++] = v;
+			}
+		}
+		return data;
+	}
+	
+	private byte[] encode(byte[] data,int colorDepth) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		LZWOutputStream out = new LZWOutputStream(bytes, colorDepth, false);
+		out.write(data);
+		out.close();
+		return bytes.toByteArray();
+	}
+	
+	private byte[] decode(byte[] encoded,int colorDepth,Random random,boolean singleBytes) throws IOException {
+		InputStream in = new LZWInputStream(new ByteArrayInputStream(encoded), colorDepth);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[1000];
+		while(true) {
+			if(singleBytes) {
+				int k = in.read();
+				if(k==-1) break;
+				out.write(k);
+			} else {
+				int k = in.read(b, 0, 1 + random.nextInt(b.length));
+				if(k==-1) break;
+				out.write(b, 0, k);
+			}
+		}
+		in.close();
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * @(#)JPEGHeaderTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.jpeg;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import junit.framework.TestCase;
+
+import com.bric.io.FileTreeIterator;
+
+public class JPEGHeaderTest extends TestCase {
+
+	/** The header must agree with ImageIO and with a full JPEGMetaData parse. */
+	public void testHeader() throws Exception {
+		char s = File.separatorChar;
+		File dir = new File(System.getProperty("user.dir")+
+				s+"src"+s+"test"+s+"resources"+s+"com"+s+"bric"+s+"image"+s+"resources"+s);
+		FileTreeIterator iter = new FileTreeIterator(dir, "jpg", "jpeg");
+		int ctr = 0;
+		while(iter.hasNext()) {
+			File file = iter.next();
+			JPEGHeader header = JPEGHeader.read(file);
+
+			try(ImageInputStream in = ImageIO.createImageInputStream(file)) {
+				Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+				ImageReader reader = readers.next();
+				reader.setInput(in);
+				assertEquals(file.getName(), reader.getWidth(0), header.getWidth());
+				assertEquals(file.getName(), reader.getHeight(0), header.getHeight());
+				reader.dispose();
+			}
+
+			JPEGMetaData data = new JPEGMetaData(file, false) {
+				@Override
+				protected void processException(Exception e,String marker) {}
+			};
+			Object orientation = data.getProperties().get("Orientation");
+			assertTrue(file.getName(), header.getOrientation()>=1 && header.getOrientation()<=8);
+			if(orientation!=null) {
+				assertEquals(file.getName(), orientation, Integer.valueOf(header.getOrientation()));
+			} else {
+				assertEquals(file.getName(), 1, header.getOrientation());
+			}
+			assertEquals(file.getName(), data.getThumbnailOffset(), header.getThumbnailOffset());
+			assertEquals(file.getName(), data.getThumbnailLength(), header.getThumbnailLength());
+
+			byte[] thumbnail = header.readThumbnailData(file);
+			if(thumbnail!=null) {
+				assertNotNull(file.getName(), ImageIO.read(new ByteArrayInputStream(thumbnail)));
+			}
+			ctr++;
+		}
+		assertTrue(ctr>0);
+	}
+
+	public void testNotAJPEG() throws Exception {
+		File file = File.createTempFile("header", ".jpg");
+		try {
+			try {
+				JPEGHeader.read(file);
+				fail("an empty file should not be a JPEG");
+			} catch(java.io.IOException e) {
+				//pass
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,194 @@
+/*
+ * @(#)JPEGMetaDataIndexTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.jpeg;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import com.bric.io.FileTreeIterator;
+import com.bric.io.IOUtils;
+
+public class JPEGMetaDataIndexTest extends TestCase {
+
+	private File getResourceDirectory() {
+		char s = File.separatorChar;
+		return new File(System.getProperty("user.dir")+
+				s+"src"+s+"test"+s+"resources"+s+"com"+s+"bric"+s+"image"+s+"resources"+s);
+	}
+
+	/** The index must return exactly what JPEGMetaData does, before and after it is reopened. */
+	public void testIndex() throws Exception {
+		File dir = getResourceDirectory();
+		File indexFile = File.createTempFile("index", ".jmdi");
+		try {
+			JPEGMetaDataIndex index = new JPEGMetaDataIndex(indexFile);
+			int parsed = index.scan(dir, 4);
+			assertTrue(parsed>0);
+			index.close();
+
+			long length = indexFile.length();
+			index = new JPEGMetaDataIndex(indexFile);
+			assertEquals(length, indexFile.length());
+			assertEquals(0, index.scan(dir, 4));
+
+			int thumbnails = 0;
+			int jpegs = 0;
+			FileTreeIterator iter = new FileTreeIterator(dir, "jpg", "jpeg");
+			while(iter.hasNext()) {
+				File file = iter.next();
+				JPEGMetaData data;
+				try {
+					data = new JPEGMetaData(file, true) {
+						@Override
+						protected void processException(Exception e,String marker) {}
+					};
+				} catch(Exception e) {
+					continue;
+				}
+				jpegs++;
+				JPEGMetaDataIndex.Entry entry = index.lookup(file);
+				assertNotNull(file.getName(), entry);
+				assertEquals(file.getName(), data.getProperties().keySet(), entry.getProperties().keySet());
+				for(Map.Entry<String, Object> property : data.getProperties().entrySet()) {
+					Object expected = property.getValue();
+					Object actual = entry.getProperties().get(property.getKey());
+					if(expected instanceof Object[]) {
+						assertTrue(Arrays.equals( (Object[])expected, (Object[])actual ));
+					} else if(expected instanceof byte[]) {
+						assertTrue(Arrays.equals( (byte[])expected, (byte[])actual ));
+					} else {
+						assertEquals(expected, actual);
+					}
+				}
+				assertTrue(Arrays.equals(data.getComments(), entry.getComments()));
+
+				BufferedImage thumbnail = entry.readThumbnail();
+				if(entry.hasThumbnail() && data.getThumbnail()!=null) {
+					assertEquals(data.getThumbnail().getWidth(), thumbnail.getWidth());
+					assertEquals(data.getThumbnail().getHeight(), thumbnail.getHeight());
+					thumbnails++;
+				}
+			}
+			index.close();
+			//every JPEG was indexed once, and some of them have thumbnails:
+			assertEquals(jpegs, parsed);
+			assertTrue(thumbnails>0);
+		} finally {
+			indexFile.delete();
+		}
+	}
+
+	/** A record that was only partly written must be discarded, and compacting must remove obsolete records. */
+	public void testTruncatedRecord() throws Exception {
+		File dir = getResourceDirectory();
+		File jpeg = File.createTempFile("photo", ".jpg");
+		IOUtils.copy(new File(dir, "bridge3.jpg"), jpeg);
+		File indexFile = File.createTempFile("index", ".jmdi");
+		try {
+			JPEGMetaDataIndex index = new JPEGMetaDataIndex(indexFile);
+			JPEGMetaDataIndex.Entry entry = index.get(jpeg);
+			index.close();
+			long length = indexFile.length();
+
+			//simulate quitting in the middle of writing a record:
+			try(RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+				raf.seek(length);
+				raf.writeInt(1000);
+				raf.writeInt(5);
+			}
+			index = new JPEGMetaDataIndex(indexFile);
+			assertEquals(length, indexFile.length());
+			assertEquals(1, index.size());
+			assertEquals(entry.getProperties(), index.lookup(jpeg).getProperties());
+
+			//indexing a modified file appends a new record
+			jpeg.setLastModified(jpeg.lastModified() - 10000);
+			assertNull(index.lookup(jpeg));
+			index.get(jpeg);
+			index.flush();
+			assertTrue(indexFile.length()>length);
+			index.compact();
+			assertEquals(length, indexFile.length());
+			index.close();
+		} finally {
+			indexFile.delete();
+			jpeg.delete();
+		}
+	}
+
+	/** A record with an unknown value type must be discarded, along with every record after it. */
+	public void testCorruptRecord() throws Exception {
+		File dir = getResourceDirectory();
+		File jpeg1 = File.createTempFile("photo", ".jpg");
+		File jpeg2 = File.createTempFile("photo", ".jpg");
+		IOUtils.copy(new File(dir, "bridge3.jpg"), jpeg1);
+		IOUtils.copy(new File(dir, "bridge3.jpg"), jpeg2);
+		File indexFile = File.createTempFile("index", ".jmdi");
+		try {
+			JPEGMetaDataIndex index = new JPEGMetaDataIndex(indexFile);
+			JPEGMetaDataIndex.Entry entry = index.get(jpeg1);
+			index.flush();
+			long length = indexFile.length();
+			index.get(jpeg2);
+			index.close();
+
+			//find the type of the first property in the second record, and corrupt it:
+			try(RandomAccessFile raf = new RandomAccessFile(indexFile, "rw")) {
+				raf.seek(length + 4);
+				skipString(raf);
+				raf.skipBytes(8 + 8 + 8 + 4);
+				int comments = raf.readInt();
+				for(int a = 0; a<comments; a++) {
+					skipString(raf);
+				}
+				assertTrue(raf.readInt()>0);
+				skipString(raf);
+				raf.writeByte(99);
+			}
+
+			index = new JPEGMetaDataIndex(indexFile);
+			assertEquals(length, indexFile.length());
+			assertEquals(1, index.size());
+			assertEquals(entry.getProperties(), index.lookup(jpeg1).getProperties());
+			assertNull(index.lookup(jpeg2));
+
+			//the index is still usable
+			index.get(jpeg2);
+			index.close();
+			index = new JPEGMetaDataIndex(indexFile);
+			assertEquals(2, index.size());
+			index.close();
+		} finally {
+			indexFile.delete();
+			jpeg1.delete();
+			jpeg2.delete();
+		}
+	}
+
+	private static void skipString(RandomAccessFile raf) throws IOException {
+		raf.skipBytes(raf.readInt());
+	}
+}
@@ -20,9 +20,12 @@
 package com.bric.image.pixel;
 
 import java.awt.Dimension;
+import java.awt.image.BufferedImage;
 
 import junit.framework.TestCase;
 
+import com.bric.image.ImageTestUtils;
+
 public class ScalingTest extends TestCase {
 	public void testScaling() {
 		Dimension d = Scaling.scaleDimensionsProportionally(
@@ -40,4 +43,102 @@ public class ScalingTest extends TestCase {
 		assertTrue( d.width==2 );
 		assertTrue( d.height==10 );
 	}
+
+	/** Scaling in parallel bands must match scaling on one thread exactly. */
+	public void testParallelScaling() {
+		int[] types = new int[] { 
+				BufferedImage.TYPE_INT_ARGB, 
+				BufferedImage.TYPE_INT_RGB, 
+				BufferedImage.TYPE_3BYTE_BGR
+		};
+		Dimension[] sizes = new Dimension[] {
+				new Dimension(301, 217), //mild downsampling
+				new Dimension(97, 41), //downsampling by less than .25
+				new Dimension(500, 900) //upsampling
+		};
+		for(int type : types) {
+			BufferedImage source = ImageTestUtils.createRandomImage(613, 457, type, type);
+			for(Dimension size : sizes) {
+				BufferedImage serial = Scaling.scale(source, null, size, 1);
+				BufferedImage parallel = Scaling.scale(source, null, size, 7);
+				ImageTestUtils.assertPixelsEqual(type+" "+size, serial, parallel);
+			}
+		}
+	}
+
+	static final ResamplingKernel[] KERNELS = new ResamplingKernel[] {
+			ResamplingKernel.BOX,
+			ResamplingKernel.CATMULL_ROM,
+			ResamplingKernel.MITCHELL,
+			ResamplingKernel.LANCZOS3
+	};
+
+	/** Every kernel must keep a flat color (including a translucent one) exactly flat. */
+	public void testResamplingFlatColor() {
+		int[] colors = new int[] { 0xff3377cc, 0x80ff2000, 0x00000000 };
+		Dimension[] sizes = new Dimension[] {
+				new Dimension(17, 9),
+				new Dimension(250, 333)
+		};
+		for(int color : colors) {
+			BufferedImage source = new BufferedImage(83, 61, BufferedImage.TYPE_INT_ARGB);
+			for(int y = 0; y<source.getHeight(); y++) {
+				for(int x = 0; x<source.getWidth(); x++) {
+					source.setRGB(x, y, color);
+				}
+			}
+			for(ResamplingKernel kernel : KERNELS) {
+				for(Dimension size : sizes) {
+					BufferedImage dest = Scaling.scale(source, size, kernel);
+					assertEquals(size.width, dest.getWidth());
+					assertEquals(size.height, dest.getHeight());
+					for(int y = 0; y<size.height; y++) {
+						for(int x = 0; x<size.width; x++) {
+							assertEquals(kernel+" "+size+" ("+x+", "+y+")", color, dest.getRGB(x, y));
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/** Resampling in parallel bands must match resampling on one thread exactly. */
+	public void testParallelResampling() {
+		int[] types = new int[] { 
+				BufferedImage.TYPE_INT_ARGB, 
+				BufferedImage.TYPE_3BYTE_BGR
+		};
+		Dimension[] sizes = new Dimension[] {
+				new Dimension(301, 217),
+				new Dimension(97, 41),
+				new Dimension(700, 900)
+		};
+		for(int type : types) {
+			BufferedImage source = ImageTestUtils.createRandomImage(613, 457, type, type);
+			for(ResamplingKernel kernel : KERNELS) {
+				for(Dimension size : sizes) {
+					BufferedImage serial = Scaling.scale(source, null, size, kernel, 1);
+					BufferedImage parallel = Scaling.scale(source, null, size, kernel, 7);
+					ImageTestUtils.assertPixelsEqual(type+" "+kernel+" "+size, serial, parallel);
+				}
+			}
+		}
+	}
+
+	/** Scaling a sharp edge down with a box kernel should average it like the ScalingIterator does. */
+	public void testBoxResampling() {
+		BufferedImage source = new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB);
+		for(int y = 0; y<source.getHeight(); y++) {
+			for(int x = 0; x<source.getWidth(); x++) {
+				source.setRGB(x, y, (x/2)%2==0 ? 0xffffffff : 0xff000000);
+			}
+		}
+		BufferedImage dest = Scaling.scale(source, new Dimension(10, 10), ResamplingKernel.BOX);
+		for(int y = 0; y<dest.getHeight(); y++) {
+			for(int x = 0; x<dest.getWidth(); x++) {
+				int blue = dest.getRGB(x, y) & 0xff;
+				assertTrue("("+x+", "+y+") = "+blue, Math.abs(blue - 128)<=1);
+			}
+		}
+	}
 }
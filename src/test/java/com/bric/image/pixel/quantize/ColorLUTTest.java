@@ -0,0 +1,83 @@
+/*
+ * @(#)ColorLUTTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.pixel.quantize;
+
+import java.awt.image.IndexColorModel;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.bric.image.pixel.quantize.ColorLUT.ColorNode;
+
+public class ColorLUTTest extends TestCase {
+	
+	/** The inverse color map should always agree with an exhaustive search. */
+	public void testInverseMapIsExact() {
+		Random random = new Random(0);
+		for(int bits = 1; bits<=8; bits++) {
+			int size = 2 + random.nextInt(255);
+			byte[] r = new byte[size];
+			byte[] g = new byte[size];
+			byte[] b = new byte[size];
+			random.nextBytes(r);
+			random.nextBytes(g);
+			random.nextBytes(b);
+			IndexColorModel icm = new IndexColorModel(8, size, r, g, b);
+			ColorLUT lut = new ColorLUT(icm, bits);
+			assertEquals( bits, lut.getInverseMapBits() );
+			ColorNode[] nodes = lut.getNodes();
+			
+			for(int a = 0; a<20000; a++) {
+				int red = random.nextInt(256);
+				int green = random.nextInt(256);
+				int blue = random.nextInt(256);
+				int expected = -1;
+				int expectedError = Integer.MAX_VALUE;
+				for(int k = 0; k<nodes.length; k++) {
+					int dr = red - nodes[k].red;
+					int dg = green - nodes[k].green;
+					int db = blue - nodes[k].blue;
+					int error = dr*dr + dg*dg + db*db;
+					if(error<expectedError) {
+						expectedError = error;
+						expected = k;
+					}
+				}
+				int actual = lut.getNodeMatch(red, green, blue);
+				assertEquals( expected, actual );
+				assertEquals( nodes[expected].index, lut.getIndexMatch(red, green, blue) );
+			}
+		}
+	}
+	
+	/** Without an inverse map the subcube search should still resolve exact colors. */
+	public void testWithoutInverseMap() {
+		Integer[] rgb = new Integer[] { 0x000000, 0xff0000, 0x00ff00, 0x0000ff, 0xffffff };
+		ColorLUT lut = new ColorLUT(rgb, 0);
+		assertEquals( 0, lut.getInverseMapBits() );
+		for(int a = 0; a<rgb.length; a++) {
+			int red = (rgb[a] >> 16) & 0xff;
+			int green = (rgb[a] >> 8) & 0xff;
+			int blue = rgb[a] & 0xff;
+			assertEquals( a, lut.getNodeMatch(red, green, blue) );
+			assertEquals( -1, lut.getIndexMatch(red, green, blue) );
+		}
+	}
+}
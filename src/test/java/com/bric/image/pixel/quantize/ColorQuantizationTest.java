@@ -0,0 +1,85 @@
+/*
+ * @(#)ColorQuantizationTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.pixel.quantize;
+
+import java.awt.image.BufferedImage;
+
+import junit.framework.TestCase;
+
+import com.bric.image.ImageTestUtils;
+
+public class ColorQuantizationTest extends TestCase {
+	
+	/** @return the sum of the squared distance of every pixel to its nearest palette entry. */
+	private static long getError(ColorSet original,ColorSet palette) {
+		int[] paletteRGBs = palette.getRGBs();
+		Integer[] rgb = new Integer[paletteRGBs.length];
+		for(int a = 0; a<rgb.length; a++) {
+			rgb[a] = paletteRGBs[a];
+		}
+		ColorLUT lut = new ColorLUT(rgb);
+		ColorLUT.ColorNode[] nodes = lut.getNodes();
+		long error = 0;
+		for(int color : original.getRGBs()) {
+			int r = (color >> 16) & 0xff;
+			int g = (color >> 8) & 0xff;
+			int b = color & 0xff;
+			ColorLUT.ColorNode n = nodes[lut.getNodeMatch(r, g, b)];
+			int dr = r - n.red;
+			int dg = g - n.green;
+			int db = b - n.blue;
+			error += ((long)(dr*dr + dg*dg + db*db))*original.getOccurrences(color);
+		}
+		return error;
+	}
+	
+	public void testOctree() {
+		BufferedImage bi = ImageTestUtils.createNoisyGradient(300, 200, BufferedImage.TYPE_INT_RGB, 32);
+		OctreeColorQuantization.Octree tree = new OctreeColorQuantization.Octree(512);
+		tree.addColors(bi);
+		assertTrue( tree.getLeafCount() <= 512 );
+		
+		ColorSet reduced = tree.createColorSet(64);
+		assertTrue( reduced.getColorCount() <= 64 );
+		assertTrue( reduced.getColorCount() > 8 );
+		assertEquals( 300*200, reduced.getPixelCount() );
+		
+		//streaming the image should stay within the same bounds as reducing its complete ColorSet
+		OctreeColorQuantization octree = new OctreeColorQuantization(256);
+		ColorSet streamed = octree.createReducedSet(bi, 64);
+		ColorSet counted = octree.createReducedSet(new ColorSet(bi), 64, false);
+		assertTrue( streamed.getColorCount() <= 64 );
+		assertEquals( counted.getPixelCount(), streamed.getPixelCount() );
+	}
+	
+	public void testKMeans() {
+		BufferedImage bi = ImageTestUtils.createNoisyGradient(300, 200, BufferedImage.TYPE_INT_RGB, 32);
+		ColorSet original = new ColorSet(bi);
+		
+		ColorSet medianCut = new MedianCutColorQuantization().createReducedSet(original, 32, true);
+		ColorSet serial = new KMeansColorQuantization(new MedianCutColorQuantization(), 8, 1).createReducedSet(original, 32, true);
+		ColorSet parallel = new KMeansColorQuantization(new MedianCutColorQuantization(), 8, 8).createReducedSet(original, 32, true);
+		
+		assertTrue( serial.getColorCount() <= 32 );
+		assertEquals( original.getPixelCount(), serial.getPixelCount() );
+		assertEquals( serial, parallel );
+		assertTrue( getError(original, serial) < getError(original, medianCut) );
+	}
+}
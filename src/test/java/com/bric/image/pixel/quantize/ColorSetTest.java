@@ -0,0 +1,148 @@
+/*
+ * @(#)ColorSetTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.pixel.quantize;
+
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.bric.image.pixel.BufferedImageIterator;
+import com.bric.image.pixel.IntARGBConverter;
+
+public class ColorSetTest extends TestCase {
+	
+	/** Compare the histogram against a <code>HashMap</code> through many adds and removes. */
+	public void testHistogram() {
+		Random random = new Random(0);
+		ColorHistogram histogram = new ColorHistogram();
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		for(int a = 0; a<200000; a++) {
+			//a small range of keys, so we get plenty of collisions and removals
+			int rgb = random.nextInt(5000) * 3331 & 0xffffff;
+			if(random.nextInt(4)==0) {
+				Integer count = expected.remove(rgb);
+				assertEquals( count==null ? 0 : count.intValue(), histogram.remove(rgb) );
+			} else {
+				int k = 1 + random.nextInt(3);
+				Integer count = expected.get(rgb);
+				expected.put(rgb, count==null ? k : count + k);
+				histogram.add(rgb, k);
+			}
+		}
+		assertEquals( expected.size(), histogram.size() );
+		for(Integer rgb : expected.keySet()) {
+			assertEquals( expected.get(rgb).intValue(), histogram.get(rgb) );
+		}
+		int[] colors = histogram.getColors();
+		for(int a = 1; a<colors.length; a++) {
+			assertTrue( colors[a-1] < colors[a] );
+		}
+	}
+	
+	public void testFrequencyMap() {
+		ColorSet set = new ColorSet();
+		set.addColor(255, 0, 0, 10);
+		set.addColor(0, 255, 0, 5);
+		set.addColor(0, 0, 255, 1);
+		set.addColor(255, 0, 0, 2);
+		assertEquals( 3, set.getColorCount() );
+		assertEquals( 18, set.getPixelCount() );
+		
+		Map<Integer, Integer> map = set.getRGBtoFrequencyMap(false);
+		assertEquals( Integer.valueOf(12), map.get(0xff0000) );
+		assertNull( map.get(0x123456) );
+		
+		//keys outside of 24 bits are never present, and can't be added:
+		assertNull( map.get(-1) );
+		assertFalse( map.containsKey(0xffffffff) );
+		try {
+			map.put(-1, 4);
+			fail("put() should reject keys outside of 24 bits");
+		} catch(IllegalArgumentException e) {
+			//pass
+		}
+		assertEquals( 3, set.getColorCount() );
+		assertEquals( 18, set.getPixelCount() );
+		
+		//iteration is in ascending RGB order:
+		Iterator<Integer> iter = map.keySet().iterator();
+		assertEquals( Integer.valueOf(0x0000ff), iter.next() );
+		assertEquals( Integer.valueOf(0x00ff00), iter.next() );
+		assertEquals( Integer.valueOf(0xff0000), iter.next() );
+		assertFalse( iter.hasNext() );
+		
+		//changes write through:
+		map.remove(0x00ff00);
+		assertEquals( 2, set.getColorCount() );
+		assertEquals( 13, set.getPixelCount() );
+		assertEquals( 0, set.getOccurrences(0, 255, 0) );
+		
+		Map<Integer, Integer> copy = set.getRGBtoFrequencyMap(true);
+		copy.remove(0x0000ff);
+		assertEquals( 2, set.getColorCount() );
+		
+		assertEquals( set, new ColorSet(set.toString()) );
+	}
+	
+	public void testAddImage() {
+		testAddImage(BufferedImage.TYPE_INT_ARGB);
+		testAddImage(BufferedImage.TYPE_INT_RGB);
+		testAddImage(BufferedImage.TYPE_3BYTE_BGR);
+	}
+	
+	public void testAddImageInParallel() {
+		Random random = new Random(0);
+		BufferedImage bi = new BufferedImage(640, 481, BufferedImage.TYPE_INT_ARGB);
+		for(int y = 0; y<bi.getHeight(); y++) {
+			for(int x = 0; x<bi.getWidth(); x++) {
+				bi.setRGB(x, y, random.nextInt() & 0xff1f1f1f);
+			}
+		}
+		ColorSet expected = new ColorSet(bi);
+		for(int parallelism : new int[] {2, 3, 8}) {
+			ColorSet actual = new ColorSet(bi, parallelism);
+			assertEquals( expected.getPixelCount(), actual.getPixelCount() );
+			assertTrue( expected.equals(actual, false) );
+		}
+	}
+	
+	private void testAddImage(int type) {
+		Random random = new Random(type);
+		BufferedImage bi = new BufferedImage(123, 45, type);
+		for(int y = 0; y<bi.getHeight(); y++) {
+			for(int x = 0; x<bi.getWidth(); x++) {
+				bi.setRGB(x, y, random.nextInt() & 0xff0f0f0f);
+			}
+		}
+		
+		for(BufferedImage img : new BufferedImage[] { bi, bi.getSubimage(7, 3, 100, 30) }) {
+			ColorSet actual = new ColorSet(img);
+			ColorSet expected = new ColorSet();
+			expected.addColors(new IntARGBConverter(BufferedImageIterator.get(img)));
+			assertTrue( actual.getColorCount() > 1 );
+			assertEquals( expected.getPixelCount(), actual.getPixelCount() );
+			assertTrue( expected.equals(actual, false) );
+		}
+	}
+}
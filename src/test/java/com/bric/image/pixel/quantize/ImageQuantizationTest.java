@@ -0,0 +1,82 @@
+/*
+ * @(#)ImageQuantizationTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.pixel.quantize;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import com.bric.image.ImageTestUtils;
+
+public class ImageQuantizationTest extends TestCase {
+	
+	private static byte[] getPixels(BufferedImage bi) {
+		return ((DataBufferByte)bi.getRaster().getDataBuffer()).getData();
+	}
+	
+	private static ColorLUT createLUT(BufferedImage bi,boolean transparent) {
+		ColorSet set = new ColorSet(bi);
+		set = new MedianCutColorQuantization().createReducedSet(set, 64, false);
+		IndexColorModel icm = set.createIndexColorModel(transparent, false);
+		return new ColorLUT(icm);
+	}
+	
+	/** The wavefront must produce exactly the same pixels as the serial error diffusion. */
+	public void testParallelErrorDiffusion() {
+		ImageQuantization[] types = new ImageQuantization[] { 
+				ImageQuantization.SIMPLEST_DIFFUSION,
+				ImageQuantization.MEDIUM_DIFFUSION,
+				ImageQuantization.MOST_DIFFUSION };
+		for(boolean alpha : new boolean[] { false, true }) {
+			BufferedImage bi = ImageTestUtils.createNoisyGradient(517, 301, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB, 64);
+			ColorLUT lut = createLUT(bi, alpha);
+			for(ImageQuantization q : types) {
+				byte[] serial = getPixels(q.createImage(bi, lut));
+				for(int threads : new int[] {2, 3, 8}) {
+					byte[] parallel = getPixels(q.createImage(bi, lut, threads));
+					assertTrue( q+", alpha = "+alpha+", threads = "+threads, 
+							Arrays.equals(serial, parallel) );
+				}
+			}
+		}
+	}
+	
+	public void testOrderedDither() {
+		int[][] bayer = OrderedDitherImageQuantization.createBayerMatrix(8);
+		boolean[] used = new boolean[64];
+		for(int[] row : bayer) {
+			for(int v : row) {
+				assertFalse( used[v] );
+				used[v] = true;
+			}
+		}
+		
+		for(boolean alpha : new boolean[] { false, true }) {
+			BufferedImage bi = ImageTestUtils.createNoisyGradient(400, 300, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB, 64);
+			ColorLUT lut = createLUT(bi, alpha);
+			byte[] serial = getPixels(ImageQuantization.ORDERED_DITHER.createImage(bi, lut));
+			byte[] parallel = getPixels(ImageQuantization.ORDERED_DITHER.createImage(bi, lut, 4));
+			assertTrue( Arrays.equals(serial, parallel) );
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * @(#)BasicThumbnailTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.image.thumbnail;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.bric.image.ImageTestUtils;
+import com.bric.image.thumbnail.BasicThumbnail.Layer;
+
+public class BasicThumbnailTest extends TestCase {
+
+	static BasicThumbnail rounded = new BasicThumbnail(new Layer[] {
+			new BasicThumbnail.Shadow( new int[] { 10, 20, 30 }, 2, 8 ),
+			new BasicThumbnail.Border( 2, Color.gray, 6, 8 ),
+			new BasicThumbnail.Image( Color.white, 0 ),
+			new BasicThumbnail.Border( 1, Color.black, 0, 3 )
+		}, 0);
+
+	/** A solid image that fits exactly in a thumbnail of the given size. */
+	private static BufferedImage createImage(BasicThumbnail t,int width,int height,Color color) {
+		Insets i = getInsets(t);
+		BufferedImage bi = new BufferedImage(width - i.left - i.right, height - i.top - i.bottom, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = bi.createGraphics();
+		g.setColor(color);
+		g.fillRect(0, 0, bi.getWidth(), bi.getHeight());
+		g.dispose();
+		return bi;
+	}
+
+	private static Insets getInsets(BasicThumbnail t) {
+		Insets sum = new Insets(0,0,0,0);
+		for(Layer layer : t.getLayers()) {
+			Insets i = layer.getInsets();
+			sum.left += i.left;
+			sum.top += i.top;
+			sum.right += i.right;
+			sum.bottom += i.bottom;
+		}
+		return sum;
+	}
+
+	/** Paint every layer directly, without any caching. */
+	private static BufferedImage paintDirectly(BasicThumbnail t,BufferedImage image) {
+		Insets insets = getInsets(t);
+		int width = image.getWidth() + insets.left + insets.right;
+		int height = image.getHeight() + insets.top + insets.bottom;
+		BufferedImage dest = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = dest.createGraphics();
+		int x = 0, y = 0;
+		for(Layer layer : t.getLayers()) {
+			Graphics2D g2 = (Graphics2D)g.create();
+			layer.paint(g2, x, y, width, height);
+			if(layer instanceof BasicThumbnail.Image) {
+				g2.drawImage(image, insets.left, insets.top, null);
+			}
+			g2.dispose();
+			Insets i = layer.getInsets();
+			x += i.left;
+			y += i.top;
+			width -= i.left + i.right;
+			height -= i.top + i.bottom;
+		}
+		g.dispose();
+		return dest;
+	}
+
+	/** Cached and stretched chrome must look like painting every layer. */
+	public void testChrome() {
+		BasicThumbnail[] thumbnails = new BasicThumbnail[] {
+				BasicThumbnail.Aqua, BasicThumbnail.getShadow(3), rounded
+		};
+		int[][] sizes = new int[][] { {100, 70}, {40, 90}, {100, 70}, {20, 20}, {300, 41} };
+		for(BasicThumbnail t : thumbnails) {
+			for(int[] size : sizes) {
+				BufferedImage image = createImage(t, size[0], size[1], Color.red);
+				BufferedImage expected = paintDirectly(t, image);
+				BufferedImage actual = t.create(image, new Dimension(size[0], size[1]));
+				ImageTestUtils.assertSimilar(expected, actual, 2);
+			}
+		}
+	}
+
+	/** A batch of thumbnails must match creating each thumbnail separately. */
+	public void testBatch() {
+		List<BufferedImage> images = new ArrayList<BufferedImage>();
+		for(int a = 0; a<20; a++) {
+			Color color = new Color(a*12, 255 - a*12, 100);
+			images.add(createImage(BasicThumbnail.Aqua, 60 + a*7, 150 - a*3, color));
+		}
+		Dimension maxSize = new Dimension(64, 64);
+		List<BufferedImage> batch = BasicThumbnail.Aqua.create(images, maxSize, 4);
+		assertEquals(images.size(), batch.size());
+		for(int a = 0; a<images.size(); a++) {
+			BufferedImage expected = BasicThumbnail.Aqua.create(images.get(a), maxSize);
+			ImageTestUtils.assertSimilar(expected, batch.get(a), 0);
+		}
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * @(#)ThumbnailCacheTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.io.location;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+import com.bric.image.jpeg.JPEGHeader;
+import com.bric.io.IOUtils;
+import com.bric.swing.Cancellable;
+
+public class ThumbnailCacheTest extends TestCase {
+
+	static class CountingCache extends ThumbnailCache {
+		final AtomicInteger creations = new AtomicInteger();
+
+		CountingCache(File dir,long memoryLimit) {
+			super(dir, memoryLimit);
+		}
+
+		CountingCache(File dir,long memoryLimit,long diskLimit) {
+			super(dir, memoryLimit, diskLimit);
+		}
+
+		@Override
+		protected BufferedImage createThumbnail(IOLocation loc,Dimension maxSize,Cancellable cancellable) {
+			creations.incrementAndGet();
+			try {
+				//give other threads a chance to ask for the same thumbnail
+				Thread.sleep(200);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new BufferedImage(maxSize.width, maxSize.height, BufferedImage.TYPE_INT_ARGB);
+		}
+	}
+
+	private static File createImageFile() throws Exception {
+		File file = File.createTempFile("thumbnail", ".png");
+		ImageIO.write(new BufferedImage(300, 200, BufferedImage.TYPE_INT_RGB), "png", file);
+		return file;
+	}
+
+	private static File createDirectory() throws Exception {
+		File dir = File.createTempFile("thumbnails", "");
+		dir.delete();
+		dir.mkdirs();
+		return dir;
+	}
+
+	/** Several threads asking for the same thumbnail should only create it once. */
+	public void testConcurrentRequests() throws Exception {
+		File file = createImageFile();
+		try {
+			final IOLocation loc = LocationFactory.get().create(file);
+			final CountingCache cache = new CountingCache(null, ThumbnailCache.DEFAULT_MEMORY_LIMIT);
+			final Dimension size = new Dimension(64, 64);
+			final BufferedImage[] results = new BufferedImage[6];
+			Thread[] threads = new Thread[results.length];
+			for(int a = 0; a<threads.length; a++) {
+				final int index = a;
+				threads[a] = new Thread() {
+					@Override
+					public void run() {
+						results[index] = cache.getThumbnail(loc, size, null);
+					}
+				};
+				threads[a].start();
+			}
+			for(Thread thread : threads) {
+				thread.join();
+			}
+			assertEquals(1, cache.creations.get());
+			for(BufferedImage result : results) {
+				assertSame(results[0], result);
+			}
+
+			//a different size is a different thumbnail
+			cache.getThumbnail(loc, new Dimension(32, 32), null);
+			assertEquals(2, cache.creations.get());
+		} finally {
+			file.delete();
+		}
+	}
+
+	/** Memory is bounded, and evicted thumbnails are read back from the disk. */
+	public void testMemoryLimitAndDisk() throws Exception {
+		File file = createImageFile();
+		File dir = createDirectory();
+		try {
+			IOLocation loc = LocationFactory.get().create(file);
+			long limit = 3*64*64*4;
+			CountingCache cache = new CountingCache(dir, limit);
+			for(int a = 0; a<6; a++) {
+				cache.getThumbnail(loc, new Dimension(64, 64+a), null);
+				assertTrue(cache.getMemoryUsage()<=limit);
+			}
+			assertEquals(6, cache.creations.get());
+			assertNull(cache.getCachedThumbnail(loc, new Dimension(64, 64)));
+
+			BufferedImage bi = cache.getThumbnail(loc, new Dimension(64, 64), null);
+			assertEquals(6, cache.creations.get());
+			assertEquals(64, bi.getWidth());
+
+			//a new cache using the same directory shouldn't create anything
+			CountingCache cache2 = new CountingCache(dir, limit);
+			assertNotNull(cache2.getThumbnail(loc, new Dimension(64, 67), null));
+			assertEquals(0, cache2.creations.get());
+
+			//modifying the file invalidates its thumbnails
+			file.setLastModified(file.lastModified() - 10000);
+			loc.flush();
+			cache2.getThumbnail(loc, new Dimension(64, 67), null);
+			assertEquals(1, cache2.creations.get());
+
+			cache2.clear();
+			assertEquals(0, cache2.getMemoryUsage());
+			assertEquals(0, dir.listFiles().length);
+		} finally {
+			file.delete();
+			IOUtils.delete(dir);
+		}
+	}
+
+	/** The directory is bounded too, and the least recently used PNGs are deleted first. */
+	public void testDiskLimit() throws Exception {
+		File file = createImageFile();
+		File dir = createDirectory();
+		try {
+			IOLocation loc = LocationFactory.get().create(file);
+			new CountingCache(dir, 0).getThumbnail(loc, new Dimension(64, 64), null);
+			long pngSize = getDiskUsage(dir);
+			assertTrue(pngSize>0);
+			long limit = pngSize*9/2;
+			
+			CountingCache cache = new CountingCache(dir, 0, limit);
+			for(int a = 1; a<3; a++) {
+				cache.getThumbnail(loc, new Dimension(64, 64+a), null);
+			}
+			assertEquals(3, dir.listFiles().length);
+			//make these files old, and then use the first one again:
+			for(File f : dir.listFiles()) {
+				f.setLastModified(f.lastModified() - 100000);
+			}
+			cache.getThumbnail(loc, new Dimension(64, 64), null);
+			assertEquals(2, cache.creations.get());
+			
+			//the fifth file goes over the limit:
+			cache.getThumbnail(loc, new Dimension(64, 67), null);
+			assertEquals(4, dir.listFiles().length);
+			cache.getThumbnail(loc, new Dimension(64, 68), null);
+			assertTrue(getDiskUsage(dir)<=limit);
+			
+			//so the thumbnails we didn't use again were deleted first
+			CountingCache cache2 = new CountingCache(dir, 0, limit);
+			cache2.getThumbnail(loc, new Dimension(64, 64), null);
+			cache2.getThumbnail(loc, new Dimension(64, 68), null);
+			assertEquals(0, cache2.creations.get());
+			cache2.getThumbnail(loc, new Dimension(64, 65), null);
+			assertEquals(1, cache2.creations.get());
+			
+			for(int a = 0; a<10; a++) {
+				cache2.getThumbnail(loc, new Dimension(64+a, 64), null);
+				assertTrue(getDiskUsage(dir)<=limit);
+			}
+		} finally {
+			file.delete();
+			IOUtils.delete(dir);
+		}
+	}
+	
+	private static long getDiskUsage(File dir) {
+		long sum = 0;
+		for(File f : dir.listFiles()) {
+			sum += f.length();
+		}
+		return sum;
+	}
+
+	/** A JPEG's EXIF thumbnail is used when it is large enough. */
+	public void testEmbeddedThumbnail() throws Exception {
+		char s = File.separatorChar;
+		File dir = new File(System.getProperty("user.dir")+
+				s+"src"+s+"test"+s+"resources"+s+"com"+s+"bric"+s+"image"+s+"resources"+s);
+		File jpeg = new File(dir, "bridge3.jpg");
+		IOLocation loc = LocationFactory.get().create(jpeg);
+		JPEGHeader header = JPEGHeader.read(jpeg);
+		if(header.getThumbnailLength()==0)
+			return;
+
+		CountingCache cache = new CountingCache(null, ThumbnailCache.DEFAULT_MEMORY_LIMIT);
+		assertNotNull(cache.getThumbnail(loc, new Dimension(48, 48), null));
+		assertEquals(0, cache.creations.get());
+
+		//a huge thumbnail can't come from the EXIF thumbnail
+		assertNotNull(cache.getThumbnail(loc, new Dimension(2000, 2000), null));
+		assertEquals(1, cache.creations.get());
+	}
+
+	/** An exception creating a thumbnail must reach the caller, and the failure must not be cached. */
+	public void testFailure() throws Exception {
+		File file = createImageFile();
+		try {
+			IOLocation loc = LocationFactory.get().create(file);
+			final AtomicInteger attempts = new AtomicInteger();
+			ThumbnailCache cache = new ThumbnailCache(null, ThumbnailCache.DEFAULT_MEMORY_LIMIT) {
+				@Override
+				protected BufferedImage createThumbnail(IOLocation loc,Dimension maxSize,Cancellable cancellable) {
+					attempts.incrementAndGet();
+					throw new IllegalStateException("thumbnail failure");
+				}
+			};
+			for(int a = 1; a<=2; a++) {
+				try {
+					cache.getThumbnail(loc, new Dimension(64, 64), null);
+					fail("getThumbnail() should throw the exception from createThumbnail()");
+				} catch(IllegalStateException e) {
+					assertEquals("thumbnail failure", e.getMessage());
+				}
+				assertEquals(a, attempts.get());
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,290 @@
+/*
+ * @(#)ThumbnailLoaderTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.swing.io;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import junit.framework.TestCase;
+
+import com.bric.io.location.IOLocation;
+import com.bric.io.location.LocationFactory;
+import com.bric.io.location.ThumbnailCache;
+import com.bric.swing.Cancellable;
+
+public class ThumbnailLoaderTest extends TestCase {
+
+	/** This blocks while creating the thumbnail of one location, and records the order thumbnails are created in. */
+	static class BlockingCache extends ThumbnailCache {
+		final List<String> created = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch blocking = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger maxActive = new AtomicInteger();
+		final String blockedName;
+		final long delay;
+
+		BlockingCache(String blockedName,long delay) {
+			super(null, DEFAULT_MEMORY_LIMIT);
+			this.blockedName = blockedName;
+			this.delay = delay;
+		}
+
+		@Override
+		protected BufferedImage createThumbnail(IOLocation loc,Dimension maxSize,Cancellable cancellable) {
+			int a = active.incrementAndGet();
+			while(true) {
+				int max = maxActive.get();
+				if(a<=max || maxActive.compareAndSet(max, a))
+					break;
+			}
+			try {
+				if(loc.getName().equals(blockedName)) {
+					blocking.countDown();
+					release.await(10, TimeUnit.SECONDS);
+				} else if(delay>0) {
+					Thread.sleep(delay);
+				}
+				created.add(loc.getName());
+				return new BufferedImage(maxSize.width, maxSize.height, BufferedImage.TYPE_INT_ARGB);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} finally {
+				active.decrementAndGet();
+			}
+		}
+	}
+
+	static class RecordingListener implements ThumbnailLoader.Listener {
+		final List<String> loaded = Collections.synchronizedList(new ArrayList<String>());
+		final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+
+		public void thumbnailLoaded(ThumbnailLoader loader,IOLocation loc,BufferedImage image) {
+			loaded.add(loc.getName());
+		}
+
+		public void thumbnailFailed(ThumbnailLoader loader,IOLocation loc,Throwable t) {
+			failures.add(t);
+		}
+
+		void waitFor(int count) throws InterruptedException {
+			long end = System.currentTimeMillis() + 10000;
+			while(loaded.size() + failures.size()<count && System.currentTimeMillis()<end) {
+				Thread.sleep(10);
+			}
+		}
+	}
+
+	File dir;
+	IOLocation[] locs;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("thumbnails", "");
+		dir.delete();
+		dir.mkdirs();
+		locs = new IOLocation[6];
+		for(int a = 0; a<locs.length; a++) {
+			File file = new File(dir, "image"+a+".png");
+			ImageIO.write(new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB), "png", file);
+			locs[a] = LocationFactory.get().create(file);
+		}
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for(File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	/** Visible locations are loaded first, and locations that scroll out of view are cancelled. */
+	public void testVisiblePriority() throws Exception {
+		Dimension size = new Dimension(32, 32);
+		BlockingCache cache = new BlockingCache("image0.png", 0);
+		ThumbnailLoader loader = new ThumbnailLoader(cache, 1);
+		RecordingListener listener = new RecordingListener();
+		loader.addListener(listener);
+
+		loader.setVisibleLocations(Arrays.asList(locs[0], locs[4]));
+		assertTrue(loader.request(locs[0], size));
+		assertTrue(cache.blocking.await(10, TimeUnit.SECONDS));
+		for(int a = 1; a<locs.length; a++) {
+			assertTrue(loader.request(locs[a], size));
+		}
+		//requesting a pending location again doesn't queue it twice
+		assertFalse(loader.request(locs[1], size));
+		assertEquals(5, loader.getQueueDepth());
+		assertEquals(1, loader.getActiveCount());
+
+		//scroll: 1, 2 and 4 are visible now
+		loader.setVisibleLocations(Arrays.asList(locs[2], locs[1], locs[4]));
+		assertEquals(3, loader.getQueueDepth());
+		assertEquals(3, loader.getCancelledCount());
+
+		cache.release.countDown();
+		listener.waitFor(3);
+		assertTrue(listener.loaded.containsAll(Arrays.asList("image1.png", "image2.png", "image4.png")));
+		//4 was visible before 1 and 2 were promoted
+		assertEquals(4, cache.created.size());
+		assertEquals("image0.png", cache.created.get(0));
+		assertEquals("image4.png", cache.created.get(1));
+		assertFalse(cache.created.contains("image3.png"));
+		assertEquals(0, loader.getQueueDepth());
+		assertTrue(loader.getCompletedCount()>=3);
+		assertTrue(loader.getMaximumLatency()>=loader.getAverageLatency());
+		assertTrue(loader.getAverageLatency()>=loader.getAverageWaitTime());
+	}
+
+	/** Requests that aren't known to be visible run after visible requests. */
+	public void testReprioritize() throws Exception {
+		Dimension size = new Dimension(32, 32);
+		BlockingCache cache = new BlockingCache("image0.png", 0);
+		ThumbnailLoader loader = new ThumbnailLoader(cache, 1);
+		RecordingListener listener = new RecordingListener();
+		loader.addListener(listener);
+
+		loader.setVisibleLocations(Arrays.asList(locs[3]));
+		loader.request(locs[0], size);
+		assertTrue(cache.blocking.await(10, TimeUnit.SECONDS));
+		loader.request(locs[1], size);
+		loader.request(locs[2], size);
+		loader.request(locs[3], size);
+
+		cache.release.countDown();
+		listener.waitFor(4);
+		assertEquals(Arrays.asList("image0.png", "image3.png", "image1.png", "image2.png"), cache.created);
+		assertEquals(0, loader.getCancelledCount());
+	}
+
+	/** Each device has its own limit on how many thumbnails are created at once. */
+	public void testDeviceConcurrency() throws Exception {
+		Dimension size = new Dimension(32, 32);
+		BlockingCache cache = new BlockingCache(null, 50);
+		ThumbnailLoader loader = new ThumbnailLoader(cache, 1);
+		RecordingListener listener = new RecordingListener();
+		loader.addListener(listener);
+		for(IOLocation loc : locs) {
+			loader.request(loc, size);
+		}
+		listener.waitFor(locs.length);
+		assertEquals(locs.length, listener.loaded.size());
+		assertEquals(1, loader.getDeviceCount());
+		assertEquals(1, cache.maxActive.get());
+
+		//pretend every other file is on another device:
+		cache = new BlockingCache(null, 50);
+		loader = new ThumbnailLoader(cache, 1) {
+			@Override
+			protected Object getDevice(IOLocation loc) {
+				return loc.getName().charAt(5)%2==0 ? "even" : "odd";
+			}
+		};
+		listener = new RecordingListener();
+		loader.addListener(listener);
+		for(IOLocation loc : locs) {
+			loader.request(loc, size);
+		}
+		listener.waitFor(locs.length);
+		assertEquals(locs.length, listener.loaded.size());
+		assertEquals(2, loader.getDeviceCount());
+		assertEquals(2, cache.maxActive.get());
+	}
+
+	/** An exception creating a thumbnail is reported to listeners and counted as a failure. */
+	public void testFailure() throws Exception {
+		Dimension size = new Dimension(32, 32);
+		ThumbnailCache cache = new ThumbnailCache(null, ThumbnailCache.DEFAULT_MEMORY_LIMIT) {
+			@Override
+			protected BufferedImage createThumbnail(IOLocation loc,Dimension maxSize,Cancellable cancellable) {
+				if(loc.getName().equals("image1.png"))
+					throw new IllegalStateException("thumbnail failure");
+				return new BufferedImage(maxSize.width, maxSize.height, BufferedImage.TYPE_INT_ARGB);
+			}
+		};
+		ThumbnailLoader loader = new ThumbnailLoader(cache, 1);
+		RecordingListener listener = new RecordingListener();
+		loader.addListener(listener);
+		loader.request(locs[0], size);
+		loader.request(locs[1], size);
+		loader.request(locs[2], size);
+		listener.waitFor(3);
+		assertEquals(Arrays.asList("image0.png", "image2.png"), listener.loaded);
+		assertEquals(1, listener.failures.size());
+		assertEquals("thumbnail failure", listener.failures.get(0).getMessage());
+		assertEquals(1, loader.getFailedCount());
+		assertEquals(2, loader.getCompletedCount());
+	}
+
+	/** Requests must not wait while the device of a folder is looked up. */
+	public void testDeviceLookup() throws Exception {
+		Dimension size = new Dimension(32, 32);
+		final CountDownLatch release = new CountDownLatch(1);
+		BlockingCache cache = new BlockingCache(null, 0);
+		ThumbnailLoader loader = new ThumbnailLoader(cache, 1) {
+			@Override
+			protected Object lookupDevice(File dir) throws IOException {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return "device";
+			}
+		};
+		RecordingListener listener = new RecordingListener();
+		loader.addListener(listener);
+		long start = System.currentTimeMillis();
+		for(int a = 0; a<3; a++) {
+			loader.request(locs[a], size);
+		}
+		assertTrue(System.currentTimeMillis() - start<5000);
+		listener.waitFor(3);
+		assertEquals(3, listener.loaded.size());
+
+		//once the device is known, it shares the JobManager the earlier requests used:
+		release.countDown();
+		long end = System.currentTimeMillis() + 10000;
+		while(!"device".equals(loader.getDevice(locs[3])) && System.currentTimeMillis()<end) {
+			Thread.sleep(10);
+		}
+		assertEquals("device", loader.getDevice(locs[3]));
+		for(int a = 3; a<locs.length; a++) {
+			loader.request(locs[a], size);
+		}
+		listener.waitFor(locs.length);
+		assertEquals(locs.length, listener.loaded.size());
+		assertEquals(1, loader.getDeviceCount());
+		assertEquals(1, cache.maxActive.get());
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * @(#)ParallelRangeTest.java
+ *
+ * $Date$
+ *
+ * Copyright (c) 2026 by Jeremy Wood.
+ * All rights reserved.
+ *
+ * The copyright of this software is owned by Jeremy Wood. 
+ * You may not use, copy or modify this software, except in  
+ * accordance with the license agreement you entered into with  
+ * Jeremy Wood. For details see accompanying license terms.
+ * 
+ * This software is probably, but not necessarily, discussed here:
+ * https://javagraphics.java.net/
+ * 
+ * That site should also contain the most recent official version
+ * of this software.  (See the SVN repository for more details.)
+ */
+package com.bric.util;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import junit.framework.TestCase;
+
+public class ParallelRangeTest extends TestCase {
+
+	/** Every element must be visited exactly once, in the requested number of nonempty subranges. */
+	public void testBody() {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			int[][] cases = new int[][] { {0, 100, 7}, {5, 6, 4}, {3, 3, 2}, {-10, 1000, 16}, {0, 10, 1} };
+			for(int[] c : cases) {
+				final int min = c[0], max = c[1];
+				int tasks = c[2];
+				final AtomicIntegerArray visits = new AtomicIntegerArray(max - min);
+				final AtomicInteger subranges = new AtomicInteger();
+				ParallelRange.parallelRange(pool, min, max, tasks, new ParallelRange.Body() {
+					public void run(int start,int end) {
+						assertTrue(start<end || min==max);
+						subranges.incrementAndGet();
+						for(int a = start; a<end; a++) {
+							visits.incrementAndGet(a - min);
+						}
+					}
+				});
+				for(int a = 0; a<visits.length(); a++) {
+					assertEquals(1, visits.get(a));
+				}
+				assertEquals(Math.max(1, Math.min(tasks, max - min)), subranges.get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/** Results must be combined in order. */
+	public void testReduction() {
+		String s = ParallelRange.parallelRange(0, 26, 5, new ParallelRange.Reduction<String>() {
+			public String run(int min,int max) {
+				StringBuilder sb = new StringBuilder();
+				for(int a = min; a<max; a++) {
+					sb.append((char)('a' + a));
+				}
+				return sb.toString();
+			}
+
+			public String combine(String left,String right) {
+				return left + right;
+			}
+		});
+		assertEquals("abcdefghijklmnopqrstuvwxyz", s);
+	}
+}